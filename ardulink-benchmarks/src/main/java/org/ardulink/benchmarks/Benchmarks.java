@@ -0,0 +1,62 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ardulink.util.Lists;
+import org.openjdk.jmh.Main;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Runs the benchmarks (<code>java -jar target/benchmarks.jar</code>). All
+ * arguments are passed to JMH (<code>-h</code> lists them). If no result
+ * format is passed the results are written as JSON to
+ * <code>jmh-result.json</code> so runs of different commits can be compared
+ * (e.g. using <code>-rff jmh-result-$(git rev-parse --short HEAD).json</code>).
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class Benchmarks {
+
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	private Benchmarks() {
+		super();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Main.main(withDefaults(args));
+	}
+
+	private static String[] withDefaults(String[] args) {
+		List<String> arguments = Lists.newArrayList(args);
+		if (!arguments.contains("-rf")) {
+			arguments.addAll(0, Arrays.asList("-rf", "json"));
+			if (!arguments.contains("-rff")) {
+				arguments.addAll(0, Arrays.asList("-rff", DEFAULT_RESULT_FILE));
+			}
+		}
+		return arguments.toArray(new String[arguments.size()]);
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.ardulink.core.FrameScanner;
+import org.ardulink.core.StreamScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Splitting a synthetic stream of {@value #FRAMES} frames into frames by the
+ * {@link FrameScanner} and the {@link StreamScanner} it replaced. The stream
+ * returns at most <code>chunkSize</code> bytes per read like serial ports
+ * delivering the data in small portions. Results are per frame.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Fork(1)
+public class FramingBenchmark {
+
+	private static final int FRAMES = 1000;
+	private static final byte[] DELIMITER = "\n".getBytes();
+
+	/**
+	 * Stream returning at most <code>chunkSize</code> bytes per read.
+	 */
+	private static class ChunkedInputStream extends ByteArrayInputStream {
+
+		private final int chunkSize;
+
+		public ChunkedInputStream(byte[] bytes, int chunkSize) {
+			super(bytes);
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, chunkSize));
+		}
+
+	}
+
+	@Param({ "1", "16", "64", "1024" })
+	private int chunkSize;
+
+	private byte[] stream;
+
+	@Setup
+	public void setup() {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		for (int i = 0; i < FRAMES; i++) {
+			byte[] frame = (i % 2 == 0 ? "alp://ared/" + i % 6 + "/" + i % 1024
+					: "alp://rply/ok?id=" + i).getBytes();
+			os.write(frame, 0, frame.length);
+			os.write(DELIMITER, 0, DELIMITER.length);
+		}
+		this.stream = os.toByteArray();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public void frameScanner(Blackhole blackhole) throws IOException {
+		FrameScanner scanner = new FrameScanner(newStream(), DELIMITER);
+		byte[] frame;
+		while ((frame = scanner.next()) != null) {
+			blackhole.consume(frame);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	@SuppressWarnings("deprecation")
+	public void streamScanner(Blackhole blackhole) throws IOException {
+		StreamScanner scanner = new StreamScanner(newStream(), DELIMITER,
+				chunkSize);
+		byte[] frame;
+		while ((frame = scanner.next()) != null) {
+			blackhole.consume(frame);
+		}
+	}
+
+	private InputStream newStream() {
+		return new ChunkedInputStream(stream, chunkSize);
+	}
+
+}
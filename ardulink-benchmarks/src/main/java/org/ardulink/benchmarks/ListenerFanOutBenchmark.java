@@ -0,0 +1,124 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.ardulink.core.Pin.analogPin;
+
+import java.io.IOException;
+
+import org.ardulink.core.AbstractListenerLink;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.DefaultAnalogPinValueChangedEvent;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.events.FilteredEventListenerAdapter;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Dispatch of pin state changes to <code>listeners</code> listeners of the
+ * pin, either directly via
+ * {@link AbstractListenerLink#fireStateChanged(AnalogPinValueChangedEvent)} or
+ * starting with the frame received from the device. If
+ * <code>otherPins</code> is set the same number of listeners is registered
+ * for each of five other pins.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Fork(1)
+public class ListenerFanOutBenchmark {
+
+	private static final int PIN = 3;
+
+	@Param({ "1", "10", "100" })
+	private int listeners;
+
+	@Param({ "false", "true" })
+	private boolean otherPins;
+
+	private LoopbackConnection connection;
+	private ConnectionBasedLink link;
+	private final AnalogPinValueChangedEvent event = new DefaultAnalogPinValueChangedEvent(
+			analogPin(PIN), 42);
+	private final byte[] frame = ("alp://ared/" + PIN + "/42").getBytes();
+
+	@Setup
+	public void setup(Blackhole blackhole) throws IOException {
+		this.connection = new LoopbackConnection();
+		this.link = new ConnectionBasedLink(connection,
+				ArdulinkProtocol2.instance());
+		for (int i = 0; i < listeners; i++) {
+			link.addListener(listener(PIN, blackhole));
+			if (otherPins) {
+				for (int pin = PIN + 1; pin <= PIN + 5; pin++) {
+					link.addListener(listener(pin, blackhole));
+				}
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		link.close();
+	}
+
+	@Benchmark
+	public void fireStateChanged() {
+		link.fireStateChanged(event);
+	}
+
+	@Benchmark
+	public void receiveFrame() {
+		connection.receive(frame);
+	}
+
+	private static EventListener listener(int pin, final Blackhole blackhole) {
+		return new FilteredEventListenerAdapter(analogPin(pin),
+				new EventListenerAdapter() {
+					@Override
+					public void stateChanged(AnalogPinValueChangedEvent event) {
+						blackhole.consume(event);
+					}
+				});
+	}
+
+}
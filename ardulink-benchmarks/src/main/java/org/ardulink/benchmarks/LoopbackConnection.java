@@ -0,0 +1,102 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static org.ardulink.util.Bytes.indexOf;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.core.AbstractConnection;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * In-memory device: messages written carrying a message id are acknowledged
+ * by an <code>ok</code> reply from another thread like a device would do,
+ * optionally after a delay simulating the round trip time to the device.
+ * Frames can be injected as if they were received from the device using
+ * {@link #receive(byte[])}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+class LoopbackConnection extends AbstractConnection {
+
+	private static final byte[] ID = "?id=".getBytes();
+	private static final byte[] REPLY = "alp://rply/ok?id=".getBytes();
+
+	private final ScheduledExecutorService device = Executors
+			.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "loopback-device");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private final long replyDelay;
+	private final TimeUnit replyDelayUnit;
+
+	LoopbackConnection() {
+		this(0, TimeUnit.NANOSECONDS);
+	}
+
+	LoopbackConnection(long replyDelay, TimeUnit replyDelayUnit) {
+		this.replyDelay = replyDelay;
+		this.replyDelayUnit = replyDelayUnit;
+	}
+
+	@Override
+	public void write(byte[] bytes) throws IOException {
+		int idStart = indexOf(bytes, ID);
+		if (idStart >= 0) {
+			int start = idStart + ID.length;
+			int end = start;
+			while (end < bytes.length && Character.isDigit(bytes[end])) {
+				end++;
+			}
+			byte[] reply = new byte[REPLY.length + end - start];
+			System.arraycopy(REPLY, 0, reply, 0, REPLY.length);
+			System.arraycopy(bytes, start, reply, REPLY.length, end - start);
+			if (replyDelay == 0) {
+				device.execute(() -> fireReceived(reply));
+			} else {
+				device.schedule(() -> fireReceived(reply), replyDelay,
+						replyDelayUnit);
+			}
+		}
+	}
+
+	/**
+	 * Passes the frame to the listeners as if it was received from the device.
+	 *
+	 * @param frame
+	 *            the frame without delimiter
+	 */
+	public void receive(byte[] frame) {
+		fireReceived(frame);
+	}
+
+	@Override
+	public void close() throws IOException {
+		device.shutdownNow();
+	}
+
+}
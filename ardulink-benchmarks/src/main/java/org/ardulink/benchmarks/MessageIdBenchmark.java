@@ -0,0 +1,88 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.proto.api.MessageIdHolders.addMessageId;
+
+import java.lang.reflect.Proxy;
+
+import org.ardulink.core.messages.api.ToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessagePinStateChange;
+import org.ardulink.core.proto.api.MessageIdHolder;
+import org.ardulink.core.proto.api.MessageIdHolders;
+import org.ardulink.core.proto.api.MessageIdHolders.MessageIdHolderInvocationHandler;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Adding a message id to a message and encoding it, like a {@link
+ * org.ardulink.core.qos.QosLink} does for each message: using the wrappers of
+ * {@link MessageIdHolders#addMessageId(Object, long)} and using a dynamic
+ * proxy delegating all calls by reflection like it was done before.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Fork(1)
+public class MessageIdBenchmark {
+
+	private final Protocol protocol = ArdulinkProtocol2.instance();
+	private final ToDeviceMessagePinStateChange message = new DefaultToDeviceMessagePinStateChange(
+			analogPin(9), 123);
+
+	private long messageId;
+
+	@Benchmark
+	public byte[] wrapper() {
+		return protocol.toDevice(addMessageId(message, ++messageId));
+	}
+
+	@Benchmark
+	public byte[] proxy() {
+		return protocol.toDevice(reflectionProxy(message, ++messageId));
+	}
+
+	private static ToDeviceMessagePinStateChange reflectionProxy(
+			ToDeviceMessagePinStateChange message, long messageId) {
+		return (ToDeviceMessagePinStateChange) Proxy.newProxyInstance(message
+				.getClass().getClassLoader(), new Class<?>[] {
+				MessageIdHolder.class, ToDeviceMessagePinStateChange.class },
+				new MessageIdHolderInvocationHandler(message, messageId));
+	}
+
+}
@@ -0,0 +1,131 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.ardulink.core.events.PrimitivePinListener;
+import org.ardulink.core.messages.api.FromDeviceMessage;
+import org.ardulink.core.proto.api.PrimitivePinProtocol;
+import org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Decoding of the messages received from the device by
+ * {@link ArdulinkProtocol2}, one message per {@link ALPProtocolKey} that is
+ * received from the device. Pin state changes are decoded into message objects
+ * as well as into a {@link PrimitivePinListener}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Fork(1)
+public class ProtocolDecodeBenchmark {
+
+	@Param({ "ANALOG_PIN_READ", "DIGITAL_PIN_READ", "START_LISTENING_DIGITAL",
+			"START_LISTENING_ANALOG", "STOP_LISTENING_DIGITAL",
+			"STOP_LISTENING_ANALOG", "RPLY", "READY", "CUSTOM_EVENT" })
+	private ALPProtocolKey key;
+
+	private final PrimitivePinProtocol protocol = (PrimitivePinProtocol) ArdulinkProtocol2
+			.instance();
+	private byte[] frame;
+	private PrimitivePinListener listener;
+
+	@Setup
+	public void setup(final Blackhole blackhole) {
+		this.frame = frameFor(key).getBytes();
+		this.listener = new PrimitivePinListener() {
+
+			@Override
+			public void onAnalog(int pin, int value, long nanoTime) {
+				blackhole.consume(value);
+			}
+
+			@Override
+			public void onDigital(int pin, boolean value, long nanoTime) {
+				blackhole.consume(value);
+			}
+
+		};
+	}
+
+	@Benchmark
+	public FromDeviceMessage fromDevice() {
+		return protocol.fromDevice(frame);
+	}
+
+	/**
+	 * Decodes the frame the way ConnectionBasedLink does: pin state changes
+	 * without creating messages, all others using
+	 * {@link PrimitivePinProtocol#fromDevice(byte[])}.
+	 */
+	@Benchmark
+	public Object pinStateFromDevice() {
+		return protocol.pinStateFromDevice(frame, listener, 0) ? null
+				: protocol.fromDevice(frame);
+	}
+
+	private static String frameFor(ALPProtocolKey key) {
+		switch (key) {
+		case ANALOG_PIN_READ:
+			return "alp://ared/3/1023";
+		case DIGITAL_PIN_READ:
+			return "alp://dred/12/1";
+		case START_LISTENING_DIGITAL:
+			return "alp://srld/12";
+		case START_LISTENING_ANALOG:
+			return "alp://srla/3";
+		case STOP_LISTENING_DIGITAL:
+			return "alp://spld/12";
+		case STOP_LISTENING_ANALOG:
+			return "alp://spla/3";
+		case RPLY:
+			return "alp://rply/ok?id=42&UniqueID=456-2342-2342";
+		case READY:
+			return "alp://ready";
+		case CUSTOM_EVENT:
+			return "alp://cevnt/foo=w/some=42";
+		default:
+			throw new IllegalArgumentException(key
+					+ " is not received from the device");
+		}
+	}
+
+}
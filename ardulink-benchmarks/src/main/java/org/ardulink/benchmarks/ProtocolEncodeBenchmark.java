@@ -0,0 +1,181 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.ardulink.core.Tone;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageCustom;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageKeyPress;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageNoTone;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStartListening;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStopListening;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageTone;
+import org.ardulink.core.proto.api.ByteBufferProtocol;
+import org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Encoding of the messages sent to the device by {@link ArdulinkProtocol2},
+ * one message per {@link ALPProtocolKey} that is sent to the device, into new
+ * byte arrays as well as into a reused {@link ByteBuffer}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = MILLISECONDS)
+@Fork(1)
+public class ProtocolEncodeBenchmark {
+
+	private static class Encoder {
+
+		private final Function<ByteBufferProtocol, byte[]> toBytes;
+		private final BiConsumer<ByteBufferProtocol, ByteBuffer> toBuffer;
+
+		private Encoder(Function<ByteBufferProtocol, byte[]> toBytes,
+				BiConsumer<ByteBufferProtocol, ByteBuffer> toBuffer) {
+			this.toBytes = toBytes;
+			this.toBuffer = toBuffer;
+		}
+
+	}
+
+	@Param({ "POWER_PIN_SWITCH", "POWER_PIN_INTENSITY",
+			"START_LISTENING_DIGITAL", "START_LISTENING_ANALOG",
+			"STOP_LISTENING_DIGITAL", "STOP_LISTENING_ANALOG", "CHAR_PRESSED",
+			"TONE", "NOTONE", "CUSTOM_MESSAGE" })
+	private ALPProtocolKey key;
+
+	private final ByteBufferProtocol protocol = (ByteBufferProtocol) ArdulinkProtocol2
+			.instance();
+	private final ByteBuffer buffer = ByteBuffer.allocate(256);
+	private Encoder encoder;
+
+	@Setup
+	public void setup() {
+		this.encoder = encoderFor(key);
+	}
+
+	@Benchmark
+	public byte[] toBytes() {
+		return encoder.toBytes.apply(protocol);
+	}
+
+	@Benchmark
+	public ByteBuffer toByteBuffer() {
+		buffer.clear();
+		encoder.toBuffer.accept(protocol, buffer);
+		return buffer;
+	}
+
+	private static Encoder encoderFor(ALPProtocolKey key) {
+		switch (key) {
+		case POWER_PIN_SWITCH:
+			return pinStateChange(new DefaultToDeviceMessagePinStateChange(
+					digitalPin(12), true));
+		case POWER_PIN_INTENSITY:
+			return pinStateChange(new DefaultToDeviceMessagePinStateChange(
+					analogPin(3), 123));
+		case START_LISTENING_DIGITAL:
+			return startListening(new DefaultToDeviceMessageStartListening(
+					digitalPin(7)));
+		case START_LISTENING_ANALOG:
+			return startListening(new DefaultToDeviceMessageStartListening(
+					analogPin(2)));
+		case STOP_LISTENING_DIGITAL:
+			return stopListening(new DefaultToDeviceMessageStopListening(
+					digitalPin(7)));
+		case STOP_LISTENING_ANALOG:
+			return stopListening(new DefaultToDeviceMessageStopListening(
+					analogPin(2)));
+		case CHAR_PRESSED: {
+			DefaultToDeviceMessageKeyPress message = new DefaultToDeviceMessageKeyPress(
+					'#', 35, 1, 64, 128);
+			return new Encoder(p -> p.toDevice(message),
+					(p, t) -> p.toDevice(message, t));
+		}
+		case TONE: {
+			DefaultToDeviceMessageTone message = new DefaultToDeviceMessageTone(
+					Tone.forPin(analogPin(2)).withHertz(440)
+							.withDuration(250, MILLISECONDS));
+			return new Encoder(p -> p.toDevice(message),
+					(p, t) -> p.toDevice(message, t));
+		}
+		case NOTONE: {
+			DefaultToDeviceMessageNoTone message = new DefaultToDeviceMessageNoTone(
+					analogPin(2));
+			return new Encoder(p -> p.toDevice(message),
+					(p, t) -> p.toDevice(message, t));
+		}
+		case CUSTOM_MESSAGE: {
+			DefaultToDeviceMessageCustom message = new DefaultToDeviceMessageCustom(
+					"foo", "bar", "42");
+			return new Encoder(p -> p.toDevice(message),
+					(p, t) -> p.toDevice(message, t));
+		}
+		default:
+			throw new IllegalArgumentException(key
+					+ " is not sent to the device");
+		}
+	}
+
+	private static Encoder pinStateChange(
+			DefaultToDeviceMessagePinStateChange message) {
+		return new Encoder(p -> p.toDevice(message),
+				(p, t) -> p.toDevice(message, t));
+	}
+
+	private static Encoder startListening(
+			DefaultToDeviceMessageStartListening message) {
+		return new Encoder(p -> p.toDevice(message),
+				(p, t) -> p.toDevice(message, t));
+	}
+
+	private static Encoder stopListening(
+			DefaultToDeviceMessageStopListening message) {
+		return new Encoder(p -> p.toDevice(message),
+				(p, t) -> p.toDevice(message, t));
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.qos.QosEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Acknowledged messages sent through a {@link QosEngine} to a device whose
+ * replies take <code>rttMicros</code>. With a <code>maxInFlight</code> of 1
+ * each message waits for the reply of the previous one (like a
+ * {@link org.ardulink.core.qos.QosLink} called by one thread), with a larger
+ * window the messages are pipelined.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@Fork(1)
+public class QosPipelineBenchmark {
+
+	private static final int MESSAGES = 64;
+
+	@Param({ "1", "16" })
+	private int maxInFlight;
+
+	@Param({ "1000" })
+	private int rttMicros;
+
+	private final AnalogPin pin = analogPin(3);
+
+	private ConnectionBasedLink link;
+	private QosEngine engine;
+
+	@Setup
+	public void setup() throws IOException {
+		this.link = new ConnectionBasedLink(new LoopbackConnection(rttMicros,
+				MICROSECONDS), ArdulinkProtocol2.instance());
+		this.engine = new QosEngine(link, 1, SECONDS, maxInFlight, 0);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		engine.close();
+		link.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void submitAndAwait() throws Exception {
+		List<Future<RplyEvent>> futures = new ArrayList<>(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			int value = i;
+			futures.add(engine.submit(l -> l.switchAnalogPin(pin, value)));
+		}
+		for (Future<RplyEvent> future : futures) {
+			future.get();
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+
+import java.io.IOException;
+
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Pin.DigitalPin;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.qos.QosLink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Round trips of a {@link QosLink}: sending a message and waiting for the
+ * reply of a {@link LoopbackConnection} that acknowledges each message from
+ * its own thread, so the results contain the encoding, the decoding of the
+ * reply and the handover between the threads but no I/O.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@Fork(1)
+public class QosRoundTripBenchmark {
+
+	private final AnalogPin analogPin = analogPin(3);
+	private final DigitalPin digitalPin = digitalPin(12);
+
+	private QosLink qosLink;
+
+	@Setup
+	public void setup() throws IOException {
+		this.qosLink = new QosLink(new ConnectionBasedLink(
+				new LoopbackConnection(), ArdulinkProtocol2.instance()), 1,
+				SECONDS);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		qosLink.close();
+	}
+
+	@Benchmark
+	public long switchAnalogPin() throws IOException {
+		return qosLink.switchAnalogPin(analogPin, 42);
+	}
+
+	@Benchmark
+	public long switchDigitalPin() throws IOException {
+		return qosLink.switchDigitalPin(digitalPin, true);
+	}
+
+	@Benchmark
+	public long sendCustomMessage() throws IOException {
+		return qosLink.sendCustomMessage("foo", "bar");
+	}
+
+}
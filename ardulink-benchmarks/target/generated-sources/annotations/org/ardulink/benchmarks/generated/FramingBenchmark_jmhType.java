@@ -0,0 +1,4 @@
+package org.ardulink.benchmarks.generated;
+public class FramingBenchmark_jmhType extends FramingBenchmark_jmhType_B3 {
+}
+
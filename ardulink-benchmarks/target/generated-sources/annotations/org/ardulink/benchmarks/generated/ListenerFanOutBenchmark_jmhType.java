@@ -0,0 +1,4 @@
+package org.ardulink.benchmarks.generated;
+public class ListenerFanOutBenchmark_jmhType extends ListenerFanOutBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.ardulink.benchmarks.generated;
+public class MessageIdBenchmark_jmhType extends MessageIdBenchmark_jmhType_B3 {
+}
+
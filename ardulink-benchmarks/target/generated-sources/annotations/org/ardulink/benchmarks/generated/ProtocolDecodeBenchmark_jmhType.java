@@ -0,0 +1,4 @@
+package org.ardulink.benchmarks.generated;
+public class ProtocolDecodeBenchmark_jmhType extends ProtocolDecodeBenchmark_jmhType_B3 {
+}
+
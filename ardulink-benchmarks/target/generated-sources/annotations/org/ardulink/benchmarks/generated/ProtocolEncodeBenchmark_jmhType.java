@@ -0,0 +1,4 @@
+package org.ardulink.benchmarks.generated;
+public class ProtocolEncodeBenchmark_jmhType extends ProtocolEncodeBenchmark_jmhType_B3 {
+}
+
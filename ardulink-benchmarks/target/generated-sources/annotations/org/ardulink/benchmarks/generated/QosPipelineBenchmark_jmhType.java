@@ -0,0 +1,4 @@
+package org.ardulink.benchmarks.generated;
+public class QosPipelineBenchmark_jmhType extends QosPipelineBenchmark_jmhType_B3 {
+}
+
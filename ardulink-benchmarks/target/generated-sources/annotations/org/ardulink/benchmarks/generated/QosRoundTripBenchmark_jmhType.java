@@ -0,0 +1,4 @@
+package org.ardulink.benchmarks.generated;
+public class QosRoundTripBenchmark_jmhType extends QosRoundTripBenchmark_jmhType_B3 {
+}
+
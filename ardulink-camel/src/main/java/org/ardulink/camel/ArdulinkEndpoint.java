@@ -12,6 +12,7 @@ import org.apache.camel.Processor;
 import org.apache.camel.Producer;
 import org.apache.camel.support.DefaultEndpoint;
 import org.ardulink.core.Link;
+import org.ardulink.core.LinkBatch;
 import org.ardulink.core.Pin;
 import org.ardulink.core.convenience.Links;
 import org.ardulink.util.Joiner;
@@ -32,8 +33,12 @@ public class ArdulinkEndpoint extends DefaultEndpoint implements
 		super(uri, ardulinkComponent);
 		this.config = config;
 		this.link = createLink();
-		for (Pin pin : config.getPins()) {
-			this.link.startListening(pin);
+		if (!config.getPins().isEmpty()) {
+			LinkBatch batch = this.link.batch();
+			for (Pin pin : config.getPins()) {
+				batch.startListening(pin);
+			}
+			batch.send();
 		}
 	}
 
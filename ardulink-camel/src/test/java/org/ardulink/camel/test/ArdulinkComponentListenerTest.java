@@ -43,6 +43,7 @@ public class ArdulinkComponentListenerTest {
 	public void startListeningOnPassedPins() throws Exception {
 		haltCamel(startCamel("listenTo=d1,d2,a1"));
 		Link mock = getMock(link);
+		verify(mock).batch();
 		verify(mock).startListening(digitalPin(1));
 		verify(mock).startListening(digitalPin(2));
 		verify(mock).startListening(analogPin(1));
@@ -54,6 +55,7 @@ public class ArdulinkComponentListenerTest {
 	public void listeningIsCaseInsensitive() throws Exception {
 		haltCamel(startCamel("listenTo=d1,D2,a3,A4"));
 		Link mock = getMock(link);
+		verify(mock).batch();
 		verify(mock).startListening(digitalPin(1));
 		verify(mock).startListening(digitalPin(2));
 		verify(mock).startListening(analogPin(3));
@@ -66,6 +68,7 @@ public class ArdulinkComponentListenerTest {
 	public void ignoresMultipleOccurencesOfSamePin() throws Exception {
 		haltCamel(startCamel("listenTo=d1,D1,a2,A2"));
 		Link mock = getMock(link);
+		verify(mock).batch();
 		verify(mock).startListening(digitalPin(1));
 		verify(mock).startListening(analogPin(2));
 		verify(mock).close();
@@ -13,6 +13,8 @@ public abstract class AbstractConnection implements Connection {
 	
 	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
 
+	private volatile LinkMetrics metrics;
+
 	@Override
 	public void addListener(Listener listener) {
 		this.listeners.add(listener);
@@ -27,7 +29,15 @@ public abstract class AbstractConnection implements Connection {
 		return listeners;
 	}
 	
+	void setMetrics(LinkMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	protected void fireSent(byte[] bytes) {
+		LinkMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.frameSent(bytes.length);
+		}
 		for (Listener listener : listeners) {
 			try {
 				listener.sent(bytes);
@@ -38,6 +48,10 @@ public abstract class AbstractConnection implements Connection {
 	}
 
 	protected void fireReceived(byte[] bytes) {
+		LinkMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.frameReceived(bytes.length);
+		}
 		for (Listener listener : listeners) {
 			try {
 				listener.received(bytes);
@@ -20,12 +20,17 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Pin.DigitalPin;
 import org.ardulink.core.events.AnalogPinValueChangedEvent;
 import org.ardulink.core.events.CustomEvent;
 import org.ardulink.core.events.CustomListener;
+import org.ardulink.core.events.DefaultAnalogPinValueChangedEvent;
+import org.ardulink.core.events.DefaultDigitalPinValueChangedEvent;
 import org.ardulink.core.events.DigitalPinValueChangedEvent;
 import org.ardulink.core.events.EventListener;
 import org.ardulink.core.events.FilteredEventListenerAdapter;
+import org.ardulink.core.events.PrimitivePinListener;
 import org.ardulink.core.events.RplyEvent;
 import org.ardulink.core.events.RplyListener;
 import org.slf4j.Logger;
@@ -44,10 +49,14 @@ public abstract class AbstractListenerLink implements Link {
 	private static final Logger logger = LoggerFactory
 			.getLogger(AbstractListenerLink.class);
 
-	private final List<EventListener> eventListeners = new CopyOnWriteArrayList<EventListener>();
+	private final PinIndexedEventListeners eventListeners = new PinIndexedEventListeners();
 	private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
 	private final List<RplyListener> rplyListeners = new CopyOnWriteArrayList<RplyListener>();
 	private final List<CustomListener> customListeners = new CopyOnWriteArrayList<CustomListener>();
+	private final List<PrimitivePinListener> primitivePinListeners = new CopyOnWriteArrayList<PrimitivePinListener>();
+
+	private volatile AsyncEventDispatcher eventDispatcher;
+	private volatile LinkMetrics metrics;
 
 	private boolean closed;
 
@@ -104,42 +113,235 @@ public abstract class AbstractListenerLink implements Link {
 		return this;
 	}
 
+	/**
+	 * Adds a listener that is notified about all pin state changes. Unlike
+	 * {@link EventListener}s it does not start listening on pins and it is
+	 * always called by the thread that received the change (even if an
+	 * {@link AsyncEventDispatcher} is set).
+	 * 
+	 * @param listener
+	 *            the listener to add
+	 * @return this Link
+	 */
+	public Link addPrimitivePinListener(PrimitivePinListener listener) {
+		this.primitivePinListeners.add(listener);
+		return this;
+	}
+
+	public Link removePrimitivePinListener(PrimitivePinListener listener) {
+		this.primitivePinListeners.remove(listener);
+		return this;
+	}
+
+	/**
+	 * Notifies the {@link PrimitivePinListener}s and the {@link EventListener}
+	 * s about the state change of an analog pin. The event object for the
+	 * EventListeners is only created if there is an EventListener for the pin.
+	 * 
+	 * @param pin
+	 *            number of the analog pin
+	 * @param value
+	 *            the pin's new value
+	 * @param nanoTime
+	 *            {@link System#nanoTime()} when the change was received
+	 */
+	public void fireAnalogPinChanged(int pin, int value, long nanoTime) {
+		for (PrimitivePinListener listener : this.primitivePinListeners) {
+			try {
+				listener.onAnalog(pin, value, nanoTime);
+			} catch (Exception e) {
+				logger.error("PrimitivePinListener {} failure", listener, e);
+				listenerFailed();
+			}
+		}
+		AnalogPin analogPin = Pin.analogPin(pin);
+		if (hasEventListeners(analogPin)) {
+			dispatchStateChanged(new DefaultAnalogPinValueChangedEvent(
+					analogPin, value));
+		}
+	}
+
+	/**
+	 * Notifies the {@link PrimitivePinListener}s and the {@link EventListener}
+	 * s about the state change of a digital pin. The event object for the
+	 * EventListeners is only created if there is an EventListener for the pin.
+	 * 
+	 * @param pin
+	 *            number of the digital pin
+	 * @param value
+	 *            the pin's new value
+	 * @param nanoTime
+	 *            {@link System#nanoTime()} when the change was received
+	 */
+	public void fireDigitalPinChanged(int pin, boolean value, long nanoTime) {
+		for (PrimitivePinListener listener : this.primitivePinListeners) {
+			try {
+				listener.onDigital(pin, value, nanoTime);
+			} catch (Exception e) {
+				logger.error("PrimitivePinListener {} failure", listener, e);
+				listenerFailed();
+			}
+		}
+		DigitalPin digitalPin = Pin.digitalPin(pin);
+		if (hasEventListeners(digitalPin)) {
+			dispatchStateChanged(new DefaultDigitalPinValueChangedEvent(
+					digitalPin, value));
+		}
+	}
+
+	private boolean hasEventListeners(Pin pin) {
+		return this.eventListeners.global().length > 0
+				|| this.eventListeners.hasListenerForPin(pin);
+	}
+
 	public void fireStateChanged(AnalogPinValueChangedEvent event) {
-		for (EventListener eventListener : this.eventListeners) {
+		if (!this.primitivePinListeners.isEmpty()) {
+			long nanoTime = System.nanoTime();
+			int pin = event.getPin().pinNum();
+			int value = event.getValue().intValue();
+			for (PrimitivePinListener listener : this.primitivePinListeners) {
+				try {
+					listener.onAnalog(pin, value, nanoTime);
+				} catch (Exception e) {
+					logger.error("PrimitivePinListener {} failure", listener, e);
+					listenerFailed();
+				}
+			}
+		}
+		dispatchStateChanged(event);
+	}
+
+	public void fireStateChanged(DigitalPinValueChangedEvent event) {
+		if (!this.primitivePinListeners.isEmpty()) {
+			long nanoTime = System.nanoTime();
+			int pin = event.getPin().pinNum();
+			boolean value = event.getValue().booleanValue();
+			for (PrimitivePinListener listener : this.primitivePinListeners) {
+				try {
+					listener.onDigital(pin, value, nanoTime);
+				} catch (Exception e) {
+					logger.error("PrimitivePinListener {} failure", listener, e);
+					listenerFailed();
+				}
+			}
+		}
+		dispatchStateChanged(event);
+	}
+
+	private void dispatchStateChanged(final AnalogPinValueChangedEvent event) {
+		AsyncEventDispatcher dispatcher = this.eventDispatcher;
+		if (dispatcher != null) {
+			dispatcher.dispatch(event.getPin(), new Runnable() {
+				@Override
+				public void run() {
+					notifyStateChanged(event);
+				}
+			});
+		} else {
+			notifyStateChanged(event);
+		}
+	}
+
+	private void notifyStateChanged(AnalogPinValueChangedEvent event) {
+		for (EventListener eventListener : this.eventListeners.global()) {
 			try {
 				eventListener.stateChanged(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", eventListener, e);
+				listenerFailed();
+			}
+		}
+		for (EventListener eventListener : this.eventListeners.forPin(event
+				.getPin())) {
+			try {
+				eventListener.stateChanged(event);
+			} catch (Exception e) {
+				logger.error("EventListener {} failure", eventListener, e);
+				listenerFailed();
 			}
 		}
 	}
 
-	public void fireStateChanged(DigitalPinValueChangedEvent event) {
-		for (EventListener eventListener : this.eventListeners) {
+	private void dispatchStateChanged(final DigitalPinValueChangedEvent event) {
+		AsyncEventDispatcher dispatcher = this.eventDispatcher;
+		if (dispatcher != null) {
+			dispatcher.dispatch(event.getPin(), new Runnable() {
+				@Override
+				public void run() {
+					notifyStateChanged(event);
+				}
+			});
+		} else {
+			notifyStateChanged(event);
+		}
+	}
+
+	private void notifyStateChanged(DigitalPinValueChangedEvent event) {
+		for (EventListener eventListener : this.eventListeners.global()) {
 			try {
 				eventListener.stateChanged(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", eventListener, e);
+				listenerFailed();
+			}
+		}
+		for (EventListener eventListener : this.eventListeners.forPin(event
+				.getPin())) {
+			try {
+				eventListener.stateChanged(event);
+			} catch (Exception e) {
+				logger.error("EventListener {} failure", eventListener, e);
+				listenerFailed();
 			}
 		}
 	}
 
-	public void fireReplyReceived(RplyEvent event) {
+	public void fireReplyReceived(final RplyEvent event) {
+		AsyncEventDispatcher dispatcher = this.eventDispatcher;
+		if (dispatcher != null) {
+			dispatcher.dispatch(null, new Runnable() {
+				@Override
+				public void run() {
+					notifyReplyReceived(event);
+				}
+			});
+		} else {
+			notifyReplyReceived(event);
+		}
+	}
+
+	private void notifyReplyReceived(RplyEvent event) {
 		for (RplyListener rplyListener : this.rplyListeners) {
 			try {
 				rplyListener.rplyReceived(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", rplyListener, e);
+				listenerFailed();
 			}
 		}
 	}
 
-	public void fireCustomReceived(CustomEvent event) {
+	public void fireCustomReceived(final CustomEvent event) {
+		AsyncEventDispatcher dispatcher = this.eventDispatcher;
+		if (dispatcher != null) {
+			dispatcher.dispatch(null, new Runnable() {
+				@Override
+				public void run() {
+					notifyCustomReceived(event);
+				}
+			});
+		} else {
+			notifyCustomReceived(event);
+		}
+	}
+
+	private void notifyCustomReceived(CustomEvent event) {
 		for (CustomListener customListener : this.customListeners) {
 			try {
 				customListener.customEventReceived(event);
 			} catch (Exception e) {
 				logger.error("EventListener {} failure", customListener, e);
+				listenerFailed();
 			}
 		}
 	}
@@ -151,6 +353,7 @@ public abstract class AbstractListenerLink implements Link {
 			} catch (Exception e) {
 				logger.error("ConnectionListener {} failure",
 						connectionListener, e);
+				listenerFailed();
 			}
 		}
 	}
@@ -162,19 +365,13 @@ public abstract class AbstractListenerLink implements Link {
 			} catch (Exception e) {
 				logger.error("ConnectionListener {} failure",
 						connectionListener, e);
+				listenerFailed();
 			}
 		}
 	}
 
 	private boolean hasListenerForPin(Pin pin) {
-		for (EventListener listener : this.eventListeners) {
-			if (listener instanceof FilteredEventListenerAdapter
-					&& pin.equals(((FilteredEventListenerAdapter) listener)
-							.getPin())) {
-				return true;
-			}
-		}
-		return false;
+		return this.eventListeners.hasListenerForPin(pin);
 	}
 
 	// TODO make this part of an interface, e.g. ConnectionStateObservable
@@ -189,8 +386,56 @@ public abstract class AbstractListenerLink implements Link {
 		return this;
 	}
 
+	/**
+	 * Notify the listeners of received events using the passed dispatcher
+	 * instead of the thread that received the event. The dispatcher is closed
+	 * when this Link is closed.
+	 * 
+	 * @param eventDispatcher
+	 *            the dispatcher to use, <code>null</code> to notify the
+	 *            listeners synchronously again
+	 */
+	public void setEventDispatcher(AsyncEventDispatcher eventDispatcher) {
+		this.eventDispatcher = eventDispatcher;
+	}
+
+	public AsyncEventDispatcher getEventDispatcher() {
+		return eventDispatcher;
+	}
+
+	/**
+	 * Called by {@link LinkMetrics#register(AbstractListenerLink, String)}.
+	 */
+	void setMetrics(LinkMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the metrics of this Link or <code>null</code> if metrics are not
+	 *         enabled
+	 */
+	public LinkMetrics getMetrics() {
+		return metrics;
+	}
+
+	private void listenerFailed() {
+		LinkMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.listenerFailed();
+		}
+	}
+
+	/**
+	 * Returns a batch sending its commands one after another, Links able to
+	 * send several commands together should override this method.
+	 */
+	@Override
+	public LinkBatch batch() {
+		return new DefaultLinkBatch(this);
+	}
+
 	public void deregisterAllEventListeners() throws IOException {
-		for (EventListener eventListener : this.eventListeners) {
+		for (EventListener eventListener : this.eventListeners.all()) {
 			removeListener(eventListener);
 		}
 	}
@@ -198,6 +443,14 @@ public abstract class AbstractListenerLink implements Link {
 	@Override
 	public void close() throws IOException {
 		this.closed = true;
+		AsyncEventDispatcher dispatcher = this.eventDispatcher;
+		if (dispatcher != null) {
+			dispatcher.close();
+		}
+		LinkMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.unregister();
+		}
 	}
 
 }
@@ -0,0 +1,326 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Moves the notification of a Link's listeners off the thread that reads from
+ * the device (see {@link AbstractListenerLink#setEventDispatcher}). The events
+ * are distributed to a fixed number of partitions by their pin, each
+ * partition has a bounded queue and one thread notifying the listeners. So the
+ * events of one pin are dispatched in the order they were received while the
+ * events of different pins can be dispatched in parallel. Events without a pin
+ * (replies and custom events) are all dispatched by the first partition.
+ *
+ * What happens if a queue is full is defined by the {@link OverflowPolicy}.
+ * Events without a pin do not count against the capacity and are never
+ * dropped or blocked since callers may wait for a reply.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class AsyncEventDispatcher implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(AsyncEventDispatcher.class);
+
+	public static final int DEFAULT_PARTITIONS = 4;
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	public enum OverflowPolicy {
+		/**
+		 * block the reading thread until there is space in the queue
+		 */
+		BLOCK,
+		/**
+		 * remove the oldest event of the queue to make space for the new one
+		 */
+		DROP_OLDEST,
+		/**
+		 * replace the queued event of the same pin by the new one, if there is
+		 * no event of the same pin queued the reading thread is blocked
+		 */
+		KEEP_LATEST_PER_PIN;
+	}
+
+	public static class Builder {
+
+		private int partitions = DEFAULT_PARTITIONS;
+		private int capacity = DEFAULT_CAPACITY;
+		private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+		private Builder() {
+			super();
+		}
+
+		public Builder withPartitions(int partitions) {
+			checkArgument(partitions > 0,
+					"partitions must be greater than 0 but was %s", partitions);
+			this.partitions = partitions;
+			return this;
+		}
+
+		/**
+		 * @param capacity
+		 *            the capacity of each partition's queue
+		 * @return this builder
+		 */
+		public Builder withCapacity(int capacity) {
+			checkArgument(capacity > 0,
+					"capacity must be greater than 0 but was %s", capacity);
+			this.capacity = capacity;
+			return this;
+		}
+
+		public Builder whenFull(OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = checkNotNull(overflowPolicy,
+					"overflowPolicy must not be null");
+			return this;
+		}
+
+		public AsyncEventDispatcher build() {
+			return new AsyncEventDispatcher(this);
+		}
+
+	}
+
+	private static class Entry {
+
+		private final Pin pin;
+		private Runnable task;
+
+		public Entry(Pin pin, Runnable task) {
+			this.pin = pin;
+			this.task = task;
+		}
+
+	}
+
+	private class Partition extends Thread {
+
+		private final Deque<Entry> queue = new ArrayDeque<Entry>();
+
+		/**
+		 * number of queued entries with a pin, only these are limited by the
+		 * capacity
+		 */
+		private int pinEntries;
+
+		/**
+		 * the last entry queued per pin, only maintained for
+		 * {@link OverflowPolicy#KEEP_LATEST_PER_PIN}
+		 */
+		private final Map<Pin, Entry> latest = new HashMap<Pin, Entry>();
+
+		private boolean closed;
+
+		public Partition(int index) {
+			super("ardulink-event-dispatcher-" + index);
+			setDaemon(true);
+		}
+
+		public synchronized void offer(Pin pin, Runnable task) {
+			while (!closed && pin != null && pinEntries >= capacity) {
+				if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+					dropOldestWithPin();
+					dropped.incrementAndGet();
+					break;
+				}
+				if (overflowPolicy == OverflowPolicy.KEEP_LATEST_PER_PIN) {
+					Entry queued = latest.get(pin);
+					if (queued != null) {
+						queued.task = task;
+						coalesced.incrementAndGet();
+						return;
+					}
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					dropped.incrementAndGet();
+					return;
+				}
+			}
+			if (closed) {
+				return;
+			}
+			Entry entry = new Entry(pin, task);
+			queue.add(entry);
+			if (pin != null) {
+				pinEntries++;
+				if (overflowPolicy == OverflowPolicy.KEEP_LATEST_PER_PIN) {
+					latest.put(pin, entry);
+				}
+			}
+			notifyAll();
+		}
+
+		private void dropOldestWithPin() {
+			for (Iterator<Entry> it = queue.iterator(); it.hasNext();) {
+				Entry entry = it.next();
+				if (entry.pin != null) {
+					it.remove();
+					pinEntries--;
+					return;
+				}
+			}
+		}
+
+		private synchronized Entry take() throws InterruptedException {
+			while (queue.isEmpty() && !closed) {
+				wait();
+			}
+			Entry entry = queue.poll();
+			if (entry != null && entry.pin != null) {
+				pinEntries--;
+				forget(entry);
+			}
+			notifyAll();
+			return entry;
+		}
+
+		private void forget(Entry entry) {
+			if (latest.get(entry.pin) == entry) {
+				latest.remove(entry.pin);
+			}
+		}
+
+		public synchronized int size() {
+			return queue.size();
+		}
+
+		@Override
+		public void run() {
+			try {
+				Entry entry;
+				while ((entry = take()) != null) {
+					try {
+						entry.task.run();
+					} catch (Exception e) {
+						logger.error("Error dispatching event", e);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public synchronized void close() {
+			closed = true;
+			notifyAll();
+		}
+
+	}
+
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+	private final Partition[] partitions;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	private AsyncEventDispatcher(Builder builder) {
+		this.capacity = builder.capacity;
+		this.overflowPolicy = builder.overflowPolicy;
+		this.partitions = new Partition[builder.partitions];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new Partition(i);
+			partitions[i].start();
+		}
+	}
+
+	/**
+	 * Queues the passed task in the partition of the passed pin.
+	 *
+	 * @param pin
+	 *            the pin of the event or <code>null</code> if the event is not
+	 *            pin related
+	 * @param task
+	 *            notifies the listeners
+	 */
+	void dispatch(Pin pin, Runnable task) {
+		partitions[partitionOf(pin)].offer(pin, task);
+	}
+
+	private int partitionOf(Pin pin) {
+		if (pin == null) {
+			return 0;
+		}
+		int hash = 2 * pin.pinNum() + pin.getType().ordinal();
+		return (hash & Integer.MAX_VALUE) % partitions.length;
+	}
+
+	/**
+	 * @return number of events removed by {@link OverflowPolicy#DROP_OLDEST}
+	 */
+	public long getDroppedEvents() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of events replaced by newer events of the same pin (
+	 *         {@link OverflowPolicy#KEEP_LATEST_PER_PIN})
+	 */
+	public long getCoalescedEvents() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return number of events waiting to be dispatched
+	 */
+	public int getQueuedEvents() {
+		int queued = 0;
+		for (Partition partition : partitions) {
+			queued += partition.size();
+		}
+		return queued;
+	}
+
+	/**
+	 * Stops accepting events. Events already queued are still dispatched.
+	 */
+	@Override
+	public void close() {
+		for (Partition partition : partitions) {
+			partition.close();
+		}
+	}
+
+}
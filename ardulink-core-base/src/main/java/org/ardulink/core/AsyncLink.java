@@ -0,0 +1,378 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Throwables.propagate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Pin.DigitalPin;
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.qos.QosEngine;
+import org.ardulink.core.qos.QosEngine.Command;
+import org.ardulink.util.ListenableFuture;
+import org.ardulink.util.Lists;
+import org.ardulink.util.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Facade for a {@link Link} (typically a {@link ConnectionBasedLink}) whose
+ * send methods do not block the caller. The messages are put into a bounded
+ * queue that is drained by one writer thread, so the encoding and the
+ * (potentially slow) writes to the connection are done by this thread.
+ *
+ * All send methods return a future of the message's id. Without QoS the future
+ * is completed as soon as the message has been written. With QoS the future is
+ * completed when the device acknowledged the message and fails if the device
+ * responded with "ko" or did not respond in time.
+ *
+ * If the queue is full the caller either is blocked until there is space again
+ * or the returned future fails immediately with a
+ * {@link RejectedExecutionException}, see {@link OverflowStrategy}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class AsyncLink implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(AsyncLink.class);
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	public enum OverflowStrategy {
+		/**
+		 * block the caller until there is space in the queue
+		 */
+		BLOCK,
+		/**
+		 * do not enqueue the message, the future returned fails with a
+		 * {@link RejectedExecutionException}
+		 */
+		FAIL;
+	}
+
+	public static class Builder {
+
+		private final Link link;
+		private int capacity = DEFAULT_CAPACITY;
+		private OverflowStrategy overflowStrategy = OverflowStrategy.BLOCK;
+		private boolean qos;
+		private long timeout;
+		private TimeUnit timeUnit;
+		private int maxInFlight = QosEngine.DEFAULT_MAX_IN_FLIGHT;
+		private int retransmits;
+
+		private Builder(Link link) {
+			this.link = checkNotNull(link, "link must not be null");
+		}
+
+		public Builder withCapacity(int capacity) {
+			checkArgument(capacity > 0,
+					"capacity must be greater than 0 but was %s", capacity);
+			this.capacity = capacity;
+			return this;
+		}
+
+		public Builder whenFull(OverflowStrategy overflowStrategy) {
+			this.overflowStrategy = checkNotNull(overflowStrategy,
+					"overflowStrategy must not be null");
+			return this;
+		}
+
+		/**
+		 * Complete the futures when the device acknowledged the message.
+		 *
+		 * @param timeout
+		 *            the time to wait for each reply, <code>0</code> to wait
+		 *            forever
+		 * @param timeUnit
+		 *            the unit of <code>timeout</code>
+		 * @param maxInFlight
+		 *            maximum number of messages sent but not replied yet
+		 * @param retransmits
+		 *            how often a message is sent again if no reply was
+		 *            received within <code>timeout</code>
+		 * @return this builder
+		 * @see QosEngine
+		 */
+		public Builder withQos(long timeout, TimeUnit timeUnit,
+				int maxInFlight, int retransmits) {
+			this.qos = true;
+			this.timeout = timeout;
+			this.timeUnit = timeUnit;
+			this.maxInFlight = maxInFlight;
+			this.retransmits = retransmits;
+			return this;
+		}
+
+		public AsyncLink build() throws IOException {
+			return new AsyncLink(this);
+		}
+
+	}
+
+	private static class Task {
+
+		private final Command command;
+		private final SettableFuture<Long> future = new SettableFuture<Long>();
+
+		public Task(Command command) {
+			this.command = command;
+		}
+
+	}
+
+	private final Link link;
+	private final QosEngine qosEngine;
+	private final OverflowStrategy overflowStrategy;
+	private final BlockingQueue<Task> queue;
+	private final Thread writer;
+
+	private volatile boolean closed;
+
+	public static Builder forLink(Link link) {
+		return new Builder(link);
+	}
+
+	private AsyncLink(Builder builder) throws IOException {
+		this.link = builder.link;
+		this.overflowStrategy = builder.overflowStrategy;
+		this.queue = new ArrayBlockingQueue<Task>(builder.capacity);
+		this.qosEngine = builder.qos ? new QosEngine(link, builder.timeout,
+				builder.timeUnit, builder.maxInFlight, builder.retransmits)
+				: null;
+		this.writer = new Thread("ardulink-async-writer") {
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * @return the Link messages are sent to, use it to register listeners
+	 */
+	public Link getLink() {
+		return link;
+	}
+
+	/**
+	 * @return number of messages waiting to be sent
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * @return number of messages that can be enqueued before the queue is full
+	 */
+	public int getRemainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	public ListenableFuture<Long> startListening(final Pin pin) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.startListening(pin);
+			}
+		});
+	}
+
+	public ListenableFuture<Long> stopListening(final Pin pin) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.stopListening(pin);
+			}
+		});
+	}
+
+	public ListenableFuture<Long> switchAnalogPin(final AnalogPin analogPin,
+			final int value) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.switchAnalogPin(analogPin, value);
+			}
+		});
+	}
+
+	public ListenableFuture<Long> switchDigitalPin(
+			final DigitalPin digitalPin, final boolean value) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.switchDigitalPin(digitalPin, value);
+			}
+		});
+	}
+
+	public ListenableFuture<Long> sendKeyPressEvent(final char keychar,
+			final int keycode, final int keylocation, final int keymodifiers,
+			final int keymodifiersex) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendKeyPressEvent(keychar, keycode, keylocation,
+						keymodifiers, keymodifiersex);
+			}
+		});
+	}
+
+	public ListenableFuture<Long> sendTone(final Tone tone) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendTone(tone);
+			}
+		});
+	}
+
+	public ListenableFuture<Long> sendNoTone(final AnalogPin analogPin) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendNoTone(analogPin);
+			}
+		});
+	}
+
+	public ListenableFuture<Long> sendCustomMessage(final String... messages) {
+		return enqueue(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendCustomMessage(messages);
+			}
+		});
+	}
+
+	private ListenableFuture<Long> enqueue(Command command) {
+		Task task = new Task(command);
+		if (closed) {
+			task.future.setException(new IllegalStateException(
+					"AsyncLink already closed"));
+		} else if (overflowStrategy == OverflowStrategy.BLOCK) {
+			try {
+				queue.put(task);
+			} catch (InterruptedException e) {
+				throw propagate(e);
+			}
+		} else if (!queue.offer(task)) {
+			task.future.setException(new RejectedExecutionException(
+					"Queue full, " + queue.size() + " messages waiting"));
+		}
+		if (closed) {
+			// closed while enqueueing
+			failQueued();
+		}
+		return task.future;
+	}
+
+	private void drain() {
+		while (!closed) {
+			Task task;
+			try {
+				task = queue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			try {
+				send(task);
+			} catch (Exception e) {
+				logger.error("Error sending message", e);
+				task.future.setException(e);
+			}
+		}
+		failQueued();
+	}
+
+	private void send(final Task task) throws IOException {
+		if (qosEngine == null) {
+			task.future.set(Long.valueOf(task.command.sendTo(link)));
+			return;
+		}
+		final ListenableFuture<RplyEvent> reply = qosEngine
+				.submit(task.command);
+		reply.addListener(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					RplyEvent rplyEvent = reply.get();
+					if (rplyEvent.isOk()) {
+						task.future.set(Long.valueOf(rplyEvent.getId()));
+					} else {
+						task.future.setException(new IllegalStateException(
+								"Response status is not ok"));
+					}
+				} catch (ExecutionException e) {
+					task.future.setException(e.getCause());
+				} catch (Exception e) {
+					task.future.setException(e);
+				}
+			}
+		});
+	}
+
+	private void failQueued() {
+		List<Task> remaining = Lists.newArrayList();
+		queue.drainTo(remaining);
+		for (Task task : remaining) {
+			task.future.setException(new IllegalStateException(
+					"AsyncLink closed"));
+		}
+	}
+
+	/**
+	 * Stops the writer thread and closes the underlying Link. Messages not yet
+	 * sent fail.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		writer.interrupt();
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		failQueued();
+		if (qosEngine != null) {
+			qosEngine.close();
+		}
+		link.close();
+	}
+
+}
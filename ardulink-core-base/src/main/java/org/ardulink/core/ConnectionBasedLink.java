@@ -27,7 +27,13 @@ import static org.ardulink.core.proto.api.MessageIdHolders.addMessageId;
 import static org.ardulink.core.proto.api.MessageIdHolders.toHolder;
 import static org.ardulink.util.Throwables.propagate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -36,11 +42,13 @@ import org.ardulink.core.Pin.AnalogPin;
 import org.ardulink.core.Pin.DigitalPin;
 import org.ardulink.core.events.DefaultCustomEvent;
 import org.ardulink.core.events.DefaultRplyEvent;
+import org.ardulink.core.events.PrimitivePinListener;
 import org.ardulink.core.messages.api.FromDeviceMessage;
 import org.ardulink.core.messages.api.FromDeviceMessageCustom;
 import org.ardulink.core.messages.api.FromDeviceMessagePinStateChanged;
 import org.ardulink.core.messages.api.FromDeviceMessageReady;
 import org.ardulink.core.messages.api.FromDeviceMessageReply;
+import org.ardulink.core.messages.api.ToDeviceMessage;
 import org.ardulink.core.messages.api.ToDeviceMessageCustom;
 import org.ardulink.core.messages.api.ToDeviceMessageKeyPress;
 import org.ardulink.core.messages.api.ToDeviceMessageNoTone;
@@ -55,6 +63,9 @@ import org.ardulink.core.messages.impl.DefaultToDeviceMessagePinStateChange;
 import org.ardulink.core.messages.impl.DefaultToDeviceMessageStartListening;
 import org.ardulink.core.messages.impl.DefaultToDeviceMessageStopListening;
 import org.ardulink.core.messages.impl.DefaultToDeviceMessageTone;
+import org.ardulink.core.proto.api.BatchProtocol;
+import org.ardulink.core.proto.api.ByteBufferProtocol;
+import org.ardulink.core.proto.api.PrimitivePinProtocol;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.util.StopWatch;
 import org.slf4j.Logger;
@@ -73,22 +84,73 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 	private static final Logger logger = LoggerFactory
 			.getLogger(ConnectionBasedLink.class);
 
+	/**
+	 * size of the buffer messages are encoded into if the protocol is a
+	 * {@link ByteBufferProtocol}, messages not fitting into are encoded using
+	 * {@link Protocol}'s byte[] methods.
+	 */
+	private static final int SEND_BUFFER_SIZE = 1024;
+
 	private final Connection connection;
 	private final Protocol protocol;
+	private final ByteBufferProtocol byteBufferProtocol;
+	private final BatchProtocol batchProtocol;
+	private final PrimitivePinProtocol primitivePinProtocol;
+	private final PrimitivePinListener pinChangeForwarder = new PrimitivePinListener() {
+
+		@Override
+		public void onAnalog(int pin, int value, long nanoTime) {
+			fireAnalogPinChanged(pin, value, nanoTime);
+		}
+
+		@Override
+		public void onDigital(int pin, boolean value, long nanoTime) {
+			fireDigitalPinChanged(pin, value, nanoTime);
+		}
+
+	};
+	/**
+	 * guarded by connection
+	 */
+	private final ByteBuffer sendBuffer;
 	private long messageId = 0;
-	private boolean readyMsgReceived;
+	private volatile boolean readyMsgReceived;
 
 	public ConnectionBasedLink(Connection connection, Protocol protocol) {
 		this.connection = connection;
 		this.protocol = protocol;
+		this.byteBufferProtocol = protocol instanceof ByteBufferProtocol ? (ByteBufferProtocol) protocol
+				: null;
+		this.sendBuffer = this.byteBufferProtocol == null ? null : ByteBuffer
+				.allocate(SEND_BUFFER_SIZE);
+		this.batchProtocol = protocol instanceof BatchProtocol ? (BatchProtocol) protocol
+				: null;
+		this.primitivePinProtocol = protocol instanceof PrimitivePinProtocol ? (PrimitivePinProtocol) protocol
+				: null;
 		this.connection.addListener(new ListenerAdapter() {
 			@Override
 			public void received(byte[] bytes) throws IOException {
-				ConnectionBasedLink.this.received(bytes);
+				try {
+					ConnectionBasedLink.this.received(bytes);
+				} catch (RuntimeException e) {
+					LinkMetrics metrics = getMetrics();
+					if (metrics != null) {
+						metrics.decodeFailed();
+					}
+					throw e;
+				}
 			}
 		});
 	}
 
+	@Override
+	void setMetrics(LinkMetrics metrics) {
+		super.setMetrics(metrics);
+		if (this.connection instanceof AbstractConnection) {
+			((AbstractConnection) this.connection).setMetrics(metrics);
+		}
+	}
+
 	public Connection getConnection() {
 		return this.connection;
 	}
@@ -98,6 +160,11 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 	}
 
 	protected void received(byte[] bytes) {
+		if (this.primitivePinProtocol != null
+				&& this.primitivePinProtocol.pinStateFromDevice(bytes,
+						pinChangeForwarder, System.nanoTime())) {
+			return;
+		}
 		received(this.protocol.fromDevice(bytes));
 	}
 
@@ -105,8 +172,7 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		if (fromDevice instanceof FromDeviceMessagePinStateChanged) {
 			handlePinChanged((FromDeviceMessagePinStateChanged) fromDevice);
 		} else if (fromDevice instanceof FromDeviceMessageReply) {
-			FromDeviceMessageReply reply = (FromDeviceMessageReply) fromDevice;
-			fireReplyReceived(new DefaultRplyEvent(reply.isOk(), reply.getId(), reply.getParameters()));
+			fireReplyReceived(new DefaultRplyEvent((FromDeviceMessageReply) fromDevice));
 		} else if (fromDevice instanceof FromDeviceMessageCustom) {
 			FromDeviceMessageCustom custom_event = (FromDeviceMessageCustom) fromDevice;
 			fireCustomReceived(new DefaultCustomEvent(custom_event.getMessage()));
@@ -177,6 +243,9 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		this.connection.addListener(listener);
 
 		try {
+			if (readyMsgReceived) {
+				return true;
+			}
 			StopWatch stopWatch = new StopWatch().start();
 			do {
 				ping();
@@ -211,7 +280,7 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		ToDeviceMessageStartListening msg;
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(new DefaultToDeviceMessageStartListening(pin));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		return messageIdOf(msg);
 	}
@@ -221,7 +290,7 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		ToDeviceMessageStopListening msg;
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(new DefaultToDeviceMessageStopListening(pin));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		logger.info("Stopped listening on pin {}", pin);
 		return messageIdOf(msg);
@@ -244,7 +313,7 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(
 					new DefaultToDeviceMessageKeyPress(keychar, keycode, keylocation, keymodifiers, keymodifiersex));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		return messageIdOf(msg);
 	}
@@ -254,7 +323,7 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		ToDeviceMessageTone msg;
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(new DefaultToDeviceMessageTone(tone));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		return messageIdOf(msg);
 	}
@@ -264,7 +333,7 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		ToDeviceMessageNoTone msg;
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(new DefaultToDeviceMessageNoTone(analogPin));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		return messageIdOf(msg);
 	}
@@ -274,16 +343,117 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		ToDeviceMessageCustom msg;
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(new DefaultToDeviceMessageCustom(messages));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		return messageIdOf(msg);
 	}
 
+	/**
+	 * Returns a batch whose commands are encoded into one write. If the
+	 * protocol is a {@link BatchProtocol} the commands are encoded into
+	 * multi-command frames, otherwise the frames of the commands are
+	 * concatenated. Only the last command gets a message id, so there is one
+	 * reply for the whole batch.
+	 */
+	@Override
+	public LinkBatch batch() {
+		return new DefaultLinkBatch(this) {
+			@Override
+			protected long send(List<ToDeviceMessage> messages)
+					throws IOException {
+				return sendBatch(messages);
+			}
+		};
+	}
+
+	private long sendBatch(List<ToDeviceMessage> messages) throws IOException {
+		List<ToDeviceMessage> toSend = new ArrayList<ToDeviceMessage>(messages);
+		int last = toSend.size() - 1;
+		synchronized (connection) {
+			toSend.set(last, addMessageIdIfNeeded(toSend.get(last)));
+			send(encode(toSend));
+		}
+		return messageIdOf(toSend.get(last));
+	}
+
+	private byte[] encode(List<ToDeviceMessage> messages) {
+		if (byteBufferProtocol == null) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			for (ToDeviceMessage message : messages) {
+				byte[] bytes = encode(message);
+				os.write(bytes, 0, bytes.length);
+			}
+			return os.toByteArray();
+		}
+		ByteBuffer buffer = clearedSendBuffer();
+		while (true) {
+			try {
+				encode(messages, buffer);
+				return Arrays.copyOf(buffer.array(), buffer.position());
+			} catch (BufferOverflowException e) {
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+	}
+
+	private void encode(List<ToDeviceMessage> messages, ByteBuffer target) {
+		if (batchProtocol == null) {
+			for (ToDeviceMessage message : messages) {
+				encode(message, target);
+			}
+		} else {
+			batchProtocol.toDevice(messages, target);
+		}
+	}
+
+	private byte[] encode(ToDeviceMessage message) {
+		if (message instanceof ToDeviceMessagePinStateChange) {
+			return protocol.toDevice((ToDeviceMessagePinStateChange) message);
+		} else if (message instanceof ToDeviceMessageStartListening) {
+			return protocol.toDevice((ToDeviceMessageStartListening) message);
+		} else if (message instanceof ToDeviceMessageStopListening) {
+			return protocol.toDevice((ToDeviceMessageStopListening) message);
+		} else if (message instanceof ToDeviceMessageTone) {
+			return protocol.toDevice((ToDeviceMessageTone) message);
+		} else if (message instanceof ToDeviceMessageNoTone) {
+			return protocol.toDevice((ToDeviceMessageNoTone) message);
+		} else if (message instanceof ToDeviceMessageKeyPress) {
+			return protocol.toDevice((ToDeviceMessageKeyPress) message);
+		} else if (message instanceof ToDeviceMessageCustom) {
+			return protocol.toDevice((ToDeviceMessageCustom) message);
+		}
+		throw new IllegalArgumentException("Cannot encode " + message);
+	}
+
+	private void encode(ToDeviceMessage message, ByteBuffer target) {
+		if (message instanceof ToDeviceMessagePinStateChange) {
+			byteBufferProtocol.toDevice(
+					(ToDeviceMessagePinStateChange) message, target);
+		} else if (message instanceof ToDeviceMessageStartListening) {
+			byteBufferProtocol.toDevice(
+					(ToDeviceMessageStartListening) message, target);
+		} else if (message instanceof ToDeviceMessageStopListening) {
+			byteBufferProtocol.toDevice((ToDeviceMessageStopListening) message,
+					target);
+		} else if (message instanceof ToDeviceMessageTone) {
+			byteBufferProtocol.toDevice((ToDeviceMessageTone) message, target);
+		} else if (message instanceof ToDeviceMessageNoTone) {
+			byteBufferProtocol.toDevice((ToDeviceMessageNoTone) message, target);
+		} else if (message instanceof ToDeviceMessageKeyPress) {
+			byteBufferProtocol.toDevice((ToDeviceMessageKeyPress) message,
+					target);
+		} else if (message instanceof ToDeviceMessageCustom) {
+			byteBufferProtocol.toDevice((ToDeviceMessageCustom) message, target);
+		} else {
+			throw new IllegalArgumentException("Cannot encode " + message);
+		}
+	}
+
 	private long send(AnalogPin pin, int value) throws IOException {
 		ToDeviceMessagePinStateChange msg;
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(new DefaultToDeviceMessagePinStateChange(pin, value));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		return messageIdOf(msg);
 	}
@@ -292,13 +462,57 @@ public class ConnectionBasedLink extends AbstractListenerLink {
 		ToDeviceMessagePinStateChange msg;
 		synchronized (connection) {
 			msg = addMessageIdIfNeeded(new DefaultToDeviceMessagePinStateChange(pin, value));
-			send(this.protocol.toDevice(msg));
+			send(msg);
 		}
 		return messageIdOf(msg);
 	}
 
+	/**
+	 * Sends the message encoded into the {@link #sendBuffer} if the protocol
+	 * is a {@link ByteBufferProtocol} and the message fits into, otherwise
+	 * encoded by the {@link Protocol}'s byte[] methods.
+	 */
+	private void send(ToDeviceMessage message) throws IOException {
+		if (byteBufferProtocol != null && encodedIntoSendBuffer(message)) {
+			sendBuffer();
+		} else {
+			send(encode(message));
+		}
+	}
+
+	private boolean encodedIntoSendBuffer(ToDeviceMessage message) {
+		try {
+			encode(message, clearedSendBuffer());
+			return true;
+		} catch (BufferOverflowException e) {
+			// custom messages can be of any length
+			return false;
+		}
+	}
+
+	private ByteBuffer clearedSendBuffer() {
+		sendBuffer.clear();
+		return sendBuffer;
+	}
+
+	/**
+	 * Sends the message encoded into {@link #sendBuffer}. The bytes have to be
+	 * copied once since {@link Connection.Listener}s are allowed to keep the
+	 * array passed.
+	 */
+	private void sendBuffer() throws IOException {
+		send(Arrays.copyOf(sendBuffer.array(), sendBuffer.position()));
+	}
+
 	private void send(byte[] bytes) throws IOException {
+		LinkMetrics metrics = getMetrics();
+		if (metrics == null) {
+			this.connection.write(bytes);
+			return;
+		}
+		long start = System.nanoTime();
 		this.connection.write(bytes);
+		metrics.written(System.nanoTime() - start);
 	}
 
 	private <T> T addMessageIdIfNeeded(T event) {
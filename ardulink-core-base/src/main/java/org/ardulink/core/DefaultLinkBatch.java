@@ -0,0 +1,198 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core;
+
+import static java.util.Collections.unmodifiableList;
+import static org.ardulink.core.proto.api.MessageIdHolders.NO_ID;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Pin.DigitalPin;
+import org.ardulink.core.messages.api.ToDeviceMessage;
+import org.ardulink.core.messages.api.ToDeviceMessageNoTone;
+import org.ardulink.core.messages.api.ToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.api.ToDeviceMessageStartListening;
+import org.ardulink.core.messages.api.ToDeviceMessageStopListening;
+import org.ardulink.core.messages.api.ToDeviceMessageTone;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageNoTone;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStartListening;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStopListening;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageTone;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * {@link LinkBatch} collecting the commands as {@link ToDeviceMessage}s. By
+ * default they are sent one after another using the {@link Link}'s methods,
+ * subclasses override {@link #send(List)} to send them together.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class DefaultLinkBatch implements LinkBatch {
+
+	private final Link link;
+	private final List<ToDeviceMessage> messages = new ArrayList<ToDeviceMessage>();
+	private boolean sent;
+
+	public DefaultLinkBatch(Link link) {
+		this.link = checkNotNull(link, "link must not be null");
+	}
+
+	@Override
+	public LinkBatch startListening(Pin pin) {
+		return add(new DefaultToDeviceMessageStartListening(pin));
+	}
+
+	@Override
+	public LinkBatch stopListening(Pin pin) {
+		return add(new DefaultToDeviceMessageStopListening(pin));
+	}
+
+	@Override
+	public LinkBatch switchAnalogPin(AnalogPin analogPin, int value) {
+		return add(new DefaultToDeviceMessagePinStateChange(analogPin, value));
+	}
+
+	@Override
+	public LinkBatch switchDigitalPin(DigitalPin digitalPin, boolean value) {
+		return add(new DefaultToDeviceMessagePinStateChange(digitalPin, value));
+	}
+
+	@Override
+	public LinkBatch sendTone(Tone tone) {
+		return add(new DefaultToDeviceMessageTone(tone));
+	}
+
+	@Override
+	public LinkBatch sendNoTone(AnalogPin analogPin) {
+		return add(new DefaultToDeviceMessageNoTone(analogPin));
+	}
+
+	private LinkBatch add(ToDeviceMessage message) {
+		checkState(!sent, "Batch already sent");
+		messages.add(message);
+		return this;
+	}
+
+	@Override
+	public int size() {
+		return messages.size();
+	}
+
+	public Link getLink() {
+		return link;
+	}
+
+	@Override
+	public final long send() throws IOException {
+		checkState(!sent, "Batch already sent");
+		sent = true;
+		return messages.isEmpty() ? NO_ID.getId()
+				: send(unmodifiableList(messages));
+	}
+
+	/**
+	 * Sends the messages collected.
+	 * 
+	 * @param messages
+	 *            the messages in the order they were added, never empty
+	 * @return the batch's message id
+	 * @throws IOException
+	 */
+	protected long send(List<ToDeviceMessage> messages) throws IOException {
+		long messageId = NO_ID.getId();
+		for (ToDeviceMessage message : messages) {
+			messageId = sendTo(link, message);
+		}
+		return messageId;
+	}
+
+	private static long sendTo(Link link, ToDeviceMessage message)
+			throws IOException {
+		if (message instanceof ToDeviceMessagePinStateChange) {
+			ToDeviceMessagePinStateChange change = (ToDeviceMessagePinStateChange) message;
+			Pin pin = change.getPin();
+			return pin instanceof AnalogPin ? link.switchAnalogPin(
+					(AnalogPin) pin, (Integer) change.getValue()) : link
+					.switchDigitalPin((DigitalPin) pin,
+							(Boolean) change.getValue());
+		} else if (message instanceof ToDeviceMessageStartListening) {
+			return link.startListening(((ToDeviceMessageStartListening) message)
+					.getPin());
+		} else if (message instanceof ToDeviceMessageStopListening) {
+			return link.stopListening(((ToDeviceMessageStopListening) message)
+					.getPin());
+		} else if (message instanceof ToDeviceMessageTone) {
+			return link.sendTone(((ToDeviceMessageTone) message).getTone());
+		} else if (message instanceof ToDeviceMessageNoTone) {
+			return link.sendNoTone(((ToDeviceMessageNoTone) message)
+					.getAnalogPin());
+		}
+		throw new IllegalArgumentException("Cannot send " + message);
+	}
+
+	/**
+	 * Adds the passed messages to another batch, e.g. to the batch of a
+	 * {@link Link} delegated to.
+	 * 
+	 * @param batch
+	 *            the batch to add the messages to
+	 * @param messages
+	 *            the messages to add
+	 * @return the batch passed
+	 */
+	public static LinkBatch addAll(LinkBatch batch,
+			List<? extends ToDeviceMessage> messages) {
+		for (ToDeviceMessage message : messages) {
+			if (message instanceof ToDeviceMessagePinStateChange) {
+				ToDeviceMessagePinStateChange change = (ToDeviceMessagePinStateChange) message;
+				Pin pin = change.getPin();
+				if (pin instanceof AnalogPin) {
+					batch.switchAnalogPin((AnalogPin) pin,
+							(Integer) change.getValue());
+				} else {
+					batch.switchDigitalPin((DigitalPin) pin,
+							(Boolean) change.getValue());
+				}
+			} else if (message instanceof ToDeviceMessageStartListening) {
+				batch.startListening(((ToDeviceMessageStartListening) message)
+						.getPin());
+			} else if (message instanceof ToDeviceMessageStopListening) {
+				batch.stopListening(((ToDeviceMessageStopListening) message)
+						.getPin());
+			} else if (message instanceof ToDeviceMessageTone) {
+				batch.sendTone(((ToDeviceMessageTone) message).getTone());
+			} else if (message instanceof ToDeviceMessageNoTone) {
+				batch.sendNoTone(((ToDeviceMessageNoTone) message)
+						.getAnalogPin());
+			} else {
+				throw new IllegalArgumentException("Cannot batch " + message);
+			}
+		}
+		return batch;
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static org.ardulink.util.Throwables.propagate;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.ardulink.core.proto.api.LengthFramedProtocol;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.util.ByteRingBuffer;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Scanner for Stream. It returns byte arrays from a stream split by a
+ * delimiter or, for {@link LengthFramedProtocol}s, by the length each frame
+ * carries. In contrast to {@link StreamScanner} data is read in bulk into a
+ * {@link ByteRingBuffer} so there is no per byte overhead.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class FrameScanner {
+
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 2048;
+
+	private final InputStream inputStream;
+	private final byte[] delimiter;
+	private final LengthFramedProtocol lengthFramed;
+	private final ByteRingBuffer buffer;
+
+	private long corruptedFrames;
+
+	private volatile boolean interrupted;
+
+	public FrameScanner(InputStream inputStream, byte[] delimiter) {
+		this(inputStream, delimiter, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	public FrameScanner(InputStream inputStream, byte[] delimiter,
+			int maxFrameLength) {
+		this(inputStream, delimiter, null, maxFrameLength);
+	}
+
+	/**
+	 * Creates a scanner splitting the stream into the length prefixed frames
+	 * of the passed protocol.
+	 */
+	public FrameScanner(InputStream inputStream,
+			LengthFramedProtocol lengthFramed) {
+		this(inputStream, null, lengthFramed, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	private FrameScanner(InputStream inputStream, byte[] delimiter,
+			LengthFramedProtocol lengthFramed, int maxFrameLength) {
+		this.inputStream = inputStream;
+		this.delimiter = delimiter;
+		this.lengthFramed = lengthFramed;
+		this.buffer = new ByteRingBuffer(Math.min(256, maxFrameLength),
+				maxFrameLength);
+	}
+
+	/**
+	 * Creates a scanner splitting the stream the way the passed protocol
+	 * frames its messages.
+	 */
+	public static FrameScanner forProtocol(InputStream inputStream,
+			Protocol protocol) {
+		return protocol instanceof LengthFramedProtocol ? new FrameScanner(
+				inputStream, (LengthFramedProtocol) protocol)
+				: new FrameScanner(inputStream, protocol.getSeparator());
+	}
+
+	/**
+	 * Returns the next frame read from the stream. Blocks until a complete
+	 * frame is available.
+	 *
+	 * @return the next frame or <code>null</code> if the end of the stream was
+	 *         reached or this scanner was interrupted
+	 * @throws IOException if reading from the stream fails
+	 */
+	public byte[] next() throws IOException {
+		byte[] frame;
+		while ((frame = nextFrame()) == null) {
+			if (interrupted || read() < 0) {
+				return null;
+			}
+		}
+		return frame;
+	}
+
+	private byte[] nextFrame() {
+		return lengthFramed == null ? buffer.next(delimiter)
+				: nextLengthFramed();
+	}
+
+	private byte[] nextLengthFramed() {
+		int startOfFrame = lengthFramed.getStartOfFrame() & 0xFF;
+		while (buffer.size() > 0) {
+			if (buffer.get(0) != startOfFrame) {
+				buffer.discard(1);
+			} else if (buffer.size() < LengthFramedProtocol.HEADER_LENGTH) {
+				return null;
+			} else {
+				int length = LengthFramedProtocol.HEADER_LENGTH + buffer.get(1)
+						+ lengthFramed.getTrailerLength();
+				if (buffer.size() < length) {
+					return null;
+				}
+				byte[] frame = buffer.peek(length);
+				if (lengthFramed.isIntact(frame)) {
+					buffer.skip(length);
+					return frame;
+				}
+				corruptedFrames++;
+				buffer.discard(1);
+			}
+		}
+		return null;
+	}
+
+	private int read() throws IOException {
+		int bytesRead = buffer.readFrom(inputStream);
+		if (bytesRead == 0) {
+			// some streams (e.g. jssc's) do not block on bulk reads but return
+			// 0 if no data is available, so block on a single byte instead of
+			// spinning
+			int b = inputStream.read();
+			if (b < 0) {
+				return b;
+			}
+			buffer.append(b);
+			return 1;
+		}
+		return bytesRead;
+	}
+
+	public void close() {
+		try {
+			inputStream.close();
+		} catch (IOException e) {
+			propagate(e);
+		}
+	}
+
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+
+	public void interrupt() {
+		this.interrupted = true;
+	}
+
+	/**
+	 * @return number of frames dropped because they exceeded the maximum frame
+	 *         length or were not intact
+	 */
+	public long getDiscardedFrames() {
+		return buffer.getDiscardedFrames() + corruptedFrames;
+	}
+
+	/**
+	 * @return number of bytes dropped because they were part of frames
+	 *         exceeding the maximum frame length
+	 */
+	public long getDiscardedBytes() {
+		return buffer.getDiscardedBytes();
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Lock-free histogram of durations in nanoseconds. Bucket <code>i</code>
+ * counts the durations <code>d</code> with
+ * <code>2<sup>i-1</sup> &lt;= d &lt; 2<sup>i</sup></code> (bucket 0 counts
+ * zero durations), so percentiles are
+ * reported as the upper bound of the bucket they fall into (at most twice the
+ * exact value).
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		long duration = Math.max(0, nanos);
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(duration));
+		count.incrementAndGet();
+		total.addAndGet(duration);
+		long currentMax;
+		while (duration > (currentMax = max.get())
+				&& !max.compareAndSet(currentMax, duration)) {
+			// retry
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+	/**
+	 * @param percentile
+	 *            the percentile (between 0 and 100)
+	 * @return the upper bound of the bucket the percentile falls into,
+	 *         <code>0</code> if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long n = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100 * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank && snapshot[i] > 0) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private static long upperBound(int bucket) {
+		return (1L << bucket) - 1;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+}
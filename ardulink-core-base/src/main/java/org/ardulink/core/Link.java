@@ -66,4 +66,12 @@ public interface Link extends Closeable {
 	// returns the MessageId, could/should be changed to the message sent or a MessageSentInfo object 
 	long sendCustomMessage(String... messages) throws IOException;
 
+	/**
+	 * Creates a batch to send several commands together.
+	 * 
+	 * @return a new, empty batch
+	 * @see LinkBatch
+	 */
+	LinkBatch batch();
+
 }
\ No newline at end of file
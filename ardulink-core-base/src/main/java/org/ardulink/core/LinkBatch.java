@@ -0,0 +1,71 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core;
+
+import java.io.IOException;
+
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Pin.DigitalPin;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Collects commands for a {@link Link} that are sent together by
+ * {@link #send()}. Links able to do so encode all commands into one write
+ * (protocols supporting it even into one frame) and use one message id for
+ * the whole batch, so there are no gaps between the commands (e.g. when
+ * switching many outputs at once). Links that cannot send commands together
+ * send them one after another.
+ * 
+ * A batch is not thread-safe and has to be sent only once.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public interface LinkBatch {
+
+	LinkBatch startListening(Pin pin);
+
+	LinkBatch stopListening(Pin pin);
+
+	LinkBatch switchAnalogPin(AnalogPin analogPin, int value);
+
+	LinkBatch switchDigitalPin(DigitalPin digitalPin, boolean value);
+
+	LinkBatch sendTone(Tone tone);
+
+	LinkBatch sendNoTone(AnalogPin analogPin);
+
+	/**
+	 * @return the number of commands collected
+	 */
+	int size();
+
+	/**
+	 * Sends all commands collected.
+	 * 
+	 * @return the message id of the batch (<code>-1</code> if the batch has
+	 *         no id), a reply for this id is received after all commands
+	 *         were processed
+	 * @throws IOException
+	 *             if the commands could not be sent
+	 */
+	long send() throws IOException;
+
+}
@@ -0,0 +1,235 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Counters and the write latency of one Link, registered as MBean
+ * <code>org.ardulink:type=Link,name=&lt;name&gt;</code>. Links, Connections and
+ * StreamReaders without metrics only check that they have none, so metrics can
+ * be enabled per Link using {@link #register(AbstractListenerLink, String)}.
+ * The metrics are unregistered when the Link is closed.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class LinkMetrics implements LinkMetricsMBean {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(LinkMetrics.class);
+
+	private final AbstractListenerLink link;
+	private final ObjectName objectName;
+
+	private final AtomicLong framesReceived = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final AtomicLong framesSent = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong decodeFailures = new AtomicLong();
+	private final AtomicLong readFailures = new AtomicLong();
+	private final AtomicLong listenerFailures = new AtomicLong();
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+	private volatile boolean registered;
+
+	/**
+	 * Enables the metrics for the passed link and registers them at the
+	 * platform MBeanServer.
+	 *
+	 * @param link
+	 *            the Link to collect the metrics of
+	 * @param name
+	 *            the name of the MBean, typically the Link's URI
+	 * @return the metrics
+	 */
+	public static LinkMetrics register(AbstractListenerLink link, String name) {
+		LinkMetrics metrics = new LinkMetrics(link, objectName(name));
+		link.setMetrics(metrics);
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					metrics.objectName);
+			metrics.registered = true;
+		} catch (JMException e) {
+			logger.warn("Could not register metrics as {}",
+					metrics.objectName, e);
+		}
+		return metrics;
+	}
+
+	private static ObjectName objectName(String name) {
+		try {
+			return new ObjectName("org.ardulink:type=Link,name="
+					+ ObjectName.quote(checkNotNull(name,
+							"name must not be null")));
+		} catch (JMException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	LinkMetrics(AbstractListenerLink link, ObjectName objectName) {
+		this.link = link;
+		this.objectName = objectName;
+	}
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	void frameReceived(int bytes) {
+		framesReceived.incrementAndGet();
+		bytesReceived.addAndGet(bytes);
+	}
+
+	void frameSent(int bytes) {
+		framesSent.incrementAndGet();
+		bytesSent.addAndGet(bytes);
+	}
+
+	void decodeFailed() {
+		decodeFailures.incrementAndGet();
+	}
+
+	void readFailed() {
+		readFailures.incrementAndGet();
+	}
+
+	void listenerFailed() {
+		listenerFailures.incrementAndGet();
+	}
+
+	void written(long nanos) {
+		writeLatency.record(nanos);
+	}
+
+	@Override
+	public long getFramesReceived() {
+		return framesReceived.get();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	@Override
+	public long getFramesSent() {
+		return framesSent.get();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	@Override
+	public long getDecodeFailures() {
+		return decodeFailures.get();
+	}
+
+	@Override
+	public long getReadFailures() {
+		return readFailures.get();
+	}
+
+	@Override
+	public long getListenerFailures() {
+		return listenerFailures.get();
+	}
+
+	@Override
+	public long getQueuedEvents() {
+		AsyncEventDispatcher dispatcher = link.getEventDispatcher();
+		return dispatcher == null ? 0 : dispatcher.getQueuedEvents();
+	}
+
+	@Override
+	public long getDroppedEvents() {
+		AsyncEventDispatcher dispatcher = link.getEventDispatcher();
+		return dispatcher == null ? 0 : dispatcher.getDroppedEvents();
+	}
+
+	@Override
+	public long getCoalescedEvents() {
+		AsyncEventDispatcher dispatcher = link.getEventDispatcher();
+		return dispatcher == null ? 0 : dispatcher.getCoalescedEvents();
+	}
+
+	@Override
+	public long getWrites() {
+		return writeLatency.getCount();
+	}
+
+	@Override
+	public double getWriteLatencyMeanMicros() {
+		return writeLatency.getMean() / 1000;
+	}
+
+	@Override
+	public long getWriteLatency99thPercentileMicros() {
+		return NANOSECONDS.toMicros(writeLatency.getPercentile(99));
+	}
+
+	@Override
+	public long getWriteLatencyMaxMicros() {
+		return NANOSECONDS.toMicros(writeLatency.getMax());
+	}
+
+	@Override
+	public void reset() {
+		framesReceived.set(0);
+		bytesReceived.set(0);
+		framesSent.set(0);
+		bytesSent.set(0);
+		decodeFailures.set(0);
+		readFailures.set(0);
+		listenerFailures.set(0);
+		writeLatency.reset();
+	}
+
+	/**
+	 * Unregisters the MBean, called when the Link is closed.
+	 */
+	void unregister() {
+		if (!registered) {
+			return;
+		}
+		registered = false;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			logger.warn("Could not unregister metrics {}", objectName, e);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Management interface of {@link LinkMetrics}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public interface LinkMetricsMBean {
+
+	long getFramesReceived();
+
+	long getBytesReceived();
+
+	long getFramesSent();
+
+	long getBytesSent();
+
+	/**
+	 * @return number of frames received the protocol could not decode
+	 */
+	long getDecodeFailures();
+
+	/**
+	 * @return number of errors reading from the connection
+	 */
+	long getReadFailures();
+
+	/**
+	 * @return number of exceptions thrown by listeners
+	 */
+	long getListenerFailures();
+
+	/**
+	 * @return number of events waiting for dispatch if the Link uses an
+	 *         {@link AsyncEventDispatcher}
+	 */
+	long getQueuedEvents();
+
+	long getDroppedEvents();
+
+	long getCoalescedEvents();
+
+	long getWrites();
+
+	double getWriteLatencyMeanMicros();
+
+	long getWriteLatency99thPercentileMicros();
+
+	long getWriteLatencyMaxMicros();
+
+	/**
+	 * Resets all counters.
+	 */
+	void reset();
+
+}
@@ -87,12 +87,31 @@ public abstract class Pin {
 
 	}
 
+	/**
+	 * Pins with numbers below this value are preallocated, so
+	 * {@link #analogPin(int)} and {@link #digitalPin(int)} return the same
+	 * instance for them.
+	 */
+	private static final int CACHED_PINS = 128;
+
+	private static final AnalogPin[] analogPins = new AnalogPin[CACHED_PINS];
+	private static final DigitalPin[] digitalPins = new DigitalPin[CACHED_PINS];
+
+	static {
+		for (int i = 0; i < CACHED_PINS; i++) {
+			analogPins[i] = new AnalogPin(i);
+			digitalPins[i] = new DigitalPin(i);
+		}
+	}
+
 	public static AnalogPin analogPin(int num) {
-		return new AnalogPin(num);
+		return num >= 0 && num < CACHED_PINS ? analogPins[num]
+				: new AnalogPin(num);
 	}
 
 	public static DigitalPin digitalPin(int num) {
-		return new DigitalPin(num);
+		return num >= 0 && num < CACHED_PINS ? digitalPins[num]
+				: new DigitalPin(num);
 	}
 
 	public boolean is(Type type) {
@@ -0,0 +1,239 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static org.ardulink.core.Pin.Type.ANALOG;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.events.FilteredEventListenerAdapter;
+import org.ardulink.util.Lists;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Holds the {@link EventListener}s of a Link indexed by the pin they listen
+ * to. {@link FilteredEventListenerAdapter}s are stored in a slot per pin type
+ * and pin number, all other listeners are global listeners that get all
+ * events. So finding the listeners for an event does not depend on the number
+ * of listeners registered for other pins. Pin numbers beyond
+ * {@value #MAX_SLOTS} are held in a map instead of an array.
+ *
+ * Dispatching does not lock: each slot holds an array that is never modified
+ * but replaced on registration changes. So a change only copies the listeners
+ * of the affected pin (or the global listeners), registrations are serialized
+ * by a lock.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class PinIndexedEventListeners {
+
+	private static final EventListener[] NONE = new EventListener[0];
+
+	private static final int INITIAL_SLOTS = 16;
+
+	private static final int MAX_SLOTS = 256;
+
+	private final Object lock = new Object();
+
+	private volatile EventListener[] global = NONE;
+	private volatile AtomicReferenceArray<EventListener[]> analog = new AtomicReferenceArray<EventListener[]>(
+			INITIAL_SLOTS);
+	private volatile AtomicReferenceArray<EventListener[]> digital = new AtomicReferenceArray<EventListener[]>(
+			INITIAL_SLOTS);
+	private final ConcurrentMap<Pin, EventListener[]> highPins = new ConcurrentHashMap<Pin, EventListener[]>();
+
+	public void add(EventListener listener) {
+		synchronized (lock) {
+			Pin pin = pinOf(listener);
+			if (pin == null) {
+				global = append(global, listener);
+			} else if (pin.pinNum() >= MAX_SLOTS) {
+				EventListener[] current = highPins.get(pin);
+				highPins.put(pin, append(current == null ? NONE : current,
+						listener));
+			} else {
+				AtomicReferenceArray<EventListener[]> slots = ensureSlot(pin);
+				int index = pin.pinNum();
+				EventListener[] current = slots.get(index);
+				slots.set(index, append(current == null ? NONE : current,
+						listener));
+			}
+		}
+	}
+
+	/**
+	 * Removes the first registration of the passed listener.
+	 *
+	 * @param listener
+	 *            the listener to remove
+	 * @return <code>true</code> if the listener was registered
+	 */
+	public boolean remove(EventListener listener) {
+		synchronized (lock) {
+			Pin pin = pinOf(listener);
+			if (pin == null) {
+				EventListener[] removed = remove(global, listener);
+				if (removed == global) {
+					return false;
+				}
+				global = removed;
+				return true;
+			}
+			EventListener[] current = forPin(pin);
+			EventListener[] removed = remove(current, listener);
+			if (removed == current) {
+				return false;
+			}
+			if (pin.pinNum() >= MAX_SLOTS) {
+				if (removed.length == 0) {
+					highPins.remove(pin);
+				} else {
+					highPins.put(pin, removed);
+				}
+			} else {
+				slotsFor(pin).set(pin.pinNum(),
+						removed.length == 0 ? null : removed);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return the listeners getting all events. The array returned must not be
+	 *         modified.
+	 */
+	public EventListener[] global() {
+		return global;
+	}
+
+	/**
+	 * @param pin
+	 *            the pin
+	 * @return the listeners registered for the passed pin. The array returned
+	 *         must not be modified.
+	 */
+	public EventListener[] forPin(Pin pin) {
+		int index = pin.pinNum();
+		EventListener[] listeners;
+		if (index >= MAX_SLOTS) {
+			listeners = highPins.get(pin);
+		} else {
+			AtomicReferenceArray<EventListener[]> slots = slotsFor(pin);
+			if (index < 0 || index >= slots.length()) {
+				return NONE;
+			}
+			listeners = slots.get(index);
+		}
+		return listeners == null ? NONE : listeners;
+	}
+
+	public boolean hasListenerForPin(Pin pin) {
+		return forPin(pin).length > 0;
+	}
+
+	/**
+	 * @return a snapshot of all listeners registered
+	 */
+	public List<EventListener> all() {
+		List<EventListener> all = Lists.newArrayList();
+		all.addAll(Arrays.asList(global));
+		addAll(all, analog);
+		addAll(all, digital);
+		for (EventListener[] listeners : highPins.values()) {
+			all.addAll(Arrays.asList(listeners));
+		}
+		return all;
+	}
+
+	private static void addAll(List<EventListener> target,
+			AtomicReferenceArray<EventListener[]> slots) {
+		for (int i = 0; i < slots.length(); i++) {
+			EventListener[] listeners = slots.get(i);
+			if (listeners != null) {
+				target.addAll(Arrays.asList(listeners));
+			}
+		}
+	}
+
+	/**
+	 * @return the pin the listener is registered for or <code>null</code> if
+	 *         it has to be registered as global listener. Listeners for
+	 *         negative pin numbers are global listeners (they filter the events
+	 *         on their own).
+	 */
+	private static Pin pinOf(EventListener listener) {
+		if (listener instanceof FilteredEventListenerAdapter) {
+			Pin pin = ((FilteredEventListenerAdapter) listener).getPin();
+			return pin == null || pin.pinNum() < 0 ? null : pin;
+		}
+		return null;
+	}
+
+	private AtomicReferenceArray<EventListener[]> slotsFor(Pin pin) {
+		return pin.is(ANALOG) ? analog : digital;
+	}
+
+	private AtomicReferenceArray<EventListener[]> ensureSlot(Pin pin) {
+		AtomicReferenceArray<EventListener[]> slots = slotsFor(pin);
+		if (pin.pinNum() < slots.length()) {
+			return slots;
+		}
+		AtomicReferenceArray<EventListener[]> grown = new AtomicReferenceArray<EventListener[]>(
+				Math.min(Math.max(pin.pinNum() + 1, slots.length() * 2),
+						MAX_SLOTS));
+		for (int i = 0; i < slots.length(); i++) {
+			grown.set(i, slots.get(i));
+		}
+		if (pin.is(ANALOG)) {
+			analog = grown;
+		} else {
+			digital = grown;
+		}
+		return grown;
+	}
+
+	private static EventListener[] append(EventListener[] listeners,
+			EventListener listener) {
+		EventListener[] appended = Arrays.copyOf(listeners,
+				listeners.length + 1);
+		appended[listeners.length] = listener;
+		return appended;
+	}
+
+	private static EventListener[] remove(EventListener[] listeners,
+			EventListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i].equals(listener)) {
+				EventListener[] removed = new EventListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, removed, 0, i);
+				System.arraycopy(listeners, i + 1, removed, i,
+						listeners.length - i - 1);
+				return removed;
+			}
+		}
+		return listeners;
+	}
+
+}
@@ -41,10 +41,42 @@ public class StreamConnection extends AbstractConnection {
 
 	private final StreamReader streamReader;
 	private final OutputStream outputStream;
+	private final WriteBatcher writeBatcher;
 
 	public StreamConnection(InputStream inputStream, OutputStream outputStream,
 			Protocol protocol) {
+		this(inputStream, outputStream, protocol, 0, 0);
+	}
+
+	/**
+	 * Creates a StreamConnection whose writes are batched: Frames written
+	 * within <code>batchMillis</code> are written to the OutputStream using
+	 * one write and one flush. A batch is written earlier if it reaches
+	 * <code>batchBytes</code>.
+	 * 
+	 * @param inputStream
+	 *            the stream to read from
+	 * @param outputStream
+	 *            the stream to write to
+	 * @param protocol
+	 *            the protocol used
+	 * @param batchMillis
+	 *            maximum time a frame is delayed, <code>0</code> disables
+	 *            batching
+	 * @param batchBytes
+	 *            number of bytes that causes the batch to be written
+	 *            immediately
+	 */
+	public StreamConnection(InputStream inputStream, OutputStream outputStream,
+			Protocol protocol, int batchMillis, int batchBytes) {
 		this.outputStream = outputStream;
+		this.writeBatcher = batchMillis > 0 ? new WriteBatcher(outputStream,
+				batchMillis, batchBytes) {
+			@Override
+			protected void sent(byte[] frame) {
+				fireSent(frame);
+			}
+		} : null;
 		this.streamReader = new StreamReader(inputStream) {
 			@Override
 			protected void received(byte[] bytes) throws Exception {
@@ -52,21 +84,38 @@ public class StreamConnection extends AbstractConnection {
 			}
 		};
 		if (inputStream != null) {
-			streamReader.runReaderThread(protocol.getSeparator());
+			streamReader.runReaderThread(protocol);
 		}
 	}
 
+	@Override
+	void setMetrics(LinkMetrics metrics) {
+		super.setMetrics(metrics);
+		this.streamReader.setMetrics(metrics);
+	}
+
 	@Override
 	public void write(byte[] bytes) throws IOException {
 		logger.debug("Stream write {}", bytes);
-		outputStream.write(checkNotNull(bytes, "bytes must not be null"));
+		checkNotNull(bytes, "bytes must not be null");
+		if (writeBatcher != null) {
+			writeBatcher.write(bytes);
+			return;
+		}
+		outputStream.write(bytes);
 		outputStream.flush();
 		fireSent(bytes);
 	}
 
 	@Override
 	public void close() throws IOException {
-		this.outputStream.close();
+		try {
+			if (this.writeBatcher != null) {
+				this.writeBatcher.close();
+			}
+		} finally {
+			this.outputStream.close();
+		}
 		this.streamReader.close();
 	}
 
@@ -22,6 +22,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.util.anno.LapsedWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,15 +40,29 @@ public abstract class StreamReader implements Closeable {
 	private static final Logger logger = LoggerFactory.getLogger(StreamReader.class);
 
 	private final InputStream inputStream;
-	private StreamScanner scanner;
+	private FrameScanner scanner;
 
 	private Thread thread;
 
+	private volatile LinkMetrics metrics;
+
 	public StreamReader(InputStream inputStream) {
 		this.inputStream = inputStream;
 	}
 
-	public void runReaderThread(final byte[] delimiter) {
+	public void runReaderThread(byte[] delimiter) {
+		runReaderThread(new FrameScanner(this.inputStream, delimiter));
+	}
+
+	/**
+	 * Starts reading the frames of the passed protocol, this also works for
+	 * protocols without a separator.
+	 */
+	public void runReaderThread(Protocol protocol) {
+		runReaderThread(FrameScanner.forProtocol(this.inputStream, protocol));
+	}
+
+	private void runReaderThread(final FrameScanner scanner) {
 		this.thread = new Thread() {
 
 			{
@@ -57,34 +72,53 @@ public abstract class StreamReader implements Closeable {
 
 			@Override
 			public void run() {
-				readUntilClosed(delimiter);
+				readUntilClosed(scanner);
 			}
 
 		};
 	}
 
 	public void readUntilClosed(byte[] delimiter) {
-		this.scanner = new StreamScanner(this.inputStream, delimiter);
+		readUntilClosed(new FrameScanner(this.inputStream, delimiter));
+	}
+
+	public void readUntilClosed(Protocol protocol) {
+		readUntilClosed(FrameScanner.forProtocol(this.inputStream, protocol));
+	}
+
+	private void readUntilClosed(FrameScanner scanner) {
+		this.scanner = scanner;
 		try {
-			while (scanner.hasNext() && !isInterrupted()) {
+			byte[] bytes;
+			logger.debug("Waiting for data");
+			while (!isInterrupted() && (bytes = scanner.next()) != null) {
 				try {
-					logger.debug("Waiting for data");
-					byte[] bytes = scanner.next();
 					logger.debug("Stream read {}", bytes);
-					if (bytes != null) {
-						received(bytes);
-					}
+					received(bytes);
 				} catch (Exception e) {
 					logger.error("Error while retrieving data", e);
+					readFailed();
 				}
 			}
 		} catch (Exception e) {
 			logger.error("Error while Reader Initialization", e);
+			readFailed();
 		} finally {
 			scanner.close();
 		}
 	}
 
+	void setMetrics(LinkMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private void readFailed() {
+		LinkMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.readFailed();
+		}
+	}
+
 	private boolean isInterrupted() {
 		return this.thread != null && this.thread.isInterrupted();
 	}
@@ -94,7 +128,7 @@ public abstract class StreamReader implements Closeable {
 	@Override
 	public void close() throws IOException {
 		@LapsedWith(module = JDK8, value = "Optional#ifPresent")
-		StreamScanner locScanner = this.scanner;
+		FrameScanner locScanner = this.scanner;
 		if (locScanner != null) {
 			locScanner.interrupt();
 		}
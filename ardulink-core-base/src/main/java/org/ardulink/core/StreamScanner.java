@@ -24,7 +24,11 @@ import org.ardulink.util.ByteArray;
 
 /**
  * Scanner for Stream. It returns byte arrays from a stream split by a delimiter.
+ * 
+ * @deprecated use {@link FrameScanner} which reads in bulk and does not shift
+ *             its buffer on each frame
  */
+@Deprecated
 public class StreamScanner {
 
 	private final InputStream inputStream;
@@ -0,0 +1,212 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Collects the frames written and writes them using one write and one flush on
+ * the underlying stream. The frames are written at the latest
+ * <code>maxDelayMillis</code> after the first frame of the batch was collected
+ * or as soon as <code>maxBytes</code> are collected (whatever comes first).
+ * Writes caused by the time limit are done by a separate thread, failures of
+ * them are thrown by the next call to {@link #write(byte[])}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+abstract class WriteBatcher implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(WriteBatcher.class);
+
+	private final OutputStream outputStream;
+	private final long maxDelayNanos;
+	private final int maxBytes;
+
+	/**
+	 * guards the frames collected
+	 */
+	private final Object lock = new Object();
+	private List<byte[]> frames = new ArrayList<byte[]>();
+	private int collectedBytes;
+	private long deadline;
+	private IOException failure;
+	private boolean closed;
+
+	/**
+	 * held while taking and writing a batch so batches are written in the
+	 * order they were taken, also guards {@link #batch}
+	 */
+	private final Object writeLock = new Object();
+	private byte[] batch = new byte[0];
+
+	private final Thread flusher;
+
+	public WriteBatcher(OutputStream outputStream, int maxDelayMillis,
+			int maxBytes) {
+		checkArgument(maxDelayMillis > 0,
+				"maxDelayMillis must be greater than 0 but was %s",
+				maxDelayMillis);
+		checkArgument(maxBytes > 0,
+				"maxBytes must be greater than 0 but was %s", maxBytes);
+		this.outputStream = outputStream;
+		this.maxDelayNanos = MILLISECONDS.toNanos(maxDelayMillis);
+		this.maxBytes = maxBytes;
+		this.flusher = new Thread("ardulink-write-batcher") {
+			@Override
+			public void run() {
+				flushWhenDue();
+			}
+		};
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Called for each frame after the batch containing it was written.
+	 */
+	protected abstract void sent(byte[] frame);
+
+	public void write(byte[] frame) throws IOException {
+		boolean full;
+		synchronized (lock) {
+			if (closed) {
+				throw new IOException("already closed");
+			}
+			throwFailure();
+			frames.add(frame);
+			collectedBytes += frame.length;
+			full = collectedBytes >= maxBytes;
+			if (!full && frames.size() == 1) {
+				deadline = System.nanoTime() + maxDelayNanos;
+				lock.notifyAll();
+			}
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	private void throwFailure() throws IOException {
+		IOException toThrow = failure;
+		failure = null;
+		if (toThrow != null) {
+			throw toThrow;
+		}
+	}
+
+	private void flushWhenDue() {
+		while (true) {
+			synchronized (lock) {
+				try {
+					if (frames.isEmpty()) {
+						if (closed) {
+							return;
+						}
+						lock.wait();
+						continue;
+					}
+					long wait = deadline - System.nanoTime();
+					if (wait > 0 && !closed) {
+						NANOSECONDS.timedWait(lock, wait);
+						continue;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			try {
+				flush();
+			} catch (IOException e) {
+				logger.error("Error writing batch", e);
+				synchronized (lock) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+	private void flush() throws IOException {
+		synchronized (writeLock) {
+			List<byte[]> toWrite;
+			int length;
+			synchronized (lock) {
+				toWrite = frames;
+				length = collectedBytes;
+				frames = new ArrayList<byte[]>();
+				collectedBytes = 0;
+			}
+			if (toWrite.isEmpty()) {
+				return;
+			}
+			outputStream.write(join(toWrite, length), 0, length);
+			outputStream.flush();
+			for (byte[] frame : toWrite) {
+				sent(frame);
+			}
+		}
+	}
+
+	private byte[] join(List<byte[]> toJoin, int length) {
+		if (batch.length < length) {
+			batch = new byte[Math.max(length, batch.length * 2)];
+		}
+		int pos = 0;
+		for (byte[] frame : toJoin) {
+			System.arraycopy(frame, 0, batch, pos, frame.length);
+			pos += frame.length;
+		}
+		return batch;
+	}
+
+	/**
+	 * Writes the frames collected and stops the flushing thread.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		synchronized (lock) {
+			throwFailure();
+		}
+	}
+
+}
@@ -44,7 +44,7 @@ public class ModuleClassLoader extends URLClassLoader {
 	}
 
 	public ModuleClassLoader(ClassLoader parent, File moduleDir) {
-		super(toUrls(list(moduleDir)), parent);
+		super(toUrls(listJars(moduleDir)), parent);
 	}
 
 	private static ClassLoader contextClassLoader() {
@@ -69,8 +69,15 @@ public class ModuleClassLoader extends URLClassLoader {
 		}
 	}
 
+	/**
+	 * Lists the jars of the passed module directory.
+	 * 
+	 * @param dir
+	 *            the module directory
+	 * @return jar files found in <code>dir</code>
+	 */
 	@LapsedWith(module = JDK8, value = "Streams")
-	private static List<File> list(File dir) {
+	public static List<File> listJars(File dir) {
 		checkState(dir.exists(), "Directory %s not found", dir);
 		List<File> files = Lists.newArrayList();
 		for (String filename : dir.list(jarFiler())) {
@@ -16,11 +16,19 @@ limitations under the License.
 
 package org.ardulink.core.convenience;
 
+import static org.ardulink.util.Throwables.propagate;
+
+import java.util.concurrent.CountDownLatch;
+
 import org.ardulink.core.Link;
 
 /**
  * [ardulinktitle] [ardulinkversion]
  * 
+ * A cached Link, possibly still being created. The thread that put the value
+ * into the cache creates the Link while other threads requesting the same
+ * Link wait for it using {@link #getLink()}.
+ * 
  * project Ardulink http://www.ardulink.org/
  * 
  * [adsense]
@@ -28,23 +36,69 @@ import org.ardulink.core.Link;
  */
 class CacheValue {
 
-	private final Link link;
+	private final CountDownLatch created = new CountDownLatch(1);
+	private Link link;
+	private Throwable failure;
+
 	private int usageCounter;
+	private boolean released;
 
-	public CacheValue(Link link) {
+	public void created(Link link) {
 		this.link = link;
+		this.created.countDown();
+	}
+
+	public void failed(Throwable failure) {
+		this.failure = failure;
+		this.created.countDown();
 	}
 
+	/**
+	 * Returns the Link waiting for it to be created.
+	 * 
+	 * @return the Link
+	 * @throws RuntimeException
+	 *             if the Link could not be created
+	 */
 	public Link getLink() {
+		try {
+			this.created.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw propagate(e);
+		}
+		if (failure != null) {
+			throw propagate(failure);
+		}
 		return link;
 	}
 
-	public int increaseUsageCounter() {
-		return ++usageCounter;
+	/**
+	 * Increases the usage counter.
+	 * 
+	 * @return <code>false</code> if the value was released already and must
+	 *         not be used anymore
+	 */
+	public synchronized boolean acquire() {
+		if (released) {
+			return false;
+		}
+		usageCounter++;
+		return true;
 	}
 
-	public int decreaseUsageCounter() {
-		return --usageCounter;
+	/**
+	 * Decreases the usage counter.
+	 * 
+	 * @return <code>true</code> if the value is not used anymore (only
+	 *         returned once)
+	 */
+	public synchronized boolean release() {
+		if (released || --usageCounter > 0) {
+			return false;
+		}
+		released = true;
+		return true;
 	}
 
 }
@@ -19,6 +19,7 @@ package org.ardulink.core.convenience;
 import java.io.IOException;
 
 import org.ardulink.core.Link;
+import org.ardulink.core.LinkBatch;
 import org.ardulink.core.Pin;
 import org.ardulink.core.Pin.AnalogPin;
 import org.ardulink.core.Pin.DigitalPin;
@@ -107,6 +108,12 @@ public class LinkDelegate implements Link {
 		return getDelegate().sendKeyPressEvent(keychar, keycode, keylocation,
 				keymodifiers, keymodifiersex);
 	}
+
+	@Override
+	public LinkBatch batch() {
+		return getDelegate().batch();
+	}
+
 	public Link addCustomListener(CustomListener listener) throws IOException {
 		return getDelegate().addCustomListener(listener);
 	}
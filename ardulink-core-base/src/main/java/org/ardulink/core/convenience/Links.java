@@ -16,28 +16,39 @@ limitations under the License.
 
 package org.ardulink.core.convenience;
 
+import static java.util.Collections.singletonList;
+import static org.ardulink.core.DefaultLinkBatch.addAll;
 import static org.ardulink.core.linkmanager.LinkManager.extractNameFromURI;
 import static org.ardulink.core.linkmanager.LinkManager.replaceName;
 import static org.ardulink.util.Iterables.getFirst;
 import static org.ardulink.util.Lists.sortedCopy;
+import static org.ardulink.util.Throwables.propagate;
 import static org.ardulink.util.anno.LapsedWith.JDK8;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
+import org.ardulink.core.AbstractListenerLink;
+import org.ardulink.core.DefaultLinkBatch;
 import org.ardulink.core.Link;
+import org.ardulink.core.LinkBatch;
+import org.ardulink.core.LinkMetrics;
 import org.ardulink.core.Pin;
 import org.ardulink.core.linkmanager.LinkManager;
 import org.ardulink.core.linkmanager.LinkManager.ConfigAttribute;
 import org.ardulink.core.linkmanager.LinkManager.Configurer;
+import org.ardulink.core.messages.api.ToDeviceMessage;
+import org.ardulink.core.messages.api.ToDeviceMessageStartListening;
+import org.ardulink.core.messages.api.ToDeviceMessageStopListening;
+import org.ardulink.core.qos.QosLink;
 import org.ardulink.util.Integers;
 import org.ardulink.util.Optional;
 import org.ardulink.util.URIs;
@@ -47,16 +58,32 @@ import org.ardulink.util.anno.LapsedWith;
  * [ardulinktitle] [ardulinkversion]
  * 
  * This is a convenience layer for retrieving links. Links retrieved via this
- * class are cached and can be shared.
+ * class are cached and can be shared. If the system property
+ * <code>ardulink.metrics</code> is set to <code>true</code> the metrics of the
+ * Links created are registered as MBeans named by the Link's URI (see
+ * {@link LinkMetrics}).
  * 
  * [adsense]
  */
 public final class Links {
 
-	// TODO use a WeakHashMap and use PhantomReferences to close GCed Links
-	private static final Map<Object, CacheValue> cache = new HashMap<Object, CacheValue>();
+	// TODO use PhantomReferences to close GCed Links
+	private static final ConcurrentMap<Object, CacheValue> cache = new ConcurrentHashMap<Object, CacheValue>();
 	private static final LinkManager linkManager = LinkManager.getInstance();
 
+	private static final String METRICS_PROPERTY = "ardulink.metrics";
+
+	/**
+	 * Cache key of Configurers without a unique identifier, the
+	 * {@link ConcurrentHashMap} does not accept <code>null</code> keys.
+	 */
+	private static final Object NULL_KEY = new Object() {
+		@Override
+		public String toString() {
+			return "null";
+		}
+	};
+
 	private Links() {
 		super();
 	}
@@ -96,8 +123,17 @@ public final class Links {
 	}
 
 	public static Configurer getDefaultConfigurer() {
-		return setChoiceValues(linkManager.getConfigurer(getFirst(sorted(linkManager.listURIs()))
-				.getOrThrow(IllegalStateException.class, "No factory registered")));
+		return setChoiceValues(linkManager.getConfigurer(getDefaultURI()));
+	}
+
+	/**
+	 * Returns the URI of the default Link (see {@link #getDefault()}).
+	 * 
+	 * @return URI of the default Link
+	 */
+	public static URI getDefaultURI() {
+		return getFirst(sorted(linkManager.listURIs())).getOrThrow(IllegalStateException.class,
+				"No factory registered");
 	}
 
 	private static List<URI> sorted(List<URI> uris) {
@@ -146,7 +182,8 @@ public final class Links {
 	 *         that URI exists
 	 */
 	public static Link getLink(URI uri) {
-		return getLink(linkManager.getConfigurer(aliasReplacement(uri)));
+		return getLink(linkManager.getConfigurer(aliasReplacement(uri)),
+				uri.toString());
 	}
 
 	@LapsedWith(module = JDK8, value = "Optional#map")
@@ -196,27 +233,90 @@ public final class Links {
 	}
 
 	public static Link getLink(Configurer configurer) {
-		final Object cacheKey = configurer.uniqueIdentifier();
-		synchronized (cache) {
+		return getLink(configurer, null);
+	}
+
+	private static Link getLink(Configurer configurer, String name) {
+		Object cacheKey = cacheKey(configurer);
+		while (true) {
 			CacheValue cacheValue = cache.get(cacheKey);
 			if (cacheValue == null) {
-				cache.put(cacheKey, (cacheValue = new CacheValue(newDelegate(cacheKey, configurer.newLink()))));
+				CacheValue newValue = new CacheValue();
+				newValue.acquire();
+				cacheValue = cache.putIfAbsent(cacheKey, newValue);
+				if (cacheValue == null) {
+					return create(cacheKey, newValue, configurer, name);
+				}
 			}
-			cacheValue.increaseUsageCounter();
+			if (cacheValue.acquire()) {
+				return awaitLink(cacheValue);
+			}
+			// the Link was closed concurrently, replace it by a new one
+			cache.remove(cacheKey, cacheValue);
+		}
+	}
+
+	private static Object cacheKey(Configurer configurer) {
+		Object uniqueIdentifier = configurer.uniqueIdentifier();
+		return uniqueIdentifier == null ? NULL_KEY : uniqueIdentifier;
+	}
+
+	/**
+	 * Creates the Link outside of any lock so different Links can be created
+	 * concurrently. Callers requesting the same Link meanwhile wait for this
+	 * one to be created.
+	 */
+	private static Link create(Object cacheKey, CacheValue cacheValue, Configurer configurer, String name) {
+		try {
+			Link link = configurer.newLink();
+			registerMetrics(link, name == null ? String.valueOf(cacheKey) : name);
+			Link delegate = newDelegate(cacheKey, cacheValue, link);
+			cacheValue.created(delegate);
+			return delegate;
+		} catch (Throwable t) {
+			cache.remove(cacheKey, cacheValue);
+			cacheValue.failed(t);
+			throw propagate(t);
+		}
+	}
+
+	private static Link awaitLink(CacheValue cacheValue) {
+		try {
 			return cacheValue.getLink();
+		} catch (RuntimeException e) {
+			cacheValue.release();
+			throw e;
 		}
 	}
 
-	private static LinkDelegate newDelegate(final Object cacheKey, Link link) {
+	private static void registerMetrics(Link link, String name) {
+		if (Boolean.getBoolean(METRICS_PROPERTY)) {
+			Link unwrapped = unwrap(link);
+			if (unwrapped instanceof AbstractListenerLink) {
+				LinkMetrics.register((AbstractListenerLink) unwrapped, name);
+			}
+		}
+	}
+
+	private static Link unwrap(Link link) {
+		while (true) {
+			if (link instanceof LinkDelegate) {
+				link = ((LinkDelegate) link).getDelegate();
+			} else if (link instanceof QosLink) {
+				link = ((QosLink) link).getTarget();
+			} else {
+				return link;
+			}
+		}
+	}
+
+	private static LinkDelegate newDelegate(final Object cacheKey, final CacheValue cacheValue, Link link) {
 		return new LinkDelegate(link) {
 			@Override
 			public void close() throws IOException {
-				synchronized (cache) {
-					CacheValue cacheValue = cache.get(cacheKey);
-					if (cacheValue != null && cacheValue.decreaseUsageCounter() == 0) {
-						cache.remove(cacheKey);
-						super.close();
-					}
+				if (cacheValue.release()) {
+					cache.remove(cacheKey, cacheValue);
+					super.close();
 				}
 			}
 
@@ -225,7 +325,56 @@ public final class Links {
 			@Override
 			public long startListening(Pin pin) throws IOException {
 				long result = super.startListening(pin);
-				AtomicInteger counter = getCounter(pin);
+				getCounter(pin).getAndIncrement();
+				return result;
+			}
+
+			@Override
+			public long stopListening(Pin pin) throws IOException {
+				return lastListenerStopped(pin) ? super.stopListening(pin) : -1;
+			}
+
+			/**
+			 * Listening started and stopped by batches is counted like the
+			 * single calls, stop commands are only passed to the delegate's
+			 * batch if there are no other listeners left.
+			 */
+			@Override
+			public LinkBatch batch() {
+				return new DefaultLinkBatch(this) {
+					@Override
+					protected long send(List<ToDeviceMessage> messages) throws IOException {
+						LinkBatch batch = getDelegate().batch();
+						List<Pin> started = new ArrayList<Pin>();
+						for (ToDeviceMessage message : messages) {
+							if (message instanceof ToDeviceMessageStartListening) {
+								Pin pin = ((ToDeviceMessageStartListening) message).getPin();
+								getCounter(pin).getAndIncrement();
+								started.add(pin);
+								batch.startListening(pin);
+							} else if (message instanceof ToDeviceMessageStopListening) {
+								Pin pin = ((ToDeviceMessageStopListening) message).getPin();
+								if (lastListenerStopped(pin)) {
+									batch.stopListening(pin);
+								}
+							} else {
+								addAll(batch, singletonList(message));
+							}
+						}
+						try {
+							return batch.send();
+						} catch (IOException e) {
+							for (Pin pin : started) {
+								getCounter(pin).decrementAndGet();
+							}
+							throw e;
+						}
+					}
+				};
+			}
+
+			private AtomicInteger getCounter(Pin pin) {
+				AtomicInteger counter = listenCounter.get(pin);
 				if (counter == null) {
 					@LapsedWith(module = JDK8, value = "Map#merge")
 					AtomicInteger oldValue = listenCounter.putIfAbsent(pin, counter = new AtomicInteger());
@@ -233,18 +382,12 @@ public final class Links {
 						counter = oldValue;
 					}
 				}
-				counter.getAndIncrement();
-				return result;
-			}
-
-			@Override
-			public long stopListening(Pin pin) throws IOException {
-				AtomicInteger counter = getCounter(pin);
-				return counter != null && counter.decrementAndGet() == 0 ? super.stopListening(pin) : -1;
+				return counter;
 			}
 
-			private AtomicInteger getCounter(Pin pin) {
-				return listenCounter.get(pin);
+			private boolean lastListenerStopped(Pin pin) {
+				AtomicInteger counter = listenCounter.get(pin);
+				return counter != null && counter.decrementAndGet() == 0;
 			}
 		};
 	}
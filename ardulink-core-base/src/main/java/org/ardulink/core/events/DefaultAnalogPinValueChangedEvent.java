@@ -33,7 +33,7 @@ public class DefaultAnalogPinValueChangedEvent implements AnalogPinValueChangedE
 	}
 
 	private final AnalogPin pin;
-	private final Integer value;
+	private final int value;
 
 	public DefaultAnalogPinValueChangedEvent(AnalogPin pin, int value) {
 		this.pin = pin;
@@ -45,7 +45,7 @@ public class DefaultAnalogPinValueChangedEvent implements AnalogPinValueChangedE
 	}
 
 	public Integer getValue() {
-		return this.value;
+		return Integer.valueOf(this.value);
 	}
 
 	@Override
@@ -33,7 +33,7 @@ public class DefaultDigitalPinValueChangedEvent implements DigitalPinValueChange
 	}
 
 	private final DigitalPin pin;
-	private final Boolean value;
+	private final boolean value;
 
 	public DefaultDigitalPinValueChangedEvent(DigitalPin pin, boolean value) {
 		this.pin = pin;
@@ -45,7 +45,7 @@ public class DefaultDigitalPinValueChangedEvent implements DigitalPinValueChange
 	}
 
 	public Boolean getValue() {
-		return this.value;
+		return Boolean.valueOf(this.value);
 	}
 
 	@Override
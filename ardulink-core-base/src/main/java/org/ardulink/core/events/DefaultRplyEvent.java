@@ -22,6 +22,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import org.ardulink.core.messages.api.FromDeviceMessageReply;
+
 /**
  * [ardulinktitle] [ardulinkversion]
  * 
@@ -34,14 +36,32 @@ public class DefaultRplyEvent implements RplyEvent {
 
 	private final boolean ok;
 	private final long id;
-	private final Map<String, Object> parameters;
+	private final FromDeviceMessageReply reply;
+	private volatile Map<String, Object> parameters;
 
 	public DefaultRplyEvent(boolean ok, long id,
 			Map<String, ? extends Object> parameters) {
 		this.ok = ok;
 		this.id = id;
-		this.parameters = unmodifiableMap(new HashMap<String, Object>(
-				parameters));
+		this.reply = null;
+		this.parameters = copyOf(parameters);
+	}
+
+	/**
+	 * Creates an event for the passed reply. The reply's parameters are not
+	 * accessed until they are requested from this event.
+	 * 
+	 * @param reply the reply received from the device
+	 */
+	public DefaultRplyEvent(FromDeviceMessageReply reply) {
+		this.ok = reply.isOk();
+		this.id = reply.getId();
+		this.reply = reply;
+	}
+
+	private static Map<String, Object> copyOf(
+			Map<String, ? extends Object> parameters) {
+		return unmodifiableMap(new HashMap<String, Object>(parameters));
 	}
 
 	@Override
@@ -56,17 +76,21 @@ public class DefaultRplyEvent implements RplyEvent {
 
 	@Override
 	public Set<String> getParameterNames() {
-		return parameters.keySet();
+		return getParameters().keySet();
 	}
 
 	@Override
 	public Object getParameterValue(String name) {
-		return parameters.get(name);
+		return getParameters().get(name);
 	}
 
 	@Override
 	public Map<String, Object> getParameters() {
-		return parameters;
+		Map<String, Object> locParameters = this.parameters;
+		if (locParameters == null) {
+			this.parameters = locParameters = copyOf(reply.getParameters());
+		}
+		return locParameters;
 	}
 
 }
@@ -0,0 +1,54 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.events;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Listener for pin state changes getting the pin's number and value as
+ * primitives, so no objects have to be created to notify it. Implementations
+ * are called by the thread that received the state change and should return
+ * quickly.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public interface PrimitivePinListener {
+
+	/**
+	 * @param pin
+	 *            number of the analog pin
+	 * @param value
+	 *            the pin's new value
+	 * @param nanoTime
+	 *            {@link System#nanoTime()} when the change was received
+	 */
+	void onAnalog(int pin, int value, long nanoTime);
+
+	/**
+	 * @param pin
+	 *            number of the digital pin
+	 * @param value
+	 *            the pin's new value
+	 * @param nanoTime
+	 *            {@link System#nanoTime()} when the change was received
+	 */
+	void onDigital(int pin, boolean value, long nanoTime);
+
+}
@@ -0,0 +1,316 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.linkmanager;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.core.linkmanager.LinkManager.ConfigAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Discovers the choice values of {@link ConfigAttribute}s (e.g. the serial
+ * ports or the ports of a remote proxy) in the background. Values are
+ * identified by the URI of the link (including the attributes the choice
+ * depends on) and the name of the attribute. Requested values are cached for
+ * the TTL and refreshed periodically until they were not requested for ten
+ * refresh intervals. Requests for the same values that are issued while the
+ * values are loaded share that load.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class ChoiceValuesDiscovery implements Closeable {
+
+	public interface Listener {
+
+		/**
+		 * Called by the discovery thread if refreshed choice values differ
+		 * from the ones known before.
+		 */
+		void choiceValuesChanged(URI uri, String attribute, Object[] values);
+
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ChoiceValuesDiscovery.class);
+
+	private static final int EVICT_AFTER_REFRESHES = 10;
+
+	private static class DefaultInstanceHolder {
+		private static final ChoiceValuesDiscovery instance = new ChoiceValuesDiscovery(
+				LinkManager.getInstance(), 30, 10, SECONDS);
+	}
+
+	private static final class Key {
+
+		private final URI uri;
+		private final String attribute;
+
+		private Key(URI uri, String attribute) {
+			this.uri = checkNotNull(uri, "uri must not be null");
+			this.attribute = checkNotNull(attribute,
+					"attribute must not be null");
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * uri.hashCode() + attribute.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return uri.equals(other.uri) && attribute.equals(other.attribute);
+		}
+
+	}
+
+	private final class Entry {
+
+		private final Key key;
+		private volatile long lastRequested = System.nanoTime();
+		// guarded by this
+		private Object[] values;
+		private long loadedAt;
+		private FutureTask<Object[]> loading;
+
+		private Entry(Key key) {
+			this.key = key;
+		}
+
+		private synchronized Future<Object[]> get() {
+			lastRequested = System.nanoTime();
+			if (values != null && lastRequested - loadedAt < ttlNanos) {
+				return completed(values.clone());
+			}
+			return load();
+		}
+
+		private synchronized Future<Object[]> load() {
+			if (loading == null) {
+				loading = new FutureTask<Object[]>(new Callable<Object[]>() {
+					@Override
+					public Object[] call() throws Exception {
+						return loadValues();
+					}
+				});
+				loader.execute(loading);
+			}
+			return loading;
+		}
+
+		private Object[] loadValues() {
+			Object[] loaded = null;
+			Object[] old;
+			try {
+				loaded = linkManager.getConfigurer(key.uri)
+						.getAttribute(key.attribute).getChoiceValues();
+			} finally {
+				synchronized (this) {
+					old = values;
+					if (loaded != null) {
+						values = loaded;
+						loadedAt = System.nanoTime();
+					}
+					loading = null;
+				}
+			}
+			// only successful refreshes are reported, a failed one keeps the
+			// old values
+			if (loaded != null && old != null && !Arrays.equals(old, loaded)) {
+				fireChanged(key, loaded);
+			}
+			return loaded.clone();
+		}
+
+		private boolean isIdle(long now) {
+			return now - lastRequested > EVICT_AFTER_REFRESHES
+					* refreshIntervalNanos;
+		}
+
+	}
+
+	private final LinkManager linkManager;
+	private final long ttlNanos;
+	private final long refreshIntervalNanos;
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService loader;
+
+	/**
+	 * Creates a new discovery using its own threads.
+	 * 
+	 * @param linkManager
+	 *            the LinkManager to retrieve the {@link ConfigAttribute}s
+	 *            from
+	 * @param ttl
+	 *            how long loaded choice values are served
+	 * @param refreshInterval
+	 *            how often the choice values are refreshed in the background
+	 * @param unit
+	 *            unit of <code>ttl</code> and <code>refreshInterval</code>
+	 */
+	public ChoiceValuesDiscovery(LinkManager linkManager, long ttl,
+			long refreshInterval, TimeUnit unit) {
+		checkArgument(ttl > 0, "ttl must be greater than 0 but was %s", ttl);
+		checkArgument(refreshInterval > 0,
+				"refreshInterval must be greater than 0 but was %s",
+				refreshInterval);
+		this.linkManager = linkManager;
+		this.ttlNanos = unit.toNanos(ttl);
+		this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+		this.scheduler = Executors
+				.newSingleThreadScheduledExecutor(daemons("ardulink-discovery-timer"));
+		this.loader = Executors
+				.newCachedThreadPool(daemons("ardulink-discovery"));
+		this.scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				refresh();
+			}
+		}, refreshIntervalNanos, refreshIntervalNanos, NANOSECONDS);
+	}
+
+	/**
+	 * Returns the discovery shared by the whole VM. It serves values for 30
+	 * seconds and refreshes them every 10 seconds.
+	 * 
+	 * @return shared discovery
+	 */
+	public static ChoiceValuesDiscovery getInstance() {
+		return DefaultInstanceHolder.instance;
+	}
+
+	private static ThreadFactory daemons(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Returns the choice values of the attribute of the Link described by the
+	 * URI. If there are cached values younger than the TTL the returned
+	 * Future is already completed. Otherwise the values are loaded in the
+	 * background.
+	 * 
+	 * @param uri
+	 *            the URI of the Link
+	 * @param attribute
+	 *            name of the attribute
+	 * @return the choice values
+	 */
+	public Future<Object[]> choiceValues(URI uri, String attribute) {
+		return entry(new Key(uri, attribute)).get();
+	}
+
+	private Entry entry(Key key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			Entry newEntry = new Entry(key);
+			entry = entries.putIfAbsent(key, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		return entry;
+	}
+
+	private void refresh() {
+		long now = System.nanoTime();
+		for (Entry entry : entries.values()) {
+			if (entry.isIdle(now)) {
+				entries.remove(entry.key, entry);
+			} else {
+				entry.load();
+			}
+		}
+	}
+
+	private void fireChanged(Key key, Object[] values) {
+		for (Listener listener : listeners) {
+			try {
+				listener.choiceValuesChanged(key.uri, key.attribute,
+						values.clone());
+			} catch (Exception e) {
+				logger.error("Listener {} failure", listener, e);
+			}
+		}
+	}
+
+	private static Future<Object[]> completed(final Object[] values) {
+		FutureTask<Object[]> future = new FutureTask<Object[]>(
+				new Callable<Object[]>() {
+					@Override
+					public Object[] call() {
+						return values;
+					}
+				});
+		future.run();
+		return future;
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		loader.shutdownNow();
+	}
+
+}
@@ -16,14 +16,26 @@ limitations under the License.
 
 package org.ardulink.core.linkmanager;
 
+import static org.ardulink.util.anno.LapsedWith.JDK8;
+
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.ardulink.core.classloader.ModuleClassLoader;
+import org.ardulink.util.Lists;
 import org.ardulink.util.Optional;
+import org.ardulink.util.ServiceLoaders;
+import org.ardulink.util.anno.LapsedWith;
 
 /**
  * [ardulinktitle] [ardulinkversion]
@@ -35,13 +47,120 @@ import org.ardulink.util.Optional;
  */
 public final class Classloaders {
 
+	/**
+	 * The {@link ModuleClassLoader} created for a module directory together
+	 * with the services already loaded through it. Stays valid as long as
+	 * the jars of the module directory do not change.
+	 */
+	private static final class ModuleState {
+
+		private final File moduleDir;
+		private final List<String> jars;
+		private final ClassLoader classloader;
+		private final ConcurrentMap<Class<?>, List<?>> services = new ConcurrentHashMap<Class<?>, List<?>>();
+		private long checkedAt;
+
+		private ModuleState(ClassLoader parent, File moduleDir, List<String> jars) {
+			this.moduleDir = moduleDir;
+			this.jars = jars;
+			this.classloader = new ModuleClassLoader(parent, moduleDir);
+		}
+
+		private boolean isValidFor(File moduleDir, List<String> jars) {
+			return this.moduleDir.equals(moduleDir) && this.jars.equals(jars);
+		}
+
+		@SuppressWarnings("unchecked")
+		private <T> List<T> services(Class<T> type) {
+			List<?> loaded = services.get(type);
+			if (loaded == null) {
+				List<T> newlyLoaded = Collections.unmodifiableList(ServiceLoaders.services(type, classloader));
+				loaded = services.putIfAbsent(type, newlyLoaded);
+				if (loaded == null) {
+					loaded = newlyLoaded;
+				}
+			}
+			return (List<T>) loaded;
+		}
+
+	}
+
+	/**
+	 * System property defining how many milliseconds the jars of the module
+	 * directory are not listed again after they have been checked. Defaults to
+	 * {@value #DEFAULT_CHECK_INTERVAL_MILLIS}.
+	 */
+	public static final String CHECK_INTERVAL_PROPERTY = "ardulink.module.dir.checkinterval";
+
+	private static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * The module states by the context classloader they were created for,
+	 * guarded by itself.
+	 */
+	private static final Map<ClassLoader, ModuleState> moduleStates = new WeakHashMap<ClassLoader, ModuleState>();
+
 	private Classloaders() {
 		super();
 	}
 
+	/**
+	 * Returns the classloader for the jars inside the module directory
+	 * (system property <code>ardulink.module.dir</code>). The classloader is
+	 * reused until a jar is added, removed or replaced in the module
+	 * directory, each context classloader gets its own one. The directory is checked at most once per check interval
+	 * (see {@link #CHECK_INTERVAL_PROPERTY}).
+	 * 
+	 * @return classloader of the module directory
+	 */
 	public static ClassLoader moduleClassloader() {
+		return moduleState().classloader;
+	}
+
+	/**
+	 * Returns the services of the passed type found via the
+	 * {@link #moduleClassloader()}. The services are loaded once and shared
+	 * until the module directory changes.
+	 * 
+	 * @param type
+	 *            the service type
+	 * @return unmodifiable list of the service instances
+	 */
+	public static <T> List<T> moduleServices(Class<T> type) {
+		return moduleState().services(type);
+	}
+
+	private static ModuleState moduleState() {
 		ClassLoader parent = Thread.currentThread().getContextClassLoader();
-		return new ModuleClassLoader(parent, systemProperty("ardulink.module.dir").or("."));
+		File moduleDir = new File(systemProperty("ardulink.module.dir").or("."));
+		long now = System.nanoTime();
+		synchronized (moduleStates) {
+			ModuleState state = moduleStates.get(parent);
+			if (state != null && state.moduleDir.equals(moduleDir)
+					&& now - state.checkedAt < checkIntervalNanos()) {
+				return state;
+			}
+			List<String> jars = jarsOf(moduleDir);
+			if (state == null || !state.isValidFor(moduleDir, jars)) {
+				moduleStates.put(parent, state = new ModuleState(parent, moduleDir, jars));
+			}
+			state.checkedAt = now;
+			return state;
+		}
+	}
+
+	private static long checkIntervalNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(Long.getLong(
+				CHECK_INTERVAL_PROPERTY, DEFAULT_CHECK_INTERVAL_MILLIS));
+	}
+
+	@LapsedWith(module = JDK8, value = "Streams")
+	private static List<String> jarsOf(File moduleDir) {
+		List<String> jars = Lists.newArrayList();
+		for (File jar : ModuleClassLoader.listJars(moduleDir)) {
+			jars.add(jar.getName() + ":" + jar.length() + ":" + jar.lastModified());
+		}
+		return jars;
 	}
 
 	private static Optional<String> systemProperty(String propertyName) {
@@ -20,11 +20,10 @@ import static java.lang.Integer.MAX_VALUE;
 import static java.lang.Integer.MIN_VALUE;
 import static java.lang.String.format;
 import static org.ardulink.core.beans.finder.impl.FindByAnnotation.propertyAnnotated;
-import static org.ardulink.core.linkmanager.Classloaders.moduleClassloader;
+import static org.ardulink.core.linkmanager.Classloaders.moduleServices;
 import static org.ardulink.util.Preconditions.checkArgument;
 import static org.ardulink.util.Preconditions.checkNotNull;
 import static org.ardulink.util.Preconditions.checkState;
-import static org.ardulink.util.ServiceLoaders.services;
 import static org.ardulink.util.Strings.nullOrEmpty;
 import static org.ardulink.util.Throwables.propagate;
 import static org.ardulink.util.anno.LapsedWith.JDK8;
@@ -57,6 +56,7 @@ import org.ardulink.core.linkmanager.LinkConfig.ChoiceFor;
 import org.ardulink.core.linkmanager.LinkConfig.I18n;
 import org.ardulink.core.linkmanager.LinkConfig.Named;
 import org.ardulink.core.linkmanager.LinkFactory.Alias;
+import org.ardulink.core.linkmanager.providers.FactoriesViaIndex;
 import org.ardulink.core.linkmanager.providers.LinkFactoriesProvider;
 import org.ardulink.util.Lists;
 import org.ardulink.util.Optional;
@@ -221,50 +221,23 @@ public abstract class LinkManager {
 			private final Attribute getChoicesFor;
 			private final List<ConfigAttribute> dependsOn;
 			private List<Object> cachedChoiceValues;
-			private final ResourceBundle nls;
 
-			private final Min minValueProvider = annotationProxy(Min.class,
-					"value", MIN_VALUE);
-			private final Max maxValueProvider = annotationProxy(Max.class,
-					"value", MAX_VALUE);
-
-			public ConfigAttributeAdapter(T linkConfig,
-					BeanProperties beanProperties, String key) {
+			public ConfigAttributeAdapter(BeanProperties beanProperties,
+					BeanProperties choiceProperties, String key) {
 				this.attribute = beanProperties.getAttribute(key);
 				checkArgument(
 						attribute != null,
 						"Could not determine attribute %s. Available attributes are %s",
 						key, beanProperties.attributeNames());
-				this.getChoicesFor = choicesFor(linkConfig);
+				this.getChoicesFor = choicesFor(choiceProperties);
 				this.dependsOn = this.getChoicesFor == null ? Collections
 						.<ConfigAttribute> emptyList()
 						: resolveDeps(this.getChoicesFor);
-				Class<?> linkConfigClass = linkConfig.getClass();
-				I18n nls = linkConfigClass.getAnnotation(I18n.class);
-				this.nls = nls == null ? null : resourceBundle(linkConfigClass,
-						nls);
-			}
-
-			private ResourceBundle resourceBundle(Class<?> linkConfigClass,
-					I18n nls) {
-				String baseName = nullOrEmpty(nls.value()) ? useClassname(linkConfigClass)
-						: usePackageAndName(linkConfigClass, nls);
-				return ResourceBundle.getBundle(baseName, Locale.getDefault(),
-						linkConfigClass.getClassLoader());
-			}
-
-			private String useClassname(Class<?> clazz) {
-				return clazz.getName();
-			}
-
-			private String usePackageAndName(Class<?> clazz, I18n nls) {
-				return clazz.getPackage().getName() + "." + nls.value();
 			}
 
-			private Attribute choicesFor(T linkConfig) {
-				Attribute choiceFor = BeanProperties.builder(linkConfig)
-						.using(propertyAnnotated(ChoiceFor.class)).build()
-						.getAttribute(attribute.getName());
+			private Attribute choicesFor(BeanProperties choiceProperties) {
+				Attribute choiceFor = choiceProperties.getAttribute(attribute
+						.getName());
 				if (choiceFor == null && attribute.getType().isEnum()) {
 					HardCodedValues reader = new HardCodedValues(
 							attribute.getName(), attribute.getType(), attribute
@@ -325,6 +298,7 @@ public abstract class LinkManager {
 				try {
 					this.attribute.writeValue(value);
 					changed = true;
+					cacheKey = null;
 				} catch (Exception e) {
 					throw propagate(e);
 				}
@@ -378,30 +352,13 @@ public abstract class LinkManager {
 				if (Integer.class.isAssignableFrom(Primitives.wrap(getType()))) {
 					Annotation[] annotations = attribute.getAnnotations();
 					return newNumberValidationInfo(find(annotations, Min.class)
-							.or(minValueProvider).value(),
-							find(annotations, Max.class).or(maxValueProvider)
+							.or(MIN_VALUE_PROVIDER).value(),
+							find(annotations, Max.class).or(MAX_VALUE_PROVIDER)
 									.value());
 				}
 				return ValidationInfo.NULL;
 			}
 
-			private <S> S annotationProxy(Class<S> clazz,
-					final String methodName, final long value) {
-				return clazz.cast(Proxy.newProxyInstance(getClass()
-						.getClassLoader(), new Class<?>[] { clazz },
-						new InvocationHandler() {
-							@Override
-							public Object invoke(Object proxy, Method method,
-									Object[] args) throws Throwable {
-								if (methodName.equals(method.getName())) {
-									return value;
-								}
-								throw new UnsupportedOperationException(
-										"Method " + method + " not supported");
-							}
-						}));
-			}
-
 			private <S extends Annotation> Optional<S> find(
 					Annotation[] annotations, Class<S> annoClass) {
 				for (Annotation annotation : annotations) {
@@ -430,17 +387,64 @@ public abstract class LinkManager {
 
 		}
 
+		private static final Min MIN_VALUE_PROVIDER = annotationProxy(
+				Min.class, "value", MIN_VALUE);
+		private static final Max MAX_VALUE_PROVIDER = annotationProxy(
+				Max.class, "value", MAX_VALUE);
+
 		private final LinkFactory<T> linkFactory;
 		private final T linkConfig;
 		private final BeanProperties beanProperties;
+		private final BeanProperties choiceProperties;
+		private final ResourceBundle nls;
 		private final Map<String, ConfigAttributeAdapter<T>> cache = new HashMap<String, ConfigAttributeAdapter<T>>();
 		private boolean changed = true;
+		private CacheKey cacheKey;
 
 		public DefaultConfigurer(LinkFactory<T> linkFactory) {
 			this.linkFactory = linkFactory;
 			this.linkConfig = linkFactory.newLinkConfig();
 			this.beanProperties = BeanProperties.builder(linkConfig)
 					.using(propertyAnnotated(Named.class)).build();
+			this.choiceProperties = BeanProperties.builder(linkConfig)
+					.using(propertyAnnotated(ChoiceFor.class)).build();
+			Class<?> linkConfigClass = linkConfig.getClass();
+			I18n nls = linkConfigClass.getAnnotation(I18n.class);
+			this.nls = nls == null ? null : resourceBundle(linkConfigClass,
+					nls);
+		}
+
+		private static ResourceBundle resourceBundle(Class<?> linkConfigClass,
+				I18n nls) {
+			String baseName = nullOrEmpty(nls.value()) ? useClassname(linkConfigClass)
+					: usePackageAndName(linkConfigClass, nls);
+			return ResourceBundle.getBundle(baseName, Locale.getDefault(),
+					linkConfigClass.getClassLoader());
+		}
+
+		private static String useClassname(Class<?> clazz) {
+			return clazz.getName();
+		}
+
+		private static String usePackageAndName(Class<?> clazz, I18n nls) {
+			return clazz.getPackage().getName() + "." + nls.value();
+		}
+
+		private static <S> S annotationProxy(Class<S> clazz,
+				final String methodName, final long value) {
+			return clazz.cast(Proxy.newProxyInstance(
+					DefaultConfigurer.class.getClassLoader(),
+					new Class<?>[] { clazz }, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method,
+								Object[] args) throws Throwable {
+							if (methodName.equals(method.getName())) {
+								return value;
+							}
+							throw new UnsupportedOperationException("Method "
+									+ method + " not supported");
+						}
+					}));
 		}
 
 		class CacheKey {
@@ -511,7 +515,12 @@ public abstract class LinkManager {
 		@Override
 		public Object uniqueIdentifier() {
 			try {
-				return new CacheKey();
+				// rebuilt only after attributes were changed
+				CacheKey key = this.cacheKey;
+				if (key == null) {
+					this.cacheKey = key = new CacheKey();
+				}
+				return key;
 			} catch (Exception e) {
 				throw propagate(e);
 			}
@@ -531,7 +540,7 @@ public abstract class LinkManager {
 			if (configAttributeAdapter == null) {
 				cache.put(key,
 						configAttributeAdapter = new ConfigAttributeAdapter<T>(
-								linkConfig, beanProperties, key));
+								beanProperties, choiceProperties, key));
 			}
 			return configAttributeAdapter;
 		}
@@ -570,6 +579,14 @@ public abstract class LinkManager {
 
 	private static final String SCHEMA = "ardulink";
 
+	/**
+	 * System property naming a classpath resource that lists all
+	 * {@link LinkFactory}s (see {@link FactoriesViaIndex}). If set the
+	 * {@link LinkFactoriesProvider}s are not looked up and the module
+	 * directory is not scanned.
+	 */
+	public static final String INDEX_PROPERTY = "ardulink.linkfactory.index";
+
 	public static LinkManager getInstance() {
 		return new LinkManager() {
 
@@ -587,12 +604,13 @@ public abstract class LinkManager {
 
 			@LapsedWith(module = JDK8, value = "Streams")
 			private Optional<LinkFactory<?>> getConnectionFactory(String name) {
-				for (LinkFactory<?> connectionFactory : getConnectionFactories()) {
+				List<LinkFactory> factories = getConnectionFactories();
+				for (LinkFactory<?> connectionFactory : factories) {
 					if (connectionFactory.getName().equals(name)) {
 						return Optional.<LinkFactory<?>> of(connectionFactory);
 					}
 				}
-				for (LinkFactory<?> connectionFactory : getConnectionFactories()) {
+				for (LinkFactory<?> connectionFactory : factories) {
 					Alias alias = connectionFactory.getClass().getAnnotation(LinkFactory.Alias.class);
 					if (alias != null && Arrays.asList(alias.value()).contains(name)) {
 						return Optional.<LinkFactory<?>>of(connectionFactory);
@@ -604,13 +622,18 @@ public abstract class LinkManager {
 			@LapsedWith(module = JDK8, value = "Streams")
 			private List<LinkFactory> getConnectionFactories() {
 				List<LinkFactory> factories = Lists.newArrayList();
-				for (LinkFactoriesProvider linkFactoriesProvider : services(LinkFactoriesProvider.class,
-						moduleClassloader())) {
+				for (LinkFactoriesProvider linkFactoriesProvider : linkFactoriesProviders()) {
 					factories.addAll(linkFactoriesProvider.loadLinkFactories());
 				}
 				return factories;
 			}
 
+			private List<LinkFactoriesProvider> linkFactoriesProviders() {
+				String index = System.getProperty(INDEX_PROPERTY);
+				return index == null ? moduleServices(LinkFactoriesProvider.class)
+						: Collections.<LinkFactoriesProvider> singletonList(FactoriesViaIndex.forResource(index));
+			}
+
 			@Override
 			public Configurer getConfigurer(URI uri) {
 				String name = checkNotNull(extractNameFromURI(uri), uri
@@ -0,0 +1,197 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.linkmanager.providers;
+
+import static org.ardulink.util.Preconditions.checkState;
+import static org.ardulink.util.anno.LapsedWith.JDK8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.ardulink.core.linkmanager.Classloaders;
+import org.ardulink.core.linkmanager.LinkFactory;
+import org.ardulink.util.Lists;
+import org.ardulink.util.ServiceLoaders;
+import org.ardulink.util.Throwables;
+import org.ardulink.util.anno.LapsedWith;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Loads the {@link LinkFactory}s listed in an index resource. Each line of the
+ * index either is the class name of a {@link LinkFactory} or has the format
+ * <code>name:configclass:linkclass</code> known from
+ * <code>META-INF/services/ardulink/linkfactory</code>. Lines starting with
+ * <code>#</code> are ignored. Since no classpath or module directory is
+ * scanned the index has to list all factories that should be available.
+ * 
+ * The index can be written by hand or generated from the classpath of the
+ * application, e.g. as a build step running {@link #main(String[])} with the
+ * application's classpath (see {@link #writeIndex(ClassLoader, Writer)}).
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FactoriesViaIndex implements LinkFactoriesProvider {
+
+	private static volatile FactoriesViaIndex lastLoaded;
+
+	private final ClassLoader classloader;
+	private final String resource;
+	private final List<LinkFactory> factories;
+
+	public FactoriesViaIndex(ClassLoader classloader, String resource) {
+		this.classloader = classloader;
+		this.resource = resource;
+		this.factories = Collections.unmodifiableList(load(classloader, resource));
+	}
+
+	/**
+	 * Returns the provider for the passed index resource loaded via the
+	 * context classloader. The index is read only once as long as neither the
+	 * resource nor the context classloader changes.
+	 * 
+	 * @param resource
+	 *            name of the index resource
+	 * @return provider for the index
+	 */
+	public static FactoriesViaIndex forResource(String resource) {
+		ClassLoader classloader = Thread.currentThread().getContextClassLoader();
+		FactoriesViaIndex provider = lastLoaded;
+		if (provider == null || provider.classloader != classloader
+				|| !provider.resource.equals(resource)) {
+			lastLoaded = provider = new FactoriesViaIndex(classloader, resource);
+		}
+		return provider;
+	}
+
+	@Override
+	public Collection<LinkFactory> loadLinkFactories() {
+		return factories;
+	}
+
+	@LapsedWith(module = JDK8, value = "BufferedReader#lines")
+	private static List<LinkFactory> load(ClassLoader classloader, String resource) {
+		InputStream stream = classloader.getResourceAsStream(resource);
+		checkState(stream != null, "Index %s not found", resource);
+		List<LinkFactory> factories = Lists.newArrayList();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#")) {
+						factories.add(processLine(classloader, line));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return factories;
+		} catch (Exception e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	/**
+	 * Writes an index listing the {@link LinkFactory}s registered via
+	 * {@link java.util.ServiceLoader} and the lines of all
+	 * <code>META-INF/services/ardulink/linkfactory</code> descriptors found by
+	 * the passed classloader.
+	 * 
+	 * @param classloader
+	 *            the classloader to search the factories with
+	 * @param writer
+	 *            the writer to write the index to
+	 * @throws IOException
+	 *             if the index cannot be written
+	 */
+	@LapsedWith(module = JDK8, value = "BufferedReader#lines")
+	public static void writeIndex(ClassLoader classloader, Writer writer)
+			throws IOException {
+		writer.write("# generated by " + FactoriesViaIndex.class.getName()
+				+ "\n");
+		for (LinkFactory<?> factory : ServiceLoaders.services(
+				LinkFactory.class, classloader)) {
+			writer.write(factory.getClass().getName() + "\n");
+		}
+		for (URL url : Classloaders.getResources(classloader,
+				"META-INF/services/ardulink/linkfactory")) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					url.openStream()));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.trim().isEmpty()) {
+						writer.write(line.trim() + "\n");
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Writes the index for the classpath this method is called with (see
+	 * {@link #writeIndex(ClassLoader, Writer)}).
+	 * 
+	 * @param args
+	 *            the file to write the index to
+	 * @throws IOException
+	 *             if the index cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		checkState(args.length == 1, "Usage: %s <index file>",
+				FactoriesViaIndex.class.getName());
+		File file = new File(args[0]);
+		File dir = file.getAbsoluteFile().getParentFile();
+		checkState(dir.isDirectory() || dir.mkdirs(), "Cannot create %s", dir);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			writeIndex(FactoriesViaIndex.class.getClassLoader(), writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static LinkFactory<?> processLine(ClassLoader classloader, String line) throws Exception {
+		if (line.contains(":")) {
+			return FactoriesViaMetaInfArdulink.processLine(classloader, line);
+		}
+		Class<?> clazz = classloader.loadClass(line);
+		checkState(LinkFactory.class.isAssignableFrom(clazz), "%s not of type %s", clazz.getName(),
+				LinkFactory.class.getName());
+		return (LinkFactory<?>) clazz.newInstance();
+	}
+
+}
@@ -29,6 +29,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.ardulink.core.Link;
@@ -126,12 +127,23 @@ public class FactoriesViaMetaInfArdulink implements LinkFactoriesProvider {
 		}
 	}
 
+	private ClassLoader loadedFrom;
+	private List<LinkFactory> factories;
+
 	@Override
+	public synchronized Collection<LinkFactory> loadLinkFactories() {
+		ClassLoader classloader = moduleClassloader();
+		if (classloader != loadedFrom) {
+			factories = Collections.unmodifiableList(loadLinkFactories(classloader));
+			loadedFrom = classloader;
+		}
+		return factories;
+	}
+
 	@LapsedWith(module = JDK8, value = "BufferedReader#lines")
-	public Collection<LinkFactory> loadLinkFactories() {
+	private static List<LinkFactory> loadLinkFactories(ClassLoader classloader) {
 		List<LinkFactory> factories = Lists.newArrayList();
 		try {
-			ClassLoader classloader = moduleClassloader();
 			for (URL url : Classloaders.getResources(classloader, "META-INF/services/ardulink/linkfactory")) {
 				BufferedReader reader = new BufferedReader(
 						new InputStreamReader(url.openStream()));
@@ -149,7 +161,11 @@ public class FactoriesViaMetaInfArdulink implements LinkFactoriesProvider {
 		}
 	}
 
-	private LinkFactory<LinkConfig> processLine(ClassLoader classloader,
+	/**
+	 * Creates a {@link LinkFactory} for a line in the format
+	 * <code>name:configclass:linkclass</code>.
+	 */
+	static LinkFactory<LinkConfig> processLine(ClassLoader classloader,
 			String line) throws ClassNotFoundException {
 		String[] split = line.split("\\:");
 		checkState(split.length == 3,
@@ -157,7 +173,7 @@ public class FactoriesViaMetaInfArdulink implements LinkFactoriesProvider {
 		return createLinkFactory(classloader, split[0], split[1], split[2]);
 	}
 
-	private LinkFactory<LinkConfig> createLinkFactory(ClassLoader classloader,
+	private static LinkFactory<LinkConfig> createLinkFactory(ClassLoader classloader,
 			String name, String configClassName, String linkClassName)
 			throws ClassNotFoundException {
 		return new GenericLinkFactory(classloader, name, configClassName,
@@ -16,8 +16,7 @@ limitations under the License.
 
 package org.ardulink.core.linkmanager.providers;
 
-import static org.ardulink.core.linkmanager.Classloaders.moduleClassloader;
-import static org.ardulink.util.ServiceLoaders.services;
+import static org.ardulink.core.linkmanager.Classloaders.moduleServices;
 
 import java.util.Collection;
 
@@ -35,7 +34,7 @@ public class FactoriesViaServiceLoader implements LinkFactoriesProvider {
 
 	@Override
 	public Collection<LinkFactory> loadLinkFactories() {
-		return services(LinkFactory.class, moduleClassloader());
+		return moduleServices(LinkFactory.class);
 	}
 
 }
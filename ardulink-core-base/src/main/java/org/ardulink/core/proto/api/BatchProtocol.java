@@ -0,0 +1,41 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.api;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.ardulink.core.messages.api.ToDeviceMessage;
+
+public interface BatchProtocol extends ByteBufferProtocol {
+
+	/**
+	 * Encodes several messages into as few frames as possible. Only the id
+	 * of the last message (if it is a {@link MessageIdHolder}) is sent, the
+	 * device has to reply to it after all messages were processed.
+	 * 
+	 * @param messages
+	 *            the messages to encode (start/stop listening, pin state
+	 *            changes and (no) tones)
+	 * @param target
+	 *            the buffer to encode the messages into
+	 * @throws java.nio.BufferOverflowException
+	 *             if the messages do not fit into <code>target</code>
+	 */
+	void toDevice(List<? extends ToDeviceMessage> messages, ByteBuffer target);
+
+}
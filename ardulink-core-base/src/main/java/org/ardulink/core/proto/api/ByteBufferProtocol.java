@@ -0,0 +1,64 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ardulink.core.proto.api;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.ardulink.core.messages.api.ToDeviceMessageCustom;
+import org.ardulink.core.messages.api.ToDeviceMessageKeyPress;
+import org.ardulink.core.messages.api.ToDeviceMessageNoTone;
+import org.ardulink.core.messages.api.ToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.api.ToDeviceMessageStartListening;
+import org.ardulink.core.messages.api.ToDeviceMessageStopListening;
+import org.ardulink.core.messages.api.ToDeviceMessageTone;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link Protocol} that is able to encode the messages sent to the device
+ * directly into a buffer supplied by the caller. This way the caller can reuse
+ * the same buffer for all messages. Each method writes the complete message
+ * including the protocol's separator starting at the buffer's current
+ * position. If the message does not fit into the buffer's remaining space a
+ * {@link BufferOverflowException} is thrown, the buffer's position is
+ * undefined then.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public interface ByteBufferProtocol extends Protocol {
+
+	void toDevice(ToDeviceMessageStartListening startListening,
+			ByteBuffer target);
+
+	void toDevice(ToDeviceMessageStopListening stopListening, ByteBuffer target);
+
+	void toDevice(ToDeviceMessagePinStateChange pinStateChange,
+			ByteBuffer target);
+
+	void toDevice(ToDeviceMessageKeyPress keyPress, ByteBuffer target);
+
+	void toDevice(ToDeviceMessageTone tone, ByteBuffer target);
+
+	void toDevice(ToDeviceMessageNoTone noTone, ByteBuffer target);
+
+	void toDevice(ToDeviceMessageCustom custom, ByteBuffer target);
+
+}
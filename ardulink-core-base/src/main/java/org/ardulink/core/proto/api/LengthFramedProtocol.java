@@ -0,0 +1,62 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.api;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link Protocol} whose frames are not divided by a separator but carry their
+ * length: Each frame starts with {@link #getStartOfFrame()} followed by one
+ * byte holding the length of the payload, the payload itself and
+ * {@link #getTrailerLength()} bytes (e.g. a checksum). The frames passed to
+ * {@link #fromDevice(byte[])} are complete frames including the header and
+ * the trailer. {@link #getSeparator()} returns an empty array.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public interface LengthFramedProtocol extends Protocol {
+
+	/**
+	 * number of bytes in front of the payload: start of frame and length
+	 */
+	int HEADER_LENGTH = 2;
+
+	/**
+	 * @return the byte each frame starts with
+	 */
+	byte getStartOfFrame();
+
+	/**
+	 * @return number of bytes following the payload
+	 */
+	int getTrailerLength();
+
+	/**
+	 * Verifies a frame received. If the frame is not intact the reader drops
+	 * the start of frame byte only and searches for the next one, so a
+	 * corrupted length byte does not swallow the frames following.
+	 *
+	 * @param frame
+	 *            the complete frame
+	 * @return <code>true</code> if the frame was received without errors
+	 */
+	boolean isIntact(byte[] frame);
+
+}
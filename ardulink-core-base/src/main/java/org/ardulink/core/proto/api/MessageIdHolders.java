@@ -24,6 +24,17 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
+import org.ardulink.core.Pin;
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Tone;
+import org.ardulink.core.messages.api.ToDeviceMessage;
+import org.ardulink.core.messages.api.ToDeviceMessageCustom;
+import org.ardulink.core.messages.api.ToDeviceMessageKeyPress;
+import org.ardulink.core.messages.api.ToDeviceMessageNoTone;
+import org.ardulink.core.messages.api.ToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.api.ToDeviceMessageStartListening;
+import org.ardulink.core.messages.api.ToDeviceMessageStopListening;
+import org.ardulink.core.messages.api.ToDeviceMessageTone;
 import org.ardulink.util.Optional;
 
 /**
@@ -89,10 +100,17 @@ public final class MessageIdHolders {
 	}
 
 	/**
-	 * Creates a dynamic proxy that implements MessageIdHolder automatically.
-	 * Calls to {@link MessageIdHolder#getId()} will return the passed
-	 * <code>messageId</code>. All other calls are forwarded to the passed
-	 * <code>delegateTo</code>.
+	 * Adds a messageId to the passed message. For the {@link ToDeviceMessage}s
+	 * known to Ardulink a wrapper implementing the message's interface and
+	 * {@link MessageIdHolder} is returned that calls the passed instance
+	 * directly. Such a wrapper only implements the matched message interface
+	 * (and MessageIdHolder), not any further interfaces of
+	 * <code>delegateTo</code>. For all other types a dynamic proxy is created
+	 * that implements all interfaces of <code>delegateTo</code> and
+	 * MessageIdHolder. Calls to {@link MessageIdHolder#getId()} will return
+	 * the passed <code>messageId</code>. All other calls (including
+	 * <code>equals</code>, <code>hashCode</code> and <code>toString</code>)
+	 * are forwarded to the passed <code>delegateTo</code>.
 	 * 
 	 * @param delegateTo
 	 *            the instance to delegate all calls except
@@ -100,10 +118,32 @@ public final class MessageIdHolders {
 	 * @param messageId
 	 *            the messageId to return when {@link MessageIdHolder#getId()}
 	 *            is called
-	 * @return dynamic proxy implementing {@link MessageIdHolder}
+	 * @return instance implementing {@link MessageIdHolder}
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T addMessageId(T delegateTo, long messageId) {
+		if (delegateTo instanceof ToDeviceMessagePinStateChange) {
+			return (T) new PinStateChangeWithId(
+					(ToDeviceMessagePinStateChange) delegateTo, messageId);
+		} else if (delegateTo instanceof ToDeviceMessageStartListening) {
+			return (T) new StartListeningWithId(
+					(ToDeviceMessageStartListening) delegateTo, messageId);
+		} else if (delegateTo instanceof ToDeviceMessageStopListening) {
+			return (T) new StopListeningWithId(
+					(ToDeviceMessageStopListening) delegateTo, messageId);
+		} else if (delegateTo instanceof ToDeviceMessageKeyPress) {
+			return (T) new KeyPressWithId((ToDeviceMessageKeyPress) delegateTo,
+					messageId);
+		} else if (delegateTo instanceof ToDeviceMessageTone) {
+			return (T) new ToneWithId((ToDeviceMessageTone) delegateTo,
+					messageId);
+		} else if (delegateTo instanceof ToDeviceMessageNoTone) {
+			return (T) new NoToneWithId((ToDeviceMessageNoTone) delegateTo,
+					messageId);
+		} else if (delegateTo instanceof ToDeviceMessageCustom) {
+			return (T) new CustomWithId((ToDeviceMessageCustom) delegateTo,
+					messageId);
+		}
 		return (T) Proxy.newProxyInstance(
 				delegateTo.getClass().getClassLoader(),
 				insertInto(Class.class, MessageIdHolder.class, delegateTo
@@ -111,6 +151,167 @@ public final class MessageIdHolders {
 				new MessageIdHolderInvocationHandler(delegateTo, messageId));
 	}
 
+	private abstract static class WithId<T> implements MessageIdHolder {
+
+		protected final T delegate;
+		private final long messageId;
+
+		public WithId(T delegate, long messageId) {
+			this.delegate = delegate;
+			this.messageId = messageId;
+		}
+
+		@Override
+		public long getId() {
+			return messageId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return delegate.equals(obj);
+		}
+
+		@Override
+		public int hashCode() {
+			return delegate.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return delegate.toString();
+		}
+
+	}
+
+	private static class PinStateChangeWithId extends
+			WithId<ToDeviceMessagePinStateChange> implements
+			ToDeviceMessagePinStateChange {
+
+		public PinStateChangeWithId(ToDeviceMessagePinStateChange delegate,
+				long messageId) {
+			super(delegate, messageId);
+		}
+
+		@Override
+		public Pin getPin() {
+			return delegate.getPin();
+		}
+
+		@Override
+		public Object getValue() {
+			return delegate.getValue();
+		}
+
+	}
+
+	private static class StartListeningWithId extends
+			WithId<ToDeviceMessageStartListening> implements
+			ToDeviceMessageStartListening {
+
+		public StartListeningWithId(ToDeviceMessageStartListening delegate,
+				long messageId) {
+			super(delegate, messageId);
+		}
+
+		@Override
+		public Pin getPin() {
+			return delegate.getPin();
+		}
+
+	}
+
+	private static class StopListeningWithId extends
+			WithId<ToDeviceMessageStopListening> implements
+			ToDeviceMessageStopListening {
+
+		public StopListeningWithId(ToDeviceMessageStopListening delegate,
+				long messageId) {
+			super(delegate, messageId);
+		}
+
+		@Override
+		public Pin getPin() {
+			return delegate.getPin();
+		}
+
+	}
+
+	private static class KeyPressWithId extends
+			WithId<ToDeviceMessageKeyPress> implements ToDeviceMessageKeyPress {
+
+		public KeyPressWithId(ToDeviceMessageKeyPress delegate, long messageId) {
+			super(delegate, messageId);
+		}
+
+		@Override
+		public char getKeychar() {
+			return delegate.getKeychar();
+		}
+
+		@Override
+		public int getKeycode() {
+			return delegate.getKeycode();
+		}
+
+		@Override
+		public int getKeylocation() {
+			return delegate.getKeylocation();
+		}
+
+		@Override
+		public int getKeymodifiers() {
+			return delegate.getKeymodifiers();
+		}
+
+		@Override
+		public int getKeymodifiersex() {
+			return delegate.getKeymodifiersex();
+		}
+
+	}
+
+	private static class ToneWithId extends WithId<ToDeviceMessageTone>
+			implements ToDeviceMessageTone {
+
+		public ToneWithId(ToDeviceMessageTone delegate, long messageId) {
+			super(delegate, messageId);
+		}
+
+		@Override
+		public Tone getTone() {
+			return delegate.getTone();
+		}
+
+	}
+
+	private static class NoToneWithId extends WithId<ToDeviceMessageNoTone>
+			implements ToDeviceMessageNoTone {
+
+		public NoToneWithId(ToDeviceMessageNoTone delegate, long messageId) {
+			super(delegate, messageId);
+		}
+
+		@Override
+		public AnalogPin getAnalogPin() {
+			return delegate.getAnalogPin();
+		}
+
+	}
+
+	private static class CustomWithId extends WithId<ToDeviceMessageCustom>
+			implements ToDeviceMessageCustom {
+
+		public CustomWithId(ToDeviceMessageCustom delegate, long messageId) {
+			super(delegate, messageId);
+		}
+
+		@Override
+		public String[] getMessages() {
+			return delegate.getMessages();
+		}
+
+	}
+
 	private static <T> T[] insertInto(Class<T> type, T toAdd, T[] src) {
 		T[] newArray = newArray(type, src.length + 1);
 		newArray[0] = toAdd;
@@ -0,0 +1,51 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.api;
+
+import org.ardulink.core.events.PrimitivePinListener;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link Protocol} that is able to decode pin state changes received from the
+ * device without creating message objects by passing the pin's number and
+ * value directly to a {@link PrimitivePinListener}.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public interface PrimitivePinProtocol extends Protocol {
+
+	/**
+	 * Decodes the passed bytes if they are a pin state change.
+	 *
+	 * @param bytes
+	 *            the message received
+	 * @param listener
+	 *            the listener to call with the pin state change
+	 * @param nanoTime
+	 *            {@link System#nanoTime()} when the message was received
+	 * @return <code>true</code> if the message was a pin state change and the
+	 *         listener was called, <code>false</code> if the message has to be
+	 *         decoded using {@link #fromDevice(byte[])}
+	 */
+	boolean pinStateFromDevice(byte[] bytes, PrimitivePinListener listener,
+			long nanoTime);
+
+}
@@ -18,11 +18,14 @@ package org.ardulink.core.proto.api;
 
 import static org.ardulink.util.anno.LapsedWith.JDK8;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.WeakHashMap;
 
-import org.ardulink.util.Lists;
 import org.ardulink.util.Optional;
 import org.ardulink.util.anno.LapsedWith;
 
@@ -36,6 +39,25 @@ import org.ardulink.util.anno.LapsedWith;
  */
 public final class Protocols {
 
+	private static final class Registry {
+
+		private final Map<String, Protocol> protocols;
+
+		@LapsedWith(module = JDK8, value = "Streams")
+		private Registry(ClassLoader classloader) {
+			Map<String, Protocol> protocols = new LinkedHashMap<String, Protocol>();
+			for (Protocol protocol : ServiceLoader.load(Protocol.class, classloader)) {
+				if (!protocols.containsKey(protocol.getName())) {
+					protocols.put(protocol.getName(), protocol);
+				}
+			}
+			this.protocols = Collections.unmodifiableMap(protocols);
+		}
+
+	}
+
+	private static final Map<ClassLoader, Registry> registries = new WeakHashMap<ClassLoader, Registry>();
+
 	private Protocols() {
 		super();
 	}
@@ -45,32 +67,32 @@ public final class Protocols {
 				"No protocol with name %s registered", name);
 	}
 
-	@LapsedWith(module = JDK8, value = "Streams")
 	public static Optional<Protocol> tryByName(String name) {
-		for (Iterator<Protocol> it = iterator(); it.hasNext();) {
-			Protocol protocol = it.next();
-			if (protocol.getName().equals(name)) {
-				return Optional.of(protocol);
-			}
-		}
-		return Optional.absent();
+		return Optional.ofNullable(registry().protocols.get(name));
 	}
 
 	public static List<Protocol> list() {
-		return Lists.newArrayList(iterator());
+		return new ArrayList<Protocol>(registry().protocols.values());
 	}
 
-	@LapsedWith(module = JDK8, value = "Streams")
 	public static List<String> names() {
-		List<String> names = Lists.newArrayList();
-		for (Iterator<Protocol> it = iterator(); it.hasNext();) {
-			names.add(it.next().getName());
-		}
-		return names;
+		return new ArrayList<String>(registry().protocols.keySet());
 	}
 
-	private static Iterator<Protocol> iterator() {
-		return ServiceLoader.load(Protocol.class).iterator();
+	/**
+	 * Protocols are looked up once per context classloader and shared
+	 * afterwards, so threads having different context classloaders do not
+	 * replace each other's protocols.
+	 */
+	private static Registry registry() {
+		ClassLoader classloader = Thread.currentThread().getContextClassLoader();
+		synchronized (registries) {
+			Registry registry = registries.get(classloader);
+			if (registry == null) {
+				registries.put(classloader, registry = new Registry(classloader));
+			}
+			return registry;
+		}
 	}
 
 }
@@ -50,20 +50,96 @@ public class ALProtoBuilder {
 				"tone"), NOTONE("notn"), CUSTOM_MESSAGE("cust"), RPLY("rply"), READY(
 				"ready"), CUSTOM_EVENT("cevnt");
 
-		private String proto;
+		private final String proto;
+		private final byte[] bytes;
+		private final byte[] prefix;
 
 		private ALPProtocolKey(String proto) {
 			this.proto = proto;
+			this.bytes = proto.getBytes();
+			this.prefix = ("alp://" + proto + "/").getBytes();
+		}
+
+		/**
+		 * Returns the precomputed start of all messages of this key including
+		 * the trailing slash (e.g. <code>alp://ppin/</code>). The returned
+		 * array must not be modified.
+		 */
+		byte[] prefix() {
+			return prefix;
 		}
 
 		public static Optional<ALPProtocolKey> fromString(String string) {
-			for (ALPProtocolKey alpProtocolKeys : values()) {
-				if (alpProtocolKeys.proto.equals(string)) {
-					return Optional.of(alpProtocolKeys);
+			if (string == null) {
+				return Optional.absent();
+			}
+			byte[] bytes = string.getBytes();
+			return Optional.ofNullable(fromBytes(bytes, 0, bytes.length));
+		}
+
+		/**
+		 * Looks up the key whose command is stored in <code>bytes</code>
+		 * starting at <code>offset</code> without creating any objects.
+		 * 
+		 * @param bytes the bytes holding the command
+		 * @param offset offset of the command's first byte
+		 * @param length length of the command
+		 * @return the matching key or <code>null</code> if there is none
+		 */
+		public static ALPProtocolKey fromBytes(byte[] bytes, int offset,
+				int length) {
+			ALPProtocolKey candidate = candidate(bytes, offset, length);
+			return candidate != null && candidate.matches(bytes, offset, length) ? candidate
+					: null;
+		}
+
+		private static ALPProtocolKey candidate(byte[] bytes, int offset,
+				int length) {
+			if (length < 4 || length > 5) {
+				return null;
+			}
+			switch (bytes[offset]) {
+			case 'a':
+				return ANALOG_PIN_READ;
+			case 'c':
+				return length == 4 ? CUSTOM_MESSAGE : CUSTOM_EVENT;
+			case 'd':
+				return DIGITAL_PIN_READ;
+			case 'k':
+				return CHAR_PRESSED;
+			case 'n':
+				return NOTONE;
+			case 'p':
+				return bytes[offset + 3] == 'w' ? POWER_PIN_SWITCH
+						: POWER_PIN_INTENSITY;
+			case 'r':
+				return length == 4 ? RPLY : READY;
+			case 's':
+				boolean analog = bytes[offset + 3] == 'a';
+				if (bytes[offset + 1] == 'r') {
+					return analog ? START_LISTENING_ANALOG
+							: START_LISTENING_DIGITAL;
 				}
+				return analog ? STOP_LISTENING_ANALOG : STOP_LISTENING_DIGITAL;
+			case 't':
+				return TONE;
+			default:
+				return null;
 			}
-			return Optional.absent();
 		}
+
+		private boolean matches(byte[] other, int offset, int length) {
+			if (this.bytes.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (this.bytes[i] != other[offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
 	}
 
 	public static ALProtoBuilder alpProtocolMessage(ALPProtocolKey command) {
@@ -0,0 +1,131 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.impl;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.ardulink.core.proto.api.MessageIdHolder;
+import org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Writes the parts of ALP messages into a {@link ByteBuffer}. Produces the same
+ * bytes as {@link ALProtoBuilder} does but without creating any intermediate
+ * objects.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class ALProtoEncoder {
+
+	private static final byte[] ID_PARAM = "?id=".getBytes();
+
+	private ALProtoEncoder() {
+		super();
+	}
+
+	/**
+	 * Writes <code>alp://&lt;command&gt;/</code>.
+	 */
+	static void putCommand(ByteBuffer target, ALPProtocolKey key) {
+		target.put(key.prefix());
+	}
+
+	/**
+	 * Writes <code>alp://&lt;command&gt;</code> for messages that do not have
+	 * any values.
+	 */
+	static void putCommandOnly(ByteBuffer target, ALPProtocolKey key) {
+		byte[] prefix = key.prefix();
+		target.put(prefix, 0, prefix.length - 1);
+	}
+
+	static void putPin(ByteBuffer target, int pin) {
+		checkArgument(pin >= 0, "Pin must not be negative but was %s", pin);
+		putLong(target, pin);
+	}
+
+	static void putMessageId(ByteBuffer target, Object message) {
+		if (message instanceof MessageIdHolder) {
+			target.put(ID_PARAM);
+			putLong(target, ((MessageIdHolder) message).getId());
+		}
+	}
+
+	static void putLong(ByteBuffer target, long value) {
+		if (value == Long.MIN_VALUE) {
+			target.put(String.valueOf(value).getBytes());
+			return;
+		}
+		if (value < 0) {
+			target.put((byte) '-');
+			value = -value;
+		}
+		int digits = digits(value);
+		if (target.remaining() < digits) {
+			throw new BufferOverflowException();
+		}
+		int position = target.position();
+		for (int i = position + digits - 1; i >= position; i--) {
+			target.put(i, (byte) ('0' + value % 10));
+			value /= 10;
+		}
+		target.position(position + digits);
+	}
+
+	private static int digits(long value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	static void putChar(ByteBuffer target, char c) {
+		if (c < 0x80) {
+			target.put((byte) c);
+		} else {
+			target.put(String.valueOf(c).getBytes());
+		}
+	}
+
+	/**
+	 * Writes the passed String. Strings consisting of US-ASCII characters only
+	 * are written char by char, all others are encoded using the default
+	 * charset like {@link String#getBytes()} does.
+	 */
+	static void putString(ByteBuffer target, String string) {
+		int position = target.position();
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c >= 0x80) {
+				target.position(position);
+				target.put(string.getBytes());
+				return;
+			}
+			target.put((byte) c);
+		}
+	}
+
+}
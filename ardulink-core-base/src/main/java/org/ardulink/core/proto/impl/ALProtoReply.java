@@ -0,0 +1,185 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.impl;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ardulink.core.messages.api.FromDeviceMessageReply;
+import org.ardulink.util.Throwables;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Reply received from the device. The parameters' syntax is checked when the
+ * reply is created but the map is built not before it is requested.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+final class ALProtoReply implements FromDeviceMessageReply {
+
+	private final boolean ok;
+	private final long id;
+
+	private final byte[] bytes;
+	private final int queryStart;
+	private final int queryEnd;
+
+	private volatile Map<String, String> parameters;
+
+	ALProtoReply(boolean ok, long id, byte[] bytes, int queryStart,
+			int queryEnd) {
+		this.ok = ok;
+		this.id = id;
+		this.bytes = bytes;
+		this.queryStart = queryStart;
+		this.queryEnd = queryEnd;
+		checkParameters(bytes, queryStart, queryEnd);
+	}
+
+	@Override
+	public boolean isOk() {
+		return ok;
+	}
+
+	@Override
+	public long getId() {
+		return id;
+	}
+
+	@Override
+	public Map<String, ? extends Object> getParameters() {
+		Map<String, String> locParameters = this.parameters;
+		if (locParameters == null) {
+			this.parameters = locParameters = unmodifiableMap(parseParameters(
+					bytes, queryStart, queryEnd));
+		}
+		return locParameters;
+	}
+
+	static Map<String, String> parseParameters(byte[] bytes, int start, int end) {
+		Map<String, String> params = new HashMap<String, String>();
+		int paramStart = start;
+		while (paramStart < end) {
+			int paramEnd = indexOf(bytes, '&', paramStart, end);
+			int eq = indexOf(bytes, '=', paramStart, paramEnd);
+			params.put(decode(bytes, paramStart, eq),
+					decode(bytes, eq + 1,
+							valueEnd(bytes, paramStart, eq, paramEnd)));
+			paramStart = paramEnd + 1;
+		}
+		return params;
+	}
+
+	/**
+	 * Checks that each parameter has a value without creating any object so
+	 * malformed replies are rejected while decoding and not when the
+	 * parameters are requested.
+	 */
+	static void checkParameters(byte[] bytes, int start, int end) {
+		int paramStart = start;
+		while (paramStart < end) {
+			int paramEnd = indexOf(bytes, '&', paramStart, end);
+			valueEnd(bytes, paramStart,
+					indexOf(bytes, '=', paramStart, paramEnd), paramEnd);
+			paramStart = paramEnd + 1;
+		}
+	}
+
+	private static int valueEnd(byte[] bytes, int paramStart, int eq,
+			int paramEnd) {
+		int valueEnd = indexOf(bytes, '=', eq + 1, paramEnd);
+		if (eq + 1 >= valueEnd) {
+			throw new ArrayIndexOutOfBoundsException(
+					"Parameter without value: "
+							+ decode(bytes, paramStart, paramEnd));
+		}
+		return valueEnd;
+	}
+
+	/**
+	 * Returns the position of the value of parameter <code>name</code> (the
+	 * position directly after the '=') or <code>-1</code> if the query does
+	 * not contain the parameter.
+	 */
+	static int valueStart(byte[] bytes, int start, int end, byte[] name) {
+		int found = -1;
+		int paramStart = start;
+		while (paramStart < end) {
+			int paramEnd = indexOf(bytes, '&', paramStart, end);
+			int eq = indexOf(bytes, '=', paramStart, paramEnd);
+			if (eq - paramStart == name.length
+					&& regionMatches(bytes, paramStart, name)) {
+				// last one wins like in a map
+				found = eq + 1;
+			}
+			paramStart = paramEnd + 1;
+		}
+		return found;
+	}
+
+	static int indexOf(byte[] bytes, char c, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == c) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	private static boolean regionMatches(byte[] bytes, int offset, byte[] other) {
+		for (int i = 0; i < other.length; i++) {
+			if (bytes[offset + i] != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a String of the passed range decoding percent-escaped octets the
+	 * same way {@link java.net.URI} does.
+	 */
+	static String decode(byte[] bytes, int start, int end) {
+		if (indexOf(bytes, '%', start, end) == end) {
+			return new String(bytes, start, end - start);
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream(end - start);
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == '%' && i + 2 < end) {
+				os.write(Character.digit(bytes[i + 1], 16) << 4
+						| Character.digit(bytes[i + 2], 16));
+				i += 2;
+			} else {
+				os.write(bytes[i]);
+			}
+		}
+		try {
+			return os.toString("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+}
@@ -0,0 +1,690 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.impl;
+
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.Pin.Type.ANALOG;
+import static org.ardulink.core.Pin.Type.DIGITAL;
+import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.START;
+import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.STOP;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ardulink.core.Pin;
+import org.ardulink.core.events.PrimitivePinListener;
+import org.ardulink.core.messages.api.FromDeviceMessage;
+import org.ardulink.core.messages.api.ToDeviceMessage;
+import org.ardulink.core.messages.api.ToDeviceMessageCustom;
+import org.ardulink.core.messages.api.ToDeviceMessageKeyPress;
+import org.ardulink.core.messages.api.ToDeviceMessageNoTone;
+import org.ardulink.core.messages.api.ToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.api.ToDeviceMessageStartListening;
+import org.ardulink.core.messages.api.ToDeviceMessageStopListening;
+import org.ardulink.core.messages.api.ToDeviceMessageTone;
+import org.ardulink.core.messages.impl.DefaultFromDeviceChangeListeningState;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessageCustom;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessagePinStateChanged;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessageReady;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessageReply;
+import org.ardulink.core.proto.api.BatchProtocol;
+import org.ardulink.core.proto.api.LengthFramedProtocol;
+import org.ardulink.core.proto.api.MessageIdHolder;
+import org.ardulink.core.proto.api.PrimitivePinProtocol;
+import org.ardulink.core.proto.api.Protocol;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Compact binary counterpart of {@link ArdulinkProtocol2}. Each frame is
+ * 
+ * <pre>
+ * 0xA5 | length | opcode | [id] | fields... | crc16 (big endian)
+ * </pre>
+ * 
+ * where <code>length</code> is the number of bytes from the opcode up to the
+ * last field (at most {@value #MAX_PAYLOAD_LENGTH}). The opcode's highest bit
+ * ({@link #FLAG_ID}) signals that a message id follows the opcode. Ids, pins
+ * and values are unsigned LEB128 varints (ints that are negative take five
+ * bytes), strings are a varint length followed by the UTF-8 bytes. The CRC is
+ * a CRC-16/CCITT-FALSE calculated over the length byte and the payload. An
+ * analog sample takes 7 or 8 bytes compared to about 20 bytes of ALP.
+ * 
+ * Several commands can be sent in one {@link #BATCH} frame: its payload is
+ * the batch's id (if any) followed by the commands, each being the command's
+ * opcode (without id) and its fields.
+ * 
+ * Encoding to a {@link ByteBuffer} and decoding pin state changes using
+ * {@link #pinStateFromDevice(byte[], PrimitivePinListener, long)} do not
+ * create any objects.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ArdulinkBinaryProtocol implements BatchProtocol,
+		PrimitivePinProtocol, LengthFramedProtocol {
+
+	public static final byte START_OF_FRAME = (byte) 0xA5;
+	public static final int MAX_PAYLOAD_LENGTH = 0xFF;
+	public static final int CRC_LENGTH = 2;
+
+	public static final int FLAG_ID = 0x80;
+
+	// host to device
+	public static final int POWER_PIN_SWITCH = 0x01;
+	public static final int POWER_PIN_INTENSITY = 0x02;
+	public static final int START_LISTENING_ANALOG = 0x03;
+	public static final int START_LISTENING_DIGITAL = 0x04;
+	public static final int STOP_LISTENING_ANALOG = 0x05;
+	public static final int STOP_LISTENING_DIGITAL = 0x06;
+	public static final int CHAR_PRESSED = 0x07;
+	public static final int TONE = 0x08;
+	public static final int NOTONE = 0x09;
+	public static final int CUSTOM_MESSAGE = 0x0A;
+	public static final int BATCH = 0x0B;
+
+	// device to host (the device may send the listening opcodes as well)
+	public static final int ANALOG_PIN_READ = 0x10;
+	public static final int DIGITAL_PIN_READ = 0x11;
+	public static final int READY = 0x12;
+	public static final int RPLY = 0x13;
+	public static final int CUSTOM_EVENT = 0x14;
+
+	private static final int OPCODE_MASK = 0x7F;
+	private static final int MAX_VARINT_LENGTH = 10;
+	private static final int MAX_FRAME_LENGTH = HEADER_LENGTH
+			+ MAX_PAYLOAD_LENGTH + CRC_LENGTH;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final char[] CRC_TABLE = crcTable();
+
+	private final String name = "ardulink-binary";
+	private final byte[] separator = new byte[0];
+
+	private static final ArdulinkBinaryProtocol instance = new ArdulinkBinaryProtocol();
+
+	public static Protocol instance() {
+		return instance;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public byte[] getSeparator() {
+		return separator;
+	}
+
+	@Override
+	public byte getStartOfFrame() {
+		return START_OF_FRAME;
+	}
+
+	@Override
+	public int getTrailerLength() {
+		return CRC_LENGTH;
+	}
+
+	@Override
+	public boolean isIntact(byte[] frame) {
+		if (frame.length < HEADER_LENGTH + 1 + CRC_LENGTH
+				|| frame[0] != START_OF_FRAME
+				|| frame.length != HEADER_LENGTH + (frame[1] & 0xFF)
+						+ CRC_LENGTH) {
+			return false;
+		}
+		int crcAt = frame.length - CRC_LENGTH;
+		return crc16(frame, 1, crcAt - 1) == ((frame[crcAt] & 0xFF) << 8 | frame[crcAt + 1] & 0xFF);
+	}
+
+	// -- host to device -----------------------------------------------------
+
+	@Override
+	public byte[] toDevice(ToDeviceMessageStartListening startListening) {
+		ByteBuffer buffer = newBuffer();
+		toDevice(startListening, buffer);
+		return toBytes(buffer);
+	}
+
+	@Override
+	public byte[] toDevice(ToDeviceMessageStopListening stopListening) {
+		ByteBuffer buffer = newBuffer();
+		toDevice(stopListening, buffer);
+		return toBytes(buffer);
+	}
+
+	@Override
+	public byte[] toDevice(ToDeviceMessagePinStateChange pinStateChange) {
+		ByteBuffer buffer = newBuffer();
+		toDevice(pinStateChange, buffer);
+		return toBytes(buffer);
+	}
+
+	@Override
+	public byte[] toDevice(ToDeviceMessageKeyPress keyPress) {
+		ByteBuffer buffer = newBuffer();
+		toDevice(keyPress, buffer);
+		return toBytes(buffer);
+	}
+
+	@Override
+	public byte[] toDevice(ToDeviceMessageTone tone) {
+		ByteBuffer buffer = newBuffer();
+		toDevice(tone, buffer);
+		return toBytes(buffer);
+	}
+
+	@Override
+	public byte[] toDevice(ToDeviceMessageNoTone noTone) {
+		ByteBuffer buffer = newBuffer();
+		toDevice(noTone, buffer);
+		return toBytes(buffer);
+	}
+
+	@Override
+	public byte[] toDevice(ToDeviceMessageCustom custom) {
+		ByteBuffer buffer = ByteBuffer.allocate(maxLength(custom));
+		toDevice(custom, buffer);
+		return toBytes(buffer);
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessageStartListening startListening,
+			ByteBuffer target) {
+		Pin pin = startListening.getPin();
+		putPinMessage(target, startListening, pin, START_LISTENING_ANALOG,
+				START_LISTENING_DIGITAL);
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessageStopListening stopListening,
+			ByteBuffer target) {
+		Pin pin = stopListening.getPin();
+		putPinMessage(target, stopListening, pin, STOP_LISTENING_ANALOG,
+				STOP_LISTENING_DIGITAL);
+	}
+
+	private static void putPinMessage(ByteBuffer target, Object message,
+			Pin pin, int analogOpcode, int digitalOpcode) {
+		int start = putStart(target, message, opcode(pin, analogOpcode,
+				digitalOpcode));
+		putPin(target, pin.pinNum());
+		putEnd(target, start);
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessagePinStateChange pinStateChange,
+			ByteBuffer target) {
+		Pin pin = pinStateChange.getPin();
+		int start = putStart(target, pinStateChange, opcode(pin,
+				POWER_PIN_INTENSITY, POWER_PIN_SWITCH));
+		putFields(target, pinStateChange);
+		putEnd(target, start);
+	}
+
+	private static void putFields(ByteBuffer target,
+			ToDeviceMessagePinStateChange pinStateChange) {
+		Pin pin = pinStateChange.getPin();
+		putPin(target, pin.pinNum());
+		if (pin.is(ANALOG)) {
+			putInt(target, ((Integer) pinStateChange.getValue()).intValue());
+		} else {
+			putInt(target, ((Boolean) pinStateChange.getValue())
+					.booleanValue() ? 1 : 0);
+		}
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessageKeyPress keyPress, ByteBuffer target) {
+		int start = putStart(target, keyPress, CHAR_PRESSED);
+		putInt(target, keyPress.getKeychar());
+		putInt(target, keyPress.getKeycode());
+		putInt(target, keyPress.getKeylocation());
+		putInt(target, keyPress.getKeymodifiers());
+		putInt(target, keyPress.getKeymodifiersex());
+		putEnd(target, start);
+	}
+
+	/**
+	 * The duration is sent incremented by one, so <code>0</code> means the
+	 * tone is played until a no tone message is sent.
+	 */
+	@Override
+	public void toDevice(ToDeviceMessageTone tone, ByteBuffer target) {
+		int start = putStart(target, tone, TONE);
+		putFields(target, tone);
+		putEnd(target, start);
+	}
+
+	private static void putFields(ByteBuffer target, ToDeviceMessageTone tone) {
+		Long duration = tone.getTone().getDurationInMillis();
+		putPin(target, tone.getTone().getPin().pinNum());
+		putInt(target, tone.getTone().getHertz());
+		putVarint(target, duration == null ? 0 : duration.longValue() + 1);
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessageNoTone noTone, ByteBuffer target) {
+		int start = putStart(target, noTone, NOTONE);
+		putPin(target, noTone.getAnalogPin().pinNum());
+		putEnd(target, start);
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessageCustom custom, ByteBuffer target) {
+		int start = putStart(target, custom, CUSTOM_MESSAGE);
+		for (String message : custom.getMessages()) {
+			putString(target, String.valueOf(message));
+		}
+		putEnd(target, start);
+	}
+
+	/**
+	 * Encodes the messages into {@link #BATCH} frames. The payload of each
+	 * frame is kept small enough that the id can be inserted in front of the
+	 * commands once the last message was encoded.
+	 */
+	@Override
+	public void toDevice(List<? extends ToDeviceMessage> messages,
+			ByteBuffer target) {
+		int next = 0;
+		while (next < messages.size()) {
+			int start = target.position();
+			target.put(START_OF_FRAME);
+			// length is patched by putEnd
+			target.put((byte) 0);
+			target.put((byte) BATCH);
+			int commandsStart = target.position();
+			while (next < messages.size()) {
+				int commandStart = target.position();
+				putCommand(target, messages.get(next));
+				if (target.position() - commandsStart > MAX_PAYLOAD_LENGTH - 1
+						- MAX_VARINT_LENGTH) {
+					target.position(commandStart);
+					break;
+				}
+				next++;
+			}
+			checkState(target.position() > commandsStart,
+					"Cannot encode message %s", next);
+			Object last = messages.get(next - 1);
+			if (next == messages.size() && last instanceof MessageIdHolder) {
+				target.put(start + HEADER_LENGTH, (byte) (BATCH | FLAG_ID));
+				insertVarint(target, commandsStart,
+						((MessageIdHolder) last).getId());
+			}
+			putEnd(target, start);
+		}
+	}
+
+	private static void putCommand(ByteBuffer target, ToDeviceMessage message) {
+		if (message instanceof ToDeviceMessagePinStateChange) {
+			ToDeviceMessagePinStateChange pinStateChange = (ToDeviceMessagePinStateChange) message;
+			target.put((byte) opcode(pinStateChange.getPin(),
+					POWER_PIN_INTENSITY, POWER_PIN_SWITCH));
+			putFields(target, pinStateChange);
+		} else if (message instanceof ToDeviceMessageStartListening) {
+			Pin pin = ((ToDeviceMessageStartListening) message).getPin();
+			target.put((byte) opcode(pin, START_LISTENING_ANALOG,
+					START_LISTENING_DIGITAL));
+			putPin(target, pin.pinNum());
+		} else if (message instanceof ToDeviceMessageStopListening) {
+			Pin pin = ((ToDeviceMessageStopListening) message).getPin();
+			target.put((byte) opcode(pin, STOP_LISTENING_ANALOG,
+					STOP_LISTENING_DIGITAL));
+			putPin(target, pin.pinNum());
+		} else if (message instanceof ToDeviceMessageTone) {
+			target.put((byte) TONE);
+			putFields(target, (ToDeviceMessageTone) message);
+		} else if (message instanceof ToDeviceMessageNoTone) {
+			target.put((byte) NOTONE);
+			putPin(target, ((ToDeviceMessageNoTone) message).getAnalogPin()
+					.pinNum());
+		} else {
+			throw new IllegalArgumentException("Cannot batch " + message);
+		}
+	}
+
+	/**
+	 * Inserts the varint at <code>offset</code> by appending it and rotating
+	 * the bytes from <code>offset</code> on, so no temporary array is needed.
+	 */
+	private static void insertVarint(ByteBuffer target, int offset, long value) {
+		int end = target.position();
+		putVarint(target, value);
+		reverse(target, offset, end);
+		reverse(target, end, target.position());
+		reverse(target, offset, target.position());
+	}
+
+	private static void reverse(ByteBuffer buffer, int from, int to) {
+		for (int i = from, j = to - 1; i < j; i++, j--) {
+			byte b = buffer.get(i);
+			buffer.put(i, buffer.get(j));
+			buffer.put(j, b);
+		}
+	}
+
+	private static int opcode(Pin pin, int analogOpcode, int digitalOpcode) {
+		if (pin.is(ANALOG)) {
+			return analogOpcode;
+		} else if (pin.is(DIGITAL)) {
+			return digitalOpcode;
+		}
+		throw new IllegalStateException("Illegal type " + pin.getType()
+				+ " of pin " + pin);
+	}
+
+	/**
+	 * Writes the header, the opcode and the message's id (if it has one).
+	 * 
+	 * @return the position of the frame's start
+	 */
+	private static int putStart(ByteBuffer target, Object message, int opcode) {
+		int start = target.position();
+		target.put(START_OF_FRAME);
+		// length is patched by putEnd
+		target.put((byte) 0);
+		if (message instanceof MessageIdHolder) {
+			target.put((byte) (opcode | FLAG_ID));
+			putVarint(target, ((MessageIdHolder) message).getId());
+		} else {
+			target.put((byte) opcode);
+		}
+		return start;
+	}
+
+	private static void putEnd(ByteBuffer target, int start) {
+		int payloadLength = target.position() - start - HEADER_LENGTH;
+		checkArgument(payloadLength <= MAX_PAYLOAD_LENGTH,
+				"Message too long, payload has %s bytes, allowed are %s",
+				payloadLength, MAX_PAYLOAD_LENGTH);
+		target.put(start + 1, (byte) payloadLength);
+		int crc = 0xFFFF;
+		for (int i = start + 1; i < target.position(); i++) {
+			crc = updateCrc(crc, target.get(i));
+		}
+		target.put((byte) (crc >>> 8));
+		target.put((byte) crc);
+	}
+
+	private static void putPin(ByteBuffer target, int pin) {
+		checkArgument(pin >= 0, "Pin must not be negative but was %s", pin);
+		putInt(target, pin);
+	}
+
+	private static void putInt(ByteBuffer target, int value) {
+		putVarint(target, value & 0xFFFFFFFFL);
+	}
+
+	private static void putVarint(ByteBuffer target, long value) {
+		while ((value & ~0x7FL) != 0) {
+			target.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		target.put((byte) value);
+	}
+
+	/**
+	 * Writes the length of the UTF-8 representation of the passed String
+	 * followed by the UTF-8 bytes.
+	 */
+	private static void putString(ByteBuffer target, String string) {
+		putInt(target, utf8Length(string));
+		for (int i = 0; i < string.length(); i++) {
+			int c = string.charAt(i);
+			if (c < 0x80) {
+				target.put((byte) c);
+			} else if (c < 0x800) {
+				target.put((byte) (0xC0 | c >> 6));
+				target.put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate((char) c)
+					&& i + 1 < string.length()
+					&& Character.isLowSurrogate(string.charAt(i + 1))) {
+				int cp = Character.toCodePoint((char) c, string.charAt(++i));
+				target.put((byte) (0xF0 | cp >> 18));
+				target.put((byte) (0x80 | cp >> 12 & 0x3F));
+				target.put((byte) (0x80 | cp >> 6 & 0x3F));
+				target.put((byte) (0x80 | cp & 0x3F));
+			} else {
+				target.put((byte) (0xE0 | c >> 12));
+				target.put((byte) (0x80 | c >> 6 & 0x3F));
+				target.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	private static int utf8Length(String string) {
+		int length = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+					&& Character.isLowSurrogate(string.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	// -- device to host -----------------------------------------------------
+
+	@Override
+	public FromDeviceMessage fromDevice(byte[] bytes) {
+		checkState(isIntact(bytes), "Frame %s is corrupted",
+				Arrays.toString(bytes));
+		int end = bytes.length - CRC_LENGTH;
+		int opcode = bytes[HEADER_LENGTH] & 0xFF;
+		int pos = HEADER_LENGTH + 1;
+		long id = -1;
+		if ((opcode & FLAG_ID) != 0) {
+			id = varint(bytes, pos);
+			pos = skipVarint(bytes, pos, end);
+		}
+		switch (opcode & OPCODE_MASK) {
+		case READY:
+			return new DefaultFromDeviceMessageReady();
+		case RPLY:
+			checkState(id >= 0, "Reply message needs for mandatory id");
+			return reply(bytes, pos, end, id);
+		case CUSTOM_EVENT:
+			return new DefaultFromDeviceMessageCustom(string(bytes, pos, end));
+		case START_LISTENING_ANALOG:
+			return new DefaultFromDeviceChangeListeningState(
+					analogPin(intAt(bytes, pos, end)), START);
+		case START_LISTENING_DIGITAL:
+			return new DefaultFromDeviceChangeListeningState(
+					digitalPin(intAt(bytes, pos, end)), START);
+		case STOP_LISTENING_ANALOG:
+			return new DefaultFromDeviceChangeListeningState(
+					analogPin(intAt(bytes, pos, end)), STOP);
+		case STOP_LISTENING_DIGITAL:
+			return new DefaultFromDeviceChangeListeningState(
+					digitalPin(intAt(bytes, pos, end)), STOP);
+		case ANALOG_PIN_READ: {
+			int pin = intAt(bytes, pos, end);
+			return new DefaultFromDeviceMessagePinStateChanged(analogPin(pin),
+					intAt(bytes, skipVarint(bytes, pos, end), end));
+		}
+		case DIGITAL_PIN_READ: {
+			int pin = intAt(bytes, pos, end);
+			return new DefaultFromDeviceMessagePinStateChanged(digitalPin(pin),
+					intAt(bytes, skipVarint(bytes, pos, end), end) == 1 ? TRUE
+							: FALSE);
+		}
+		default:
+			throw new IllegalStateException(String.format(
+					"opcode 0x%02x not known", opcode & OPCODE_MASK));
+		}
+	}
+
+	@Override
+	public boolean pinStateFromDevice(byte[] bytes,
+			PrimitivePinListener listener, long nanoTime) {
+		if (!isIntact(bytes)) {
+			return false;
+		}
+		int opcode = bytes[HEADER_LENGTH] & 0xFF;
+		int type = opcode & OPCODE_MASK;
+		if (type != ANALOG_PIN_READ && type != DIGITAL_PIN_READ) {
+			return false;
+		}
+		int end = bytes.length - CRC_LENGTH;
+		int pos = HEADER_LENGTH + 1;
+		if ((opcode & FLAG_ID) != 0) {
+			pos = skipVarint(bytes, pos, end);
+		}
+		int pin = intAt(bytes, pos, end);
+		int value = intAt(bytes, skipVarint(bytes, pos, end), end);
+		if (type == ANALOG_PIN_READ) {
+			listener.onAnalog(pin, value, nanoTime);
+		} else {
+			listener.onDigital(pin, value == 1, nanoTime);
+		}
+		return true;
+	}
+
+	private static FromDeviceMessage reply(byte[] bytes, int pos, int end,
+			long id) {
+		checkState(pos < end, "Reply message has no state");
+		boolean ok = bytes[pos++] != 0;
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		while (pos < end) {
+			String key = string(bytes, pos, end);
+			pos = skipString(bytes, pos, end);
+			parameters.put(key, string(bytes, pos, end));
+			pos = skipString(bytes, pos, end);
+		}
+		return new DefaultFromDeviceMessageReply(ok, id, parameters);
+	}
+
+	private static int intAt(byte[] bytes, int pos, int end) {
+		skipVarint(bytes, pos, end);
+		return (int) varint(bytes, pos);
+	}
+
+	private static String string(byte[] bytes, int pos, int end) {
+		int start = skipVarint(bytes, pos, end);
+		int length = (int) varint(bytes, pos);
+		checkState(length >= 0 && start + length <= end,
+				"String exceeds frame");
+		return new String(bytes, start, length, UTF8);
+	}
+
+	private static int skipString(byte[] bytes, int pos, int end) {
+		return skipVarint(bytes, pos, end) + (int) varint(bytes, pos);
+	}
+
+	/**
+	 * @return the position following the varint starting at <code>pos</code>
+	 */
+	private static int skipVarint(byte[] bytes, int pos, int end) {
+		while (pos < end && (bytes[pos] & 0x80) != 0) {
+			pos++;
+		}
+		checkState(pos < end, "Varint exceeds frame");
+		return pos + 1;
+	}
+
+	/**
+	 * Decodes the varint starting at <code>pos</code>, its bounds have to be
+	 * checked using {@link #skipVarint(byte[], int, int)} before.
+	 */
+	private static long varint(byte[] bytes, int pos) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[pos++];
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0 && shift < 64);
+		return value;
+	}
+
+	// -- CRC ----------------------------------------------------------------
+
+	/**
+	 * Calculates the CRC-16/CCITT-FALSE (polynomial 0x1021, initial value
+	 * 0xFFFF) of the passed range.
+	 */
+	public static int crc16(byte[] bytes, int offset, int length) {
+		int crc = 0xFFFF;
+		for (int i = offset; i < offset + length; i++) {
+			crc = updateCrc(crc, bytes[i]);
+		}
+		return crc;
+	}
+
+	private static int updateCrc(int crc, byte b) {
+		return (crc << 8 ^ CRC_TABLE[(crc >>> 8 ^ b) & 0xFF]) & 0xFFFF;
+	}
+
+	private static char[] crcTable() {
+		char[] table = new char[256];
+		for (int i = 0; i < table.length; i++) {
+			int crc = i << 8;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = (crc & 0x8000) != 0 ? crc << 1 ^ 0x1021 : crc << 1;
+			}
+			table[i] = (char) crc;
+		}
+		return table;
+	}
+
+	private static ByteBuffer newBuffer() {
+		return ByteBuffer.allocate(MAX_FRAME_LENGTH);
+	}
+
+	/**
+	 * Returns the maximum number of bytes the passed message can be encoded
+	 * to, so messages too long are reported by {@link #putEnd(ByteBuffer, int)}
+	 * instead of overflowing the buffer.
+	 */
+	private static int maxLength(ToDeviceMessageCustom custom) {
+		int length = MAX_FRAME_LENGTH;
+		for (String message : custom.getMessages()) {
+			length += 5 + 3 * String.valueOf(message).length();
+		}
+		return length;
+	}
+
+	private static byte[] toBytes(ByteBuffer buffer) {
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+}
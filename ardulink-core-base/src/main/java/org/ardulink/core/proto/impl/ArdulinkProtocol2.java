@@ -18,15 +18,12 @@ package org.ardulink.core.proto.impl;
 
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
-import static java.lang.Integer.parseInt;
-import static java.lang.Long.parseLong;
 import static org.ardulink.core.Pin.analogPin;
 import static org.ardulink.core.Pin.digitalPin;
 import static org.ardulink.core.Pin.Type.ANALOG;
 import static org.ardulink.core.Pin.Type.DIGITAL;
 import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.START;
 import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.STOP;
-import static org.ardulink.core.proto.impl.ALProtoBuilder.alpProtocolMessage;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.ANALOG_PIN_READ;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.CHAR_PRESSED;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.CUSTOM_MESSAGE;
@@ -34,20 +31,28 @@ import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.DIGITAL
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.NOTONE;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.POWER_PIN_INTENSITY;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.POWER_PIN_SWITCH;
-import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.READY;
-import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.RPLY;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.START_LISTENING_ANALOG;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.START_LISTENING_DIGITAL;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LISTENING_ANALOG;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LISTENING_DIGITAL;
 import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.TONE;
-import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.core.proto.impl.ALProtoEncoder.putChar;
+import static org.ardulink.core.proto.impl.ALProtoEncoder.putCommand;
+import static org.ardulink.core.proto.impl.ALProtoEncoder.putCommandOnly;
+import static org.ardulink.core.proto.impl.ALProtoEncoder.putLong;
+import static org.ardulink.core.proto.impl.ALProtoEncoder.putMessageId;
+import static org.ardulink.core.proto.impl.ALProtoEncoder.putPin;
+import static org.ardulink.core.proto.impl.ALProtoEncoder.putString;
+import static org.ardulink.util.Bytes.parseInt;
+import static org.ardulink.util.Bytes.parseLong;
 import static org.ardulink.util.Preconditions.checkState;
 
-import java.net.URI;
-import java.util.Map;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.ardulink.core.Pin;
+import org.ardulink.core.events.PrimitivePinListener;
 import org.ardulink.core.messages.api.FromDeviceMessage;
 import org.ardulink.core.messages.api.ToDeviceMessageCustom;
 import org.ardulink.core.messages.api.ToDeviceMessageKeyPress;
@@ -60,13 +65,10 @@ import org.ardulink.core.messages.impl.DefaultFromDeviceChangeListeningState;
 import org.ardulink.core.messages.impl.DefaultFromDeviceMessageCustom;
 import org.ardulink.core.messages.impl.DefaultFromDeviceMessagePinStateChanged;
 import org.ardulink.core.messages.impl.DefaultFromDeviceMessageReady;
-import org.ardulink.core.messages.impl.DefaultFromDeviceMessageReply;
-import org.ardulink.core.proto.api.MessageIdHolder;
+import org.ardulink.core.proto.api.ByteBufferProtocol;
+import org.ardulink.core.proto.api.PrimitivePinProtocol;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey;
-import org.ardulink.util.Bytes;
-import org.ardulink.util.MapBuilder;
-import org.ardulink.util.URIs;
 
 /**
  * [ardulinktitle] [ardulinkversion]
@@ -76,11 +78,27 @@ import org.ardulink.util.URIs;
  * [adsense]
  *
  */
-public class ArdulinkProtocol2 implements Protocol {
+public class ArdulinkProtocol2 implements ByteBufferProtocol,
+		PrimitivePinProtocol {
 
 	private final String name = "ardulink2";
 	private final byte[] separator = "\n".getBytes();
 
+	private static final byte[] PREFIX = "alp://".getBytes();
+	private static final byte[] ID_PARAM = "id".getBytes();
+
+	private static final byte SLASH = '/';
+	private static final byte[] KEY_CHAR = "chr".getBytes();
+	private static final byte[] KEY_CODE = "cod".getBytes();
+	private static final byte[] KEY_LOCATION = "loc".getBytes();
+	private static final byte[] KEY_MODIFIERS = "mod".getBytes();
+	private static final byte[] KEY_MODIFIERS_EX = "mex".getBytes();
+
+	/**
+	 * maximum length of all messages except custom messages
+	 */
+	private static final int MAX_LENGTH = 128;
+
 	private static final ArdulinkProtocol2 instance = new ArdulinkProtocol2();
 
 	public static Protocol instance() {
@@ -98,136 +116,219 @@ public class ArdulinkProtocol2 implements Protocol {
 
 	@Override
 	public byte[] toDevice(ToDeviceMessageStartListening startListening) {
-		Pin pin = startListening.getPin();
-		if (startListening.getPin().is(ANALOG)) {
-			return toBytes(builder(startListening, START_LISTENING_ANALOG)
-					.forPin(pin.pinNum()).withoutValue());
-		}
-		if (startListening.getPin().is(DIGITAL)) {
-			return toBytes(builder(startListening, START_LISTENING_DIGITAL)
-					.forPin(pin.pinNum()).withoutValue());
-		}
-		throw illegalPinType(startListening.getPin());
+		ByteBuffer buffer = newBuffer();
+		toDevice(startListening, buffer);
+		return toBytes(buffer);
 	}
 
 	@Override
 	public byte[] toDevice(ToDeviceMessageStopListening stopListening) {
-		Pin pin = stopListening.getPin();
-		if (stopListening.getPin().is(ANALOG)) {
-			return toBytes(builder(stopListening, STOP_LISTENING_ANALOG)
-					.forPin(pin.pinNum()).withoutValue());
-		}
-		if (stopListening.getPin().is(DIGITAL)) {
-			return toBytes(builder(stopListening, STOP_LISTENING_DIGITAL)
-					.forPin(pin.pinNum()).withoutValue());
-		}
-		throw illegalPinType(stopListening.getPin());
+		ByteBuffer buffer = newBuffer();
+		toDevice(stopListening, buffer);
+		return toBytes(buffer);
 	}
 
 	@Override
 	public byte[] toDevice(ToDeviceMessagePinStateChange pinStateChange) {
-		if (pinStateChange.getPin().is(ANALOG)) {
-			return toBytes(builder(pinStateChange, POWER_PIN_INTENSITY).forPin(
-					pinStateChange.getPin().pinNum()).withValue(
-					(Integer) pinStateChange.getValue()));
-		}
-		if (pinStateChange.getPin().is(DIGITAL)) {
-			return toBytes(builder(pinStateChange, POWER_PIN_SWITCH).forPin(
-					pinStateChange.getPin().pinNum()).withState(
-					(Boolean) pinStateChange.getValue()));
-		}
-		throw illegalPinType(pinStateChange.getPin());
-	}
-
-	private ALProtoBuilder builder(Object event, ALPProtocolKey key) {
-		ALProtoBuilder builder = alpProtocolMessage(key);
-		return event instanceof MessageIdHolder ? builder
-				.usingMessageId(((MessageIdHolder) event).getId()) : builder;
+		ByteBuffer buffer = newBuffer();
+		toDevice(pinStateChange, buffer);
+		return toBytes(buffer);
 	}
 
 	@Override
 	public byte[] toDevice(ToDeviceMessageKeyPress keyPress) {
-		return toBytes(builder(keyPress, CHAR_PRESSED).withValue(
-				String.format("chr%scod%sloc%smod%smex%s",
-						keyPress.getKeychar(), keyPress.getKeycode(),
-						keyPress.getKeylocation(), keyPress.getKeymodifiers(),
-						keyPress.getKeymodifiersex())));
+		ByteBuffer buffer = newBuffer();
+		toDevice(keyPress, buffer);
+		return toBytes(buffer);
 	}
 
 	@Override
 	public byte[] toDevice(ToDeviceMessageTone tone) {
-		Long duration = tone.getTone().getDurationInMillis();
-		return toBytes(builder(tone, TONE).withValue(
-				tone.getTone().getPin().pinNum() + "/"
-						+ tone.getTone().getHertz() + "/"
-						+ (duration == null ? -1 : duration.longValue())));
+		ByteBuffer buffer = newBuffer();
+		toDevice(tone, buffer);
+		return toBytes(buffer);
 	}
 
 	@Override
 	public byte[] toDevice(ToDeviceMessageNoTone noTone) {
-		return toBytes(builder(noTone, NOTONE).withValue(
-				noTone.getAnalogPin().pinNum()));
+		ByteBuffer buffer = newBuffer();
+		toDevice(noTone, buffer);
+		return toBytes(buffer);
 	}
 
 	@Override
 	public byte[] toDevice(ToDeviceMessageCustom custom) {
-		String[] messages = custom.getMessages();
-		return toBytes(builder(custom, CUSTOM_MESSAGE).withValues(messages));
+		ByteBuffer buffer = ByteBuffer.allocate(maxLength(custom));
+		toDevice(custom, buffer);
+		return toBytes(buffer);
 	}
 
 	@Override
-	public FromDeviceMessage fromDevice(byte[] bytes) {
-		String in = new String(bytes);
-		// Matcher matcher = pattern.matcher(in);
+	public void toDevice(ToDeviceMessageStartListening startListening,
+			ByteBuffer target) {
+		Pin pin = startListening.getPin();
+		if (pin.is(ANALOG)) {
+			putPinMessage(target, startListening, START_LISTENING_ANALOG, pin);
+		} else if (pin.is(DIGITAL)) {
+			putPinMessage(target, startListening, START_LISTENING_DIGITAL, pin);
+		} else {
+			throw illegalPinType(pin);
+		}
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessageStopListening stopListening,
+			ByteBuffer target) {
+		Pin pin = stopListening.getPin();
+		if (pin.is(ANALOG)) {
+			putPinMessage(target, stopListening, STOP_LISTENING_ANALOG, pin);
+		} else if (pin.is(DIGITAL)) {
+			putPinMessage(target, stopListening, STOP_LISTENING_DIGITAL, pin);
+		} else {
+			throw illegalPinType(pin);
+		}
+	}
 
-		URI uri = URIs.newURI(in);
+	private void putPinMessage(ByteBuffer target, Object message,
+			ALPProtocolKey key, Pin pin) {
+		putCommand(target, key);
+		putPin(target, pin.pinNum());
+		putEnd(target, message);
+	}
+
+	@Override
+	public void toDevice(ToDeviceMessagePinStateChange pinStateChange,
+			ByteBuffer target) {
+		Pin pin = pinStateChange.getPin();
+		if (pin.is(ANALOG)) {
+			putCommand(target, POWER_PIN_INTENSITY);
+			putPin(target, pin.pinNum());
+			target.put(SLASH);
+			putLong(target, ((Integer) pinStateChange.getValue()).intValue());
+		} else if (pin.is(DIGITAL)) {
+			putCommand(target, POWER_PIN_SWITCH);
+			putPin(target, pin.pinNum());
+			target.put(SLASH);
+			target.put(((Boolean) pinStateChange.getValue()).booleanValue() ? (byte) '1'
+					: (byte) '0');
+		} else {
+			throw illegalPinType(pin);
+		}
+		putEnd(target, pinStateChange);
+	}
 
-		String prefix = uri.getScheme();
-		checkState("alp".equals(checkNotNull(prefix,
-				"Message %s has no prefix", in)),
-				"Expected message prefix to be %s but was %s", "alp", prefix);
+	@Override
+	public void toDevice(ToDeviceMessageKeyPress keyPress, ByteBuffer target) {
+		putCommand(target, CHAR_PRESSED);
+		target.put(KEY_CHAR);
+		putChar(target, keyPress.getKeychar());
+		target.put(KEY_CODE);
+		putLong(target, keyPress.getKeycode());
+		target.put(KEY_LOCATION);
+		putLong(target, keyPress.getKeylocation());
+		target.put(KEY_MODIFIERS);
+		putLong(target, keyPress.getKeymodifiers());
+		target.put(KEY_MODIFIERS_EX);
+		putLong(target, keyPress.getKeymodifiersex());
+		putEnd(target, keyPress);
+	}
 
-		String command = checkNotNull(uri.getHost(), "Message hasn't a command");
-		String specs = removeFirstSlash(checkNotNull(uri.getPath(),
-				"Message hasn't specs"));
-		String query = uri.getQuery();
+	@Override
+	public void toDevice(ToDeviceMessageTone tone, ByteBuffer target) {
+		Long duration = tone.getTone().getDurationInMillis();
+		putCommand(target, TONE);
+		putLong(target, tone.getTone().getPin().pinNum());
+		target.put(SLASH);
+		putLong(target, tone.getTone().getHertz());
+		target.put(SLASH);
+		putLong(target, duration == null ? -1 : duration.longValue());
+		putEnd(target, tone);
+	}
 
-		ALPProtocolKey key = ALPProtocolKey.fromString(command).getOrThrow(
-				"command %s not known", command);
+	@Override
+	public void toDevice(ToDeviceMessageNoTone noTone, ByteBuffer target) {
+		putCommand(target, NOTONE);
+		putLong(target, noTone.getAnalogPin().pinNum());
+		putEnd(target, noTone);
+	}
 
-		if (key == READY) {
-			return new DefaultFromDeviceMessageReady();
-		} else if (key == RPLY) {
-			Map<String, String> params = paramsToMap(query);
-			String id = checkNotNull(params.get("id"),
-					"Reply message needs for mandatory param: id");
-			return new DefaultFromDeviceMessageReply(
-					"ok".equalsIgnoreCase(specs), parseLong(id), params);
-		} else if (key == ALPProtocolKey.CUSTOM_EVENT) {
-			return new DefaultFromDeviceMessageCustom(specs);
+	@Override
+	public void toDevice(ToDeviceMessageCustom custom, ByteBuffer target) {
+		String[] messages = custom.getMessages();
+		if (messages.length == 0) {
+			putCommandOnly(target, CUSTOM_MESSAGE);
+		} else {
+			putCommand(target, CUSTOM_MESSAGE);
+			for (int i = 0; i < messages.length; i++) {
+				if (i > 0) {
+					target.put(SLASH);
+				}
+				putString(target, String.valueOf(messages[i]));
+			}
+		}
+		putEnd(target, custom);
+	}
+
+	private void putEnd(ByteBuffer target, Object message) {
+		putMessageId(target, message);
+		target.put(separator);
+	}
+
+	@Override
+	public FromDeviceMessage fromDevice(byte[] bytes) {
+		checkPrefix(bytes);
+		int commandStart = PREFIX.length;
+		int end = bytes.length;
+		int queryStart = indexOf(bytes, '?', commandStart, end);
+		int commandEnd = indexOf(bytes, '/', commandStart, queryStart);
+		checkState(commandEnd > commandStart, "Message hasn't a command");
+
+		ALPProtocolKey key = ALPProtocolKey.fromBytes(bytes, commandStart,
+				commandEnd - commandStart);
+		if (key == null) {
+			throw new IllegalStateException(String.format(
+					"command %s not known", new String(bytes, commandStart,
+							commandEnd - commandStart)));
 		}
 
-		if (key == START_LISTENING_ANALOG) {
+		int specsStart = commandEnd < queryStart ? commandEnd + 1 : commandEnd;
+		int specsEnd = queryStart;
+
+		switch (key) {
+		case READY:
+			return new DefaultFromDeviceMessageReady();
+		case RPLY:
+			return reply(bytes, specsStart, specsEnd, queryStart + 1, end);
+		case CUSTOM_EVENT:
+			return new DefaultFromDeviceMessageCustom(ALProtoReply.decode(
+					bytes, specsStart, specsEnd));
+		case START_LISTENING_ANALOG:
 			return new DefaultFromDeviceChangeListeningState(
-					analogPin(parseInt(specs)), START);
-		} else if (key == START_LISTENING_DIGITAL) {
+					analogPin(parseInt(bytes, specsStart, specsEnd)), START);
+		case START_LISTENING_DIGITAL:
 			return new DefaultFromDeviceChangeListeningState(
-					digitalPin(parseInt(specs)), START);
-		} else if (key == STOP_LISTENING_ANALOG) {
+					digitalPin(parseInt(bytes, specsStart, specsEnd)), START);
+		case STOP_LISTENING_ANALOG:
 			return new DefaultFromDeviceChangeListeningState(
-					analogPin(parseInt(specs)), STOP);
-		} else if (key == STOP_LISTENING_DIGITAL) {
+					analogPin(parseInt(bytes, specsStart, specsEnd)), STOP);
+		case STOP_LISTENING_DIGITAL:
 			return new DefaultFromDeviceChangeListeningState(
-					digitalPin(parseInt(specs)), STOP);
+					digitalPin(parseInt(bytes, specsStart, specsEnd)), STOP);
+		default:
+			break;
 		}
 
-		String pinAndState = specs;
-		String[] split = pinAndState.split("\\/");
-		checkState(split.length == 2, "Error splitting %s, cannot process %s",
-				pinAndState, in);
+		int slash = indexOf(bytes, '/', specsStart, specsEnd);
+		int valueEnd = valueEnd(bytes, slash, specsEnd);
+		if (!isPinAndValue(bytes, slash, valueEnd, specsEnd)) {
+			String in = new String(bytes);
+			throw new IllegalStateException(String.format(
+					"Error splitting %s, cannot process %s", new String(bytes,
+							specsStart, specsEnd - specsStart), in));
+		}
 
-		int pin = parseInt(split[0]);
-		int value = parseInt(split[1]);
+		int pin = parseInt(bytes, specsStart, slash);
+		int value = parseInt(bytes, slash + 1, valueEnd);
 		if (key == ANALOG_PIN_READ) {
 			return new DefaultFromDeviceMessagePinStateChanged(analogPin(pin),
 					value);
@@ -236,22 +337,98 @@ public class ArdulinkProtocol2 implements Protocol {
 					toBoolean(value));
 		}
 
-		throw new IllegalStateException(key + " " + in);
+		throw new IllegalStateException(key + " " + new String(bytes));
+	}
+
+	@Override
+	public boolean pinStateFromDevice(byte[] bytes,
+			PrimitivePinListener listener, long nanoTime) {
+		if (!startsWith(bytes, PREFIX)) {
+			return false;
+		}
+		int commandStart = PREFIX.length;
+		int queryStart = indexOf(bytes, '?', commandStart, bytes.length);
+		int commandEnd = indexOf(bytes, '/', commandStart, queryStart);
+		if (commandEnd == queryStart) {
+			return false;
+		}
+		ALPProtocolKey key = ALPProtocolKey.fromBytes(bytes, commandStart,
+				commandEnd - commandStart);
+		if (key != ANALOG_PIN_READ && key != DIGITAL_PIN_READ) {
+			return false;
+		}
+		int specsStart = commandEnd + 1;
+		int slash = indexOf(bytes, '/', specsStart, queryStart);
+		int valueEnd = valueEnd(bytes, slash, queryStart);
+		if (!isPinAndValue(bytes, slash, valueEnd, queryStart)) {
+			return false;
+		}
+		int pin = parseInt(bytes, specsStart, slash);
+		int value = parseInt(bytes, slash + 1, valueEnd);
+		if (key == ANALOG_PIN_READ) {
+			listener.onAnalog(pin, value, nanoTime);
+		} else {
+			listener.onDigital(pin, value == 1, nanoTime);
+		}
+		return true;
+	}
+
+	/**
+	 * a trailing slash is ignored as String#split did
+	 */
+	private static int valueEnd(byte[] bytes, int slash, int specsEnd) {
+		return specsEnd > slash + 1 && bytes[specsEnd - 1] == '/' ? specsEnd - 1
+				: specsEnd;
+	}
+
+	private static boolean isPinAndValue(byte[] bytes, int slash,
+			int valueEnd, int specsEnd) {
+		return slash != specsEnd && slash + 1 != valueEnd
+				&& indexOf(bytes, '/', slash + 1, valueEnd) == valueEnd;
+	}
+
+	private static void checkPrefix(byte[] bytes) {
+		if (!startsWith(bytes, PREFIX)) {
+			String in = new String(bytes);
+			int schemeEnd = in.indexOf("://");
+			checkState(schemeEnd > 0, "Message %s has no prefix", in);
+			throw new IllegalStateException(String.format(
+					"Expected message prefix to be %s but was %s", "alp",
+					in.substring(0, schemeEnd)));
+		}
+	}
+
+	private static FromDeviceMessage reply(byte[] bytes, int specsStart,
+			int specsEnd, int queryStart, int queryEnd) {
+		checkState(queryStart <= queryEnd, "Params can't be null");
+		int idStart = ALProtoReply.valueStart(bytes, queryStart, queryEnd,
+				ID_PARAM);
+		checkState(idStart >= 0, "Reply message needs for mandatory param: id");
+		long id = parseLong(bytes, idStart,
+				ALProtoReply.indexOf(bytes, '&', idStart, queryEnd));
+		return new ALProtoReply(isOk(bytes, specsStart, specsEnd), id, bytes,
+				queryStart, queryEnd);
 	}
 
-	private static Map<String, String> paramsToMap(String query) {
-		MapBuilder<String, String> builder = MapBuilder
-				.<String, String> newMapBuilder();
-		for (String param : checkNotNull(query, "Params can't be null").split(
-				"&")) {
-			String[] kv = param.split("=");
-			builder.put(kv[0], kv[1]);
+	private static boolean isOk(byte[] bytes, int start, int end) {
+		return end - start == 2 && (bytes[start] == 'o' || bytes[start] == 'O')
+				&& (bytes[start + 1] == 'k' || bytes[start + 1] == 'K');
+	}
+
+	private static boolean startsWith(byte[] bytes, byte[] prefix) {
+		if (bytes.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
 		}
-		return builder.build();
+		return true;
 	}
 
-	private static String removeFirstSlash(String path) {
-		return path.startsWith("/") ? path.substring(1) : path;
+	private static int indexOf(byte[] bytes, char c, int start, int end) {
+		return ALProtoReply.indexOf(bytes, c, start, end);
 	}
 
 	private static IllegalStateException illegalPinType(Pin pin) {
@@ -263,16 +440,25 @@ public class ArdulinkProtocol2 implements Protocol {
 		return value.intValue() == 1 ? TRUE : FALSE;
 	}
 
+	private static ByteBuffer newBuffer() {
+		return ByteBuffer.allocate(MAX_LENGTH);
+	}
+
 	/**
-	 * Appends the separator to the passed message. This is not done using
-	 * string concatenations but in a byte[] for performance reasons.
-	 * 
-	 * @param message
-	 *            the message to send
-	 * @return byte[] holding the passed message and the protocol's divider
+	 * Returns the maximum number of bytes the passed message can be encoded
+	 * to. Each char is encoded to at most three bytes (surrogate pairs to
+	 * four).
 	 */
-	private byte[] toBytes(String message) {
-		return Bytes.concat(message.getBytes(), separator);
+	private static int maxLength(ToDeviceMessageCustom custom) {
+		int length = MAX_LENGTH;
+		for (String message : custom.getMessages()) {
+			length += 1 + 3 * String.valueOf(message).length();
+		}
+		return length;
+	}
+
+	private static byte[] toBytes(ByteBuffer buffer) {
+		return Arrays.copyOf(buffer.array(), buffer.position());
 	}
 
 }
@@ -0,0 +1,360 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.qos;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+import static org.ardulink.util.Throwables.propagate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.events.RplyListener;
+import org.ardulink.util.ListenableFuture;
+import org.ardulink.util.Lists;
+import org.ardulink.util.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Sends commands via a {@link Link} and tracks the replies for them. Unlike
+ * {@link ResponseAwaiter} there is one reply listener for all commands and the
+ * caller does not have to wait for the reply before sending the next command:
+ * up to <code>maxInFlight</code> commands can be outstanding, further calls to
+ * {@link #submit(Command)} block until a reply for one of the outstanding
+ * commands was received (or it timed out). Timeouts are checked by one timer
+ * thread per engine. If a command does not get a reply in time it can be
+ * retransmitted.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class QosEngine implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(QosEngine.class);
+
+	/**
+	 * A command to send. Retransmits call {@link #sendTo(Link)} again, so
+	 * implementations must be able to send the command more than once.
+	 */
+	public interface Command {
+
+		/**
+		 * Sends the command using the passed link.
+		 *
+		 * @param link
+		 *            the Link to send to
+		 * @return the messageId the Link used
+		 * @throws IOException
+		 */
+		long sendTo(Link link) throws IOException;
+
+	}
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+	/**
+	 * Replies for message ids not known (yet) are kept since the reply can be
+	 * received before the Link returned the id of the message sent.
+	 */
+	private static final int MAX_UNMATCHED_REPLIES = 64;
+
+	private static final long NO_TIMEOUT = 0;
+
+	private class Pending implements Runnable {
+
+		private final Command command;
+		private final SettableFuture<RplyEvent> future = new SettableFuture<RplyEvent>();
+		private int retransmitsLeft;
+		private long messageId;
+		private long deadline;
+
+		public Pending(Command command, int retransmits) {
+			this.command = command;
+			this.retransmitsLeft = retransmits;
+		}
+
+		/**
+		 * Called when the future is completed (no matter if by a reply, a
+		 * timeout, a failure or cancellation).
+		 */
+		@Override
+		public void run() {
+			synchronized (pending) {
+				if (pending.get(messageId) == this) {
+					pending.remove(messageId);
+				}
+			}
+			window.release();
+		}
+
+	}
+
+	private final Link link;
+	private final long timeout;
+	private final TimeUnit timeUnit;
+	private final int retransmits;
+	private final Semaphore window;
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * guarded by itself, also guards {@link #unmatchedReplies}
+	 */
+	private final Map<Long, Pending> pending = new LinkedHashMap<Long, Pending>();
+
+	private final Map<Long, RplyEvent> unmatchedReplies = new LinkedHashMap<Long, RplyEvent>() {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<Long, RplyEvent> eldest) {
+			return size() > MAX_UNMATCHED_REPLIES;
+		}
+
+	};
+
+	private final RplyListener listener = new RplyListener() {
+		@Override
+		public void rplyReceived(RplyEvent event) {
+			Pending toComplete;
+			synchronized (pending) {
+				toComplete = pending.remove(event.getId());
+				if (toComplete == null) {
+					unmatchedReplies.put(event.getId(), event);
+				}
+			}
+			if (toComplete != null) {
+				toComplete.future.set(event);
+			}
+		}
+	};
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates an engine without timeouts allowing
+	 * {@value #DEFAULT_MAX_IN_FLIGHT} outstanding commands.
+	 *
+	 * @param link
+	 *            the Link to send the commands to
+	 * @throws IOException
+	 */
+	public QosEngine(Link link) throws IOException {
+		this(link, NO_TIMEOUT, null, DEFAULT_MAX_IN_FLIGHT, 0);
+	}
+
+	/**
+	 * @param link
+	 *            the Link to send the commands to
+	 * @param timeout
+	 *            the time to wait for each reply, <code>0</code> to wait
+	 *            forever
+	 * @param timeUnit
+	 *            the unit of <code>timeout</code>
+	 * @param maxInFlight
+	 *            maximum number of commands sent but not replied yet
+	 * @param retransmits
+	 *            how often a command is sent again if no reply was received
+	 *            within <code>timeout</code>
+	 * @throws IOException
+	 */
+	public QosEngine(Link link, long timeout, TimeUnit timeUnit,
+			int maxInFlight, int retransmits) throws IOException {
+		checkArgument(timeout >= 0, "timeout must not be negative but was %s",
+				timeout);
+		checkArgument(timeout == NO_TIMEOUT || timeUnit != null,
+				"timeUnit must not be null");
+		checkArgument(maxInFlight > 0,
+				"maxInFlight must be greater than 0 but was %s", maxInFlight);
+		checkArgument(retransmits >= 0,
+				"retransmits must not be negative but was %s", retransmits);
+		checkArgument(timeout != NO_TIMEOUT || retransmits == 0,
+				"retransmits need a timeout");
+		this.link = checkNotNull(link, "link must not be null");
+		this.timeout = timeout;
+		this.timeUnit = timeUnit;
+		this.retransmits = retransmits;
+		this.window = new Semaphore(maxInFlight, true);
+		this.timer = timeout == NO_TIMEOUT ? null : startTimer(tick(timeUnit
+				.toNanos(timeout)));
+		this.link.addRplyListener(listener);
+	}
+
+	/**
+	 * Checks the timeouts ten times per timeout but at least every 100ms and
+	 * not more often than every millisecond.
+	 */
+	private static long tick(long timeoutNanos) {
+		return Math.max(MILLISECONDS.toNanos(1),
+				Math.min(timeoutNanos / 10, MILLISECONDS.toNanos(100)));
+	}
+
+	private ScheduledExecutorService startTimer(long tickNanos) {
+		ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "ardulink-qos-timer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		timer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkTimeouts();
+			}
+		}, tickNanos, tickNanos, NANOSECONDS);
+		return timer;
+	}
+
+	/**
+	 * Sends the passed command. Blocks while the maximum number of commands is
+	 * in flight.
+	 *
+	 * @param command
+	 *            the command to send
+	 * @return Future that is completed with the reply received for the command.
+	 *         If no reply was received within the timeout (including all
+	 *         retransmits) the Future fails with an
+	 *         {@link IllegalStateException}.
+	 * @throws IOException
+	 *             if sending the command failed
+	 */
+	public ListenableFuture<RplyEvent> submit(Command command) throws IOException {
+		checkState(!closed, "QosEngine already closed");
+		try {
+			window.acquire();
+		} catch (InterruptedException e) {
+			throw propagate(e);
+		}
+		Pending toSend = new Pending(checkNotNull(command,
+				"command must not be null"), retransmits);
+		toSend.future.addListener(toSend);
+		try {
+			send(toSend);
+		} catch (IOException e) {
+			toSend.future.setException(e);
+			throw e;
+		} catch (RuntimeException e) {
+			toSend.future.setException(e);
+			throw e;
+		}
+		return toSend.future;
+	}
+
+	private void send(Pending toSend) throws IOException {
+		long messageId = toSend.command.sendTo(link);
+		RplyEvent reply;
+		synchronized (pending) {
+			reply = unmatchedReplies.remove(messageId);
+			if (reply == null && !toSend.future.isDone()) {
+				toSend.messageId = messageId;
+				toSend.deadline = System.nanoTime()
+						+ (timeUnit == null ? 0 : timeUnit.toNanos(timeout));
+				pending.put(messageId, toSend);
+			}
+		}
+		if (reply != null) {
+			toSend.future.set(reply);
+		}
+	}
+
+	private void checkTimeouts() {
+		List<Pending> expired = Lists.newArrayList();
+		long now = System.nanoTime();
+		synchronized (pending) {
+			for (Iterator<Pending> it = pending.values().iterator(); it
+					.hasNext();) {
+				Pending candidate = it.next();
+				if (candidate.deadline - now <= 0) {
+					it.remove();
+					expired.add(candidate);
+				}
+			}
+		}
+		for (Pending timedOut : expired) {
+			if (timedOut.retransmitsLeft > 0 && !closed) {
+				timedOut.retransmitsLeft--;
+				logger.debug("No response for message {}, retransmitting",
+						timedOut.messageId);
+				try {
+					send(timedOut);
+				} catch (Exception e) {
+					timedOut.future.setException(e);
+				}
+			} else {
+				timedOut.future.setException(new IllegalStateException(String
+						.format("No response received within %s %s ", timeout,
+								timeUnit)));
+			}
+		}
+	}
+
+	/**
+	 * @return number of commands sent that are not replied yet
+	 */
+	public int getInFlight() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Deregisters the reply listener and stops the timer. All commands not
+	 * replied yet fail. The Link is not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+		List<Pending> outstanding;
+		synchronized (pending) {
+			outstanding = Lists.newArrayList(pending.values());
+			pending.clear();
+			unmatchedReplies.clear();
+		}
+		for (Pending toFail : outstanding) {
+			toFail.future.setException(new IllegalStateException(
+					"QosEngine closed"));
+		}
+		link.removeRplyListener(listener);
+	}
+
+}
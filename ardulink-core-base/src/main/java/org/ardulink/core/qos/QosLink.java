@@ -16,13 +16,19 @@ limitations under the License.
 
 package org.ardulink.core.qos;
 
-import static org.ardulink.core.qos.ResponseAwaiter.onLink;
+import static org.ardulink.core.qos.QosEngine.DEFAULT_MAX_IN_FLIGHT;
 import static org.ardulink.util.Preconditions.checkState;
+import static org.ardulink.util.Throwables.propagate;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.ardulink.core.DefaultLinkBatch;
 import org.ardulink.core.Link;
+import org.ardulink.core.LinkBatch;
 import org.ardulink.core.Pin;
 import org.ardulink.core.Pin.AnalogPin;
 import org.ardulink.core.Pin.DigitalPin;
@@ -31,11 +37,15 @@ import org.ardulink.core.events.CustomListener;
 import org.ardulink.core.events.EventListener;
 import org.ardulink.core.events.RplyEvent;
 import org.ardulink.core.events.RplyListener;
+import org.ardulink.core.messages.api.ToDeviceMessage;
+import org.ardulink.core.qos.QosEngine.Command;
 
 /**
  * [ardulinktitle] [ardulinkversion] Arduino sends ok/ko messages directly after
- * receiving the work message. So there is no need for a queue because if the
- * next message read is not the ok/ko response it never will arrive.
+ * receiving the work message. Each call blocks until the ok/ko message for it
+ * was received. The replies are tracked by a {@link QosEngine} so calls of
+ * different threads do not wait for each other's replies but are pipelined up
+ * to <code>maxInFlight</code> messages.
  * 
  * project Ardulink http://www.ardulink.org/
  * 
@@ -43,15 +53,11 @@ import org.ardulink.core.events.RplyListener;
  */
 public class QosLink implements Link {
 
-	// TODO Introduce an ResponseAwaiter which does not deregister the
-	// ReplyListener all the time
-
 	private static final long NO_TIMEOUT = 0;
 	private static final TimeUnit NO_TIMEOUT_UNIT = null;
 
 	private final Link delegate;
-	private final long timeout;
-	private final TimeUnit timeUnit;
+	private final QosEngine engine;
 
 	public QosLink(Link link) throws IOException {
 		this(link, NO_TIMEOUT, NO_TIMEOUT_UNIT);
@@ -59,12 +65,38 @@ public class QosLink implements Link {
 
 	public QosLink(Link link, long timeout, TimeUnit timeUnit)
 			throws IOException {
+		this(link, timeout, timeUnit, DEFAULT_MAX_IN_FLIGHT, 0);
+	}
+
+	/**
+	 * @param link
+	 *            the Link to delegate to
+	 * @param timeout
+	 *            the time to wait for each reply, <code>0</code> to wait
+	 *            forever
+	 * @param timeUnit
+	 *            the unit of <code>timeout</code>
+	 * @param maxInFlight
+	 *            maximum number of messages sent concurrently (by different
+	 *            threads) that are not replied yet
+	 * @param retransmits
+	 *            how often a message is sent again if no reply was received
+	 *            within <code>timeout</code>
+	 * @throws IOException
+	 * @see QosEngine
+	 */
+	public QosLink(Link link, long timeout, TimeUnit timeUnit,
+			int maxInFlight, int retransmits) throws IOException {
 		this.delegate = link;
-		this.timeout = timeout;
-		this.timeUnit = timeUnit;
+		boolean hasTimeout = timeout != NO_TIMEOUT
+				&& timeUnit != NO_TIMEOUT_UNIT;
+		this.engine = new QosEngine(link, hasTimeout ? timeout : NO_TIMEOUT,
+				hasTimeout ? timeUnit : NO_TIMEOUT_UNIT, maxInFlight,
+				retransmits);
 	}
 
 	public void close() throws IOException {
+		engine.close();
 		delegate.close();
 	}
 
@@ -92,53 +124,119 @@ public class QosLink implements Link {
 		return delegate.removeCustomListener(listener);
 	}
 
-	public long startListening(Pin pin) throws IOException {
-		return extractId(newAwaiter().waitForResponse(
-				delegate.startListening(pin)));
+	public long startListening(final Pin pin) throws IOException {
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.startListening(pin);
+			}
+		});
 	}
 
-	public long stopListening(Pin pin) throws IOException {
-		return extractId(newAwaiter().waitForResponse(
-				delegate.stopListening(pin)));
+	public long stopListening(final Pin pin) throws IOException {
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.stopListening(pin);
+			}
+		});
 	}
 
-	public long switchAnalogPin(AnalogPin analogPin, int value)
+	public long switchAnalogPin(final AnalogPin analogPin, final int value)
 			throws IOException {
-		return extractId(newAwaiter().waitForResponse(
-				delegate.switchAnalogPin(analogPin, value)));
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.switchAnalogPin(analogPin, value);
+			}
+		});
 	}
 
-	public long switchDigitalPin(DigitalPin digitalPin, boolean value)
-			throws IOException {
-		return extractId(newAwaiter().waitForResponse(
-				delegate.switchDigitalPin(digitalPin, value)));
+	public long switchDigitalPin(final DigitalPin digitalPin,
+			final boolean value) throws IOException {
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.switchDigitalPin(digitalPin, value);
+			}
+		});
+	}
+
+	public long sendKeyPressEvent(final char keychar, final int keycode,
+			final int keylocation, final int keymodifiers,
+			final int keymodifiersex) throws IOException {
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendKeyPressEvent(keychar, keycode, keylocation,
+						keymodifiers, keymodifiersex);
+			}
+		});
 	}
 
-	public long sendKeyPressEvent(char keychar, int keycode, int keylocation,
-			int keymodifiers, int keymodifiersex) throws IOException {
-		return extractId(newAwaiter().waitForResponse(
-				delegate.sendKeyPressEvent(keychar, keycode, keylocation,
-						keymodifiers, keymodifiersex)));
+	public long sendTone(final Tone tone) throws IOException {
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendTone(tone);
+			}
+		});
 	}
 
-	public long sendTone(Tone tone) throws IOException {
-		return extractId(newAwaiter().waitForResponse(delegate.sendTone(tone)));
+	public long sendNoTone(final AnalogPin analogPin) throws IOException {
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendNoTone(analogPin);
+			}
+		});
 	}
 
-	public long sendNoTone(AnalogPin analogPin) throws IOException {
-		return extractId(newAwaiter().waitForResponse(
-				delegate.sendNoTone(analogPin)));
+	public long sendCustomMessage(final String... messages) throws IOException {
+		return send(new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendCustomMessage(messages);
+			}
+		});
 	}
 
-	public long sendCustomMessage(String... messages) throws IOException {
-		return extractId(newAwaiter().waitForResponse(
-				delegate.sendCustomMessage(messages)));
+	/**
+	 * The batch is sent using the delegate's batch and blocks until the one
+	 * reply for the whole batch was received.
+	 */
+	public LinkBatch batch() {
+		return new DefaultLinkBatch(this) {
+			@Override
+			protected long send(final List<ToDeviceMessage> messages)
+					throws IOException {
+				return QosLink.this.send(new Command() {
+					@Override
+					public long sendTo(Link link) throws IOException {
+						return addAll(link.batch(), messages).send();
+					}
+				});
+			}
+		};
 	}
 
-	private ResponseAwaiter newAwaiter() throws IOException {
-		ResponseAwaiter awaiter = onLink(delegate);
-		return timeout != NO_TIMEOUT && timeUnit != NO_TIMEOUT_UNIT ? awaiter
-				.withTimeout(timeout, timeUnit) : awaiter;
+	private long send(Command command) throws IOException {
+		return extractId(await(engine.submit(command)));
+	}
+
+	private static RplyEvent await(Future<RplyEvent> future)
+			throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw propagate(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw propagate(cause);
+		}
 	}
 
 	private long extractId(RplyEvent rplyEvent) {
@@ -148,6 +246,16 @@ public class QosLink implements Link {
 	
 	@Deprecated // quick fix for https://github.com/Ardulink/Ardulink-2/issues/43
 	public Link getDelegate() {
+		return getTarget();
+	}
+
+	/**
+	 * Returns the Link this QosLink sends its messages through, e.g. to
+	 * register the {@link org.ardulink.core.LinkMetrics} of that Link.
+	 * 
+	 * @return the Link this QosLink delegates to
+	 */
+	public Link getTarget() {
 		return delegate;
 	}
 
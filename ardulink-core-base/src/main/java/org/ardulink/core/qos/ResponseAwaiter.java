@@ -77,6 +77,13 @@ public class ResponseAwaiter {
 			while (true) {
 				lock.lock();
 				try {
+					// the reply could have been received before we started
+					// waiting for it
+					Optional<RplyEvent> rply = messageIdReceived(messageId);
+					replies.clear();
+					if (rply.isPresent()) {
+						return rply.get();
+					}
 					if (timeout < 0 || timeUnit == null) {
 						condition.await();
 					} else {
@@ -84,11 +91,6 @@ public class ResponseAwaiter {
 								"No response received within %s %s ",
 								this.timeout, timeUnit);
 					}
-					Optional<RplyEvent> rply = messageIdReceived(messageId);
-					replies.clear();
-					if (rply.isPresent()) {
-						return rply.get();
-					}
 				} catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
 				} finally {
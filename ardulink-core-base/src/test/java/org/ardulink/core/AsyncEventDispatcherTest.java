@@ -0,0 +1,200 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.AsyncEventDispatcher.OverflowPolicy.DROP_OLDEST;
+import static org.ardulink.core.AsyncEventDispatcher.OverflowPolicy.KEEP_LATEST_PER_PIN;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.ardulink.util.Lists;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class AsyncEventDispatcherTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private final List<String> dispatched = Lists.newArrayList();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private AsyncEventDispatcher sut;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (sut != null) {
+			sut.close();
+		}
+	}
+
+	@Test
+	public void eventsOfOnePinAreDispatchedInOrder() throws Exception {
+		sut = AsyncEventDispatcher.newBuilder().withPartitions(4).build();
+		for (int i = 0; i < 100; i++) {
+			sut.dispatch(analogPin(1), record(String.valueOf(i)));
+		}
+		waitUntilDispatched(100);
+		for (int i = 0; i < 100; i++) {
+			assertThat(dispatched().get(i), is(String.valueOf(i)));
+		}
+	}
+
+	@Test
+	public void slowListenerDoesNotBlockOtherPartitions() throws Exception {
+		sut = AsyncEventDispatcher.newBuilder().withPartitions(2).build();
+		// analog 0 and digital 0 are in different partitions
+		sut.dispatch(analogPin(0), blockUntilReleased());
+		sut.dispatch(analogPin(0), record("a0"));
+		sut.dispatch(digitalPin(0), record("d0"));
+		waitUntilDispatched(1);
+		assertThat(dispatched(), is(Arrays.asList("d0")));
+		release.countDown();
+		waitUntilDispatched(2);
+		assertThat(dispatched(), is(Arrays.asList("d0", "a0")));
+	}
+
+	@Test
+	public void dropOldestRemovesOldestEventAndCountsIt() throws Exception {
+		sut = AsyncEventDispatcher.newBuilder().withPartitions(1)
+				.withCapacity(2).whenFull(DROP_OLDEST).build();
+		CountDownLatch running = new CountDownLatch(1);
+		sut.dispatch(null, blockUntilReleased(running));
+		running.await();
+		sut.dispatch(analogPin(1), record("1"));
+		sut.dispatch(analogPin(2), record("2"));
+		sut.dispatch(analogPin(3), record("3"));
+		assertThat(sut.getDroppedEvents(), is(1L));
+		assertThat(sut.getQueuedEvents(), is(2));
+		release.countDown();
+		waitUntilDispatched(2);
+		assertThat(dispatched(), is(Arrays.asList("2", "3")));
+	}
+
+	@Test
+	public void eventsWithoutPinAreNeverDropped() throws Exception {
+		sut = AsyncEventDispatcher.newBuilder().withPartitions(1)
+				.withCapacity(2).whenFull(DROP_OLDEST).build();
+		CountDownLatch running = new CountDownLatch(1);
+		sut.dispatch(null, blockUntilReleased(running));
+		running.await();
+		sut.dispatch(null, record("r1"));
+		sut.dispatch(analogPin(1), record("1"));
+		sut.dispatch(analogPin(2), record("2"));
+		sut.dispatch(null, record("r2"));
+		sut.dispatch(analogPin(3), record("3"));
+		assertThat(sut.getDroppedEvents(), is(1L));
+		release.countDown();
+		waitUntilDispatched(4);
+		assertThat(dispatched(), is(Arrays.asList("r1", "2", "r2", "3")));
+	}
+
+	@Test
+	public void eventsWithoutPinDoNotBlockOnFullQueue() throws Exception {
+		sut = AsyncEventDispatcher.newBuilder().withPartitions(1)
+				.withCapacity(1).build();
+		CountDownLatch running = new CountDownLatch(1);
+		sut.dispatch(null, blockUntilReleased(running));
+		running.await();
+		sut.dispatch(analogPin(1), record("1"));
+		sut.dispatch(null, record("r1"));
+		sut.dispatch(null, record("r2"));
+		assertThat(sut.getQueuedEvents(), is(3));
+		release.countDown();
+		waitUntilDispatched(3);
+		assertThat(dispatched(), is(Arrays.asList("1", "r1", "r2")));
+	}
+
+	@Test
+	public void keepLatestPerPinReplacesQueuedEventOfSamePin()
+			throws Exception {
+		sut = AsyncEventDispatcher.newBuilder().withPartitions(1)
+				.withCapacity(2).whenFull(KEEP_LATEST_PER_PIN).build();
+		CountDownLatch running = new CountDownLatch(1);
+		sut.dispatch(null, blockUntilReleased(running));
+		running.await();
+		sut.dispatch(analogPin(1), record("1a"));
+		sut.dispatch(analogPin(2), record("2a"));
+		sut.dispatch(analogPin(1), record("1b"));
+		sut.dispatch(analogPin(1), record("1c"));
+		assertThat(sut.getCoalescedEvents(), is(2L));
+		release.countDown();
+		waitUntilDispatched(2);
+		assertThat(dispatched(), is(Arrays.asList("1c", "2a")));
+	}
+
+	private Runnable record(final String value) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				synchronized (dispatched) {
+					dispatched.add(value);
+				}
+			}
+		};
+	}
+
+	private Runnable blockUntilReleased() {
+		return blockUntilReleased(new CountDownLatch(1));
+	}
+
+	private Runnable blockUntilReleased(final CountDownLatch running) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	private List<String> dispatched() {
+		synchronized (dispatched) {
+			return Lists.newArrayList(dispatched);
+		}
+	}
+
+	private void waitUntilDispatched(int count) throws InterruptedException {
+		while (dispatched().size() < count) {
+			MILLISECONDS.sleep(10);
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.AsyncLink.OverflowStrategy.FAIL;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class AsyncLinkTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	/**
+	 * Connection whose writes block until {@link #unblock()} is called.
+	 */
+	private static class BlockingConnection extends AbstractConnection {
+
+		private final CountDownLatch blocked = new CountDownLatch(1);
+		private final List<String> written = new CopyOnWriteArrayList<String>();
+
+		@Override
+		public void write(byte[] bytes) throws IOException {
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e.getMessage());
+			}
+			String message = new String(bytes).trim();
+			written.add(message);
+			if (message.contains("?id=")) {
+				fireReceived(("alp://rply/" + (message.contains("notn") ? "ko" : "ok")
+						+ "?id=" + message.substring(message.indexOf("?id=") + 4))
+						.getBytes());
+			}
+		}
+
+		void unblock() {
+			blocked.countDown();
+		}
+
+		@Override
+		public void close() throws IOException {
+			unblock();
+		}
+
+	}
+
+	private final BlockingConnection connection = new BlockingConnection();
+
+	private AsyncLink sut;
+
+	@After
+	public void tearDown() throws IOException {
+		connection.unblock();
+		sut.close();
+	}
+
+	@Test
+	public void callerIsNotBlockedByWrites() throws Exception {
+		sut = AsyncLink.forLink(link()).build();
+		Future<Long> first = sut.switchAnalogPin(analogPin(3), 42);
+		Future<Long> second = sut.switchDigitalPin(digitalPin(4), true);
+		assertThat(first.isDone(), is(false));
+		assertThat(second.isDone(), is(false));
+
+		connection.unblock();
+		first.get();
+		second.get();
+		assertThat(connection.written.get(0), is("alp://ppin/3/42"));
+		assertThat(connection.written.get(1), is("alp://ppsw/4/1"));
+	}
+
+	@Test
+	public void failsIfQueueIsFull() throws Exception {
+		sut = AsyncLink.forLink(link()).withCapacity(1).whenFull(FAIL)
+				.build();
+		Future<Long> rejected = null;
+		for (int i = 0; rejected == null; i++) {
+			Future<Long> future = sut.switchAnalogPin(analogPin(3), i);
+			if (future.isDone()) {
+				rejected = future;
+			}
+		}
+		assertThat(sut.getRemainingCapacity(), is(0));
+		try {
+			rejected.get();
+			fail("Future should have failed");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(),
+					instanceOf(RejectedExecutionException.class));
+		}
+	}
+
+	@Test
+	public void withQosFuturesAreCompletedByReplies() throws Exception {
+		sut = AsyncLink.forLink(link()).withQos(1, SECONDS, 4, 0).build();
+		Future<Long> ok = sut.switchAnalogPin(analogPin(3), 42);
+		Future<Long> ko = sut.sendNoTone(analogPin(3));
+		connection.unblock();
+		assertThat(ok.get(), is(1L));
+		try {
+			ko.get();
+			fail("Future should have failed");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+		}
+	}
+
+	private ConnectionBasedLink link() {
+		return new ConnectionBasedLink(connection, ArdulinkProtocol2.instance());
+	}
+
+}
@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -46,6 +47,9 @@ import org.ardulink.core.events.EventListener;
 import org.ardulink.core.events.EventListenerAdapter;
 import org.ardulink.core.events.FilteredEventListenerAdapter;
 import org.ardulink.core.events.PinValueChangedEvent;
+import org.ardulink.core.events.PrimitivePinListener;
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.events.RplyListener;
 import org.ardulink.core.proto.api.Protocol;
 import org.ardulink.core.proto.impl.ArdulinkProtocol2;
 import org.junit.After;
@@ -162,6 +166,32 @@ public class ConnectionBasedLinkTest {
 				hasItems(eventFor(analogPin(pin)).withValue(value)));
 	}
 
+	@Test
+	public void primitivePinListenersGetPinChangesWithoutEventListeners()
+			throws IOException {
+		final List<String> changes = new ArrayList<String>();
+		this.link.addPrimitivePinListener(new PrimitivePinListener() {
+			@Override
+			public void onAnalog(int pin, int value, long nanoTime) {
+				changes.add("analog " + pin + " " + value);
+			}
+
+			@Override
+			public void onDigital(int pin, boolean value, long nanoTime) {
+				changes.add("digital " + pin + " " + value);
+			}
+		});
+		String m1 = alpProtocolMessage(ANALOG_PIN_READ).forPin(3).withValue(
+				1023);
+		String m2 = alpProtocolMessage(DIGITAL_PIN_READ).forPin(7).withState(
+				true);
+		simulateArdunoSend(m1);
+		simulateArdunoSend(m2);
+		waitUntilRead(this.bytesRead, m1.length() + m2.length());
+		assertThat(changes,
+				is(Arrays.asList("analog 3 1023", "digital 7 true")));
+	}
+
 	@Test
 	public void doesSendStartListeningDigitalCommangToArduino()
 			throws IOException {
@@ -282,6 +312,35 @@ public class ConnectionBasedLinkTest {
 				+ new String(proto.getSeparator())));
 	}
 
+	@Test
+	public void batchIsSentInOneWriteWithOneMessageId() throws IOException {
+		final List<String> writes = new ArrayList<String>();
+		this.connection.addListener(new ListenerAdapter() {
+			@Override
+			public void sent(byte[] bytes) throws IOException {
+				writes.add(new String(bytes));
+			}
+		});
+		this.link.addRplyListener(new RplyListener() {
+			@Override
+			public void rplyReceived(RplyEvent e) {
+				// ids are only added if there are RplyListeners
+			}
+		});
+		long id = this.link.batch().switchDigitalPin(digitalPin(2), true)
+				.switchAnalogPin(analogPin(3), 42)
+				.startListening(analogPin(4)).send();
+		assertThat(id, is(1L));
+		assertThat(writes, is(Arrays.asList("alp://ppsw/2/1\n"
+				+ "alp://ppin/3/42\n" + "alp://srla/4?id=1\n")));
+	}
+
+	@Test
+	public void emptyBatchSendsNothing() throws IOException {
+		assertThat(this.link.batch().send(), is(-1L));
+		assertThat(toArduinoWasSent(), is(""));
+	}
+
 	@Test
 	public void twoListenersMustNotInference() throws IOException {
 		this.link.addListener(new EventListener() {
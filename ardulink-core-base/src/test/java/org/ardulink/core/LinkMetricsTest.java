@@ -0,0 +1,144 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ardulink.core;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class LinkMetricsTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	private static final Protocol proto = ArdulinkProtocol2.instance();
+
+	private final MBeanServer mBeanServer = ManagementFactory
+			.getPlatformMBeanServer();
+
+	private PipedOutputStream arduinosOutputStream;
+	private ConnectionBasedLink link;
+	private LinkMetrics metrics;
+
+	@Before
+	public void setup() throws IOException {
+		PipedInputStream pis = new PipedInputStream();
+		this.arduinosOutputStream = new PipedOutputStream(pis);
+		this.link = new ConnectionBasedLink(new StreamConnection(pis,
+				new ByteArrayOutputStream(), proto), proto);
+		this.metrics = LinkMetrics.register(link, "LinkMetricsTest");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.link.close();
+	}
+
+	@Test
+	public void isRegisteredUntilLinkIsClosed() throws IOException {
+		assertThat(mBeanServer.isRegistered(metrics.getObjectName()), is(true));
+		assertThat(link.getMetrics(), is(metrics));
+		this.link.close();
+		assertThat(mBeanServer.isRegistered(metrics.getObjectName()), is(false));
+	}
+
+	@Test
+	public void countsFramesAndBytesSent() throws IOException {
+		this.link.switchAnalogPin(analogPin(3), 123);
+		this.link.switchAnalogPin(analogPin(4), 45);
+		assertThat(metrics.getFramesSent(), is(2L));
+		assertThat(metrics.getBytesSent(),
+				is((long) ("alp://ppin/3/123\n".length() + "alp://ppin/4/45\n"
+						.length())));
+		assertThat(metrics.getWrites(), is(2L));
+	}
+
+	@Test
+	public void countsFramesReceivedAndDecodeFailures() throws Exception {
+		simulateArduinoSends("alp://ared/1/42\n");
+		simulateArduinoSends("garbage\n");
+		waitUntilFramesReceived(2);
+		assertThat(metrics.getBytesReceived(),
+				is((long) ("alp://ared/1/42\n".length() - 1 + "garbage\n"
+						.length() - 1)));
+		waitUntilDecodeFailures(1);
+	}
+
+	@Test
+	public void countsListenerFailures() throws Exception {
+		this.link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				throw new IllegalStateException("failing listener");
+			}
+		});
+		simulateArduinoSends("alp://ared/1/42\n");
+		while (metrics.getListenerFailures() != 1) {
+			Thread.sleep(10);
+		}
+		metrics.reset();
+		assertThat(metrics.getListenerFailures(), is(0L));
+		assertThat(metrics.getFramesReceived(), is(0L));
+	}
+
+	private void waitUntilFramesReceived(long frames)
+			throws InterruptedException {
+		while (metrics.getFramesReceived() != frames) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void waitUntilDecodeFailures(long failures)
+			throws InterruptedException {
+		while (metrics.getDecodeFailures() != failures) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void simulateArduinoSends(String message) throws IOException {
+		this.arduinosOutputStream.write(message.getBytes());
+		this.arduinosOutputStream.flush();
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.events.FilteredEventListenerAdapter;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class PinIndexedEventListenersTest {
+
+	private final PinIndexedEventListeners sut = new PinIndexedEventListeners();
+
+	private final EventListener global = new EventListenerAdapter();
+
+	@Test
+	public void listenersAreFoundByPinTypeAndNumber() {
+		EventListener analog3 = filtered(analogPin(3));
+		EventListener digital3 = filtered(digitalPin(3));
+		sut.add(global);
+		sut.add(analog3);
+		sut.add(digital3);
+
+		assertThat(list(sut.global()), is(Arrays.asList(global)));
+		assertThat(list(sut.forPin(analogPin(3))), is(Arrays.asList(analog3)));
+		assertThat(list(sut.forPin(digitalPin(3))),
+				is(Arrays.asList(digital3)));
+		assertThat(sut.forPin(analogPin(4)).length, is(0));
+		assertThat(sut.forPin(digitalPin(1000)).length, is(0));
+	}
+
+	@Test
+	public void canRegisterListenersForHighPinNumbers() {
+		EventListener listener = filtered(digitalPin(1000));
+		sut.add(listener);
+		assertThat(list(sut.forPin(digitalPin(1000))),
+				is(Arrays.asList(listener)));
+		assertThat(sut.hasListenerForPin(digitalPin(1000)), is(true));
+	}
+
+	@Test
+	public void removeRemovesOneRegistration() {
+		EventListener listener = filtered(analogPin(1));
+		sut.add(listener);
+		sut.add(listener);
+		assertThat(sut.remove(listener), is(true));
+		assertThat(sut.hasListenerForPin(analogPin(1)), is(true));
+		assertThat(sut.remove(listener), is(true));
+		assertThat(sut.hasListenerForPin(analogPin(1)), is(false));
+		assertThat(sut.remove(listener), is(false));
+		assertThat(sut.remove(global), is(false));
+	}
+
+	@Test
+	public void allReturnsGlobalAndPinListeners() {
+		EventListener analog1 = filtered(analogPin(1));
+		EventListener digital2 = filtered(digitalPin(2));
+		sut.add(analog1);
+		sut.add(global);
+		sut.add(digital2);
+		assertThat(sut.all(), is(Arrays.asList(global, analog1, digital2)));
+	}
+
+	@Test
+	public void arraysReturnedAreNotAffectedByLaterChanges() {
+		EventListener listener = filtered(analogPin(1));
+		sut.add(listener);
+		EventListener[] snapshot = sut.forPin(analogPin(1));
+		sut.remove(listener);
+		assertThat(list(snapshot), is(Arrays.asList(listener)));
+	}
+
+	private static FilteredEventListenerAdapter filtered(Pin pin) {
+		return new FilteredEventListenerAdapter(pin, new EventListenerAdapter());
+	}
+
+	private static List<EventListener> list(EventListener[] listeners) {
+		return Arrays.asList(listeners);
+	}
+
+}
@@ -0,0 +1,155 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.util.Lists;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class StreamConnectionBatchingTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private static class FlushRecordingOutputStream extends
+			ByteArrayOutputStream {
+
+		private final List<String> flushed = Lists.newArrayList();
+
+		@Override
+		public synchronized void flush() {
+			flushed.add(toString());
+			reset();
+		}
+
+		public synchronized List<String> getFlushed() {
+			return Lists.newArrayList(flushed);
+		}
+
+	}
+
+	private final FlushRecordingOutputStream outputStream = new FlushRecordingOutputStream();
+
+	private final List<String> sent = Lists.newArrayList();
+
+	private StreamConnection connection;
+
+	@After
+	public void tearDown() throws IOException {
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void writesEachFrameIfBatchingIsDisabled() throws IOException {
+		connection = connectionWithBatching(0, 1);
+		connection.write("a\n".getBytes());
+		connection.write("b\n".getBytes());
+		assertThat(outputStream.getFlushed(), is(Arrays.asList("a\n", "b\n")));
+		assertThat(sent(), is(Arrays.asList("a\n", "b\n")));
+	}
+
+	@Test
+	public void framesWrittenWithinTheDelayAreWrittenAtOnce()
+			throws Exception {
+		connection = connectionWithBatching(200, 1024);
+		connection.write("a\n".getBytes());
+		connection.write("b\n".getBytes());
+		connection.write("c\n".getBytes());
+		assertThat(outputStream.getFlushed().isEmpty(), is(true));
+		waitUntilFlushed(1);
+		assertThat(outputStream.getFlushed(), is(Arrays.asList("a\nb\nc\n")));
+		assertThat(sent(), is(Arrays.asList("a\n", "b\n", "c\n")));
+	}
+
+	@Test
+	public void batchIsWrittenImmediatelyWhenReachingTheByteLimit()
+			throws IOException {
+		connection = connectionWithBatching(SECONDS.toMillis(10), 4);
+		connection.write("a\n".getBytes());
+		connection.write("b\n".getBytes());
+		connection.write("c\n".getBytes());
+		assertThat(outputStream.getFlushed(), is(Arrays.asList("a\nb\n")));
+	}
+
+	@Test
+	public void closeWritesFramesCollected() throws IOException {
+		connection = connectionWithBatching(SECONDS.toMillis(10), 1024);
+		connection.write("a\n".getBytes());
+		connection.close();
+		connection = null;
+		assertThat(outputStream.getFlushed(), is(Arrays.asList("a\n")));
+	}
+
+	@Test(expected = IOException.class)
+	public void writeAfterCloseThrowsIOException() throws IOException {
+		StreamConnection connection = connectionWithBatching(
+				SECONDS.toMillis(10), 1024);
+		connection.close();
+		connection.write("a\n".getBytes());
+	}
+
+	private StreamConnection connectionWithBatching(long batchMillis,
+			int batchBytes) {
+		StreamConnection connection = new StreamConnection(null,
+				outputStream, ArdulinkProtocol2.instance(), (int) batchMillis,
+				batchBytes);
+		connection.addListener(new Connection.ListenerAdapter() {
+			@Override
+			public void sent(byte[] bytes) {
+				synchronized (sent) {
+					sent.add(new String(bytes));
+				}
+			}
+		});
+		return connection;
+	}
+
+	private List<String> sent() {
+		synchronized (sent) {
+			return Lists.newArrayList(sent);
+		}
+	}
+
+	private void waitUntilFlushed(int count) throws InterruptedException {
+		while (outputStream.getFlushed().size() < count) {
+			MILLISECONDS.sleep(10);
+		}
+	}
+
+}
@@ -2,10 +2,12 @@ package org.ardulink.core;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PipedInputStream;
@@ -15,6 +17,9 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStartListening;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.impl.ArdulinkBinaryProtocol;
 import org.ardulink.util.Lists;
 import org.junit.Rule;
 import org.junit.Test;
@@ -91,6 +96,59 @@ public class StreamReaderTest {
 		reader.close();
 	}
 
+	@Test
+	public void canResyncAfterOversizedFrame() throws Exception {
+		List<String> expected = Arrays.asList("a", "b");
+		StringBuilder oversized = new StringBuilder();
+		for (int i = 0; i <= FrameScanner.DEFAULT_MAX_FRAME_LENGTH; i++) {
+			oversized.append('x');
+		}
+		StreamReader reader = process(new ByteArrayInputStream(("a\n"
+				+ oversized + "\nb\n").getBytes()), "\n", expected);
+		waitUntil(expected.size());
+		assertThat(received, is(expected));
+		reader.close();
+	}
+
+	@Test
+	public void canSplitLengthFramedFramesAndSkipCorruptedOnes()
+			throws Exception {
+		Protocol protocol = ArdulinkBinaryProtocol.instance();
+		byte[] frame1 = startListening(protocol, 1);
+		byte[] frame2 = startListening(protocol, 2);
+		byte[] frame3 = startListening(protocol, 3);
+		// corrupt the length of the second frame
+		byte[] corrupted = frame2.clone();
+		corrupted[1] = 42;
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		os.write("garbage".getBytes());
+		os.write(frame1);
+		os.write(corrupted);
+		os.write(frame3);
+		// a corrupted length is only detected once enough bytes follow
+		os.write(new byte[64]);
+
+		List<String> expected = Arrays.asList(Arrays.toString(frame1),
+				Arrays.toString(frame3));
+		StreamReader streamReader = new StreamReader(new ByteArrayInputStream(
+				os.toByteArray())) {
+			@Override
+			protected void received(byte[] bytes) {
+				received.add(Arrays.toString(bytes));
+			}
+		};
+		streamReader.runReaderThread(protocol);
+		waitUntil(expected.size());
+		assertThat(received, is(expected));
+		streamReader.close();
+	}
+
+	private static byte[] startListening(Protocol protocol, int pin) {
+		return protocol.toDevice(new DefaultToDeviceMessageStartListening(
+				analogPin(pin)));
+	}
+
 	private StreamReader process(InputStream is, String separator,
 			List<String> expected) throws InterruptedException, IOException {
 		final CountDownLatch latch = new CountDownLatch(expected.size());
@@ -0,0 +1,224 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ardulink.core.convenience;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.linkmanager.LinkManager.ConfigAttribute;
+import org.ardulink.core.linkmanager.LinkManager.Configurer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class LinksConcurrencyTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	private final AtomicInteger linksCreated = new AtomicInteger();
+	private final AtomicInteger linksClosed = new AtomicInteger();
+
+	private static class TestConfigurer implements Configurer {
+
+		private final Object key;
+		private final Callable<Link> creator;
+
+		public TestConfigurer(Object key, Callable<Link> creator) {
+			this.key = key;
+			this.creator = creator;
+		}
+
+		@Override
+		public Collection<String> getAttributes() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public ConfigAttribute getAttribute(String key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Link newLink() {
+			try {
+				return creator.call();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public Object uniqueIdentifier() {
+			return key;
+		}
+
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void differentLinksAreCreatedConcurrently() throws Exception {
+		final CyclicBarrier bothCreating = new CyclicBarrier(2);
+		Callable<Link> creator = new Callable<Link>() {
+			@Override
+			public Link call() throws Exception {
+				// fails if the other Link is not created at the same time
+				bothCreating.await(5, SECONDS);
+				return newLink();
+			}
+		};
+		Future<Link> link1 = getLinkAsync(new TestConfigurer(new Object(),
+				creator));
+		Future<Link> link2 = getLinkAsync(new TestConfigurer(new Object(),
+				creator));
+		assertThat(link1.get(), not(sameInstance(link2.get())));
+		link1.get().close();
+		link2.get().close();
+		assertThat(linksClosed.get(), is(2));
+	}
+
+	@Test
+	public void callersOfTheSameLinkShareThePendingLink() throws Exception {
+		final CountDownLatch creating = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		Configurer configurer = new TestConfigurer(new Object(),
+				new Callable<Link>() {
+					@Override
+					public Link call() throws Exception {
+						creating.countDown();
+						proceed.await();
+						return newLink();
+					}
+				});
+		Future<Link> link1 = getLinkAsync(configurer);
+		creating.await();
+		Future<Link> link2 = getLinkAsync(configurer);
+		proceed.countDown();
+		assertThat(link1.get(), sameInstance(link2.get()));
+		assertThat(linksCreated.get(), is(1));
+
+		link1.get().close();
+		assertThat(linksClosed.get(), is(0));
+		link2.get().close();
+		assertThat(linksClosed.get(), is(1));
+	}
+
+	@Test
+	public void failedCreationsAreNotCached() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+		Configurer configurer = new TestConfigurer(new Object(),
+				new Callable<Link>() {
+					@Override
+					public Link call() throws Exception {
+						if (attempts.incrementAndGet() == 1) {
+							throw new IOException("device not available");
+						}
+						return newLink();
+					}
+				});
+		try {
+			Links.getLink(configurer);
+			fail("exception expected");
+		} catch (RuntimeException e) {
+			assertThat(e.getCause().getMessage(), is("device not available"));
+		}
+		Link link = Links.getLink(configurer);
+		assertThat(attempts.get(), is(2));
+		link.close();
+		assertThat(linksClosed.get(), is(1));
+	}
+
+	@Test
+	public void closingTheLinkMoreOftenThanRequestedDoesNotCloseItTwice()
+			throws Exception {
+		Configurer configurer = new TestConfigurer(new Object(),
+				new Callable<Link>() {
+					@Override
+					public Link call() throws Exception {
+						return newLink();
+					}
+				});
+		Link link = Links.getLink(configurer);
+		link.close();
+		link.close();
+		assertThat(linksClosed.get(), is(1));
+		Link fresh = Links.getLink(configurer);
+		assertThat(fresh, not(sameInstance(link)));
+		fresh.close();
+		assertThat(linksClosed.get(), is(2));
+	}
+
+	private Future<Link> getLinkAsync(final Configurer configurer) {
+		return executor.submit(new Callable<Link>() {
+			@Override
+			public Link call() throws Exception {
+				return Links.getLink(configurer);
+			}
+		});
+	}
+
+	private Link newLink() {
+		linksCreated.incrementAndGet();
+		return (Link) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Link.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if ("close".equals(method.getName())) {
+							linksClosed.incrementAndGet();
+						}
+						return method.getReturnType() == long.class ? 0L
+								: null;
+					}
+				});
+	}
+
+}
@@ -208,6 +208,25 @@ public class LinksTest {
 		close(link0, link1);
 	}
 
+	@Test
+	public void listeningOfBatchesAndSingleCallsIsCountedTogether() throws IOException {
+		String randomURI = "ardulink://mock?name=" + System.currentTimeMillis();
+		Link link0 = Links.getLink(randomURI);
+		Link link1 = Links.getLink(randomURI);
+		Link delegate = assertAllSameInstances(((LinkDelegate) link0).getDelegate(),
+				((LinkDelegate) link1).getDelegate())[0];
+		Pin anyPin = digitalPin(3);
+		link0.batch().startListening(anyPin).send();
+		link1.startListening(anyPin);
+
+		link1.stopListening(anyPin);
+		verify(delegate, times(0)).stopListening(anyPin);
+
+		link0.batch().stopListening(anyPin).send();
+		verify(delegate, times(1)).stopListening(anyPin);
+		close(link0, link1);
+	}
+
 	@Test
 	public void twoDifferentURIsWithSameParamsMustNotBeenMixed() throws Exception {
 		final String name1 = new DummyLinkFactory().getName();
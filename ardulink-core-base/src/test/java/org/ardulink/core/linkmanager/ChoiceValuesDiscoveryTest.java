@@ -0,0 +1,195 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ardulink.core.linkmanager;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.URIs.newURI;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ardulink.core.linkmanager.LinkManager.ConfigAttribute;
+import org.ardulink.core.linkmanager.LinkManager.Configurer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ChoiceValuesDiscoveryTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	private static final URI URI = newURI("ardulink://discovery");
+
+	private final AtomicInteger loads = new AtomicInteger();
+	private final AtomicReference<Object[]> ports = new AtomicReference<Object[]>(
+			new Object[] { "port1" });
+	private volatile CountDownLatch loading = new CountDownLatch(0);
+
+	private ChoiceValuesDiscovery sut;
+
+	private final LinkManager linkManager = new LinkManager() {
+
+		@Override
+		public List<URI> listURIs() {
+			return Collections.singletonList(URI);
+		}
+
+		@Override
+		public Configurer getConfigurer(URI uri) {
+			return proxy(Configurer.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					return attribute();
+				}
+			});
+		}
+
+		private ConfigAttribute attribute() {
+			return proxy(ConfigAttribute.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args)
+						throws InterruptedException {
+					loads.incrementAndGet();
+					loading.await();
+					Object[] values = ports.get();
+					if (values == null) {
+						throw new IllegalStateException("no ports");
+					}
+					return values;
+				}
+			});
+		}
+
+	};
+
+	@After
+	public void tearDown() {
+		sut.close();
+	}
+
+	@Test
+	public void servesCachedValuesWithinTtl() throws Exception {
+		sut = new ChoiceValuesDiscovery(linkManager, 10, 10, SECONDS);
+		assertThat(sut.choiceValues(URI, "port").get(),
+				is(new Object[] { "port1" }));
+		ports.set(new Object[] { "port2" });
+		assertThat(sut.choiceValues(URI, "port").get(),
+				is(new Object[] { "port1" }));
+		assertThat(loads.get(), is(1));
+	}
+
+	@Test
+	public void concurrentRequestsShareOneLoad() throws Exception {
+		sut = new ChoiceValuesDiscovery(linkManager, 10, 10, SECONDS);
+		loading = new CountDownLatch(1);
+		Future<Object[]> first = sut.choiceValues(URI, "port");
+		Future<Object[]> second = sut.choiceValues(URI, "port");
+		assertThat(second, sameInstance(first));
+		loading.countDown();
+		assertThat(second.get(), is(new Object[] { "port1" }));
+		assertThat(loads.get(), is(1));
+	}
+
+	@Test
+	public void refreshesInBackgroundAndNotifiesListeners() throws Exception {
+		sut = new ChoiceValuesDiscovery(linkManager, 10000, 20, MILLISECONDS);
+		final CountDownLatch changed = new CountDownLatch(1);
+		final AtomicReference<Object[]> notified = new AtomicReference<Object[]>();
+		sut.addListener(new ChoiceValuesDiscovery.Listener() {
+			@Override
+			public void choiceValuesChanged(URI uri, String attribute,
+					Object[] values) {
+				notified.set(values);
+				changed.countDown();
+			}
+		});
+		sut.choiceValues(URI, "port").get();
+		ports.set(new Object[] { "port1", "port2" });
+		changed.await();
+		assertThat(notified.get(), is(new Object[] { "port1", "port2" }));
+		assertThat(sut.choiceValues(URI, "port").get(),
+				is(new Object[] { "port1", "port2" }));
+	}
+
+	@Test
+	public void failedRefreshesDoNotNotifyListeners() throws Exception {
+		sut = new ChoiceValuesDiscovery(linkManager, 10000, 20, MILLISECONDS);
+		final AtomicInteger notifications = new AtomicInteger();
+		sut.addListener(new ChoiceValuesDiscovery.Listener() {
+			@Override
+			public void choiceValuesChanged(URI uri, String attribute,
+					Object[] values) {
+				notifications.incrementAndGet();
+			}
+		});
+		sut.choiceValues(URI, "port").get();
+		ports.set(null);
+		int loadsBefore = loads.get();
+		while (loads.get() < loadsBefore + 3) {
+			MILLISECONDS.sleep(10);
+		}
+		assertThat(notifications.get(), is(0));
+		assertThat(sut.choiceValues(URI, "port").get(),
+				is(new Object[] { "port1" }));
+	}
+
+	@Test
+	public void failedLoadsAreNotCached() throws Exception {
+		sut = new ChoiceValuesDiscovery(linkManager, 10, 10, SECONDS);
+		ports.set(null);
+		try {
+			sut.choiceValues(URI, "port").get();
+			fail("exception expected");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause().getMessage(), is("no ports"));
+		}
+		ports.set(new Object[] { "port1" });
+		assertThat(sut.choiceValues(URI, "port").get(),
+				is(new Object[] { "port1" }));
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(
+				ChoiceValuesDiscoveryTest.class.getClassLoader(),
+				new Class<?>[] { type }, handler));
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.linkmanager;
+
+import static org.ardulink.core.linkmanager.Classloaders.CHECK_INTERVAL_PROPERTY;
+import static org.ardulink.core.linkmanager.Classloaders.moduleClassloader;
+import static org.ardulink.core.linkmanager.Classloaders.moduleServices;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.ardulink.core.linkmanager.providers.LinkFactoriesProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class ClassloadersTest {
+
+	private static final String MODULE_DIR_PROPERTY = "ardulink.module.dir";
+
+	@Rule
+	public TemporaryFolder moduleDir = new TemporaryFolder();
+
+	@Before
+	public void setup() {
+		System.setProperty(MODULE_DIR_PROPERTY, moduleDir.getRoot().getAbsolutePath());
+		System.setProperty(CHECK_INTERVAL_PROPERTY, "0");
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty(MODULE_DIR_PROPERTY);
+		System.clearProperty(CHECK_INTERVAL_PROPERTY);
+	}
+
+	@Test
+	public void classloaderAndServicesAreReusedWhileModuleDirIsUnchanged() {
+		assertThat(moduleClassloader(), sameInstance(moduleClassloader()));
+		assertThat(moduleServices(LinkFactoriesProvider.class),
+				sameInstance(moduleServices(LinkFactoriesProvider.class)));
+	}
+
+	@Test
+	public void classloaderIsRecreatedIfAJarIsAdded() throws IOException {
+		ClassLoader classloader = moduleClassloader();
+		moduleDir.newFile("module.jar");
+		assertThat(moduleClassloader(), not(sameInstance(classloader)));
+	}
+
+	@Test
+	public void moduleDirIsNotCheckedAgainWithinCheckInterval()
+			throws IOException {
+		System.setProperty(CHECK_INTERVAL_PROPERTY, "60000");
+		ClassLoader classloader = moduleClassloader();
+		moduleDir.newFile("module.jar");
+		assertThat(moduleClassloader(), sameInstance(classloader));
+	}
+
+	@Test
+	public void eachContextClassloaderKeepsItsOwnClassloader() {
+		Thread thread = Thread.currentThread();
+		ClassLoader contextClassloader = thread.getContextClassLoader();
+		ClassLoader classloader = moduleClassloader();
+		thread.setContextClassLoader(new URLClassLoader(new URL[0],
+				contextClassloader));
+		try {
+			ClassLoader other = moduleClassloader();
+			assertThat(other, not(sameInstance(classloader)));
+			assertThat(moduleClassloader(), sameInstance(other));
+		} finally {
+			thread.setContextClassLoader(contextClassloader);
+		}
+		assertThat(moduleClassloader(), sameInstance(classloader));
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.linkmanager.providers;
+
+import static java.util.Arrays.asList;
+import static org.ardulink.core.linkmanager.LinkConfig.NO_ATTRIBUTES;
+import static org.ardulink.core.linkmanager.LinkManager.INDEX_PROPERTY;
+import static org.ardulink.util.URIs.newURI;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.HashSet;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.linkmanager.LinkConfig;
+import org.ardulink.core.linkmanager.LinkFactory;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FactoriesViaIndexTest {
+
+	public static class IndexedLinkFactory implements LinkFactory<LinkConfig> {
+
+		@Override
+		public String getName() {
+			return "indexed";
+		}
+
+		@Override
+		public Link newLink(LinkConfig config) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public LinkConfig newLinkConfig() {
+			return NO_ATTRIBUTES;
+		}
+
+	}
+
+	private static final String INDEX = "ardulink/linkfactory.idx";
+
+	@Before
+	public void setup() {
+		System.setProperty(INDEX_PROPERTY, INDEX);
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty(INDEX_PROPERTY);
+	}
+
+	@Test
+	public void listsOnlyTheIndexedFactories() {
+		assertThat(
+				new HashSet<URI>(LinkManager.getInstance().listURIs()),
+				is(new HashSet<URI>(asList(newURI("ardulink://indexed"),
+						newURI("ardulink://aLinkWithoutArealLinkFactoryWithoutConfig")))));
+	}
+
+	@Test
+	public void indexIsReadOnlyOnce() {
+		assertThat(FactoriesViaIndex.forResource(INDEX),
+				sameInstance(FactoriesViaIndex.forResource(INDEX)));
+	}
+
+	@Test
+	public void generatedIndexContainsTheDescriptorLines() throws IOException {
+		StringWriter writer = new StringWriter();
+		FactoriesViaIndex.writeIndex(getClass().getClassLoader(), writer);
+		assertThat(
+				writer.toString(),
+				containsString("\naLinkWithoutArealLinkFactoryWithoutConfig:NULL:"
+						+ "org.ardulink.core.linkmanager.viaservices.AlLinkWithoutArealLinkFactoryWithoutConfig\n"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void missingIndexIsReported() {
+		new FactoriesViaIndex(getClass().getClassLoader(), "no/such/index");
+	}
+
+}
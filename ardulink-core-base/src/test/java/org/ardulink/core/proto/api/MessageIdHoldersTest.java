@@ -0,0 +1,98 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.proto.api;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.proto.api.MessageIdHolders.NO_ID;
+import static org.ardulink.core.proto.api.MessageIdHolders.addMessageId;
+import static org.ardulink.core.proto.api.MessageIdHolders.toHolder;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Proxy;
+
+import org.ardulink.core.messages.api.ToDeviceMessageKeyPress;
+import org.ardulink.core.messages.api.ToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageKeyPress;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessagePinStateChange;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class MessageIdHoldersTest {
+
+	public interface SomeMessage {
+		String getValue();
+	}
+
+	@Test
+	public void knownMessagesAreWrappedWithoutProxy() {
+		ToDeviceMessagePinStateChange message = addMessageId(
+				new DefaultToDeviceMessagePinStateChange(digitalPin(3), true),
+				42);
+		assertThat(Proxy.isProxyClass(message.getClass()), is(false));
+		assertThat(toHolder(message).or(NO_ID).getId(), is(42L));
+		assertThat(message.getPin(), is((Object) digitalPin(3)));
+		assertThat(message.getValue(), is((Object) Boolean.TRUE));
+
+		ToDeviceMessageKeyPress keyPress = addMessageId(
+				new DefaultToDeviceMessageKeyPress('a', 1, 2, 3, 4), 43);
+		assertThat(toHolder(keyPress).or(NO_ID).getId(), is(43L));
+		assertThat(keyPress.getKeychar(), is('a'));
+		assertThat(keyPress.getKeymodifiersex(), is(4));
+	}
+
+	@Test
+	public void wrappersForwardObjectMethodsLikeTheProxy() {
+		DefaultToDeviceMessagePinStateChange delegate = new DefaultToDeviceMessagePinStateChange(
+				digitalPin(3), true);
+		ToDeviceMessagePinStateChange wrapped = addMessageId(delegate, 42);
+		Object proxied = Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ToDeviceMessagePinStateChange.class },
+				new MessageIdHolders.MessageIdHolderInvocationHandler(
+						delegate, 42));
+		assertThat(wrapped.equals(delegate), is(proxied.equals(delegate)));
+		assertThat(wrapped.hashCode(), is(proxied.hashCode()));
+		assertThat(wrapped.toString(), is(proxied.toString()));
+	}
+
+	@Test
+	public void otherTypesAreProxied() {
+		SomeMessage message = addMessageId(new SomeMessage() {
+			@Override
+			public String getValue() {
+				return "foo";
+			}
+		}, 44);
+		assertThat(Proxy.isProxyClass(message.getClass()), is(true));
+		assertThat(toHolder(message).or(NO_ID).getId(), is(44L));
+		assertThat(message.getValue(), is("foo"));
+	}
+
+	@Test
+	public void messagesWithoutIdHaveNoHolder() {
+		assertThat(toHolder(new DefaultToDeviceMessagePinStateChange(
+				analogPin(1), 2)).isPresent(), is(false));
+	}
+
+}
@@ -18,9 +18,12 @@ package org.ardulink.core.proto.api;
 
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.Arrays;
 import java.util.HashSet;
 
@@ -44,9 +47,32 @@ public class ProtocolsTest {
 	public void defaultAndDummyProtocolsAreRegistered() {
 		assertThat(
 				new HashSet<String>(Protocols.names()),
-				is(new HashSet<String>(Arrays.asList("ardulink2", "dummyProto"))));
+				is(new HashSet<String>(Arrays.asList("ardulink2",
+						"ardulink-binary", "dummyProto"))));
 	}
 	
+	@Test
+	public void protocolsAreLoadedOnlyOnce() {
+		assertThat(Protocols.getByName("ardulink2"),
+				sameInstance(Protocols.getByName("ardulink2")));
+	}
+
+	@Test
+	public void protocolsOfOtherContextClassloadersDoNotReplaceEachOther() {
+		Thread thread = Thread.currentThread();
+		ClassLoader contextClassloader = thread.getContextClassLoader();
+		Protocol protocol = Protocols.getByName("ardulink2");
+		thread.setContextClassLoader(new URLClassLoader(new URL[0],
+				contextClassloader));
+		try {
+			assertThat(Protocols.getByName("ardulink2"),
+					sameInstance(Protocols.getByName("ardulink2")));
+		} finally {
+			thread.setContextClassLoader(contextClassloader);
+		}
+		assertThat(Protocols.getByName("ardulink2"), sameInstance(protocol));
+	}
+
 	@Test
 	public void ardulinkProtocol2ReceiveCustomEvent() {
 		Protocol protocol = ArdulinkProtocol2.instance();
@@ -0,0 +1,252 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.proto.impl;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.proto.api.MessageIdHolders.addMessageId;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.ANALOG_PIN_READ;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.BATCH;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.CUSTOM_EVENT;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.CUSTOM_MESSAGE;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.DIGITAL_PIN_READ;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.FLAG_ID;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.POWER_PIN_INTENSITY;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.POWER_PIN_SWITCH;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.READY;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.RPLY;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.START_LISTENING_DIGITAL;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.crc16;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ardulink.core.events.PrimitivePinListener;
+import org.ardulink.core.messages.api.FromDeviceMessage;
+import org.ardulink.core.messages.api.FromDeviceMessageCustom;
+import org.ardulink.core.messages.api.FromDeviceMessagePinStateChanged;
+import org.ardulink.core.messages.api.FromDeviceMessageReady;
+import org.ardulink.core.messages.api.FromDeviceMessageReply;
+import org.ardulink.core.messages.api.ToDeviceMessage;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageCustom;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStartListening;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ArdulinkBinaryProtocolTest {
+
+	private final ArdulinkBinaryProtocol sut = new ArdulinkBinaryProtocol();
+
+	@Test
+	public void crcIsCcittFalse() {
+		assertThat(crc16("123456789".getBytes(), 0, 9), is(0x29B1));
+	}
+
+	@Test
+	public void canEncodePinStateChanges() {
+		assertThat(sut.toDevice(new DefaultToDeviceMessagePinStateChange(
+				analogPin(3), 1023)), is(frame(POWER_PIN_INTENSITY, 3, 0xFF,
+				0x07)));
+		assertThat(sut.toDevice(new DefaultToDeviceMessagePinStateChange(
+				digitalPin(12), true)), is(frame(POWER_PIN_SWITCH, 12, 1)));
+	}
+
+	@Test
+	public void messageIdFollowsTheOpcode() {
+		assertThat(sut.toDevice(addMessageId(
+				new DefaultToDeviceMessagePinStateChange(digitalPin(12), true),
+				300)), is(frame(POWER_PIN_SWITCH | FLAG_ID, 0xAC, 0x02, 12, 1)));
+	}
+
+	@Test
+	public void negativeValuesTakeFiveBytes() {
+		assertThat(sut.toDevice(new DefaultToDeviceMessagePinStateChange(
+				analogPin(3), -1)), is(frame(POWER_PIN_INTENSITY, 3, 0xFF, 0xFF,
+				0xFF, 0xFF, 0x0F)));
+	}
+
+	@Test
+	public void stringsAreEncodedAsUtf8() {
+		assertThat(sut.toDevice(new DefaultToDeviceMessageCustom("a", "ä")),
+				is(frame(CUSTOM_MESSAGE, 1, 'a', 2, 0xC3, 0xA4)));
+	}
+
+	@Test
+	public void canEncodeIntoBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put((byte) 42);
+		sut.toDevice(new DefaultToDeviceMessagePinStateChange(digitalPin(12),
+				false), buffer);
+		byte[] expected = frame(POWER_PIN_SWITCH, 12, 0);
+		assertThat(buffer.position(), is(1 + expected.length));
+		for (int i = 0; i < expected.length; i++) {
+			assertThat(buffer.get(1 + i), is(expected[i]));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void messagesExceedingTheMaximumPayloadAreRejected() {
+		sut.toDevice(new DefaultToDeviceMessageCustom(new String(new char[300])
+				.replace('\0', 'x')));
+	}
+
+	@Test
+	public void batchFrameCarriesTheIdOfTheLastCommand() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		sut.toDevice(Arrays.<ToDeviceMessage> asList(
+				new DefaultToDeviceMessagePinStateChange(digitalPin(2), true),
+				new DefaultToDeviceMessagePinStateChange(analogPin(3), 1023),
+				addMessageId(new DefaultToDeviceMessageStartListening(
+						digitalPin(4)), 300)), buffer);
+		assertThat(bytes(buffer), is(frame(BATCH | FLAG_ID, 0xAC, 0x02,
+				POWER_PIN_SWITCH, 2, 1, POWER_PIN_INTENSITY, 3, 0xFF, 0x07,
+				START_LISTENING_DIGITAL, 4)));
+	}
+
+	@Test
+	public void longBatchesAreSplitIntoSeveralFrames() {
+		List<ToDeviceMessage> messages = new ArrayList<ToDeviceMessage>();
+		for (int pin = 0; pin < 99; pin++) {
+			messages.add(new DefaultToDeviceMessagePinStateChange(
+					digitalPin(pin), true));
+		}
+		messages.add(addMessageId(new DefaultToDeviceMessagePinStateChange(
+				digitalPin(99), true), 1));
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		sut.toDevice(messages, buffer);
+
+		// 3 bytes per command, payload of 255 minus opcode and maximum id
+		int inFirst = 81;
+		int[] first = new int[1 + 3 * inFirst];
+		first[0] = BATCH;
+		int[] second = new int[2 + 3 * (100 - inFirst)];
+		second[0] = BATCH | FLAG_ID;
+		second[1] = 1;
+		for (int pin = 0; pin < 100; pin++) {
+			int[] payload = pin < inFirst ? first : second;
+			int at = pin < inFirst ? 1 + 3 * pin : 2 + 3 * (pin - inFirst);
+			payload[at] = POWER_PIN_SWITCH;
+			payload[at + 1] = pin;
+			payload[at + 2] = 1;
+		}
+		byte[] expectedFirst = frame(first);
+		byte[] expectedSecond = frame(second);
+		byte[] expected = Arrays.copyOf(expectedFirst, expectedFirst.length
+				+ expectedSecond.length);
+		System.arraycopy(expectedSecond, 0, expected, expectedFirst.length,
+				expectedSecond.length);
+		assertThat(bytes(buffer), is(expected));
+	}
+
+	@Test
+	public void canDecodeFromDeviceMessages() {
+		assertThat(sut.fromDevice(frame(READY)),
+				instanceOf(FromDeviceMessageReady.class));
+
+		FromDeviceMessage analog = sut.fromDevice(frame(ANALOG_PIN_READ, 3,
+				0xFF, 0x07));
+		assertThat(((FromDeviceMessagePinStateChanged) analog).getPin(),
+				is((Object) analogPin(3)));
+		assertThat(((FromDeviceMessagePinStateChanged) analog).getValue(),
+				is((Object) 1023));
+
+		FromDeviceMessage digital = sut.fromDevice(frame(DIGITAL_PIN_READ, 7,
+				1));
+		assertThat(((FromDeviceMessagePinStateChanged) digital).getValue(),
+				is((Object) Boolean.TRUE));
+
+		FromDeviceMessage custom = sut.fromDevice(frame(CUSTOM_EVENT, 3, 'f',
+				'o', 'o'));
+		assertThat(((FromDeviceMessageCustom) custom).getMessage(), is("foo"));
+	}
+
+	@Test
+	public void canDecodeReplies() {
+		FromDeviceMessageReply reply = (FromDeviceMessageReply) sut
+				.fromDevice(frame(RPLY | FLAG_ID, 42, 1, 1, 'k', 2, 'v', '1'));
+		assertThat(reply.isOk(), is(true));
+		assertThat(reply.getId(), is(42L));
+		assertThat(reply.getParameters().get("k"), is((Object) "v1"));
+	}
+
+	@Test
+	public void decodesPinStatesWithoutMessageObjects() {
+		final List<String> events = new ArrayList<String>();
+		PrimitivePinListener listener = new PrimitivePinListener() {
+			@Override
+			public void onAnalog(int pin, int value, long nanoTime) {
+				events.add("A" + pin + "=" + value);
+			}
+
+			@Override
+			public void onDigital(int pin, boolean value, long nanoTime) {
+				events.add("D" + pin + "=" + value);
+			}
+		};
+		assertThat(sut.pinStateFromDevice(frame(ANALOG_PIN_READ, 3, 0xFF,
+				0x07), listener, 0), is(true));
+		assertThat(sut.pinStateFromDevice(frame(DIGITAL_PIN_READ | FLAG_ID, 9,
+				7, 0), listener, 0), is(true));
+		assertThat(sut.pinStateFromDevice(frame(READY), listener, 0),
+				is(false));
+		assertThat(events.toString(), is("[A3=1023, D7=false]"));
+	}
+
+	@Test
+	public void corruptedFramesAreDetected() {
+		byte[] frame = frame(ANALOG_PIN_READ, 3, 0xFF, 0x07);
+		frame[3] ^= 0x01;
+		assertThat(sut.isIntact(frame), is(false));
+		assertThat(sut.pinStateFromDevice(frame, null, 0), is(false));
+		try {
+			sut.fromDevice(frame);
+			throw new AssertionError("corrupted frame was decoded");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage().contains("corrupted"), is(true));
+		}
+	}
+
+	private static byte[] bytes(ByteBuffer buffer) {
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	private static byte[] frame(int... payload) {
+		byte[] frame = new byte[2 + payload.length + 2];
+		frame[0] = ArdulinkBinaryProtocol.START_OF_FRAME;
+		frame[1] = (byte) payload.length;
+		for (int i = 0; i < payload.length; i++) {
+			frame[2 + i] = (byte) payload[i];
+		}
+		int crc = crc16(frame, 1, payload.length + 1);
+		frame[frame.length - 2] = (byte) (crc >>> 8);
+		frame[frame.length - 1] = (byte) crc;
+		return frame;
+	}
+
+}
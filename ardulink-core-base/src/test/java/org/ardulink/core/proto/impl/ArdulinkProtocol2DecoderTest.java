@@ -0,0 +1,181 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.impl;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.ardulink.core.events.PrimitivePinListener;
+import org.ardulink.core.messages.api.FromDeviceChangeListeningState;
+import org.ardulink.core.messages.api.FromDeviceMessage;
+import org.ardulink.core.messages.api.FromDeviceMessageCustom;
+import org.ardulink.core.messages.api.FromDeviceMessagePinStateChanged;
+import org.ardulink.core.messages.api.FromDeviceMessageReady;
+import org.ardulink.core.messages.api.FromDeviceMessageReply;
+import org.ardulink.core.proto.api.Protocol;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Verifies that {@link ArdulinkProtocol2#fromDevice(byte[])} decodes the same
+ * way the former {@link java.net.URI} based implementation did.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class ArdulinkProtocol2DecoderTest {
+
+	private final Protocol sut = ArdulinkProtocol2.instance();
+
+	private static final List<String> VALID = Arrays.asList("alp://ready/",
+			"alp://ready", "alp://rply/ok?id=1", "alp://rply/KO?id=42",
+			"alp://rply/ok?id=1&UniqueID=456-2342-2342&ciao=boo",
+			"alp://rply/ok?UniqueID=a%20b&id=7", "alp://cevnt/foo=w/some=42",
+			"alp://cevnt/", "alp://srla/3", "alp://srld/13", "alp://spla/3",
+			"alp://spld/13", "alp://ared/3/1023", "alp://ared/0/0?id=5",
+			"alp://ared/1/-12", "alp://dred/7/1", "alp://dred/7/0",
+			"alp://dred/7/2", "alp://ared/3/5/");
+
+	private static final List<String> INVALID = Arrays.asList("foo",
+			"http://ared/1/2", "alp://xxxx/1/2", "alp://aredx/1/2",
+			"alp://ared/1", "alp://ared/1/2/3", "alp://ared/a/2",
+			"alp://ared/1/b", "alp://ared/", "alp://srla/x", "alp://rply/ok",
+			"alp://rply/ok?foo=bar", "alp://rply/ok?id=x",
+			"alp://ppsw/1/2", "alp://ppin/1", "alp://dred/1/99999999999");
+
+	@Test
+	public void decodesValidMessagesLikeUriBasedDecoder() {
+		for (String message : VALID) {
+			assertThat(message, describe(sut.fromDevice(message.getBytes())),
+					is(describe(UriBasedArdulinkProtocol2Decoder
+							.fromDevice(message.getBytes()))));
+		}
+	}
+
+	@Test
+	public void rejectsInvalidMessagesLikeUriBasedDecoder() {
+		for (String message : INVALID) {
+			assertThrows(message, true);
+			assertThrows(message, false);
+		}
+	}
+
+	@Test
+	public void rejectsMalformedReplyParametersWhileDecoding() {
+		for (String message : Arrays.asList("alp://rply/ok?id=1&foo",
+				"alp://rply/ok?id=1&foo=", "alp://rply/ok?id=1&&bar=1")) {
+			try {
+				sut.fromDevice(message.getBytes());
+				fail("accepted " + message);
+			} catch (RuntimeException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void decodesPinStateChangesToPrimitivesLikeFromDevice() {
+		for (String message : VALID) {
+			FromDeviceMessage expected = sut.fromDevice(message.getBytes());
+			RecordingPinListener listener = new RecordingPinListener();
+			boolean decoded = ((ArdulinkProtocol2) sut).pinStateFromDevice(
+					message.getBytes(), listener, 42);
+			assertThat(message, decoded,
+					is(expected instanceof FromDeviceMessagePinStateChanged));
+			if (decoded) {
+				assertThat(message, listener.described, is(describe(expected)));
+			}
+		}
+	}
+
+	@Test
+	public void doesNotDecodeInvalidMessagesToPrimitives() {
+		for (String message : INVALID) {
+			RecordingPinListener listener = new RecordingPinListener();
+			try {
+				assertThat(message, ((ArdulinkProtocol2) sut)
+						.pinStateFromDevice(message.getBytes(), listener, 42),
+						is(false));
+			} catch (RuntimeException e) {
+				// expected
+			}
+			assertThat(message, listener.described == null, is(true));
+		}
+	}
+
+	private static class RecordingPinListener implements PrimitivePinListener {
+
+		private String described;
+
+		@Override
+		public void onAnalog(int pin, int value, long nanoTime) {
+			described = "changed ANALOG " + pin + " Integer " + value;
+		}
+
+		@Override
+		public void onDigital(int pin, boolean value, long nanoTime) {
+			described = "changed DIGITAL " + pin + " Boolean " + value;
+		}
+
+	}
+
+	private void assertThrows(String message, boolean legacy) {
+		try {
+			FromDeviceMessage result = legacy ? UriBasedArdulinkProtocol2Decoder
+					.fromDevice(message.getBytes()) : sut.fromDevice(message
+					.getBytes());
+			fail((legacy ? "legacy" : "new") + " decoder accepted " + message
+					+ ": " + describe(result));
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	private static String describe(FromDeviceMessage message) {
+		if (message instanceof FromDeviceMessageReady) {
+			return "ready";
+		}
+		if (message instanceof FromDeviceMessageReply) {
+			FromDeviceMessageReply reply = (FromDeviceMessageReply) message;
+			return "rply " + reply.isOk() + " " + reply.getId() + " "
+					+ new TreeMap<String, Object>(reply.getParameters());
+		}
+		if (message instanceof FromDeviceMessageCustom) {
+			return "custom " + ((FromDeviceMessageCustom) message).getMessage();
+		}
+		if (message instanceof FromDeviceChangeListeningState) {
+			FromDeviceChangeListeningState state = (FromDeviceChangeListeningState) message;
+			return "listening " + state.getPin() + " " + state.getMode();
+		}
+		if (message instanceof FromDeviceMessagePinStateChanged) {
+			FromDeviceMessagePinStateChanged changed = (FromDeviceMessagePinStateChanged) message;
+			return "changed " + changed.getPin() + " "
+					+ changed.getValue().getClass().getSimpleName() + " "
+					+ changed.getValue();
+		}
+		throw new IllegalStateException("Unknown message " + message);
+	}
+
+}
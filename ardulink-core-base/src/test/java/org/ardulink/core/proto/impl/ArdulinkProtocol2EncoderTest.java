@@ -0,0 +1,136 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.proto.impl;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.proto.api.MessageIdHolders.addMessageId;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.alpProtocolMessage;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.CUSTOM_MESSAGE;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.POWER_PIN_INTENSITY;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.POWER_PIN_SWITCH;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.START_LISTENING_ANALOG;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LISTENING_DIGITAL;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.ardulink.core.Tone;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageCustom;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageKeyPress;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageNoTone;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessagePinStateChange;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStartListening;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStopListening;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageTone;
+import org.ardulink.core.proto.api.ByteBufferProtocol;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Verifies that the messages encoded by {@link ArdulinkProtocol2} are the same
+ * {@link ALProtoBuilder} creates.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ArdulinkProtocol2EncoderTest {
+
+	private final ByteBufferProtocol sut = new ArdulinkProtocol2();
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(64);
+
+	@Test
+	public void canEncodePinStateChanges() {
+		assertThat(new String(sut
+				.toDevice(new DefaultToDeviceMessagePinStateChange(
+						analogPin(3), 255))), is(alpProtocolMessage(
+				POWER_PIN_INTENSITY).forPin(3).withValue(255)
+				+ "\n"));
+		assertThat(new String(sut
+				.toDevice(new DefaultToDeviceMessagePinStateChange(
+						analogPin(3), -1))), is(alpProtocolMessage(
+				POWER_PIN_INTENSITY).forPin(3).withValue(-1)
+				+ "\n"));
+		assertThat(new String(sut.toDevice(addMessageId(
+				new DefaultToDeviceMessagePinStateChange(digitalPin(12), true),
+				Long.MAX_VALUE))), is(alpProtocolMessage(POWER_PIN_SWITCH)
+				.forPin(12).usingMessageId(Long.MAX_VALUE).withState(true)
+				+ "\n"));
+	}
+
+	@Test
+	public void canEncodeListeningMessages() {
+		assertThat(new String(sut.toDevice(addMessageId(
+				new DefaultToDeviceMessageStartListening(analogPin(1)), 42))),
+				is(alpProtocolMessage(START_LISTENING_ANALOG).forPin(1)
+						.usingMessageId(42L).withoutValue()
+						+ "\n"));
+		assertThat(new String(sut
+				.toDevice(new DefaultToDeviceMessageStopListening(
+						digitalPin(0)))), is(alpProtocolMessage(
+				STOP_LISTENING_DIGITAL).forPin(0).withoutValue()
+				+ "\n"));
+	}
+
+	@Test
+	public void canEncodeKeyPressAndTones() {
+		assertThat(new String(sut.toDevice(new DefaultToDeviceMessageKeyPress(
+				'#', 1, 2, 3, -4))), is("alp://kprs/chr#cod1loc2mod3mex-4\n"));
+		assertThat(new String(sut.toDevice(new DefaultToDeviceMessageTone(Tone
+				.forPin(analogPin(2)).withHertz(3000).withDuration(5, SECONDS)))),
+				is("alp://tone/2/3000/5000\n"));
+		assertThat(new String(sut.toDevice(new DefaultToDeviceMessageNoTone(
+				analogPin(5)))), is("alp://notn/5\n"));
+	}
+
+	@Test
+	public void canEncodeCustomMessages() {
+		assertThat(new String(sut.toDevice(new DefaultToDeviceMessageCustom())),
+				is(alpProtocolMessage(CUSTOM_MESSAGE).withValues() + "\n"));
+		assertThat(new String(sut.toDevice(new DefaultToDeviceMessageCustom(
+				"a", "äöü", "c"))), is(defaultCharset(alpProtocolMessage(
+				CUSTOM_MESSAGE).withValues("a", "äöü", "c")
+				+ "\n")));
+	}
+
+	private static String defaultCharset(String string) {
+		return new String(string.getBytes());
+	}
+
+	@Test
+	public void writesAtBufferPosition() {
+		buffer.put((byte) 'x');
+		sut.toDevice(new DefaultToDeviceMessageNoTone(analogPin(5)), buffer);
+		sut.toDevice(new DefaultToDeviceMessageNoTone(analogPin(6)), buffer);
+		assertThat(new String(buffer.array(), 0, buffer.position()),
+				is("xalp://notn/5\nalp://notn/6\n"));
+	}
+
+	@Test(expected = BufferOverflowException.class)
+	public void throwsBufferOverflowExceptionIfMessageDoesNotFit() {
+		sut.toDevice(new DefaultToDeviceMessageCustom(
+				"0123456789012345678901234567890123456789",
+				"0123456789012345678901234567890123456789"), buffer);
+	}
+
+}
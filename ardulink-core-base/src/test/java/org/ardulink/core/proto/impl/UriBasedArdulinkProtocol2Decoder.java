@@ -0,0 +1,146 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proto.impl;
+
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.START;
+import static org.ardulink.core.messages.api.FromDeviceChangeListeningState.Mode.STOP;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.ANALOG_PIN_READ;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.DIGITAL_PIN_READ;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.READY;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.RPLY;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.START_LISTENING_ANALOG;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.START_LISTENING_DIGITAL;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LISTENING_ANALOG;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LISTENING_DIGITAL;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.ardulink.core.messages.api.FromDeviceMessage;
+import org.ardulink.core.messages.impl.DefaultFromDeviceChangeListeningState;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessageCustom;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessagePinStateChanged;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessageReady;
+import org.ardulink.core.messages.impl.DefaultFromDeviceMessageReply;
+import org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey;
+import org.ardulink.util.MapBuilder;
+import org.ardulink.util.URIs;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * The {@link java.net.URI} based decoder {@link ArdulinkProtocol2} used
+ * before it got its byte level parser. Used as reference for compatibility
+ * tests and benchmarks only.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public final class UriBasedArdulinkProtocol2Decoder {
+
+	private UriBasedArdulinkProtocol2Decoder() {
+		super();
+	}
+
+	public static FromDeviceMessage fromDevice(byte[] bytes) {
+		String in = new String(bytes);
+
+		URI uri = URIs.newURI(in);
+
+		String prefix = uri.getScheme();
+		checkState("alp".equals(checkNotNull(prefix,
+				"Message %s has no prefix", in)),
+				"Expected message prefix to be %s but was %s", "alp", prefix);
+
+		String command = checkNotNull(uri.getHost(), "Message hasn't a command");
+		String specs = removeFirstSlash(checkNotNull(uri.getPath(),
+				"Message hasn't specs"));
+		String query = uri.getQuery();
+
+		ALPProtocolKey key = ALPProtocolKey.fromString(command).getOrThrow(
+				"command %s not known", command);
+
+		if (key == READY) {
+			return new DefaultFromDeviceMessageReady();
+		} else if (key == RPLY) {
+			Map<String, String> params = paramsToMap(query);
+			String id = checkNotNull(params.get("id"),
+					"Reply message needs for mandatory param: id");
+			return new DefaultFromDeviceMessageReply(
+					"ok".equalsIgnoreCase(specs), parseLong(id), params);
+		} else if (key == ALPProtocolKey.CUSTOM_EVENT) {
+			return new DefaultFromDeviceMessageCustom(specs);
+		}
+
+		if (key == START_LISTENING_ANALOG) {
+			return new DefaultFromDeviceChangeListeningState(
+					analogPin(parseInt(specs)), START);
+		} else if (key == START_LISTENING_DIGITAL) {
+			return new DefaultFromDeviceChangeListeningState(
+					digitalPin(parseInt(specs)), START);
+		} else if (key == STOP_LISTENING_ANALOG) {
+			return new DefaultFromDeviceChangeListeningState(
+					analogPin(parseInt(specs)), STOP);
+		} else if (key == STOP_LISTENING_DIGITAL) {
+			return new DefaultFromDeviceChangeListeningState(
+					digitalPin(parseInt(specs)), STOP);
+		}
+
+		String pinAndState = specs;
+		String[] split = pinAndState.split("\\/");
+		checkState(split.length == 2, "Error splitting %s, cannot process %s",
+				pinAndState, in);
+
+		int pin = parseInt(split[0]);
+		int value = parseInt(split[1]);
+		if (key == ANALOG_PIN_READ) {
+			return new DefaultFromDeviceMessagePinStateChanged(analogPin(pin),
+					value);
+		} else if (key == DIGITAL_PIN_READ) {
+			return new DefaultFromDeviceMessagePinStateChanged(digitalPin(pin),
+					value == 1 ? TRUE : FALSE);
+		}
+
+		throw new IllegalStateException(key + " " + in);
+	}
+
+	private static Map<String, String> paramsToMap(String query) {
+		MapBuilder<String, String> builder = MapBuilder
+				.<String, String> newMapBuilder();
+		for (String param : checkNotNull(query, "Params can't be null").split(
+				"&")) {
+			String[] kv = param.split("=");
+			builder.put(kv[0], kv[1]);
+		}
+		return builder.build();
+	}
+
+	private static String removeFirstSlash(String path) {
+		return path.startsWith("/") ? path.substring(1) : path;
+	}
+
+}
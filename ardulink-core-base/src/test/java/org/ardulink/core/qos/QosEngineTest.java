@@ -0,0 +1,167 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.core.qos;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.ardulink.core.AbstractConnection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.events.RplyEvent;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.qos.QosEngine.Command;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class QosEngineTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	private static class RecordingConnection extends AbstractConnection {
+
+		private final List<String> written = new CopyOnWriteArrayList<String>();
+		private volatile boolean respondImmediately;
+
+		@Override
+		public void write(byte[] bytes) throws IOException {
+			String message = new String(bytes).trim();
+			written.add(message);
+			if (respondImmediately) {
+				respond(message, "ok");
+			}
+		}
+
+		void respond(String message, String state) {
+			fireReceived(("alp://rply/" + state + "?id=" + idOf(message))
+					.getBytes());
+		}
+
+		private static String idOf(String message) {
+			return message.substring(message.indexOf("?id=") + 4);
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to close
+		}
+
+	}
+
+	private final RecordingConnection connection = new RecordingConnection();
+
+	private final Link link = new ConnectionBasedLink(connection,
+			ArdulinkProtocol2.instance());
+
+	private QosEngine sut;
+
+	@After
+	public void tearDown() throws IOException {
+		sut.close();
+		link.close();
+	}
+
+	@Test
+	public void sendsWithoutWaitingForRepliesUpToMaxInFlight() throws Exception {
+		sut = new QosEngine(link, 0, null, 3, 0);
+		Future<RplyEvent> first = sut.submit(noTone(1));
+		Future<RplyEvent> second = sut.submit(noTone(2));
+		Future<RplyEvent> third = sut.submit(noTone(3));
+		assertThat(connection.written.size(), is(3));
+		assertThat(sut.getInFlight(), is(3));
+
+		connection.respond(connection.written.get(1), "ok");
+		assertThat(second.get().isOk(), is(true));
+		assertThat(first.isDone(), is(false));
+		assertThat(third.isDone(), is(false));
+
+		// there is space for another message now
+		sut.submit(noTone(4));
+		assertThat(connection.written.size(), is(4));
+	}
+
+	@Test
+	public void canHandleRepliesReceivedWhileSending() throws Exception {
+		connection.respondImmediately = true;
+		sut = new QosEngine(link, 0, null, 1, 0);
+		for (int i = 0; i < 10; i++) {
+			assertThat(sut.submit(noTone(i)).get().isOk(), is(true));
+		}
+		assertThat(sut.getInFlight(), is(0));
+	}
+
+	@Test
+	public void failsIfNoReplyIsReceivedWithinTimeout() throws Exception {
+		sut = new QosEngine(link, 100, MILLISECONDS, 1, 0);
+		Future<RplyEvent> future = sut.submit(noTone(1));
+		try {
+			future.get();
+			fail("No response received but future completed");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+			assertThat(e.getCause().getMessage(),
+					containsString("No response received within 100 MILLISECONDS"));
+		}
+		// the window has been released
+		sut.submit(noTone(2));
+	}
+
+	@Test
+	public void retransmitsIfNoReplyIsReceivedWithinTimeout() throws Exception {
+		sut = new QosEngine(link, 100, MILLISECONDS, 1, 1);
+		Future<RplyEvent> future = sut.submit(noTone(1));
+		while (connection.written.size() < 2) {
+			MILLISECONDS.sleep(10);
+		}
+		assertThat(connection.written.get(0), is("alp://notn/1?id=1"));
+		assertThat(connection.written.get(1), is("alp://notn/1?id=2"));
+		connection.respond(connection.written.get(1), "ok");
+		assertThat(future.get().getId(), is(2L));
+	}
+
+	private static Command noTone(final int pin) {
+		return new Command() {
+			@Override
+			public long sendTo(Link link) throws IOException {
+				return link.sendNoTone(analogPin(pin));
+			}
+		};
+	}
+
+}
@@ -17,11 +17,16 @@ limitations under the License.
 package org.ardulink.testsupport.mock;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import org.ardulink.core.DefaultLinkBatch;
 import org.ardulink.core.Link;
+import org.ardulink.core.LinkBatch;
 import org.ardulink.core.linkmanager.LinkConfig;
 import org.ardulink.core.linkmanager.LinkFactory;
 import org.ardulink.testsupport.mock.MockLinkFactory.MockLinkConfig;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * [ardulinktitle] [ardulinkversion]
@@ -45,7 +50,14 @@ public class MockLinkFactory implements LinkFactory<MockLinkConfig> {
 
 	@Override
 	public Link newLink(MockLinkConfig config) {
-		return mock(Link.class);
+		Link link = mock(Link.class);
+		when(link.batch()).thenAnswer(new Answer<LinkBatch>() {
+			@Override
+			public LinkBatch answer(InvocationOnMock invocation) {
+				return new DefaultLinkBatch((Link) invocation.getMock());
+			}
+		});
+		return link;
 	}
 
 	@Override
@@ -69,6 +69,7 @@ public class BeanProperties {
 		private final Class<?> type;
 		private final AttributeReader reader;
 		private final AttributeWriter writer;
+		private volatile Annotation[] annotations;
 
 		public DefaultAttribute(String name, Class<?> type,
 				AttributeReader reader, AttributeWriter writer) {
@@ -112,19 +113,28 @@ public class BeanProperties {
 
 		@Override
 		public Annotation[] getAnnotations() {
-			Set<Annotation> annos = new LinkedHashSet<Annotation>();
-			if (reader != null) {
-				reader.addAnnotations(annos);
-			}
-			if (writer != null) {
-				writer.addAnnotations(annos);
+			return annotations().clone();
+		}
+
+		private Annotation[] annotations() {
+			Annotation[] annotations = this.annotations;
+			if (annotations == null) {
+				Set<Annotation> annos = new LinkedHashSet<Annotation>();
+				if (reader != null) {
+					reader.addAnnotations(annos);
+				}
+				if (writer != null) {
+					writer.addAnnotations(annos);
+				}
+				this.annotations = annotations = annos
+						.toArray(new Annotation[annos.size()]);
 			}
-			return annos.toArray(new Annotation[annos.size()]);
+			return annotations;
 		}
 
 		@Override
 		public <T extends Annotation> T getAnnotation(Class<T> annotationClass) {
-			for (Annotation annotation : getAnnotations()) {
+			for (Annotation annotation : annotations()) {
 				if (annotation.annotationType().equals(annotationClass)) {
 					return annotationClass.cast(annotation);
 				}
@@ -136,6 +146,8 @@ public class BeanProperties {
 
 	private final Object bean;
 	private final AttributeFinder[] finders;
+	private volatile List<AttributeReader> readers;
+	private volatile List<AttributeWriter> writers;
 
 	private BeanProperties(final Builder builder) {
 		this.bean = builder.bean;
@@ -188,11 +200,9 @@ public class BeanProperties {
 
 	private Optional<AttributeReader> findReader(final String name)
 			throws Exception {
-		for (AttributeFinder finder : finders) {
-			for (AttributeReader reader : finder.listReaders(bean)) {
-				if (name.equals(reader.getName())) {
-					return Optional.of(reader);
-				}
+		for (AttributeReader reader : readers()) {
+			if (name.equals(reader.getName())) {
+				return Optional.of(reader);
 			}
 		}
 		return Optional.absent();
@@ -200,16 +210,46 @@ public class BeanProperties {
 
 	private Optional<AttributeWriter> findWriter(final String name)
 			throws Exception {
-		for (AttributeFinder finder : finders) {
-			for (AttributeWriter writer : finder.listWriters(bean)) {
-				if (name.equals(writer.getName())) {
-					return Optional.of(writer);
-				}
+		for (AttributeWriter writer : writers()) {
+			if (name.equals(writer.getName())) {
+				return Optional.of(writer);
 			}
 		}
 		return Optional.absent();
 	}
 
+	/**
+	 * The readers of the bean in the order of the finders. Since they only
+	 * depend on the bean's class they are looked up only once.
+	 */
+	private List<AttributeReader> readers() throws Exception {
+		List<AttributeReader> readers = this.readers;
+		if (readers == null) {
+			readers = new ArrayList<AttributeReader>();
+			for (AttributeFinder finder : finders) {
+				for (AttributeReader reader : finder.listReaders(bean)) {
+					readers.add(reader);
+				}
+			}
+			this.readers = readers;
+		}
+		return readers;
+	}
+
+	private List<AttributeWriter> writers() throws Exception {
+		List<AttributeWriter> writers = this.writers;
+		if (writers == null) {
+			writers = new ArrayList<AttributeWriter>();
+			for (AttributeFinder finder : finders) {
+				for (AttributeWriter writer : finder.listWriters(bean)) {
+					writers.add(writer);
+				}
+			}
+			this.writers = writers;
+		}
+		return writers;
+	}
+
 	public Collection<String> attributeNames() {
 		Set<String> attributeNames = new LinkedHashSet<String>();
 		try {
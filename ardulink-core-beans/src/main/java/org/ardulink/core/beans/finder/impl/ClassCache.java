@@ -0,0 +1,58 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.beans.finder.impl;
+
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Holds values computed once per class. Classes are weakly referenced so
+ * classloaders (e.g. of reloaded modules) can be garbage collected.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+abstract class ClassCache<T> {
+
+	private final Map<Class<?>, SoftReference<T>> values = new WeakHashMap<Class<?>, SoftReference<T>>();
+
+	public T get(Class<?> clazz) throws Exception {
+		T value = cached(clazz);
+		if (value == null) {
+			value = create(clazz);
+			synchronized (values) {
+				values.put(clazz, new SoftReference<T>(value));
+			}
+		}
+		return value;
+	}
+
+	private T cached(Class<?> clazz) {
+		synchronized (values) {
+			SoftReference<T> reference = values.get(clazz);
+			return reference == null ? null : reference.get();
+		}
+	}
+
+	protected abstract T create(Class<?> clazz) throws Exception;
+
+}
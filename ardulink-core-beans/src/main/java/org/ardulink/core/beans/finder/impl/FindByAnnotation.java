@@ -16,6 +16,7 @@ limitations under the License.
 
 package org.ardulink.core.beans.finder.impl;
 
+import static org.ardulink.core.beans.finder.impl.FindByIntrospection.beanAttributes;
 import static org.ardulink.core.beans.finder.impl.ReadMethod.isReadMethod;
 import static org.ardulink.core.beans.finder.impl.WriteMethod.isWriteMethod;
 import static java.lang.reflect.Modifier.isPublic;
@@ -30,6 +31,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ardulink.util.Optional;
 import org.ardulink.core.beans.Attribute.AttributeReader;
@@ -116,8 +120,78 @@ public class FindByAnnotation implements AttributeFinder {
 
 	}
 
+	/**
+	 * An annotated attribute of a class, not yet bound to a bean.
+	 */
+	private static final class AnnotatedMember {
+
+		private final String name;
+		private final Method method;
+		private final Field field;
+
+		/**
+		 * @param name
+		 *            the attribute's name
+		 * @param method
+		 *            accessor method or <code>null</code> if the field is
+		 *            accessed directly
+		 * @param field
+		 *            the annotated field or <code>null</code> if the method
+		 *            was annotated
+		 */
+		private AnnotatedMember(String name, Method method, Field field) {
+			this.name = name;
+			this.method = method;
+			this.field = field;
+		}
+
+		private AttributeReader reader(Object bean) {
+			if (field == null) {
+				return new ReadMethod(bean, name, method);
+			}
+			if (method == null) {
+				return new FieldAccess(bean, name, field);
+			}
+			return new AttributeReaderDelegate(new ReadMethod(bean,
+					field.getName(), method), name, field);
+		}
+
+		private AttributeWriter writer(Object bean) {
+			if (field == null) {
+				return new WriteMethod(bean, name, method);
+			}
+			if (method == null) {
+				return new FieldAccess(bean, name, field);
+			}
+			return new AttributeWriterDelegate(new WriteMethod(bean,
+					field.getName(), method), name, field);
+		}
+
+	}
+
+	private static final class AnnotatedMembers {
+
+		private final List<AnnotatedMember> readers = new ArrayList<AnnotatedMember>();
+		private final List<AnnotatedMember> writers = new ArrayList<AnnotatedMember>();
+
+	}
+
+	private static final ClassCache<ConcurrentMap<String, FindByAnnotation>> finders = new ClassCache<ConcurrentMap<String, FindByAnnotation>>() {
+		@Override
+		protected ConcurrentMap<String, FindByAnnotation> create(
+				Class<?> annotationClass) {
+			return new ConcurrentHashMap<String, FindByAnnotation>();
+		}
+	};
+
 	private final Class<? extends Annotation> annotationClass;
 	private final Method getAnnotationsAttributeReadMethod;
+	private final ClassCache<AnnotatedMembers> members = new ClassCache<AnnotatedMembers>() {
+		@Override
+		protected AnnotatedMembers create(Class<?> clazz) throws Exception {
+			return findMembers(clazz);
+		}
+	};
 
 	private FindByAnnotation(Class<? extends Annotation> annotationClass,
 			String annotationAttribute) {
@@ -149,37 +223,36 @@ public class FindByAnnotation implements AttributeFinder {
 		return propertyAnnotated(annotationClass, "value");
 	}
 
+	/**
+	 * Returns the finder for the passed annotation. Finders are shared so
+	 * the annotated members of a class are only searched once.
+	 */
 	public static AttributeFinder propertyAnnotated(
 			Class<? extends Annotation> annotationClass,
 			String annotationAttribute) {
-		return new FindByAnnotation(annotationClass, annotationAttribute);
+		try {
+			ConcurrentMap<String, FindByAnnotation> byAttribute = finders
+					.get(annotationClass);
+			FindByAnnotation finder = byAttribute.get(annotationAttribute);
+			if (finder == null) {
+				finder = new FindByAnnotation(annotationClass,
+						annotationAttribute);
+				FindByAnnotation existing = byAttribute.putIfAbsent(
+						annotationAttribute, finder);
+				return existing == null ? finder : existing;
+			}
+			return finder;
+		} catch (Exception e) {
+			throw propagate(e);
+		}
 	}
 
 	@Override
 	public Iterable<? extends AttributeReader> listReaders(Object bean)
 			throws Exception {
 		List<AttributeReader> readers = new ArrayList<AttributeReader>();
-		for (Method method : bean.getClass().getDeclaredMethods()) {
-			if (method.isAnnotationPresent(annotationClass)
-					&& isReadMethod(method)) {
-				readers.add(new ReadMethod(bean, annoValue(method
-						.getAnnotation(annotationClass)), method));
-			}
-		}
-
-		for (Field field : bean.getClass().getDeclaredFields()) {
-			if (field.isAnnotationPresent(annotationClass)) {
-				Optional<AttributeReader> readMethodForAttribute = readMethodForAttribute(
-						bean, field.getName());
-				if (readMethodForAttribute.isPresent()) {
-					readers.add(new AttributeReaderDelegate(
-							readMethodForAttribute.get(), annoValue(field
-									.getAnnotation(annotationClass)), field));
-				} else if (isPublic(field.getModifiers())) {
-					readers.add(new FieldAccess(bean, annoValue(field
-							.getAnnotation(annotationClass)), field));
-				}
-			}
+		for (AnnotatedMember member : members.get(bean.getClass()).readers) {
+			readers.add(member.reader(bean));
 		}
 		return readers;
 	}
@@ -187,54 +260,55 @@ public class FindByAnnotation implements AttributeFinder {
 	@Override
 	public Iterable<AttributeWriter> listWriters(Object bean) throws Exception {
 		List<AttributeWriter> writers = new ArrayList<AttributeWriter>();
-		for (Method method : bean.getClass().getDeclaredMethods()) {
-			if (method.isAnnotationPresent(annotationClass)
-					&& isWriteMethod(method)) {
-				writers.add(new WriteMethod(bean, annoValue(method
-						.getAnnotation(annotationClass)), method));
-			}
+		for (AnnotatedMember member : members.get(bean.getClass()).writers) {
+			writers.add(member.writer(bean));
 		}
+		return writers;
+	}
 
-		for (Field field : bean.getClass().getDeclaredFields()) {
-			if (field.isAnnotationPresent(annotationClass)) {
-				Optional<AttributeWriter> writeMethodForAttribute = writeMethodForAttribute(
-						bean, field.getName());
-				if (writeMethodForAttribute.isPresent()) {
-					writers.add(new AttributeWriterDelegate(
-							writeMethodForAttribute.get(), annoValue(field
-									.getAnnotation(annotationClass)), field));
-				} else if (isPublic(field.getModifiers())) {
-					writers.add(new FieldAccess(bean, annoValue(field
-							.getAnnotation(annotationClass)), field));
+	private AnnotatedMembers findMembers(Class<?> clazz) throws Exception {
+		AnnotatedMembers members = new AnnotatedMembers();
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (method.isAnnotationPresent(annotationClass)) {
+				String name = annoValue(method.getAnnotation(annotationClass));
+				if (isReadMethod(method)) {
+					members.readers.add(new AnnotatedMember(name, method, null));
+				}
+				if (isWriteMethod(method)) {
+					members.writers.add(new AnnotatedMember(name, method, null));
 				}
-
 			}
 		}
-		return writers;
-	}
 
-	private Optional<AttributeReader> readMethodForAttribute(Object bean,
-			final String name) throws Exception {
-		for (AttributeReader reader : FindByIntrospection.beanAttributes()
-				.listReaders(bean)) {
-			if (reader.getName().equals(name)) {
-				return Optional.of(reader);
+		Map<String, Method> readMethods = beanAttributes().readMethods(clazz);
+		Map<String, Method> writeMethods = beanAttributes().writeMethods(clazz);
+		for (Field field : clazz.getDeclaredFields()) {
+			if (field.isAnnotationPresent(annotationClass)) {
+				String name = annoValue(field.getAnnotation(annotationClass));
+				Optional<AnnotatedMember> reader = fieldMember(name, field,
+						readMethods.get(field.getName()));
+				if (reader.isPresent()) {
+					members.readers.add(reader.get());
+				}
+				Optional<AnnotatedMember> writer = fieldMember(name, field,
+						writeMethods.get(field.getName()));
+				if (writer.isPresent()) {
+					members.writers.add(writer.get());
+				}
 			}
 		}
-		return Optional.absent();
-
+		return members;
 	}
 
-	private Optional<AttributeWriter> writeMethodForAttribute(Object bean,
-			final String name) throws Exception {
-		for (AttributeWriter writer : FindByIntrospection.beanAttributes()
-				.listWriters(bean)) {
-			if (writer.getName().equals(name)) {
-				return Optional.of(writer);
-			}
+	private static Optional<AnnotatedMember> fieldMember(String name,
+			Field field, Method accessor) {
+		if (accessor != null) {
+			return Optional.of(new AnnotatedMember(name, accessor, field));
+		}
+		if (isPublic(field.getModifiers())) {
+			return Optional.of(new AnnotatedMember(name, null, field));
 		}
 		return Optional.absent();
-
 	}
 
 	private String annoValue(Annotation annotation)
@@ -20,9 +20,14 @@ import static org.ardulink.core.beans.finder.impl.ReadMethod.isReadMethod;
 import static org.ardulink.core.beans.finder.impl.WriteMethod.isWriteMethod;
 import static java.beans.Introspector.getBeanInfo;
 
+import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.ardulink.core.beans.Attribute.AttributeReader;
 import org.ardulink.core.beans.Attribute.AttributeWriter;
@@ -38,8 +43,34 @@ import org.ardulink.core.beans.finder.api.AttributeFinder;
  */
 public class FindByIntrospection implements AttributeFinder {
 
+	private static final class Properties {
+
+		private final Map<String, Method> readMethods = new LinkedHashMap<String, Method>();
+		private final Map<String, Method> writeMethods = new LinkedHashMap<String, Method>();
+
+		private Properties(Class<?> clazz) throws IntrospectionException {
+			for (PropertyDescriptor pd : getBeanInfo(clazz)
+					.getPropertyDescriptors()) {
+				if (isReadMethod(pd.getReadMethod())) {
+					readMethods.put(pd.getName(), pd.getReadMethod());
+				}
+				if (isWriteMethod(pd.getWriteMethod())) {
+					writeMethods.put(pd.getName(), pd.getWriteMethod());
+				}
+			}
+		}
+
+	}
+
 	private static final FindByIntrospection instance = new FindByIntrospection();
 
+	private final ClassCache<Properties> properties = new ClassCache<Properties>() {
+		@Override
+		protected Properties create(Class<?> clazz) throws Exception {
+			return new Properties(clazz);
+		}
+	};
+
 	public static FindByIntrospection beanAttributes() {
 		return instance;
 	}
@@ -52,12 +83,9 @@ public class FindByIntrospection implements AttributeFinder {
 	public Iterable<? extends AttributeReader> listReaders(Object bean)
 			throws Exception {
 		List<ReadMethod> readers = new ArrayList<ReadMethod>();
-		for (PropertyDescriptor pd : getBeanInfo(bean.getClass())
-				.getPropertyDescriptors()) {
-			if (isReadMethod(pd.getReadMethod())) {
-				readers.add(new ReadMethod(bean, pd.getName(), pd
-						.getReadMethod()));
-			}
+		for (Entry<String, Method> entry : readMethods(bean.getClass())
+				.entrySet()) {
+			readers.add(new ReadMethod(bean, entry.getKey(), entry.getValue()));
 		}
 		return readers;
 	}
@@ -66,14 +94,19 @@ public class FindByIntrospection implements AttributeFinder {
 	public Iterable<? extends AttributeWriter> listWriters(Object bean)
 			throws Exception {
 		List<WriteMethod> writers = new ArrayList<WriteMethod>();
-		for (PropertyDescriptor pd : getBeanInfo(bean.getClass())
-				.getPropertyDescriptors()) {
-			if (isWriteMethod(pd.getWriteMethod())) {
-				writers.add(new WriteMethod(bean, pd.getName(), pd
-						.getWriteMethod()));
-			}
+		for (Entry<String, Method> entry : writeMethods(bean.getClass())
+				.entrySet()) {
+			writers.add(new WriteMethod(bean, entry.getKey(), entry.getValue()));
 		}
 		return writers;
 	}
 
+	Map<String, Method> readMethods(Class<?> clazz) throws Exception {
+		return properties.get(clazz).readMethods;
+	}
+
+	Map<String, Method> writeMethods(Class<?> clazz) throws Exception {
+		return properties.get(clazz).writeMethods;
+	}
+
 }
\ No newline at end of file
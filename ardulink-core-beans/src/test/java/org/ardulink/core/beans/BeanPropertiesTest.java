@@ -22,6 +22,7 @@ import static org.ardulink.core.beans.finder.impl.FindByIntrospection.beanAttrib
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import static org.hamcrest.core.AllOf.allOf;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.Assert.assertThat;
 
@@ -294,4 +295,31 @@ public class BeanPropertiesTest {
 
 	}
 
+	@Test
+	public void beansOfTheSameClassShareTheFinderButNotTheValues()
+			throws Exception {
+		assertThat(propertyAnnotated(OurOwnTestAnno.class),
+				sameInstance(propertyAnnotated(OurOwnTestAnno.class)));
+		BeanWithAnnoOnField bean1 = new BeanWithAnnoOnField();
+		BeanWithAnnoOnField bean2 = new BeanWithAnnoOnField();
+		BeanProperties.builder(bean1)
+				.using(propertyAnnotated(OurOwnTestAnno.class)).build()
+				.getAttribute("foo").writeValue(Arrays.asList("1"));
+		BeanProperties.builder(bean2)
+				.using(propertyAnnotated(OurOwnTestAnno.class)).build()
+				.getAttribute("foo").writeValue(Arrays.asList("2"));
+		assertThat(bean1.getValues(), is(Arrays.asList("1")));
+		assertThat(bean2.getValues(), is(Arrays.asList("2")));
+	}
+
+	@Test
+	public void annotationsCanNotBeModifiedByCallers() {
+		Attribute attribute = BeanProperties.builder(new BeanWithAnnoOnField())
+				.using(propertyAnnotated(OurOwnTestAnno.class)).build()
+				.getAttribute("foo");
+		attribute.getAnnotations()[0] = null;
+		assertThat(attribute.getAnnotation(OurOwnTestAnno.class).value(),
+				is("foo"));
+	}
+
 }
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.bluetooth.ServiceRecord;
+import javax.validation.constraints.Min;
 
 import org.ardulink.core.linkmanager.LinkConfig;
 
@@ -40,6 +41,14 @@ public class BluetoothLinkConfig implements LinkConfig {
 	@Named("deviceName")
 	private String deviceName;
 
+	@Named("batchmillis")
+	@Min(0)
+	private int batchmillis;
+
+	@Named("batchbytes")
+	@Min(1)
+	private int batchbytes = 512;
+
 	public String getDeviceName() {
 		return deviceName;
 	}
@@ -53,5 +62,21 @@ public class BluetoothLinkConfig implements LinkConfig {
 		return BluetoothDiscoveryUtil.getDevices().keySet()
 				.toArray(EMPTY_ARRAY);
 	}
-	
+
+	public int getBatchmillis() {
+		return batchmillis;
+	}
+
+	public void setBatchmillis(int batchmillis) {
+		this.batchmillis = batchmillis;
+	}
+
+	public int getBatchbytes() {
+		return batchbytes;
+	}
+
+	public void setBatchbytes(int batchbytes) {
+		this.batchbytes = batchbytes;
+	}
+
 }
@@ -71,7 +71,8 @@ public class BluetoothLinkFactory implements LinkFactory<BluetoothLinkConfig> {
 				.open(url));
 		return new ConnectionBasedLink(new StreamConnection(
 				streamConnection.openInputStream(),
-				streamConnection.openOutputStream(), proto), proto);
+				streamConnection.openOutputStream(), proto,
+				config.getBatchmillis(), config.getBatchbytes()), proto);
 	}
 
 	public String getURL(BluetoothLinkConfig config) {
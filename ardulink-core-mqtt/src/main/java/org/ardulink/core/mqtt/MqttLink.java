@@ -18,42 +18,46 @@ package org.ardulink.core.mqtt;
 
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
-import static java.lang.Integer.parseInt;
+import static java.util.Collections.singleton;
 import static java.util.Collections.unmodifiableMap;
-import static org.ardulink.core.Pin.analogPin;
-import static org.ardulink.core.Pin.digitalPin;
-import static org.ardulink.core.events.DefaultAnalogPinValueChangedEvent.analogPinValueChanged;
-import static org.ardulink.core.events.DefaultDigitalPinValueChangedEvent.digitalPinValueChanged;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.ardulink.util.Preconditions.checkArgument;
 import static org.ardulink.util.Preconditions.checkNotNull;
 import static org.ardulink.util.Throwables.propagate;
-import static org.fusesource.mqtt.client.QoS.AT_MOST_ONCE;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 import org.ardulink.core.AbstractListenerLink;
+import org.ardulink.core.Link;
 import org.ardulink.core.Pin;
 import org.ardulink.core.Pin.AnalogPin;
 import org.ardulink.core.Pin.DigitalPin;
 import org.ardulink.core.Pin.Type;
 import org.ardulink.core.Tone;
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.events.FilteredEventListenerAdapter;
+import org.ardulink.core.events.PrimitivePinListener;
 import org.ardulink.core.mqtt.MqttLinkConfig.Connection;
 import org.ardulink.core.proto.api.MessageIdHolders;
+import org.ardulink.util.Bytes;
 import org.ardulink.util.MapBuilder;
 import org.ardulink.util.Strings;
 import org.ardulink.util.URIs;
 import org.fusesource.hawtbuf.Buffer;
 import org.fusesource.hawtbuf.UTF8Buffer;
-import org.fusesource.mqtt.client.BlockingConnection;
+import org.fusesource.mqtt.client.Callback;
 import org.fusesource.mqtt.client.CallbackConnection;
-import org.fusesource.mqtt.client.FutureConnection;
 import org.fusesource.mqtt.client.Listener;
 import org.fusesource.mqtt.client.MQTT;
-import org.fusesource.mqtt.client.Message;
+import org.fusesource.mqtt.client.Promise;
+import org.fusesource.mqtt.client.QoS;
 import org.fusesource.mqtt.client.Topic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,32 +77,62 @@ public class MqttLink extends AbstractListenerLink {
 	private static final String ANALOG = "A";
 	private static final String DIGITAL = "D";
 
-	private final String topic;
-	private final Pattern mqttReceivePattern;
-	private final MQTT mqttClient;
-	private final BlockingConnection connection;
-	private final boolean hasAppendix;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte[] TRUE_BYTES = "true".getBytes(UTF8);
+
+	private static final int DISCONNECT_TIMEOUT_SECONDS = 5;
 
 	private static final Map<Type, String> typeMap = unmodifiableMap(new EnumMap<Type, String>(
 			MapBuilder.<Type, String> newMapBuilder().put(Type.ANALOG, ANALOG)
 					.put(Type.DIGITAL, DIGITAL).build()));
 
+	/**
+	 * Pin types indexed by the (ASCII) character following the topic prefix
+	 * so received topics can be resolved without a regular expression.
+	 */
+	private static final Type[] types = new Type[128];
+
+	static {
+		types['a'] = types['A'] = Type.ANALOG;
+		types['d'] = types['D'] = Type.DIGITAL;
+	}
+
+	private final String topic;
+	private final byte[] topicBytes;
+	private final byte[] appendixSubBytes;
+	private final QoS qos;
+	private final boolean retained;
+	private final MQTT mqttClient;
+	private final CallbackConnection connection;
+	private final boolean hasAppendix;
+
+	private final Object subscriptionLock = new Object();
+	private final Set<String> pinTopics = new HashSet<String>();
+	private final List<Object> globalListeners = new ArrayList<Object>();
+	private final Set<String> subscribed = new HashSet<String>();
+
 	public MqttLink(MqttLinkConfig config) throws IOException {
 		checkArgument(config.getHost() != null, "host must not be null");
 		checkArgument(config.getClientId() != null, "clientId must not be null");
 		checkArgument(config.getTopic() != null, "topic must not be null");
+		checkArgument(config.qos >= 0 && config.qos < QoS.values().length,
+				"qos must be between 0 and %s but was %s",
+				QoS.values().length - 1, config.qos);
 		this.hasAppendix = config.separateTopics;
 		this.topic = config.getTopic();
-		this.mqttReceivePattern = Pattern.compile(MqttLink.this.topic
-				+ "([aAdD])(\\d+)" + Pattern.quote(appendixSub()));
+		this.topicBytes = this.topic.getBytes(UTF8);
+		this.appendixSubBytes = appendixSub().getBytes(UTF8);
+		this.qos = QoS.values()[config.qos];
+		this.retained = config.retained;
 		this.mqttClient = newClient(config);
 		this.mqttClient.setConnectAttemptsMax(1);
-		this.connection = new BlockingConnection(new FutureConnection(
-				newCallbackConnection()));
-		newReceivedThread().start();
+		this.connection = new CallbackConnection(new MQTT(this.mqttClient));
+		this.connection.listener(newListener());
+		Promise<Void> connected = new Promise<Void>();
+		connect(connected);
 		try {
-			connection.connect();
-			subscribe();
+			connected.await();
 		} catch (Exception e) {
 			throw new IOException(e);
 		}
@@ -112,105 +146,23 @@ public class MqttLink extends AbstractListenerLink {
 		return hasAppendix ? "/value/set" : "";
 	}
 
-	private Thread newReceivedThread() {
-		return new Thread() {
-			@Override
-			public void run() {
-				while (true) {
-					try {
-						Message message = connection.receive();
-						Matcher matcher = mqttReceivePattern.matcher(message
-								.getTopic());
-						if (matcher.matches() && matcher.groupCount() == 2) {
-							Pin pin = pin(matcher.group(1),
-									parseInt(matcher.group(2)));
-							if (pin != null) {
-								if (pin.is(Type.DIGITAL)) {
-									fireStateChanged(digitalPinValueChanged((DigitalPin) pin,
-											Boolean.parseBoolean(new String(message.getPayload()))));
-								} else if (pin.is(Type.ANALOG)) {
-									fireStateChanged(analogPinValueChanged((AnalogPin) pin,
-											Integer.parseInt(new String(message.getPayload()))));
-								}
-							}
-						}
-						message.ack();
-					} catch (Exception e) {
-						log.error("Error while waiting for new message", e);
-					}
-				}
-			};
-
-			private Pin pin(String type, Integer pin) {
-				if (pin != null) {
-					if (DIGITAL.equalsIgnoreCase(type)) {
-						return digitalPin(pin.intValue());
-					} else if (ANALOG.equalsIgnoreCase(type)) {
-						return analogPin(pin.intValue());
-					}
-				}
-				return null;
-			}
-
-		};
-	}
-
-	private CallbackConnection newCallbackConnection() {
-		return new CallbackConnection(new MQTT(this.mqttClient)) {
-
-			@Override
-			public CallbackConnection listener(Listener listener) {
-				return super
-						.listener(multiplex(listener, connectionListener()));
-			}
-
-			private Listener multiplex(final Listener... listeners) {
-				return new Listener() {
-
-					@Override
-					public void onPublish(UTF8Buffer topic, Buffer body,
-							Runnable ack) {
-						for (Listener listener : listeners) {
-							listener.onPublish(topic, body, ack);
-						}
-					}
-
-					@Override
-					public void onFailure(Throwable value) {
-						for (Listener listener : listeners) {
-							listener.onFailure(value);
-						}
-					}
-
-					@Override
-					public void onDisconnected() {
-						for (Listener listener : listeners) {
-							listener.onDisconnected();
-						}
-					}
-
-					@Override
-					public void onConnected() {
-						for (Listener listener : listeners) {
-							listener.onConnected();
-						}
-					}
-				};
-			}
-		};
-	}
-
-	private Listener connectionListener() {
+	private Listener newListener() {
 		return new Listener() {
 
 			@Override
 			public void onPublish(UTF8Buffer topic, Buffer body, Runnable ack) {
-				// nothing to do
+				try {
+					received(topic, body);
+				} catch (Exception e) {
+					log.error("Error while handling message on {}", topic, e);
+				} finally {
+					ack.run();
+				}
 			}
 
 			@Override
 			public void onFailure(Throwable value) {
-				// nothing to do
+				log.error("Connection failure", value);
 			}
 
 			@Override
@@ -225,6 +177,62 @@ public class MqttLink extends AbstractListenerLink {
 		};
 	}
 
+	private void received(Buffer topic, Buffer payload) {
+		byte[] data = topic.data;
+		int start = topic.offset + topicBytes.length;
+		int end = topic.offset + topic.length - appendixSubBytes.length;
+		if (start + 1 < end && regionMatches(data, topic.offset, topicBytes)
+				&& regionMatches(data, end, appendixSubBytes)) {
+			Type type = data[start] < 0 ? null : types[data[start]];
+			if (type != null && isDigits(data, start + 1, end)) {
+				int pin = Bytes.parseInt(data, start + 1, end);
+				if (type == Type.DIGITAL) {
+					fireDigitalPinChanged(pin, isTrue(payload),
+							System.nanoTime());
+				} else {
+					fireAnalogPinChanged(pin, Bytes.parseInt(payload.data,
+							payload.offset, payload.offset + payload.length),
+							System.nanoTime());
+				}
+			}
+		}
+	}
+
+	private static boolean regionMatches(byte[] data, int offset,
+			byte[] expected) {
+		for (int i = 0; i < expected.length; i++) {
+			if (data[offset + i] != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigits(byte[] data, int startpos, int endpos) {
+		for (int i = startpos; i < endpos; i++) {
+			if (data[i] < '0' || data[i] > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Same semantic as {@link Boolean#parseBoolean(String)} but without
+	 * creating a String.
+	 */
+	private static boolean isTrue(Buffer payload) {
+		if (payload.length != TRUE_BYTES.length) {
+			return false;
+		}
+		for (int i = 0; i < TRUE_BYTES.length; i++) {
+			if ((payload.data[payload.offset + i] | 0x20) != TRUE_BYTES[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private MQTT newClient(MqttLinkConfig config) {
 		MQTT client = new MQTT();
 		client.setClientId(config.getClientId());
@@ -255,23 +263,174 @@ public class MqttLink extends AbstractListenerLink {
 		throw new IllegalStateException("Could not resolve " + connection);
 	}
 
-	private void subscribe() throws Exception {
-		connection
-				.subscribe(new Topic[] { new Topic(topic + "#", AT_MOST_ONCE) });
+	/**
+	 * The {@link CallbackConnection} must only be used from its dispatch
+	 * queue so all operations are handed over to it and never block the
+	 * caller.
+	 */
+	private void execute(Runnable task) {
+		this.connection.getDispatchQueue().execute(task);
+	}
+
+	private void connect(final Callback<Void> callback) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				connection.connect(callback);
+			}
+		});
+	}
+
+	private void disconnect(final Callback<Void> callback) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				connection.disconnect(callback);
+			}
+		});
+	}
+
+	private static <T> Callback<T> logFailure(final String action,
+			final Object target) {
+		return new Callback<T>() {
+
+			@Override
+			public void onSuccess(T value) {
+				// nothing to do
+			}
+
+			@Override
+			public void onFailure(Throwable value) {
+				log.error("Could not {} {}", action, target, value);
+			}
+		};
+	}
+
+	/**
+	 * Listeners not bound to a pin (and {@link PrimitivePinListener}s) get the
+	 * values of all pins so they need a wildcard subscription. Otherwise only
+	 * the topics of the pins being listened to are subscribed. Unless
+	 * {@link MqttLinkConfig#separateTopics} is enabled the topics subscribed
+	 * are the ones this link publishes to, so the values switched by this link
+	 * are received as pin changes, too.
+	 */
+	@Override
+	public Link addListener(EventListener listener) throws IOException {
+		if (!(listener instanceof FilteredEventListenerAdapter)) {
+			synchronized (subscriptionLock) {
+				globalListeners.add(listener);
+				updateSubscriptions();
+			}
+		}
+		return super.addListener(listener);
+	}
+
+	@Override
+	public Link removeListener(EventListener listener) throws IOException {
+		super.removeListener(listener);
+		if (!(listener instanceof FilteredEventListenerAdapter)) {
+			synchronized (subscriptionLock) {
+				if (globalListeners.remove(listener)) {
+					updateSubscriptions();
+				}
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public Link addPrimitivePinListener(PrimitivePinListener listener) {
+		synchronized (subscriptionLock) {
+			globalListeners.add(listener);
+			updateSubscriptions();
+		}
+		return super.addPrimitivePinListener(listener);
+	}
+
+	@Override
+	public Link removePrimitivePinListener(PrimitivePinListener listener) {
+		super.removePrimitivePinListener(listener);
+		synchronized (subscriptionLock) {
+			if (globalListeners.remove(listener)) {
+				updateSubscriptions();
+			}
+		}
+		return this;
+	}
+
+	private void updateSubscriptions() {
+		Set<String> wanted = globalListeners.isEmpty() ? pinTopics
+				: singleton(topic + "+" + appendixSub());
+		List<String> added = new ArrayList<String>(wanted);
+		added.removeAll(subscribed);
+		List<String> removed = new ArrayList<String>(subscribed);
+		removed.removeAll(wanted);
+		subscribed.clear();
+		subscribed.addAll(wanted);
+		subscribe(added);
+		unsubscribe(removed);
+	}
+
+	private void subscribe(final List<String> topics) {
+		if (!topics.isEmpty()) {
+			final Topic[] array = new Topic[topics.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = new Topic(topics.get(i), qos);
+			}
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					connection.subscribe(array,
+							MqttLink.<byte[]> logFailure("subscribe to", topics));
+				}
+			});
+		}
+	}
+
+	private void unsubscribe(final List<String> topics) {
+		if (!topics.isEmpty()) {
+			final UTF8Buffer[] array = new UTF8Buffer[topics.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = new UTF8Buffer(topics.get(i));
+			}
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					connection.unsubscribe(array,
+							MqttLink.<Void> logFailure("unsubscribe from", topics));
+				}
+			});
+		}
 	}
 
 	@Override
 	public long startListening(Pin pin) throws IOException {
+		// subscribe first so values sent in response to the control message
+		// are not missed
+		synchronized (subscriptionLock) {
+			if (pinTopics.add(readTopic(pin))) {
+				updateSubscriptions();
+			}
+		}
 		publish(controlTopic(pin), TRUE);
 		return MessageIdHolders.NO_ID.getId();
 	}
 
 	@Override
 	public long stopListening(Pin pin) throws IOException {
+		synchronized (subscriptionLock) {
+			if (pinTopics.remove(readTopic(pin))) {
+				updateSubscriptions();
+			}
+		}
 		publish(controlTopic(pin), FALSE);
 		return MessageIdHolders.NO_ID.getId();
 	}
 
+	private String readTopic(Pin pin) {
+		return topic + getType(pin) + pin.pinNum() + appendixSub();
+	}
+
 	private String controlTopic(Pin pin) {
 		return topic + "system/listening/" + getType(pin) + pin.pinNum()
 				+ appendixPub();
@@ -296,18 +455,20 @@ public class MqttLink extends AbstractListenerLink {
 		return MessageIdHolders.NO_ID.getId();
 	}
 
-	private void switchPin(String type, Pin pin, Object value)
-			throws IOException {
+	private void switchPin(String type, Pin pin, Object value) {
 		publish(topic + type + pin.pinNum() + appendixPub(), value);
 	}
 
-	private void publish(final String topic, Object value) throws IOException {
-		try {
-			connection.publish(topic, String.valueOf(value).getBytes(),
-					AT_MOST_ONCE, false);
-		} catch (Exception e) {
-			throw new IOException(e);
-		}
+	private void publish(String topic, Object value) {
+		final UTF8Buffer utf8Topic = new UTF8Buffer(topic);
+		final Buffer payload = new Buffer(String.valueOf(value).getBytes(UTF8));
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				connection.publish(utf8Topic, payload, qos, retained,
+						MqttLink.<Void> logFailure("publish to", utf8Topic));
+			}
+		});
 	}
 
 	@Override
@@ -335,9 +496,9 @@ public class MqttLink extends AbstractListenerLink {
 	public void close() {
 		try {
 			deregisterAllEventListeners();
-			if (this.connection.isConnected()) {
-				this.connection.disconnect();
-			}
+			Promise<Void> disconnected = new Promise<Void>();
+			disconnect(disconnected);
+			disconnected.await(DISCONNECT_TIMEOUT_SECONDS, SECONDS);
 			super.close();
 		} catch (Exception e) {
 			throw propagate(e);
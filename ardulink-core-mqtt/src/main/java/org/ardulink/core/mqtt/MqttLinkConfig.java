@@ -65,6 +65,9 @@ public class MqttLinkConfig implements LinkConfig {
 	@Max(2)
 	public int qos;
 
+	@Named("retained")
+	public boolean retained;
+
 	@Named("clientId")
 	@NotNull
 	private String clientId = "ardulink-mqtt-link";
@@ -75,6 +78,10 @@ public class MqttLinkConfig implements LinkConfig {
 	@Named("password")
 	public String password;
 
+	/**
+	 * If <code>false</code> the link publishes to the topics it subscribes to,
+	 * so it receives the values it switched itself as pin changes.
+	 */
 	@Named("separatedTopics")
 	public boolean separateTopics;
 
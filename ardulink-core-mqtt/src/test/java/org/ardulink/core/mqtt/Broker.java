@@ -37,6 +37,8 @@ import org.junit.rules.ExternalResource;
 import io.moquette.interception.AbstractInterceptHandler;
 import io.moquette.interception.InterceptHandler;
 import io.moquette.interception.messages.InterceptPublishMessage;
+import io.moquette.interception.messages.InterceptSubscribeMessage;
+import io.moquette.interception.messages.InterceptUnsubscribeMessage;
 import io.moquette.server.Server;
 import io.moquette.server.config.MemoryConfig;
 import io.moquette.spi.security.IAuthenticator;
@@ -68,6 +70,8 @@ public class Broker extends ExternalResource {
 	private int port = MqttLinkConfig.DEFAULT_PORT;
 	private final List<InterceptHandler> listeners = Lists.newArrayList();
 	private final List<Message> messages = new CopyOnWriteArrayList<Message>();
+	private final List<String> publishFlags = new CopyOnWriteArrayList<String>();
+	private final List<String> subscriptions = new CopyOnWriteArrayList<String>();
 	private String env2restore;
 
 	private Broker() {
@@ -137,6 +141,9 @@ public class Broker extends ExternalResource {
 	public Broker recordMessages() {
 		listeners.add(new AbstractInterceptHandler() {
 			public void onPublish(InterceptPublishMessage message) {
+				publishFlags.add(message.getTopicName() + " qos="
+						+ message.getQos().ordinal() + " retained="
+						+ message.isRetainFlag());
 				messages.add(new Message(message.getTopicName(), new String(
 						message.getPayload().array())));
 			};
@@ -144,6 +151,27 @@ public class Broker extends ExternalResource {
 		return this;
 	}
 
+	/**
+	 * Records the (un)subscriptions of all clients as
+	 * <code>clientId subscribe|unsubscribe topicFilter</code>.
+	 */
+	public Broker recordSubscriptions() {
+		listeners.add(new AbstractInterceptHandler() {
+			@Override
+			public void onSubscribe(InterceptSubscribeMessage message) {
+				subscriptions.add(message.getClientID() + " subscribe "
+						+ message.getTopicFilter());
+			}
+
+			@Override
+			public void onUnsubscribe(InterceptUnsubscribeMessage message) {
+				subscriptions.add(message.getClientID() + " unsubscribe "
+						+ message.getTopicFilter());
+			}
+		});
+		return this;
+	}
+
 	public Broker host(String host) {
 		this.host = host;
 		return this;
@@ -167,4 +195,16 @@ public class Broker extends ExternalResource {
 		return Lists.newArrayList(messages);
 	}
 
+	/**
+	 * @return the QoS and retain flag of the messages recorded as
+	 *         <code>topic qos=n retained=true|false</code>
+	 */
+	public List<String> getPublishFlags() {
+		return Lists.newArrayList(publishFlags);
+	}
+
+	public List<String> getSubscriptions() {
+		return Lists.newArrayList(subscriptions);
+	}
+
 }
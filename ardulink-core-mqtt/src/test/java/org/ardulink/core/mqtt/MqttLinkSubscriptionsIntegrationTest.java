@@ -0,0 +1,229 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.mqtt;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.util.ServerSockets.freePort;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.rules.RuleChain.outerRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ardulink.core.events.EventListener;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.events.PrimitivePinListener;
+import org.ardulink.core.mqtt.duplicated.AnotherMqttClient;
+import org.ardulink.core.mqtt.duplicated.Message;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class MqttLinkSubscriptionsIntegrationTest {
+
+	private static class Recorder implements PrimitivePinListener {
+
+		private final List<String> values = new CopyOnWriteArrayList<String>();
+
+		@Override
+		public void onAnalog(int pin, int value, long nanoTime) {
+			values.add("A" + pin + "=" + value);
+		}
+
+		@Override
+		public void onDigital(int pin, boolean value, long nanoTime) {
+			values.add("D" + pin + "=" + value);
+		}
+
+	}
+
+	private static final String TOPIC = "myTopic" + System.currentTimeMillis() + "/";
+
+	private static final String CLIENT_ID = "subscriptions-test";
+
+	private final Broker broker = Broker.newBroker().port(freePort())
+			.recordMessages().recordSubscriptions();
+
+	private final AnotherMqttClient mqttClient = AnotherMqttClient.newClient(
+			TOPIC, broker.getPort());
+
+	private final Recorder recorder = new Recorder();
+
+	private MqttLink link;
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	@Rule
+	public RuleChain chain = outerRule(broker).around(mqttClient);
+
+	@After
+	public void tearDown() {
+		if (link != null) {
+			link.close();
+		}
+	}
+
+	@Test
+	public void ownPublishesAndControlMessagesAreNotReceived() throws Exception {
+		link = newLink(config(true));
+		link.addPrimitivePinListener(recorder);
+		awaitSubscriptions(1);
+
+		link.switchDigitalPin(digitalPin(3), true);
+		link.startListening(digitalPin(4));
+		awaitMessage(TOPIC + "system/listening/D4/value/set");
+		mqttClient.appendValueSet(true).switchPin(digitalPin(5), true);
+
+		awaitValues(1);
+		assertThat(recorder.values, is(asList("D5=true")));
+	}
+
+	@Test
+	public void pinTopicsAreSubscribedWhileListenedTo() throws Exception {
+		link = newLink(config(false));
+		link.startListening(digitalPin(2));
+		link.startListening(analogPin(1));
+		link.stopListening(digitalPin(2));
+
+		assertThat(awaitSubscriptions(3),
+				is(asList("subscribe " + TOPIC + "D2", "subscribe " + TOPIC
+						+ "A1", "unsubscribe " + TOPIC + "D2")));
+	}
+
+	@Test
+	public void wildcardIsSubscribedOnlyWhileGlobalListenersAreRegistered()
+			throws Exception {
+		link = newLink(config(true));
+		link.startListening(digitalPin(2));
+		EventListener listener = new EventListenerAdapter();
+		link.addListener(listener);
+		link.addPrimitivePinListener(recorder);
+		link.removeListener(listener);
+		link.removePrimitivePinListener(recorder);
+
+		String pinTopic = TOPIC + "D2/value/get";
+		String wildcard = TOPIC + "+/value/get";
+		assertThat(awaitSubscriptions(5), is(asList("subscribe " + pinTopic,
+				"subscribe " + wildcard, "unsubscribe " + pinTopic,
+				"subscribe " + pinTopic, "unsubscribe " + wildcard)));
+	}
+
+	@Test
+	public void configuredQosAndRetainedFlagReachTheBroker() throws Exception {
+		MqttLinkConfig config = config(false);
+		config.qos = 1;
+		config.retained = true;
+		link = newLink(config);
+		link.switchAnalogPin(analogPin(8), 9);
+
+		String topic = TOPIC + "A8";
+		awaitMessage(topic);
+		assertThat(broker.getPublishFlags(),
+				is(asList(topic + " qos=1 retained=true")));
+	}
+
+	@Test
+	public void malformedTopicsAndPayloadsAreIgnored() throws Exception {
+		link = newLink(config(false));
+		link.addPrimitivePinListener(recorder);
+		awaitSubscriptions(1);
+
+		mqttClient.sendMessage(new Message(TOPIC + "X1", "1"));
+		mqttClient.sendMessage(new Message(TOPIC + "D", "true"));
+		mqttClient.sendMessage(new Message(TOPIC + "Dx1", "true"));
+		mqttClient.sendMessage(new Message(TOPIC + "D-1", "true"));
+		mqttClient.sendMessage(new Message(TOPIC + "A1", "abc"));
+		mqttClient.sendMessage(new Message(TOPIC + "A1", ""));
+		mqttClient.sendMessage(new Message(TOPIC + "D1/extra", "true"));
+		mqttClient.switchPin(digitalPin(5), true);
+
+		awaitValues(1);
+		assertThat(recorder.values, is(asList("D5=true")));
+	}
+
+	private MqttLinkConfig config(boolean separateTopics) {
+		MqttLinkConfig config = new MqttLinkFactory().newLinkConfig();
+		config.setTopic(TOPIC);
+		config.setClientId(CLIENT_ID);
+		config.port = broker.getPort();
+		config.separateTopics = separateTopics;
+		return config;
+	}
+
+	private static MqttLink newLink(MqttLinkConfig config) throws IOException {
+		return new MqttLinkFactory().newLink(config);
+	}
+
+	/**
+	 * @return the (un)subscriptions of the link as soon as there are
+	 *         <code>count</code>
+	 */
+	private List<String> awaitSubscriptions(int count)
+			throws InterruptedException {
+		while (true) {
+			List<String> subscriptions = new ArrayList<String>();
+			for (String subscription : broker.getSubscriptions()) {
+				if (subscription.startsWith(CLIENT_ID + " ")) {
+					subscriptions.add(subscription.substring(CLIENT_ID
+							.length() + 1));
+				}
+			}
+			if (subscriptions.size() >= count) {
+				return subscriptions;
+			}
+			MILLISECONDS.sleep(10);
+		}
+	}
+
+	private void awaitMessage(String topic) throws InterruptedException {
+		while (true) {
+			for (Message message : broker.getMessages()) {
+				if (message.getTopic().equals(topic)) {
+					return;
+				}
+			}
+			MILLISECONDS.sleep(10);
+		}
+	}
+
+	private void awaitValues(int count) throws InterruptedException {
+		while (recorder.values.size() < count) {
+			MILLISECONDS.sleep(10);
+		}
+		// values arriving late would show up now
+		MILLISECONDS.sleep(100);
+	}
+
+}
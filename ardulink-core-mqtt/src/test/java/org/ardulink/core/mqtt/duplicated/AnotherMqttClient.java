@@ -155,7 +155,7 @@ public class AnotherMqttClient extends ExternalResource {
 		return appendValueGet ? message + "/value/get" : message;
 	}
 
-	private void sendMessage(final Message message) throws IOException {
+	public void sendMessage(final Message message) throws IOException {
 		exec(connection.publish(message.getTopic(), message.getMessage()
 				.getBytes(), AT_LEAST_ONCE, false));
 	}
@@ -0,0 +1,430 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import static org.ardulink.core.Pin.Type.ANALOG;
+import static org.ardulink.core.Pin.Type.DIGITAL;
+import static org.ardulink.core.firmata.FirmataProtocol.MAX_CHANNEL;
+import static org.ardulink.core.firmata.FirmataProtocol.PINS_PER_PORT;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_INPUT;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_OUTPUT;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_PWM;
+import static org.ardulink.core.firmata.FirmataProtocol.REPORT_FIRMWARE;
+import static org.ardulink.core.firmata.FirmataProtocol.STRING_DATA;
+import static org.ardulink.core.firmata.FirmataProtocol.putAnalogMessage;
+import static org.ardulink.core.firmata.FirmataProtocol.putDigitalMessage;
+import static org.ardulink.core.firmata.FirmataProtocol.putReportAnalog;
+import static org.ardulink.core.firmata.FirmataProtocol.putReportDigital;
+import static org.ardulink.core.firmata.FirmataProtocol.putSamplingInterval;
+import static org.ardulink.core.firmata.FirmataProtocol.putSetPinMode;
+import static org.ardulink.core.firmata.FirmataProtocol.putString;
+import static org.ardulink.core.firmata.FirmataProtocol.putVersion;
+import static org.ardulink.core.firmata.FirmataProtocol.string;
+import static org.ardulink.core.proto.api.MessageIdHolders.NO_ID;
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.ardulink.core.AbstractListenerLink;
+import org.ardulink.core.Pin;
+import org.ardulink.core.Pin.AnalogPin;
+import org.ardulink.core.Pin.DigitalPin;
+import org.ardulink.core.Tone;
+import org.ardulink.core.events.DefaultCustomEvent;
+import org.ardulink.core.firmata.FirmataProtocol.Handler;
+import org.ardulink.core.firmata.FirmataProtocol.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Link talking <a href="https://github.com/firmata/protocol">Firmata</a> so it
+ * works with stock StandardFirmata sketches. Digital pins are listened to
+ * port-wise: the device reports the state of all 8 pins of a port with one
+ * 3-byte message, the link fires events for the pins listened to whose state
+ * changed. Analog pins are reported every sampling interval (see
+ * {@link #setSamplingInterval(int)}). Digital outputs are written port-wise as
+ * well, the pin modes are set as needed.
+ * 
+ * Firmata has neither message ids nor replies, tones and key presses are not
+ * supported. Custom messages are sent and received as <code>STRING_DATA</code>
+ * (which StandardFirmata does not handle).
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class FirmataLink extends AbstractListenerLink {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(FirmataLink.class);
+
+	private static final int MAX_PORTS = MAX_CHANNEL + 1;
+	private static final int MAX_PINS = MAX_PORTS * PINS_PER_PORT;
+	private static final int BUFFER_SIZE = 256;
+
+	private final InputStream inputStream;
+	private final OutputStream outputStream;
+
+	/**
+	 * guards the buffer, the pin modes and the output ports
+	 */
+	private final Object writeLock = new Object();
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final int[] pinModes = new int[MAX_PINS];
+	private final int[] outputPorts = new int[MAX_PORTS];
+
+	private final AtomicIntegerArray listenedAnalog = new AtomicIntegerArray(
+			MAX_CHANNEL + 1);
+	private final AtomicIntegerArray listenedPorts = new AtomicIntegerArray(
+			MAX_PORTS);
+	/**
+	 * pins whose state has to be fired with the port's next report even if it
+	 * did not change
+	 */
+	private final AtomicIntegerArray freshPins = new AtomicIntegerArray(
+			MAX_PORTS);
+
+	/**
+	 * only accessed by the reader thread
+	 */
+	private final int[] reportedPorts = new int[MAX_PORTS];
+
+	private final CountDownLatch versionReceived = new CountDownLatch(1);
+	private volatile String version;
+	private volatile String firmware;
+
+	private final Thread reader;
+	private volatile boolean stopped;
+
+	public FirmataLink(InputStream inputStream, OutputStream outputStream)
+			throws IOException {
+		this.inputStream = inputStream;
+		this.outputStream = outputStream;
+		Arrays.fill(this.pinModes, -1);
+		Arrays.fill(this.reportedPorts, -1);
+		this.reader = new Thread(this::read, "firmata-reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+		synchronized (writeLock) {
+			buffer.clear();
+			putVersion(buffer, -1, -1);
+			write();
+		}
+	}
+
+	/**
+	 * Waits for the device to report its protocol version (StandardFirmata
+	 * does on startup and on request).
+	 * 
+	 * @return <code>true</code> if the device responded in time
+	 */
+	public boolean waitForVersion(int wait, TimeUnit timeUnit)
+			throws InterruptedException {
+		return versionReceived.await(wait, timeUnit);
+	}
+
+	/**
+	 * @return the Firmata protocol version reported by the device or
+	 *         <code>null</code> if it has not reported it yet
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the name and version of the firmware reported by the device or
+	 *         <code>null</code> if it has not reported it yet
+	 */
+	public String getFirmware() {
+		return firmware;
+	}
+
+	/**
+	 * Sets the interval the device reports the values of the analog pins
+	 * listened to.
+	 * 
+	 * @param millis
+	 *            the interval, StandardFirmata's default is 19 ms
+	 */
+	public void setSamplingInterval(int millis) throws IOException {
+		synchronized (writeLock) {
+			buffer.clear();
+			putSamplingInterval(buffer, millis);
+			write();
+		}
+	}
+
+	@Override
+	public long startListening(Pin pin) throws IOException {
+		int pinNum = pin.pinNum();
+		synchronized (writeLock) {
+			buffer.clear();
+			if (pin.is(ANALOG)) {
+				checkAnalogPin(pinNum);
+				listenedAnalog.set(pinNum, 1);
+				putReportAnalog(buffer, pinNum, true);
+			} else if (pin.is(DIGITAL)) {
+				checkDigitalPin(pinNum);
+				int port = pinNum / PINS_PER_PORT;
+				int bit = 1 << pinNum % PINS_PER_PORT;
+				setPinMode(pinNum, PIN_MODE_INPUT);
+				listenedPorts.set(port, listenedPorts.get(port) | bit);
+				freshPins.accumulateAndGet(port, bit, (a, b) -> a | b);
+				// the device answers with the port's current state
+				putReportDigital(buffer, port, true);
+			} else {
+				throw illegalPinType(pin);
+			}
+			write();
+		}
+		return NO_ID.getId();
+	}
+
+	@Override
+	public long stopListening(Pin pin) throws IOException {
+		int pinNum = pin.pinNum();
+		synchronized (writeLock) {
+			buffer.clear();
+			if (pin.is(ANALOG)) {
+				checkAnalogPin(pinNum);
+				listenedAnalog.set(pinNum, 0);
+				putReportAnalog(buffer, pinNum, false);
+			} else if (pin.is(DIGITAL)) {
+				checkDigitalPin(pinNum);
+				int port = pinNum / PINS_PER_PORT;
+				int listened = listenedPorts.get(port)
+						& ~(1 << pinNum % PINS_PER_PORT);
+				listenedPorts.set(port, listened);
+				if (listened == 0) {
+					putReportDigital(buffer, port, false);
+				}
+			} else {
+				throw illegalPinType(pin);
+			}
+			write();
+		}
+		return NO_ID.getId();
+	}
+
+	@Override
+	public long switchAnalogPin(AnalogPin analogPin, int value)
+			throws IOException {
+		int pinNum = analogPin.pinNum();
+		checkDigitalPin(pinNum);
+		synchronized (writeLock) {
+			buffer.clear();
+			setPinMode(pinNum, PIN_MODE_PWM);
+			putAnalogMessage(buffer, pinNum, value);
+			write();
+		}
+		return NO_ID.getId();
+	}
+
+	@Override
+	public long switchDigitalPin(DigitalPin digitalPin, boolean value)
+			throws IOException {
+		int pinNum = digitalPin.pinNum();
+		checkDigitalPin(pinNum);
+		int port = pinNum / PINS_PER_PORT;
+		int bit = 1 << pinNum % PINS_PER_PORT;
+		synchronized (writeLock) {
+			buffer.clear();
+			setPinMode(pinNum, PIN_MODE_OUTPUT);
+			outputPorts[port] = value ? outputPorts[port] | bit
+					: outputPorts[port] & ~bit;
+			putDigitalMessage(buffer, port, outputPorts[port]);
+			write();
+		}
+		return NO_ID.getId();
+	}
+
+	@Override
+	public long sendKeyPressEvent(char keychar, int keycode, int keylocation,
+			int keymodifiers, int keymodifiersex) throws IOException {
+		throw notSupported();
+	}
+
+	@Override
+	public long sendTone(Tone tone) throws IOException {
+		throw notSupported();
+	}
+
+	@Override
+	public long sendNoTone(AnalogPin analogPin) throws IOException {
+		throw notSupported();
+	}
+
+	/**
+	 * Sends the messages joined by <code>/</code> as <code>STRING_DATA</code>.
+	 */
+	@Override
+	public long sendCustomMessage(String... messages) throws IOException {
+		String string = String.join("/", messages);
+		// two bytes per UTF-8 byte, sysex start, command and end
+		int maxLength = 3 + 6 * string.length();
+		synchronized (writeLock) {
+			if (maxLength <= buffer.capacity()) {
+				buffer.clear();
+				putString(buffer, string);
+				write(buffer);
+			} else {
+				ByteBuffer large = ByteBuffer.allocate(maxLength);
+				putString(large, string);
+				write(large);
+			}
+		}
+		return NO_ID.getId();
+	}
+
+	/**
+	 * guarded by writeLock
+	 */
+	private void setPinMode(int pinNum, int mode) {
+		if (pinModes[pinNum] != mode) {
+			putSetPinMode(buffer, pinNum, mode);
+			pinModes[pinNum] = mode;
+		}
+	}
+
+	/**
+	 * guarded by writeLock
+	 */
+	private void write() throws IOException {
+		write(buffer);
+	}
+
+	private void write(ByteBuffer bytes) throws IOException {
+		if (bytes.position() > 0) {
+			outputStream.write(bytes.array(), 0, bytes.position());
+			outputStream.flush();
+		}
+	}
+
+	private void read() {
+		Parser parser = Parser.forHost(new Receiver());
+		byte[] bytes = new byte[BUFFER_SIZE];
+		try {
+			int read;
+			while (!stopped && (read = inputStream.read(bytes)) >= 0) {
+				parser.parse(bytes, 0, read);
+			}
+		} catch (IOException e) {
+			if (!stopped) {
+				logger.error("Error while reading from device", e);
+			}
+		}
+		if (!stopped) {
+			fireConnectionLost();
+		}
+	}
+
+	/**
+	 * Handles the messages received, called by the reader thread.
+	 */
+	private class Receiver implements Handler {
+
+		@Override
+		public void analogMessage(int pin, int value) {
+			if (pin < listenedAnalog.length() && listenedAnalog.get(pin) != 0) {
+				fireAnalogPinChanged(pin, value, System.nanoTime());
+			}
+		}
+
+		@Override
+		public void digitalMessage(int port, int value) {
+			if (port >= MAX_PORTS) {
+				return;
+			}
+			int fresh = freshPins.getAndSet(port, 0);
+			int previous = reportedPorts[port];
+			reportedPorts[port] = value;
+			int changed = (previous < 0 ? 0xFF : previous ^ value | fresh)
+					& listenedPorts.get(port);
+			if (changed != 0) {
+				long nanoTime = System.nanoTime();
+				for (int i = 0; i < PINS_PER_PORT; i++) {
+					if ((changed & 1 << i) != 0) {
+						fireDigitalPinChanged(port * PINS_PER_PORT + i,
+								(value & 1 << i) != 0, nanoTime);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void version(int major, int minor) {
+			version = major + "." + minor;
+			versionReceived.countDown();
+		}
+
+		@Override
+		public void sysex(int command, byte[] data, int length) {
+			if (command == REPORT_FIRMWARE && length >= 2) {
+				firmware = string(data, 2, length - 2) + " " + data[0] + "."
+						+ data[1];
+			} else if (command == STRING_DATA) {
+				fireCustomReceived(new DefaultCustomEvent(string(data, 0,
+						length)));
+			}
+		}
+
+	}
+
+	@Override
+	public void close() throws IOException {
+		stopped = true;
+		try {
+			outputStream.close();
+		} finally {
+			inputStream.close();
+			reader.interrupt();
+			super.close();
+		}
+	}
+
+	private static void checkAnalogPin(int pinNum) {
+		checkArgument(pinNum >= 0 && pinNum <= MAX_CHANNEL,
+				"analog pin must be between 0 and %s but was %s", MAX_CHANNEL,
+				pinNum);
+	}
+
+	private static void checkDigitalPin(int pinNum) {
+		checkArgument(pinNum >= 0 && pinNum < MAX_PINS,
+				"pin must be between 0 and %s but was %s", MAX_PINS - 1,
+				pinNum);
+	}
+
+	private static IllegalStateException illegalPinType(Pin pin) {
+		return new IllegalStateException("Illegal type " + pin.getType()
+				+ " of pin " + pin);
+	}
+
+	private static UnsupportedOperationException notSupported() {
+		return new UnsupportedOperationException("not supported");
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.ardulink.core.linkmanager.LinkConfig;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FirmataLinkConfig implements LinkConfig {
+
+	/**
+	 * port StandardFirmataEthernet and StandardFirmataWiFi listen on
+	 */
+	public static final int DEFAULT_PORT = 3030;
+
+	/**
+	 * StandardFirmata's default sampling interval
+	 */
+	public static final int DEFAULT_SAMPLING_INTERVAL = 19;
+
+	@Named("host")
+	@NotNull
+	private String host = "localhost";
+
+	@Named("port")
+	@Min(1)
+	@Max(0xFFFF)
+	private int port = DEFAULT_PORT;
+
+	@Named("samplinginterval")
+	@Min(1)
+	@Max(FirmataProtocol.MAX_SAMPLING_INTERVAL)
+	private int samplinginterval = DEFAULT_SAMPLING_INTERVAL;
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * @return milliseconds between two reports of an analog pin
+	 */
+	public int getSamplinginterval() {
+		return samplinginterval;
+	}
+
+	public void setSamplinginterval(int samplinginterval) {
+		this.samplinginterval = samplinginterval;
+	}
+
+}
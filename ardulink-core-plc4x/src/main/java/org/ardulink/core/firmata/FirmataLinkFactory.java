@@ -0,0 +1,87 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+
+import org.ardulink.core.linkmanager.LinkFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Creates {@link FirmataLink}s connected via TCP, e.g. to a device running
+ * StandardFirmataEthernet/StandardFirmataWiFi or to a serial to network
+ * bridge.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FirmataLinkFactory implements LinkFactory<FirmataLinkConfig> {
+
+	private static final int WAIT_SECS = 5;
+
+	@Override
+	public String getName() {
+		return "firmata";
+	}
+
+	@Override
+	public FirmataLink newLink(FirmataLinkConfig config) throws IOException {
+		Socket socket = new Socket(config.getHost(), config.getPort());
+		FirmataLink link = null;
+		try {
+			socket.setTcpNoDelay(true);
+			link = new FirmataLink(socket.getInputStream(),
+					socket.getOutputStream());
+			checkState(link.waitForVersion(WAIT_SECS, SECONDS),
+					"Firmata device did not report its version within %s seconds",
+					WAIT_SECS);
+			link.setSamplingInterval(config.getSamplinginterval());
+			return link;
+		} catch (InterruptedException e) {
+			closeQuietly(link == null ? socket : link, e);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (Exception e) {
+			// the link (or the socket if there is no link yet) must not leak
+			closeQuietly(link == null ? socket : link, e);
+			throw e;
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable, Exception cause) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+		}
+	}
+
+	@Override
+	public FirmataLinkConfig newLinkConfig() {
+		return new FirmataLinkConfig();
+	}
+
+}
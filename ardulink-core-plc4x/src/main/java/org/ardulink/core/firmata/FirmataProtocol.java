@@ -0,0 +1,403 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Encoder and decoder of the <a href="https://github.com/firmata/protocol">
+ * Firmata</a> messages used by {@link FirmataLink}. Firmata is MIDI based:
+ * each message starts with a command byte (highest bit set) followed by 7-bit
+ * data bytes, so it has no separator and the messages' length depends on the
+ * command. That's why this is no {@link org.ardulink.core.proto.api.Protocol}
+ * but a streaming {@link Parser}.
+ * 
+ * The <code>put</code> methods write the complete message to the buffer
+ * passed, decoding calls a {@link Handler} with the values, neither of them
+ * creates any objects (except for strings).
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public final class FirmataProtocol {
+
+	// channel messages, the lower nibble is the port or pin
+	public static final int DIGITAL_MESSAGE = 0x90;
+	public static final int ANALOG_MESSAGE = 0xE0;
+	public static final int REPORT_ANALOG = 0xC0;
+	public static final int REPORT_DIGITAL = 0xD0;
+
+	public static final int SET_PIN_MODE = 0xF4;
+	public static final int SET_DIGITAL_PIN_VALUE = 0xF5;
+	public static final int REPORT_VERSION = 0xF9;
+	public static final int SYSTEM_RESET = 0xFF;
+
+	public static final int START_SYSEX = 0xF0;
+	public static final int END_SYSEX = 0xF7;
+
+	// sysex commands
+	public static final int EXTENDED_ANALOG = 0x6F;
+	public static final int STRING_DATA = 0x71;
+	public static final int REPORT_FIRMWARE = 0x79;
+	public static final int SAMPLING_INTERVAL = 0x7A;
+
+	// pin modes
+	public static final int PIN_MODE_INPUT = 0x00;
+	public static final int PIN_MODE_OUTPUT = 0x01;
+	public static final int PIN_MODE_ANALOG = 0x02;
+	public static final int PIN_MODE_PWM = 0x03;
+
+	public static final int PINS_PER_PORT = 8;
+	public static final int MAX_CHANNEL = 0x0F;
+	public static final int MAX_SAMPLING_INTERVAL = 0x3FFF;
+
+	private static final int MAX_14_BIT = 0x3FFF;
+	private static final int MAX_SYSEX_LENGTH = 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private FirmataProtocol() {
+		super();
+	}
+
+	/**
+	 * Receives the messages decoded by a {@link Parser}. All methods do
+	 * nothing by default so each side only implements the messages it is
+	 * interested in.
+	 */
+	public interface Handler {
+
+		default void analogMessage(int pin, int value) {
+		}
+
+		/**
+		 * @param port
+		 *            the port, pin <code>n</code> of the port is pin
+		 *            <code>port * 8 + n</code>
+		 * @param value
+		 *            the state of the port's pins, one bit per pin
+		 */
+		default void digitalMessage(int port, int value) {
+		}
+
+		default void reportAnalog(int pin, boolean enable) {
+		}
+
+		default void reportDigital(int port, boolean enable) {
+		}
+
+		default void setPinMode(int pin, int mode) {
+		}
+
+		default void setDigitalPinValue(int pin, boolean value) {
+		}
+
+		/**
+		 * Called for the version reported by the device and (with
+		 * <code>-1</code> for both) for the host's version query.
+		 */
+		default void version(int major, int minor) {
+		}
+
+		default void systemReset() {
+		}
+
+		/**
+		 * @param command
+		 *            the sysex command
+		 * @param data
+		 *            the sysex' 7-bit data, only valid during this call
+		 * @param length
+		 *            number of data bytes
+		 */
+		default void sysex(int command, byte[] data, int length) {
+		}
+
+	}
+
+	/**
+	 * Splits the bytes received into messages and passes them to a
+	 * {@link Handler}. Messages may be split across several calls of
+	 * {@link #parse(byte[], int, int)}. This class is not thread-safe.
+	 */
+	public static final class Parser {
+
+		private final Handler handler;
+		private final boolean fromDevice;
+
+		private final byte[] data = new byte[MAX_SYSEX_LENGTH];
+		private int command = -1;
+		private int expected;
+		private int length;
+		private boolean sysex;
+		private int sysexCommand = -1;
+
+		private Parser(Handler handler, boolean fromDevice) {
+			this.handler = handler;
+			this.fromDevice = fromDevice;
+		}
+
+		/**
+		 * Parses the bytes a device sends (the host's side).
+		 */
+		public static Parser forHost(Handler handler) {
+			return new Parser(handler, true);
+		}
+
+		/**
+		 * Parses the bytes a host sends (the device's side).
+		 */
+		public static Parser forDevice(Handler handler) {
+			return new Parser(handler, false);
+		}
+
+		public void parse(byte[] bytes, int offset, int count) {
+			for (int i = offset; i < offset + count; i++) {
+				parse(bytes[i] & 0xFF);
+			}
+		}
+
+		private void parse(int b) {
+			if (b < 0x80) {
+				if (sysex) {
+					if (sysexCommand < 0) {
+						sysexCommand = b;
+					} else if (length < data.length) {
+						// overlong sysex messages are truncated
+						data[length++] = (byte) b;
+					}
+				} else if (command >= 0 && length < expected) {
+					data[length++] = (byte) b;
+					if (length == expected) {
+						dispatch();
+					}
+				}
+				// data bytes without a command are dropped
+			} else if (b == END_SYSEX) {
+				if (sysex && sysexCommand >= 0) {
+					handler.sysex(sysexCommand, data, length);
+				}
+				reset();
+			} else if (b == START_SYSEX) {
+				reset();
+				sysex = true;
+			} else {
+				reset();
+				command = b;
+				expected = dataBytes(b);
+				if (expected == 0) {
+					dispatch();
+				}
+			}
+		}
+
+		private int dataBytes(int command) {
+			switch (command < START_SYSEX ? command & 0xF0 : command) {
+			case DIGITAL_MESSAGE:
+			case ANALOG_MESSAGE:
+			case SET_PIN_MODE:
+			case SET_DIGITAL_PIN_VALUE:
+				return 2;
+			case REPORT_ANALOG:
+			case REPORT_DIGITAL:
+				return 1;
+			case REPORT_VERSION:
+				return fromDevice ? 2 : 0;
+			default:
+				return 0;
+			}
+		}
+
+		private void dispatch() {
+			int channel = command & 0x0F;
+			switch (command < START_SYSEX ? command & 0xF0 : command) {
+			case DIGITAL_MESSAGE:
+				handler.digitalMessage(channel, fourteenBit(0));
+				break;
+			case ANALOG_MESSAGE:
+				handler.analogMessage(channel, fourteenBit(0));
+				break;
+			case REPORT_ANALOG:
+				handler.reportAnalog(channel, data[0] != 0);
+				break;
+			case REPORT_DIGITAL:
+				handler.reportDigital(channel, data[0] != 0);
+				break;
+			case SET_PIN_MODE:
+				handler.setPinMode(data[0], data[1]);
+				break;
+			case SET_DIGITAL_PIN_VALUE:
+				handler.setDigitalPinValue(data[0], data[1] != 0);
+				break;
+			case REPORT_VERSION:
+				if (fromDevice) {
+					handler.version(data[0], data[1]);
+				} else {
+					handler.version(-1, -1);
+				}
+				break;
+			case SYSTEM_RESET:
+				handler.systemReset();
+				break;
+			default:
+				break;
+			}
+			reset();
+		}
+
+		private int fourteenBit(int offset) {
+			return data[offset] | data[offset + 1] << 7;
+		}
+
+		private void reset() {
+			command = -1;
+			expected = 0;
+			length = 0;
+			sysex = false;
+			sysexCommand = -1;
+		}
+
+	}
+
+	// -- encoding -----------------------------------------------------------
+
+	public static void putDigitalMessage(ByteBuffer target, int port, int value) {
+		checkChannel(port);
+		target.put((byte) (DIGITAL_MESSAGE | port));
+		put14Bit(target, value & 0xFF);
+	}
+
+	/**
+	 * Writes an analog (PWM) value. Pins above {@value #MAX_CHANNEL} and values
+	 * exceeding 14 bits are sent using the <code>EXTENDED_ANALOG</code> sysex.
+	 */
+	public static void putAnalogMessage(ByteBuffer target, int pin, int value) {
+		checkArgument(pin >= 0 && pin <= 0x7F,
+				"pin must be between 0 and 127 but was %s", pin);
+		checkArgument(value >= 0, "value must not be negative but was %s",
+				value);
+		if (pin <= MAX_CHANNEL && value <= MAX_14_BIT) {
+			target.put((byte) (ANALOG_MESSAGE | pin));
+			put14Bit(target, value);
+		} else {
+			target.put((byte) START_SYSEX);
+			target.put((byte) EXTENDED_ANALOG);
+			target.put((byte) pin);
+			do {
+				target.put((byte) (value & 0x7F));
+				value >>>= 7;
+			} while (value != 0);
+			target.put((byte) END_SYSEX);
+		}
+	}
+
+	public static void putReportAnalog(ByteBuffer target, int pin,
+			boolean enable) {
+		checkChannel(pin);
+		target.put((byte) (REPORT_ANALOG | pin));
+		target.put((byte) (enable ? 1 : 0));
+	}
+
+	public static void putReportDigital(ByteBuffer target, int port,
+			boolean enable) {
+		checkChannel(port);
+		target.put((byte) (REPORT_DIGITAL | port));
+		target.put((byte) (enable ? 1 : 0));
+	}
+
+	public static void putSetPinMode(ByteBuffer target, int pin, int mode) {
+		target.put((byte) SET_PIN_MODE);
+		target.put((byte) (pin & 0x7F));
+		target.put((byte) (mode & 0x7F));
+	}
+
+	/**
+	 * Writes the host's query (<code>major</code> and <code>minor</code>
+	 * <code>&lt; 0</code>) or the device's report of the protocol version.
+	 */
+	public static void putVersion(ByteBuffer target, int major, int minor) {
+		target.put((byte) REPORT_VERSION);
+		if (major >= 0 && minor >= 0) {
+			target.put((byte) (major & 0x7F));
+			target.put((byte) (minor & 0x7F));
+		}
+	}
+
+	/**
+	 * Sets the interval the device samples its analog pins at.
+	 */
+	public static void putSamplingInterval(ByteBuffer target, int millis) {
+		checkArgument(millis > 0 && millis <= MAX_SAMPLING_INTERVAL,
+				"sampling interval must be between 1 and %s but was %s",
+				MAX_SAMPLING_INTERVAL, millis);
+		target.put((byte) START_SYSEX);
+		target.put((byte) SAMPLING_INTERVAL);
+		put14Bit(target, millis);
+		target.put((byte) END_SYSEX);
+	}
+
+	/**
+	 * Writes a <code>STRING_DATA</code> sysex, each byte of the string's UTF-8
+	 * representation is sent as two 7-bit bytes.
+	 */
+	public static void putString(ByteBuffer target, String string) {
+		target.put((byte) START_SYSEX);
+		target.put((byte) STRING_DATA);
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c >= 0x80) {
+				for (byte b : string.substring(i).getBytes(UTF8)) {
+					put14Bit(target, b & 0xFF);
+				}
+				break;
+			}
+			put14Bit(target, c);
+		}
+		target.put((byte) END_SYSEX);
+	}
+
+	/**
+	 * Decodes a string sent as pairs of 7-bit bytes like the data of
+	 * <code>STRING_DATA</code> and the name in <code>REPORT_FIRMWARE</code>.
+	 */
+	public static String string(byte[] data, int offset, int length) {
+		byte[] bytes = new byte[length / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (data[offset + 2 * i] | data[offset + 2 * i + 1] << 7);
+		}
+		return new String(bytes, UTF8);
+	}
+
+	private static void put14Bit(ByteBuffer target, int value) {
+		target.put((byte) (value & 0x7F));
+		target.put((byte) (value >>> 7 & 0x7F));
+	}
+
+	private static void checkChannel(int channel) {
+		checkArgument(channel >= 0 && channel <= MAX_CHANNEL,
+				"pin/port must be between 0 and %s but was %s", MAX_CHANNEL,
+				channel);
+	}
+
+}
@@ -0,0 +1,315 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.ardulink.core.firmata.FirmataProtocol.END_SYSEX;
+import static org.ardulink.core.firmata.FirmataProtocol.EXTENDED_ANALOG;
+import static org.ardulink.core.firmata.FirmataProtocol.PINS_PER_PORT;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_INPUT;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_OUTPUT;
+import static org.ardulink.core.firmata.FirmataProtocol.REPORT_FIRMWARE;
+import static org.ardulink.core.firmata.FirmataProtocol.SAMPLING_INTERVAL;
+import static org.ardulink.core.firmata.FirmataProtocol.START_SYSEX;
+import static org.ardulink.core.firmata.FirmataProtocol.STRING_DATA;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ardulink.core.firmata.FirmataProtocol.Handler;
+import org.ardulink.core.firmata.FirmataProtocol.Parser;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * In-process stand-in of a device running StandardFirmata: it reports its
+ * version and firmware on startup and on request, reports the ports and analog
+ * pins enabled at the sampling interval set and records what the host writes.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FirmataDevice implements Closeable {
+
+	private static final int PORTS = 16;
+	private static final int PINS = PORTS * PINS_PER_PORT;
+
+	private final Pipe toDevice;
+	private final Pipe toHost;
+	private final InputStream hostInputStream;
+	private final OutputStream hostOutputStream;
+	private final InputStream deviceInputStream;
+	private final OutputStream deviceOutputStream;
+
+	// guarded by this
+	private final int[] pinModes = new int[PINS];
+	private final boolean[] inputs = new boolean[PINS];
+	private final boolean[] outputs = new boolean[PINS];
+	private final int[] pwm = new int[PINS];
+	private final int[] analogInputs = new int[16];
+	private final boolean[] reportAnalog = new boolean[16];
+	private final boolean[] reportDigital = new boolean[PORTS];
+	private int samplingInterval = FirmataLinkConfig.DEFAULT_SAMPLING_INTERVAL;
+
+	private final List<String> strings = new CopyOnWriteArrayList<String>();
+	private final ByteBuffer out = ByteBuffer.allocate(1024);
+
+	private final Thread reader = new Thread(this::read, "firmata-device");
+	private final Thread sampler = new Thread(this::sample, "firmata-sampler");
+	private volatile boolean closed;
+
+	public FirmataDevice() throws IOException {
+		this.toDevice = Pipe.open();
+		this.toHost = Pipe.open();
+		this.hostInputStream = Channels.newInputStream(toHost.source());
+		this.hostOutputStream = Channels.newOutputStream(toDevice.sink());
+		this.deviceInputStream = Channels.newInputStream(toDevice.source());
+		this.deviceOutputStream = Channels.newOutputStream(toHost.sink());
+		reader.setDaemon(true);
+		sampler.setDaemon(true);
+		reportVersion();
+		reader.start();
+		sampler.start();
+	}
+
+	/**
+	 * @return the stream the host reads from
+	 */
+	public InputStream getInputStream() {
+		return hostInputStream;
+	}
+
+	/**
+	 * @return the stream the host writes to
+	 */
+	public OutputStream getOutputStream() {
+		return hostOutputStream;
+	}
+
+	public synchronized int getPinMode(int pin) {
+		return pinModes[pin];
+	}
+
+	public synchronized boolean getDigitalOutput(int pin) {
+		return outputs[pin];
+	}
+
+	public synchronized int getPwm(int pin) {
+		return pwm[pin];
+	}
+
+	public synchronized int getSamplingInterval() {
+		return samplingInterval;
+	}
+
+	public synchronized boolean isReportingPort(int port) {
+		return reportDigital[port];
+	}
+
+	public synchronized boolean isReportingAnalog(int pin) {
+		return reportAnalog[pin];
+	}
+
+	public List<String> getStringsReceived() {
+		return strings;
+	}
+
+	public synchronized void setAnalogInput(int pin, int value) {
+		analogInputs[pin] = value;
+	}
+
+	/**
+	 * Changes the state of an input pin, the port is reported immediately if
+	 * reporting is enabled for it.
+	 */
+	public synchronized void setDigitalInput(int pin, boolean value)
+			throws IOException {
+		inputs[pin] = value;
+		int port = pin / PINS_PER_PORT;
+		if (reportDigital[port]) {
+			reportPort(port);
+		}
+	}
+
+	public synchronized void sendString(String string) throws IOException {
+		out.clear();
+		FirmataProtocol.putString(out, string);
+		flush();
+	}
+
+	private synchronized void reportVersion() throws IOException {
+		out.clear();
+		FirmataProtocol.putVersion(out, 2, 5);
+		out.put((byte) START_SYSEX).put((byte) REPORT_FIRMWARE).put((byte) 2)
+				.put((byte) 5);
+		for (char c : "StandardFirmata".toCharArray()) {
+			out.put((byte) (c & 0x7F)).put((byte) (c >> 7));
+		}
+		out.put((byte) END_SYSEX);
+		flush();
+	}
+
+	private void reportPort(int port) throws IOException {
+		int value = 0;
+		for (int i = 0; i < PINS_PER_PORT; i++) {
+			int pin = port * PINS_PER_PORT + i;
+			if (pinModes[pin] == PIN_MODE_INPUT && inputs[pin]) {
+				value |= 1 << i;
+			}
+		}
+		out.clear();
+		FirmataProtocol.putDigitalMessage(out, port, value);
+		flush();
+	}
+
+	private void flush() throws IOException {
+		deviceOutputStream.write(out.array(), 0, out.position());
+		deviceOutputStream.flush();
+	}
+
+	private void read() {
+		Parser parser = Parser.forDevice(new Handler() {
+
+			@Override
+			public void version(int major, int minor) {
+				try {
+					reportVersion();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			@Override
+			public void setPinMode(int pin, int mode) {
+				synchronized (FirmataDevice.this) {
+					pinModes[pin] = mode;
+				}
+			}
+
+			@Override
+			public void reportDigital(int port, boolean enable) {
+				synchronized (FirmataDevice.this) {
+					reportDigital[port] = enable;
+					if (enable) {
+						try {
+							reportPort(port);
+						} catch (IOException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+				}
+			}
+
+			@Override
+			public void reportAnalog(int pin, boolean enable) {
+				synchronized (FirmataDevice.this) {
+					reportAnalog[pin] = enable;
+				}
+			}
+
+			@Override
+			public void digitalMessage(int port, int value) {
+				synchronized (FirmataDevice.this) {
+					for (int i = 0; i < PINS_PER_PORT; i++) {
+						int pin = port * PINS_PER_PORT + i;
+						if (pinModes[pin] == PIN_MODE_OUTPUT) {
+							outputs[pin] = (value & 1 << i) != 0;
+						}
+					}
+				}
+			}
+
+			@Override
+			public void analogMessage(int pin, int value) {
+				synchronized (FirmataDevice.this) {
+					pwm[pin] = value;
+				}
+			}
+
+			@Override
+			public void sysex(int command, byte[] data, int length) {
+				synchronized (FirmataDevice.this) {
+					if (command == SAMPLING_INTERVAL) {
+						samplingInterval = data[0] | data[1] << 7;
+					} else if (command == EXTENDED_ANALOG) {
+						int value = 0;
+						for (int i = 1; i < length; i++) {
+							value |= data[i] << 7 * (i - 1);
+						}
+						pwm[data[0]] = value;
+					} else if (command == STRING_DATA) {
+						strings.add(FirmataProtocol.string(data, 0, length));
+					}
+				}
+			}
+
+		});
+		byte[] bytes = new byte[256];
+		try {
+			int read;
+			while ((read = deviceInputStream.read(bytes)) >= 0) {
+				parser.parse(bytes, 0, read);
+			}
+		} catch (IOException e) {
+			// closed
+		}
+	}
+
+	private void sample() {
+		try {
+			while (!closed) {
+				int interval;
+				synchronized (this) {
+					for (int pin = 0; pin < reportAnalog.length; pin++) {
+						if (reportAnalog[pin]) {
+							out.clear();
+							FirmataProtocol.putAnalogMessage(out, pin,
+									analogInputs[pin]);
+							flush();
+						}
+					}
+					interval = samplingInterval;
+				}
+				MILLISECONDS.sleep(interval);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			// closed
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		sampler.interrupt();
+		toDevice.sink().close();
+		toDevice.source().close();
+		toHost.sink().close();
+		toHost.source().close();
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FirmataLinkFactoryTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private ServerSocket serverSocket;
+
+	@Before
+	public void setup() throws IOException {
+		serverSocket = new ServerSocket(0);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		serverSocket.close();
+	}
+
+	@Test
+	public void closesTheConnectionIfTheDeviceDoesNotReportItsVersion()
+			throws Exception {
+		FirmataLinkConfig config = new FirmataLinkConfig();
+		config.setHost("localhost");
+		config.setPort(serverSocket.getLocalPort());
+		try {
+			new FirmataLinkFactory().newLink(config);
+			fail("silent device must not result in a link");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		Socket device = serverSocket.accept();
+		try {
+			// blocks (and the test times out) if the socket has leaked
+			while (device.getInputStream().read() != -1) {
+				// skip the requests the link has sent
+			}
+		} finally {
+			device.close();
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_INPUT;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_OUTPUT;
+import static org.ardulink.core.firmata.FirmataProtocol.PIN_MODE_PWM;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.CustomEvent;
+import org.ardulink.core.events.CustomListener;
+import org.ardulink.core.events.DigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FirmataLinkTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	private final List<String> events = new CopyOnWriteArrayList<String>();
+
+	private FirmataDevice device;
+	private FirmataLink link;
+
+	@Before
+	public void setup() throws Exception {
+		device = new FirmataDevice();
+		link = new FirmataLink(device.getInputStream(),
+				device.getOutputStream());
+		assertTrue(link.waitForVersion(5, SECONDS));
+		link.addListener(new EventListenerAdapter() {
+			@Override
+			public void stateChanged(DigitalPinValueChangedEvent event) {
+				events.add("D" + event.getPin().pinNum() + "="
+						+ event.getValue());
+			}
+
+			@Override
+			public void stateChanged(AnalogPinValueChangedEvent event) {
+				events.add("A" + event.getPin().pinNum() + "="
+						+ event.getValue());
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		link.close();
+		device.close();
+	}
+
+	@Test
+	public void readsVersionAndFirmware() throws Exception {
+		assertThat(link.getVersion(), is("2.5"));
+		waitUntil(() -> "StandardFirmata 2.5".equals(link.getFirmware()));
+	}
+
+	@Test
+	public void firesChangesOfTheDigitalPinsListenedTo() throws Exception {
+		device.setDigitalInput(2, true);
+		link.startListening(digitalPin(2));
+		waitUntil(() -> events.equals(Arrays.asList("D2=true")));
+		assertThat(device.getPinMode(2), is(PIN_MODE_INPUT));
+		assertThat(device.isReportingPort(0), is(true));
+
+		// same port but not listened to
+		device.setDigitalInput(3, true);
+		device.setDigitalInput(2, false);
+		waitUntil(() -> events.size() == 2);
+		assertThat(events, is(Arrays.asList("D2=true", "D2=false")));
+
+		link.stopListening(digitalPin(2));
+		waitUntil(() -> !device.isReportingPort(0));
+	}
+
+	@Test
+	public void secondPinOfAPortIsReportedImmediately() throws Exception {
+		device.setDigitalInput(4, true);
+		link.startListening(digitalPin(2));
+		waitUntil(() -> events.equals(Arrays.asList("D2=false")));
+		link.startListening(digitalPin(4));
+		waitUntil(() -> events.size() == 2);
+		assertThat(events, is(Arrays.asList("D2=false", "D4=true")));
+	}
+
+	@Test
+	public void analogPinsAreReportedAtTheSamplingInterval() throws Exception {
+		link.setSamplingInterval(5);
+		device.setAnalogInput(1, 512);
+		link.startListening(analogPin(1));
+		waitUntil(() -> events.size() >= 10);
+		assertThat(device.getSamplingInterval(), is(5));
+		assertThat(events.get(0), is("A1=512"));
+
+		link.stopListening(analogPin(1));
+		waitUntil(() -> !device.isReportingAnalog(1));
+	}
+
+	@Test
+	public void writesDigitalOutputsPortWise() throws Exception {
+		link.switchDigitalPin(digitalPin(12), true);
+		link.switchDigitalPin(digitalPin(13), true);
+		link.switchDigitalPin(digitalPin(13), false);
+		waitUntil(() -> device.getDigitalOutput(12)
+				&& device.getPinMode(13) == PIN_MODE_OUTPUT
+				&& !device.getDigitalOutput(13));
+	}
+
+	@Test
+	public void writesAnalogOutputs() throws Exception {
+		link.switchAnalogPin(analogPin(3), 200);
+		link.switchAnalogPin(analogPin(20), 20000);
+		waitUntil(() -> device.getPwm(3) == 200 && device.getPwm(20) == 20000);
+		assertThat(device.getPinMode(3), is(PIN_MODE_PWM));
+	}
+
+	@Test
+	public void customMessagesAreSentAsStrings() throws Exception {
+		final List<String> received = new CopyOnWriteArrayList<String>();
+		link.addCustomListener(new CustomListener() {
+			@Override
+			public void customEventReceived(CustomEvent event) {
+				received.add(event.getMessage());
+			}
+		});
+		link.sendCustomMessage("foo", "b\u00e4r");
+		device.sendString("hello");
+		waitUntil(() -> device.getStringsReceived().equals(
+				Arrays.asList("foo/b\u00e4r"))
+				&& received.equals(Arrays.asList("hello")));
+	}
+
+	private static void waitUntil(Callable<Boolean> condition)
+			throws Exception {
+		while (!condition.call()) {
+			MILLISECONDS.sleep(10);
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.firmata;
+
+import static org.ardulink.core.firmata.FirmataProtocol.putAnalogMessage;
+import static org.ardulink.core.firmata.FirmataProtocol.putDigitalMessage;
+import static org.ardulink.core.firmata.FirmataProtocol.putReportDigital;
+import static org.ardulink.core.firmata.FirmataProtocol.putSamplingInterval;
+import static org.ardulink.core.firmata.FirmataProtocol.putString;
+import static org.ardulink.core.firmata.FirmataProtocol.putVersion;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ardulink.core.firmata.FirmataProtocol.Handler;
+import org.ardulink.core.firmata.FirmataProtocol.Parser;
+import org.junit.Test;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class FirmataProtocolTest {
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(64);
+
+	private final List<String> decoded = new ArrayList<String>();
+
+	private final Handler handler = new Handler() {
+
+		@Override
+		public void analogMessage(int pin, int value) {
+			decoded.add("analog " + pin + " " + value);
+		}
+
+		@Override
+		public void digitalMessage(int port, int value) {
+			decoded.add("digital " + port + " " + value);
+		}
+
+		@Override
+		public void reportDigital(int port, boolean enable) {
+			decoded.add("reportDigital " + port + " " + enable);
+		}
+
+		@Override
+		public void version(int major, int minor) {
+			decoded.add("version " + major + "." + minor);
+		}
+
+		@Override
+		public void sysex(int command, byte[] data, int length) {
+			decoded.add("sysex " + command + " "
+					+ FirmataProtocol.string(data, 0, length));
+		}
+
+	};
+
+	@Test
+	public void channelMessagesTakeThreeBytes() {
+		putDigitalMessage(buffer, 1, 0xA5);
+		putAnalogMessage(buffer, 2, 1023);
+		assertThat(bytes(), is(new byte[] { (byte) 0x91, 0x25, 0x01,
+				(byte) 0xE2, 0x7F, 0x07 }));
+	}
+
+	@Test
+	public void largePinsAndValuesUseExtendedAnalog() {
+		putAnalogMessage(buffer, 20, 20000);
+		assertThat(bytes(), is(new byte[] { (byte) 0xF0, 0x6F, 20, 0x20,
+				0x1C, 0x01, (byte) 0xF7 }));
+	}
+
+	@Test
+	public void canEncodeSamplingInterval() {
+		putSamplingInterval(buffer, 1000);
+		assertThat(bytes(), is(new byte[] { (byte) 0xF0, 0x7A, 0x68, 0x07,
+				(byte) 0xF7 }));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void samplingIntervalMustFitInto14Bits() {
+		putSamplingInterval(buffer, 0x4000);
+	}
+
+	@Test
+	public void hostParserDecodesMessagesSplitAcrossReads() {
+		putVersion(buffer, 2, 5);
+		putDigitalMessage(buffer, 0, 0x81);
+		putAnalogMessage(buffer, 15, 0x3FFF);
+		putString(buffer, "hi");
+		byte[] bytes = bytes();
+		Parser parser = Parser.forHost(handler);
+		for (byte b : bytes) {
+			parser.parse(new byte[] { b }, 0, 1);
+		}
+		assertThat(decoded, is(Arrays.asList("version 2.5",
+				"digital 0 129", "analog 15 16383", "sysex 113 hi")));
+	}
+
+	@Test
+	public void deviceParserDecodesVersionQuery() {
+		putVersion(buffer, -1, -1);
+		putReportDigital(buffer, 3, true);
+		byte[] bytes = bytes();
+		Parser.forDevice(handler).parse(bytes, 0, bytes.length);
+		assertThat(decoded, is(Arrays.asList("version -1.-1",
+				"reportDigital 3 true")));
+	}
+
+	@Test
+	public void dataWithoutCommandAndIncompleteMessagesAreDropped() {
+		byte[] bytes = { 0x01, 0x02, (byte) 0x90, 0x01, (byte) 0xE1, 0x02,
+				0x03 };
+		Parser.forHost(handler).parse(bytes, 0, bytes.length);
+		assertThat(decoded, is(Arrays.asList("analog 1 386")));
+	}
+
+	private byte[] bytes() {
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proxy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Keeps one idle control connection (protocol version 2) per server so
+ * looking up ports and connecting do not open a new socket and repeat the
+ * handshake each time. Idle connections are closed after
+ * {@value #IDLE_TIMEOUT_PROPERTY} milliseconds (default
+ * {@value #DEFAULT_IDLE_TIMEOUT_MILLIS}) and when the JVM shuts down.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+final class ControlConnections {
+
+	static final String IDLE_TIMEOUT_PROPERTY = "ardulink.proxy.idletimeout";
+	static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30 * 1000;
+
+	/**
+	 * A request done using a control connection.
+	 */
+	interface Exchange<T> {
+		T run(ProxyConnectionToRemote remote) throws IOException;
+	}
+
+	private static class Idle {
+
+		private final ProxyConnectionToRemote remote;
+		private volatile ScheduledFuture<?> expiry;
+
+		private Idle(ProxyConnectionToRemote remote) {
+			this.remote = remote;
+		}
+
+		/**
+		 * @return the connection, it is not closed when expiring any more
+		 */
+		private ProxyConnectionToRemote cancelExpiry() {
+			ScheduledFuture<?> expiry = this.expiry;
+			if (expiry != null) {
+				expiry.cancel(false);
+			}
+			return remote;
+		}
+
+	}
+
+	private static final ConcurrentMap<String, Idle> idle = new ConcurrentHashMap<String, Idle>();
+
+	private static final ScheduledExecutorService expiries = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ardulink-proxy-idle");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("ardulink-proxy-idle-close") {
+			@Override
+			public void run() {
+				closeAll();
+			}
+		});
+	}
+
+	private ControlConnections() {
+		super();
+	}
+
+	/**
+	 * Runs the exchange on the idle connection to the configured server or on
+	 * a new one if there is none. A server closing an idle connection cannot
+	 * be detected without blocking, so if the exchange fails since a reused
+	 * connection was closed it is repeated once on a new connection. The
+	 * connection is closed if the exchange fails, otherwise the exchange owns
+	 * it.
+	 */
+	static <T> T exchange(ProxyLinkConfig config, Exchange<T> exchange) throws IOException {
+		ProxyConnectionToRemote reused = takeIdle(config);
+		if (reused != null) {
+			try {
+				return runOrClose(reused, exchange);
+			} catch (EOFException e) {
+				// closed by the server, try a new connection
+			} catch (SocketException e) {
+				// closed by the server, try a new connection
+			}
+		}
+		return runOrClose(new ProxyConnectionToRemote(config), exchange);
+	}
+
+	private static <T> T runOrClose(ProxyConnectionToRemote remote, Exchange<T> exchange) throws IOException {
+		try {
+			return exchange.run(remote);
+		} catch (IOException e) {
+			remote.close();
+			throw e;
+		} catch (RuntimeException e) {
+			remote.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the idle connection to the configured server or a new one if
+	 * there is none. The caller owns the connection returned.
+	 */
+	static ProxyConnectionToRemote take(ProxyLinkConfig config) throws IOException {
+		ProxyConnectionToRemote remote = takeIdle(config);
+		return remote == null ? new ProxyConnectionToRemote(config) : remote;
+	}
+
+	private static ProxyConnectionToRemote takeIdle(ProxyLinkConfig config) throws IOException {
+		Idle entry = idle.remove(key(config));
+		if (entry == null) {
+			return null;
+		}
+		ProxyConnectionToRemote remote = entry.cancelExpiry();
+		if (remote.isOpen()) {
+			return remote;
+		}
+		remote.close();
+		return null;
+	}
+
+	/**
+	 * Keeps the connection for reuse if there is no idle connection to the
+	 * configured server yet, otherwise it is closed.
+	 */
+	static void offer(ProxyLinkConfig config, ProxyConnectionToRemote remote) throws IOException {
+		final String key = key(config);
+		final Idle entry = new Idle(remote);
+		if (idle.putIfAbsent(key, entry) != null) {
+			remote.close();
+			return;
+		}
+		entry.expiry = expiries.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (idle.remove(key, entry)) {
+					closeQuietly(entry.remote);
+				}
+			}
+		}, Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MILLIS), MILLISECONDS);
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	static void closeAll() {
+		for (String key : idle.keySet()) {
+			Idle entry = idle.remove(key);
+			if (entry != null) {
+				closeQuietly(entry.cancelExpiry());
+			}
+		}
+	}
+
+	private static void closeQuietly(ProxyConnectionToRemote remote) {
+		try {
+			remote.close();
+		} catch (IOException e) {
+			// nothing to do, the connection is not used any more
+		}
+	}
+
+	private static String key(ProxyLinkConfig config) {
+		return config.getTcphost() + ":" + config.getTcpport() + "/" + config.isTcpnodelay() + "/"
+				+ config.getSendbuffersize() + "/" + config.getReceivebuffersize();
+	}
+
+}
@@ -20,12 +20,17 @@ import static org.ardulink.core.proxy.ProxyConnectionToRemote.Command.GET_PORT_L
 import static org.ardulink.util.Preconditions.checkNotNull;
 import static org.ardulink.util.Preconditions.checkState;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -66,20 +71,178 @@ public class ProxyConnectionToRemote implements Closeable {
 
 	private static final String NUMBER_OF_PORTS = "NUMBER_OF_PORTS=";
 
+	/**
+	 * Start of the binary handshake of protocol version 2, see the server's
+	 * Handshaker for the format of the requests and responses.
+	 */
+	private static final byte[] V2_MAGIC = { 0, 'A', 'L', 'P' };
+	public static final int V2 = 2;
+	private static final int V2_GET_PORT_LIST = 1;
+	private static final int V2_CONNECT = 2;
+	private static final int V2_OK = 0;
+
+	/**
+	 * URI of the Link the server was started for, version 2 only.
+	 */
+	public static final String DEFAULT_LINK_URI = "ardulink://default";
+
 	private final String host;
+	private final int protocolVersion;
 	private final Socket socket;
 	private final Scanner scanner;
 	private final PrintWriter printWriter;
-
+	private final DataInputStream dataIn;
+	private final DataOutputStream dataOut;
+	private boolean helloSent;
+	private boolean helloReceived;
 
 	public ProxyConnectionToRemote(String host, int port) throws UnknownHostException, IOException {
+		this(host, port, 1, new Socket(host, port));
+	}
+
+	/**
+	 * Connects to the server configured, applying the configured socket
+	 * options and protocol version.
+	 */
+	public ProxyConnectionToRemote(ProxyLinkConfig config) throws UnknownHostException, IOException {
+		this(config.getTcphost(), config.getTcpport(), config.getProtocolversion(), newSocket(config));
+	}
+
+	private ProxyConnectionToRemote(String host, int port, int protocolVersion, Socket socket) throws IOException {
 		this.host = host;
-		socket = new Socket(host, port);
+		this.protocolVersion = protocolVersion;
+		this.socket = socket;
 		this.scanner = new Scanner(socket.getInputStream()).useDelimiter(Pattern.quote(PROXY_CONNECTION_SEPARATOR));
 		this.printWriter = new PrintWriter(socket.getOutputStream(), false);
+		// unbuffered, the Link reads the socket after the handshake
+		this.dataIn = new DataInputStream(socket.getInputStream());
+		this.dataOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	private static Socket newSocket(ProxyLinkConfig config) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(config.isTcpnodelay());
+			if (config.getSendbuffersize() > 0) {
+				socket.setSendBufferSize(config.getSendbuffersize());
+			}
+			// must be set before connecting to take effect on the TCP window
+			if (config.getReceivebuffersize() > 0) {
+				socket.setReceiveBufferSize(config.getReceivebuffersize());
+			}
+			socket.connect(new InetSocketAddress(config.getTcphost(), config.getTcpport()));
+			return socket;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	public int getProtocolVersion() {
+		return protocolVersion;
+	}
+
+	/**
+	 * Queues the request for the ports of the Link the passed URI refers to.
+	 * Requests are sent when reading the response of one of them, so several
+	 * requests take one round trip only (version 2 only).
+	 * 
+	 * @param linkUri the ardulink:// URI of the Link, {@link #DEFAULT_LINK_URI}
+	 *                for the Link the server was started for
+	 */
+	public void requestPortList(String linkUri) throws IOException {
+		request(V2_GET_PORT_LIST, linkUri);
+	}
+
+	/**
+	 * Reads the response of a {@link #requestPortList(String)}.
+	 */
+	public List<String> readPortList() throws IOException {
+		readResponse();
+		int numOfPorts = dataIn.readInt();
+		List<String> retvalue = new ArrayList<String>(numOfPorts);
+		for (int i = 0; i < numOfPorts; i++) {
+			retvalue.add(dataIn.readUTF());
+		}
+		return retvalue;
+	}
+
+	/**
+	 * Queues the request to connect to the Link the passed URI refers to
+	 * (version 2 only). After the connect was acknowledged by
+	 * {@link #readConnect()} the socket is used by the Link.
+	 * 
+	 * @param linkUri the ardulink:// URI of the Link
+	 */
+	public void requestConnect(String linkUri) throws IOException {
+		request(V2_CONNECT, linkUri);
+	}
+
+	/**
+	 * Reads the response of a {@link #requestConnect(String)}.
+	 */
+	public void readConnect() throws IOException {
+		readResponse();
+	}
+
+	public List<String> getPortList(String linkUri) throws IOException {
+		requestPortList(linkUri);
+		return readPortList();
+	}
+
+	public void connect(String linkUri) throws IOException {
+		requestConnect(linkUri);
+		readConnect();
+	}
+
+	private void request(int request, String linkUri) throws IOException {
+		checkState(protocolVersion >= V2, "Protocol version %s does not support pipelined requests",
+				protocolVersion);
+		if (!helloSent) {
+			dataOut.write(V2_MAGIC);
+			dataOut.writeByte(V2);
+			helloSent = true;
+		}
+		dataOut.writeByte(request);
+		dataOut.writeUTF(linkUri);
+	}
+
+	private void readResponse() throws IOException {
+		dataOut.flush();
+		if (!helloReceived) {
+			byte[] magic = new byte[V2_MAGIC.length];
+			dataIn.readFully(magic);
+			checkState(Arrays.equals(magic, V2_MAGIC), "invalid response from %s, got %s", host,
+					Arrays.toString(magic));
+			int version = dataIn.readUnsignedByte();
+			checkState(version == V2, "%s does not support protocol version %s (got %s)", host, V2, version);
+			helloReceived = true;
+		}
+		if (dataIn.readUnsignedByte() != V2_OK) {
+			throw new IOException(String.format("%s refused request: %s", host, dataIn.readUTF()));
+		}
+	}
+
+	/**
+	 * Checks without blocking if this idle connection can be used (nothing is
+	 * expected to be received while no request is pending). A connection the
+	 * server closed is only detected when using it.
+	 */
+	boolean isOpen() {
+		if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+			return false;
+		}
+		try {
+			return dataIn.available() == 0;
+		} catch (IOException e) {
+			return false;
+		}
 	}
 
 	public List<String> getPortList() throws IOException {
+		if (protocolVersion >= V2) {
+			return getPortList(DEFAULT_LINK_URI);
+		}
 		send(GET_PORT_LIST_CMD.getCommand());
 		String numberOfPorts = checkNotNull(read(), "invalid response from %s, got null", host);
 		checkState(numberOfPorts.startsWith(NUMBER_OF_PORTS), "invalid response: did not start with %s",
@@ -16,7 +16,14 @@ limitations under the License.
 
 package org.ardulink.core.proxy;
 
+import static org.ardulink.core.proxy.ProxyConnectionToRemote.DEFAULT_LINK_URI;
+import static org.ardulink.core.proxy.ProxyConnectionToRemote.V2;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Throwables.propagate;
+
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.List;
@@ -61,6 +68,48 @@ public class ProxyLinkConfig implements LinkConfig {
 	@Named("proto")
 	private Protocol proto = ArdulinkProtocol2.instance();
 
+	@Named("batchmillis")
+	@Min(0)
+	private int batchmillis;
+
+	@Named("batchbytes")
+	@Min(1)
+	private int batchbytes = 512;
+
+	/**
+	 * 1 for the line based handshake, 2 for the binary handshake sending the
+	 * URI of the Link to connect to (needs a server supporting version 2)
+	 */
+	@Named("protocolversion")
+	@Min(1)
+	@Max(V2)
+	private int protocolversion = 1;
+
+	/**
+	 * ardulink:// URI of the Link the server should connect to (protocol
+	 * version 2 only), if not set the server connects its Link to port using
+	 * speed
+	 */
+	@Named("linkuri")
+	private String linkuri;
+
+	@Named("tcpnodelay")
+	private boolean tcpnodelay = true;
+
+	/**
+	 * socket send buffer size in bytes, 0 to use the system's default
+	 */
+	@Named("sendbuffersize")
+	@Min(0)
+	private int sendbuffersize;
+
+	/**
+	 * socket receive buffer size in bytes, 0 to use the system's default
+	 */
+	@Named("receivebuffersize")
+	@Min(0)
+	private int receivebuffersize;
+
 	private ProxyConnectionToRemote remote;
 
 	public String getPort() {
@@ -110,12 +159,30 @@ public class ProxyLinkConfig implements LinkConfig {
 
 	@ChoiceFor(value = "port", dependsOn = { "tcphost", "tcpport" })
 	public List<String> getAvailablePorts() throws IOException {
-		return tcphost == null ? Collections.<String> emptyList()
-				: getRemoteInternal().getPortList();
+		if (tcphost == null) {
+			return Collections.<String> emptyList();
+		}
+		if (protocolversion < V2) {
+			return getRemoteInternal().getPortList();
+		}
+		final String uri = linkuri == null ? DEFAULT_LINK_URI : linkuri;
+		return ControlConnections.exchange(this,
+				new ControlConnections.Exchange<List<String>>() {
+					@Override
+					public List<String> run(ProxyConnectionToRemote control)
+							throws IOException {
+						List<String> ports = control.getPortList(uri);
+						ControlConnections.offer(ProxyLinkConfig.this, control);
+						return ports;
+					}
+				});
 	}
 
 	public synchronized ProxyConnectionToRemote getRemote()
 			throws UnknownHostException, IOException {
+		if (protocolversion >= V2) {
+			return ControlConnections.take(this);
+		}
 		ProxyConnectionToRemote result = getRemoteInternal();
 		this.remote = null;
 		return result;
@@ -124,9 +191,83 @@ public class ProxyLinkConfig implements LinkConfig {
 	private ProxyConnectionToRemote getRemoteInternal()
 			throws UnknownHostException, IOException {
 		if (this.remote == null) {
-			this.remote = new ProxyConnectionToRemote(tcphost, tcpport);
+			this.remote = new ProxyConnectionToRemote(this);
 		}
 		return this.remote;
 	}
 
+	/**
+	 * @return the URI of the Link the server should connect to (protocol
+	 *         version 2)
+	 */
+	public String getConnectURI() {
+		if (linkuri != null) {
+			return linkuri;
+		}
+		String query = "port=" + checkNotNull(port, "port must not be null")
+				+ "&baudrate=" + speed;
+		try {
+			return new URI("ardulink", null, "default", -1, null, query, null)
+					.toASCIIString();
+		} catch (URISyntaxException e) {
+			throw propagate(e);
+		}
+	}
+
+	public int getBatchmillis() {
+		return batchmillis;
+	}
+
+	public void setBatchmillis(int batchmillis) {
+		this.batchmillis = batchmillis;
+	}
+
+	public int getBatchbytes() {
+		return batchbytes;
+	}
+
+	public void setBatchbytes(int batchbytes) {
+		this.batchbytes = batchbytes;
+	}
+
+	public int getProtocolversion() {
+		return protocolversion;
+	}
+
+	public void setProtocolversion(int protocolversion) {
+		this.protocolversion = protocolversion;
+	}
+
+	public String getLinkuri() {
+		return linkuri;
+	}
+
+	public void setLinkuri(String linkuri) {
+		this.linkuri = linkuri;
+	}
+
+	public boolean isTcpnodelay() {
+		return tcpnodelay;
+	}
+
+	public void setTcpnodelay(boolean tcpnodelay) {
+		this.tcpnodelay = tcpnodelay;
+	}
+
+	public int getSendbuffersize() {
+		return sendbuffersize;
+	}
+
+	public void setSendbuffersize(int sendbuffersize) {
+		this.sendbuffersize = sendbuffersize;
+	}
+
+	public int getReceivebuffersize() {
+		return receivebuffersize;
+	}
+
+	public void setReceivebuffersize(int receivebuffersize) {
+		this.receivebuffersize = receivebuffersize;
+	}
+
 }
@@ -16,6 +16,7 @@ limitations under the License.
 
 package org.ardulink.core.proxy;
 
+import static org.ardulink.core.proxy.ProxyConnectionToRemote.V2;
 import static org.ardulink.core.proxy.ProxyConnectionToRemote.Command.CONNECT_CMD;
 import static org.ardulink.util.Preconditions.checkNotNull;
 import static org.ardulink.util.Preconditions.checkState;
@@ -48,21 +49,34 @@ public class ProxyLinkFactory implements LinkFactory<ProxyLinkConfig> {
 	}
 
 	@Override
-	public ConnectionBasedLink newLink(ProxyLinkConfig config)
+	public ConnectionBasedLink newLink(final ProxyLinkConfig config)
 			throws UnknownHostException, IOException {
-		final ProxyConnectionToRemote remote = config.getRemote();
-
-		remote.send(CONNECT_CMD.getCommand());
-		remote.send(checkNotNull(config.getPort(), "port must not be null"));
-		remote.send(String.valueOf(config.getSpeed()));
-		String response = remote.read();
-		checkState(OK.equals(response),
-				"Did not receive %s from remote, got %s", OK, response);
+		final ProxyConnectionToRemote remote;
+		if (config.getProtocolversion() >= V2) {
+			remote = ControlConnections.exchange(config,
+					new ControlConnections.Exchange<ProxyConnectionToRemote>() {
+						@Override
+						public ProxyConnectionToRemote run(
+								ProxyConnectionToRemote remote)
+								throws IOException {
+							remote.connect(config.getConnectURI());
+							return remote;
+						}
+					});
+		} else {
+			remote = config.getRemote();
+			remote.send(CONNECT_CMD.getCommand());
+			remote.send(checkNotNull(config.getPort(), "port must not be null"));
+			remote.send(String.valueOf(config.getSpeed()));
+			String response = remote.read();
+			checkState(OK.equals(response),
+					"Did not receive %s from remote, got %s", OK, response);
+		}
 		Socket socket = remote.getSocket();
 		Protocol proto = ArdulinkProtocol2.instance();
 		return new ConnectionBasedLink(new StreamConnection(
-				socket.getInputStream(), socket.getOutputStream(), proto),
-				proto) {
+				socket.getInputStream(), socket.getOutputStream(), proto,
+				config.getBatchmillis(), config.getBatchbytes()), proto) {
 			@Override
 			public void close() throws IOException {
 				super.close();
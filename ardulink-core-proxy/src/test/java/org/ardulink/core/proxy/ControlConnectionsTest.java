@@ -0,0 +1,188 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+ 
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+ 
+    http://www.apache.org/licenses/LICENSE-2.0
+ 
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.core.proxy;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class ControlConnectionsTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(5, SECONDS);
+
+	private final List<Socket> accepted = new CopyOnWriteArrayList<Socket>();
+	private final BlockingQueue<Socket> closedByClient = new LinkedBlockingQueue<Socket>();
+
+	private ServerSocket serverSocket;
+
+	@Before
+	public void startServer() throws IOException {
+		serverSocket = new ServerSocket(0);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = serverSocket.accept();
+						accepted.add(socket);
+						new Thread() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						}.start();
+					}
+				} catch (IOException e) {
+					// server closed
+				}
+			}
+		}.start();
+	}
+
+	/**
+	 * Answers the requests of protocol version 2, each port list is
+	 * <code>port1</code>.
+	 */
+	private void serve(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			in.readFully(new byte[5]);
+			out.write(new byte[] { 0, 'A', 'L', 'P', 2 });
+			int request;
+			while ((request = in.read()) >= 0) {
+				in.readUTF();
+				out.writeByte(0);
+				if (request == 1) {
+					out.writeInt(1);
+					out.writeUTF("port1");
+				}
+				out.flush();
+			}
+			closedByClient.add(socket);
+		} catch (IOException e) {
+			// closed by the server
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		ControlConnections.closeAll();
+		System.clearProperty(ControlConnections.IDLE_TIMEOUT_PROPERTY);
+		serverSocket.close();
+		for (Socket socket : accepted) {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void takeReturnsTheConnectionOffered() throws IOException {
+		ProxyLinkConfig config = config();
+		ProxyConnectionToRemote remote = ControlConnections.take(config);
+		ControlConnections.offer(config, remote);
+
+		assertThat(ControlConnections.take(config), sameInstance(remote));
+		assertThat(ControlConnections.take(config), not(sameInstance(remote)));
+	}
+
+	@Test
+	public void secondConnectionOfferedIsClosed() throws Exception {
+		ProxyLinkConfig config = config();
+		ProxyConnectionToRemote first = ControlConnections.take(config);
+		ProxyConnectionToRemote second = ControlConnections.take(config);
+		second.getPortList(ProxyConnectionToRemote.DEFAULT_LINK_URI);
+		ControlConnections.offer(config, first);
+		ControlConnections.offer(config, second);
+
+		assertThat(closedByClient.take(), sameInstance(accepted.get(1)));
+		assertThat(ControlConnections.take(config), sameInstance(first));
+	}
+
+	@Test
+	public void portListsReuseTheIdleConnection() throws IOException {
+		ProxyLinkConfig config = config();
+		assertThat(config.getAvailablePorts(), is(Arrays.asList("port1")));
+		assertThat(config.getAvailablePorts(), is(Arrays.asList("port1")));
+		assertThat(accepted.size(), is(1));
+	}
+
+	@Test
+	public void reconnectsIfTheServerClosedTheIdleConnection() throws IOException {
+		ProxyLinkConfig config = config();
+		assertThat(config.getAvailablePorts(), is(Arrays.asList("port1")));
+		accepted.get(0).close();
+
+		assertThat(config.getAvailablePorts(), is(Arrays.asList("port1")));
+		assertThat(accepted.size(), is(2));
+	}
+
+	@Test
+	public void idleConnectionsExpire() throws Exception {
+		System.setProperty(ControlConnections.IDLE_TIMEOUT_PROPERTY, "50");
+		ProxyLinkConfig config = config();
+		config.getAvailablePorts();
+
+		assertThat(closedByClient.take(), sameInstance(accepted.get(0)));
+		config.getAvailablePorts();
+		assertThat(accepted.size(), is(2));
+	}
+
+	@Test
+	public void closeAllClosesIdleConnections() throws Exception {
+		config().getAvailablePorts();
+		ControlConnections.closeAll();
+
+		assertThat(closedByClient.take(), sameInstance(accepted.get(0)));
+	}
+
+	private ProxyLinkConfig config() {
+		ProxyLinkConfig config = new ProxyLinkFactory().newLinkConfig();
+		config.setTcphost("localhost");
+		config.setTcpport(serverSocket.getLocalPort());
+		config.setProtocolversion(2);
+		return config;
+	}
+
+}
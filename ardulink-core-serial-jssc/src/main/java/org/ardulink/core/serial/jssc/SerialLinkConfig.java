@@ -63,6 +63,14 @@ public class SerialLinkConfig implements LinkConfig {
 	@Named("pingprobe")
 	private boolean pingprobe = true;
 
+	@Named("batchmillis")
+	@Min(0)
+	private int batchmillis;
+
+	@Named("batchbytes")
+	@Min(1)
+	private int batchbytes = 512;
+
 	public int getBaudrate() {
 		return baudrate;
 	}
@@ -133,4 +141,20 @@ public class SerialLinkConfig implements LinkConfig {
 		this.waitsecs = waitsecs;
 	}
 
+	public int getBatchmillis() {
+		return batchmillis;
+	}
+
+	public void setBatchmillis(int batchmillis) {
+		this.batchmillis = batchmillis;
+	}
+
+	public int getBatchbytes() {
+		return batchbytes;
+	}
+
+	public void setBatchbytes(int batchbytes) {
+		this.batchbytes = batchbytes;
+	}
+
 }
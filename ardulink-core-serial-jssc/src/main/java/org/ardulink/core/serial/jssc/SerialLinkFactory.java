@@ -58,7 +58,8 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 
 		StreamConnection connection = new StreamConnection(
 				new SerialInputStream(serialPort), new SerialOutputStream(
-						serialPort), config.getProto());
+						serialPort), config.getProto(),
+				config.getBatchmillis(), config.getBatchbytes());
 
 		Protocol proto = config.getProto();
 		ConnectionBasedLink connectionBasedLink = new ConnectionBasedLink(
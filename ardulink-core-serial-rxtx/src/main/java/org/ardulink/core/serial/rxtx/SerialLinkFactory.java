@@ -64,7 +64,8 @@ public class SerialLinkFactory implements LinkFactory<SerialLinkConfig> {
 
 		StreamConnection connection = new StreamConnection(
 				serialPort.getInputStream(), serialPort.getOutputStream(),
-				config.getProto());
+				config.getProto(), config.getBatchmillis(),
+				config.getBatchbytes());
 
 		ConnectionBasedLink connectionBasedLink = new ConnectionBasedLink(
 				connection, config.getProto());
@@ -0,0 +1,318 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.util;
+
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * Growable ring buffer splitting the bytes appended into frames divided by a
+ * delimiter. Unlike {@link ByteArray} the buffered bytes are never shifted and
+ * the delimiter search resumes at the position the previous search stopped.
+ * Frames longer than <code>maxFrameLength</code> are dropped up to (and
+ * including) the next delimiter so the buffer resyncs on the next valid frame.
+ *
+ * This class is not thread-safe.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+public class ByteRingBuffer {
+
+	private static final int DEFAULT_INITIAL_CAPACITY = 256;
+	private static final int DEFAULT_MAX_FRAME_LENGTH = 2048;
+
+	private final int maxFrameLength;
+
+	private byte[] buffer;
+	private int mask;
+
+	private int readPos;
+	private int size;
+
+	/**
+	 * number of bytes (starting at readPos) already known not to start a
+	 * delimiter
+	 */
+	private int scanned;
+
+	/**
+	 * <code>true</code> while we are skipping the rest of an oversized frame
+	 */
+	private boolean discarding;
+
+	private long discardedBytes;
+	private long discardedFrames;
+
+	public ByteRingBuffer() {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	public ByteRingBuffer(int initialCapacity, int maxFrameLength) {
+		checkArgument(initialCapacity > 0,
+				"initialCapacity must be greater than 0 but was %s",
+				initialCapacity);
+		checkArgument(maxFrameLength > 0,
+				"maxFrameLength must be greater than 0 but was %s",
+				maxFrameLength);
+		this.buffer = new byte[powerOfTwo(initialCapacity)];
+		this.mask = this.buffer.length - 1;
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	private static int powerOfTwo(int value) {
+		int highestOneBit = Integer.highestOneBit(value);
+		return highestOneBit == value ? value : highestOneBit << 1;
+	}
+
+	/**
+	 * Reads as many bytes as the passed stream delivers with one call into the
+	 * free space of this buffer. The buffer is grown if there is no free space
+	 * left.
+	 *
+	 * @param inputStream the stream to read from
+	 * @return the number of bytes read or <code>-1</code> if the end of stream
+	 *         was reached
+	 * @throws IOException if reading from the stream fails
+	 */
+	public int readFrom(InputStream inputStream) throws IOException {
+		ensureFree(1);
+		int writePos = (readPos + size) & mask;
+		int contiguous = Math.min(buffer.length - size, buffer.length
+				- writePos);
+		int bytesRead = inputStream.read(buffer, writePos, contiguous);
+		if (bytesRead > 0) {
+			size += bytesRead;
+		}
+		return bytesRead;
+	}
+
+	/**
+	 * Appends the passed bytes to this buffer.
+	 *
+	 * @param bytes the data to append
+	 * @param offset offset of the first byte to append
+	 * @param length number of bytes to append
+	 */
+	public void append(byte[] bytes, int offset, int length) {
+		ensureFree(length);
+		int writePos = (readPos + size) & mask;
+		int firstPart = Math.min(length, buffer.length - writePos);
+		System.arraycopy(bytes, offset, buffer, writePos, firstPart);
+		System.arraycopy(bytes, offset + firstPart, buffer, 0, length
+				- firstPart);
+		size += length;
+	}
+
+	/**
+	 * Appends a single byte to this buffer.
+	 *
+	 * @param b the byte to append
+	 */
+	public void append(int b) {
+		ensureFree(1);
+		buffer[(readPos + size) & mask] = (byte) b;
+		size++;
+	}
+
+	/**
+	 * Returns the next complete frame (without the delimiter) or
+	 * <code>null</code> if no complete frame has been buffered yet.
+	 *
+	 * @param delimiter the delimiter dividing the frames
+	 * @return next frame or <code>null</code>
+	 */
+	public byte[] next(byte[] delimiter) {
+		checkState(checkNotNull(delimiter, "delimiter must not be null").length > 0,
+				"delimiter must not be empty");
+		while (true) {
+			int delimiterAt = indexOf(delimiter);
+			if (delimiterAt < 0) {
+				resyncIfOversized(delimiter.length);
+				return null;
+			}
+			if (discarding) {
+				drop(delimiterAt + delimiter.length);
+				discarding = false;
+				discardedFrames++;
+			} else if (delimiterAt > maxFrameLength) {
+				drop(delimiterAt + delimiter.length);
+				discardedFrames++;
+			} else {
+				byte[] frame = copyOut(delimiterAt);
+				advance(delimiterAt + delimiter.length);
+				return frame;
+			}
+		}
+	}
+
+	/**
+	 * Returns the byte at the passed position relative to the first byte
+	 * buffered without consuming it.
+	 *
+	 * @param index position of the byte, must be less than {@link #size()}
+	 * @return the byte as unsigned value
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index " + index
+					+ " out of bounds, size is " + size);
+		}
+		return buffer[(readPos + index) & mask] & 0xFF;
+	}
+
+	/**
+	 * Returns a copy of the first <code>length</code> bytes buffered without
+	 * consuming them.
+	 *
+	 * @param length number of bytes to copy, must not exceed {@link #size()}
+	 * @return copy of the bytes
+	 */
+	public byte[] peek(int length) {
+		checkArgument(length >= 0 && length <= size,
+				"length must be between 0 and %s but was %s", size, length);
+		return copyOut(length);
+	}
+
+	/**
+	 * Consumes the first <code>length</code> bytes buffered, used for frames
+	 * that were handed out using {@link #peek(int)}.
+	 *
+	 * @param length number of bytes to consume
+	 */
+	public void skip(int length) {
+		checkArgument(length >= 0 && length <= size,
+				"length must be between 0 and %s but was %s", size, length);
+		advance(length);
+	}
+
+	/**
+	 * Drops the first <code>length</code> bytes buffered counting them as
+	 * discarded.
+	 *
+	 * @param length number of bytes to drop
+	 */
+	public void discard(int length) {
+		checkArgument(length >= 0 && length <= size,
+				"length must be between 0 and %s but was %s", size, length);
+		drop(length);
+	}
+
+	private int indexOf(byte[] delimiter) {
+		int last = size - delimiter.length;
+		if (delimiter.length == 1) {
+			byte d = delimiter[0];
+			for (int i = scanned; i <= last; i++) {
+				if (buffer[(readPos + i) & mask] == d) {
+					return i;
+				}
+			}
+		} else {
+			outer: for (int i = scanned; i <= last; i++) {
+				for (int j = 0; j < delimiter.length; j++) {
+					if (buffer[(readPos + i + j) & mask] != delimiter[j]) {
+						continue outer;
+					}
+				}
+				return i;
+			}
+		}
+		scanned = Math.max(0, last + 1);
+		return -1;
+	}
+
+	private void resyncIfOversized(int delimiterLength) {
+		if (size > maxFrameLength) {
+			// keep the bytes that could be the beginning of a delimiter
+			drop(size - (delimiterLength - 1));
+			discarding = true;
+		}
+	}
+
+	private byte[] copyOut(int length) {
+		byte[] frame = new byte[length];
+		int firstPart = Math.min(length, buffer.length - readPos);
+		System.arraycopy(buffer, readPos, frame, 0, firstPart);
+		System.arraycopy(buffer, 0, frame, firstPart, length - firstPart);
+		return frame;
+	}
+
+	private void drop(int length) {
+		discardedBytes += length;
+		advance(length);
+	}
+
+	private void advance(int length) {
+		readPos = (readPos + length) & mask;
+		size -= length;
+		scanned = 0;
+	}
+
+	private void ensureFree(int required) {
+		if (buffer.length - size < required) {
+			grow(size + required);
+		}
+	}
+
+	private void grow(int minCapacity) {
+		byte[] newBuffer = new byte[powerOfTwo(Math.max(minCapacity,
+				buffer.length << 1))];
+		int firstPart = Math.min(size, buffer.length - readPos);
+		System.arraycopy(buffer, readPos, newBuffer, 0, firstPart);
+		System.arraycopy(buffer, 0, newBuffer, firstPart, size - firstPart);
+		this.buffer = newBuffer;
+		this.mask = newBuffer.length - 1;
+		this.readPos = 0;
+	}
+
+	/**
+	 * @return number of bytes currently buffered
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return current capacity of the underlying array
+	 */
+	public int capacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * @return number of bytes dropped because they were part of oversized
+	 *         frames
+	 */
+	public long getDiscardedBytes() {
+		return discardedBytes;
+	}
+
+	/**
+	 * @return number of oversized frames that have been dropped
+	 */
+	public long getDiscardedFrames() {
+		return discardedFrames;
+	}
+
+}
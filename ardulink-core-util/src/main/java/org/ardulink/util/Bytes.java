@@ -58,4 +58,77 @@ public final class Bytes {
 		return -1;
 	}
 
+	public static int indexOf(byte[] array, byte target, int startpos,
+			int endpos) {
+		for (int i = startpos; i < endpos; i++) {
+			if (array[i] == target) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses the ASCII digits (with optional leading sign) found in
+	 * <code>array</code> between <code>startpos</code> (inclusive) and
+	 * <code>endpos</code> (exclusive) without creating a String.
+	 * 
+	 * @param array the bytes to parse
+	 * @param startpos index of the first byte
+	 * @param endpos index after the last byte
+	 * @return the parsed value
+	 * @throws NumberFormatException if the bytes do not hold a valid int
+	 */
+	public static int parseInt(byte[] array, int startpos, int endpos) {
+		long value = parseLong(array, startpos, endpos);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw numberFormatException(array, startpos, endpos);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Parses the ASCII digits (with optional leading sign) found in
+	 * <code>array</code> between <code>startpos</code> (inclusive) and
+	 * <code>endpos</code> (exclusive) without creating a String.
+	 * 
+	 * @param array the bytes to parse
+	 * @param startpos index of the first byte
+	 * @param endpos index after the last byte
+	 * @return the parsed value
+	 * @throws NumberFormatException if the bytes do not hold a valid long
+	 */
+	public static long parseLong(byte[] array, int startpos, int endpos) {
+		int pos = startpos;
+		boolean negative = false;
+		if (pos < endpos && (array[pos] == '-' || array[pos] == '+')) {
+			negative = array[pos] == '-';
+			pos++;
+		}
+		if (pos >= endpos) {
+			throw numberFormatException(array, startpos, endpos);
+		}
+		// accumulate negatively to be able to parse Long.MIN_VALUE
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long value = 0;
+		for (; pos < endpos; pos++) {
+			int digit = array[pos] - '0';
+			if (digit < 0 || digit > 9 || value < limit / 10) {
+				throw numberFormatException(array, startpos, endpos);
+			}
+			value *= 10;
+			if (value < limit + digit) {
+				throw numberFormatException(array, startpos, endpos);
+			}
+			value -= digit;
+		}
+		return negative ? value : -value;
+	}
+
+	private static NumberFormatException numberFormatException(byte[] array,
+			int startpos, int endpos) {
+		return new NumberFormatException("For input string: \""
+				+ new String(array, startpos, endpos - startpos) + "\"");
+	}
+
 }
@@ -0,0 +1,47 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.util;
+
+import static org.ardulink.util.anno.LapsedWith.JDK8;
+
+import java.util.concurrent.Future;
+
+import org.ardulink.util.anno.LapsedWith;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link Future} that notifies listeners when it is completed.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@LapsedWith(value = JDK8, module = "CompletionStage")
+public interface ListenableFuture<T> extends Future<T> {
+
+	/**
+	 * Registers a listener that gets called as soon as this future is
+	 * completed. If the future already is completed the listener is called
+	 * immediately by the calling thread, otherwise by the thread completing the
+	 * future.
+	 *
+	 * @param listener the listener to call
+	 */
+	void addListener(Runnable listener);
+
+}
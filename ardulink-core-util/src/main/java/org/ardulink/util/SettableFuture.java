@@ -0,0 +1,159 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.util;
+
+import static org.ardulink.util.anno.LapsedWith.JDK8;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.ardulink.util.anno.LapsedWith;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ *
+ * {@link ListenableFuture} that is completed by calling {@link #set(Object)} or
+ * {@link #setException(Throwable)}. Only the first completion is taken into
+ * account, all further ones are ignored.
+ *
+ * project Ardulink http://www.ardulink.org/
+ *
+ * [adsense]
+ *
+ */
+@LapsedWith(value = JDK8, module = "CompletableFuture")
+public class SettableFuture<T> implements ListenableFuture<T> {
+
+	private final CountDownLatch done = new CountDownLatch(1);
+	private final List<Runnable> listeners = Lists.newArrayList();
+
+	private boolean completed;
+	private volatile T value;
+	private volatile Throwable failure;
+	private volatile boolean cancelled;
+
+	/**
+	 * Completes this future with the passed value.
+	 *
+	 * @param value the result
+	 * @return <code>true</code> if this call completed the future,
+	 *         <code>false</code> if it was already completed before
+	 */
+	public boolean set(T value) {
+		if (!complete()) {
+			return false;
+		}
+		this.value = value;
+		return finish();
+	}
+
+	/**
+	 * Completes this future exceptionally. Calls to {@link #get()} will throw
+	 * an {@link ExecutionException} having the passed Throwable as cause.
+	 *
+	 * @param failure the cause
+	 * @return <code>true</code> if this call completed the future,
+	 *         <code>false</code> if it was already completed before
+	 */
+	public boolean setException(Throwable failure) {
+		if (!complete()) {
+			return false;
+		}
+		this.failure = failure;
+		return finish();
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!complete()) {
+			return false;
+		}
+		this.cancelled = true;
+		return finish();
+	}
+
+	private synchronized boolean complete() {
+		if (completed) {
+			return false;
+		}
+		completed = true;
+		return true;
+	}
+
+	private boolean finish() {
+		done.countDown();
+		List<Runnable> toRun;
+		synchronized (this) {
+			toRun = Lists.newArrayList(listeners);
+			listeners.clear();
+		}
+		for (Runnable listener : toRun) {
+			listener.run();
+		}
+		return true;
+	}
+
+	@Override
+	public void addListener(Runnable listener) {
+		synchronized (this) {
+			if (done.getCount() > 0) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		done.await();
+		return result();
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return result();
+	}
+
+	private T result() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return value;
+	}
+
+}
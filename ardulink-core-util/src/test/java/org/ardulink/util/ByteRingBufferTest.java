@@ -0,0 +1,128 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ByteRingBufferTest {
+
+	private final ByteRingBuffer sut = new ByteRingBuffer(4, 10);
+
+	@Test
+	public void canAppend() {
+		byte[] delimiter = ";".getBytes();
+		append("abc;def;gh");
+		assertNextIs(delimiter, "abc");
+		assertNextIs(delimiter, "def");
+		assertThat(sut.next(delimiter), is(nullValue()));
+		append("i;jkl;");
+		assertNextIs(delimiter, "ghi");
+		assertNextIs(delimiter, "jkl");
+		assertThat(sut.size(), is(0));
+	}
+
+	@Test
+	public void canHandleMultiByteDelimiterSplitAcrossAppends() {
+		byte[] delimiter = "\r\n".getBytes();
+		append("abc\r");
+		assertThat(sut.next(delimiter), is(nullValue()));
+		append("\ndef\r\n");
+		assertNextIs(delimiter, "abc");
+		assertNextIs(delimiter, "def");
+	}
+
+	@Test
+	public void canWrapAround() {
+		byte[] delimiter = ";".getBytes();
+		for (int i = 0; i < 100; i++) {
+			append("a" + i + ";b");
+			assertNextIs(delimiter, "a" + i);
+			append(";");
+			assertNextIs(delimiter, "b");
+		}
+		assertThat(sut.capacity() <= 16, is(true));
+	}
+
+	@Test
+	public void dropsOversizedFramesAndResyncs() {
+		byte[] delimiter = ";".getBytes();
+		append("abc;0123456789");
+		append("0123456789");
+		assertNextIs(delimiter, "abc");
+		assertThat(sut.next(delimiter), is(nullValue()));
+		append("xyz;def;");
+		assertNextIs(delimiter, "def");
+		assertThat(sut.getDiscardedFrames(), is(1L));
+		assertThat(sut.getDiscardedBytes(), is(24L));
+	}
+
+	@Test
+	public void canReadFromStream() throws IOException {
+		byte[] delimiter = "\n".getBytes();
+		ByteArrayInputStream is = new ByteArrayInputStream(
+				"a\nbb\nccc\n".getBytes());
+		while (sut.readFrom(is) > 0) {
+			// read all
+		}
+		assertNextIs(delimiter, "a");
+		assertNextIs(delimiter, "bb");
+		assertNextIs(delimiter, "ccc");
+	}
+
+	@Test
+	public void canPeekSkipAndDiscardWhileWrappingAround() {
+		for (int i = 0; i < 10; i++) {
+			append("xab" + i);
+			assertThat(sut.get(0), is((int) 'x'));
+			sut.discard(1);
+			assertThat(new String(sut.peek(3)), is("ab" + i));
+			assertThat(sut.size(), is(3));
+			sut.skip(3);
+			assertThat(sut.size(), is(0));
+		}
+		assertThat(sut.getDiscardedBytes(), is(10L));
+		assertThat(sut.capacity(), is(4));
+	}
+
+	@Test
+	public void getReturnsUnsignedBytes() {
+		sut.append(0xA5);
+		assertThat(sut.get(0), is(0xA5));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void cannotGetBeyondSize() {
+		append("a");
+		sut.get(1);
+	}
+
+	private void assertNextIs(byte[] delimiter, String expected) {
+		assertThat(new String(sut.next(delimiter)), is(expected));
+	}
+
+	private void append(String toAppend) {
+		byte[] bytes = toAppend.getBytes();
+		sut.append(bytes, 0, bytes.length);
+	}
+
+}
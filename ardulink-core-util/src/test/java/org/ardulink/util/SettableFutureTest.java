@@ -0,0 +1,81 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.ardulink.util;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SettableFutureTest {
+
+	private final SettableFuture<String> sut = new SettableFuture<String>();
+
+	@Test
+	public void firstCompletionWins() throws Exception {
+		assertThat(sut.isDone(), is(false));
+		assertThat(sut.set("a"), is(true));
+		assertThat(sut.set("b"), is(false));
+		assertThat(sut.setException(new IllegalStateException()), is(false));
+		assertThat(sut.isDone(), is(true));
+		assertThat(sut.get(), is("a"));
+	}
+
+	@Test
+	public void getThrowsExecutionExceptionWithCause() throws Exception {
+		IllegalStateException cause = new IllegalStateException();
+		sut.setException(cause);
+		try {
+			sut.get();
+			fail("ExecutionException expected");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), is(sameInstance((Throwable) cause)));
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void getTimesOut() throws Exception {
+		sut.get(10, MILLISECONDS);
+	}
+
+	@Test
+	public void listenersAreCalledOnceOnCompletion() {
+		final AtomicInteger calls = new AtomicInteger();
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				calls.incrementAndGet();
+			}
+		};
+		sut.addListener(listener);
+		assertThat(calls.get(), is(0));
+		sut.cancel(false);
+		sut.set("a");
+		assertThat(calls.get(), is(1));
+		assertThat(sut.isCancelled(), is(true));
+		// already completed, so called immediately
+		sut.addListener(listener);
+		assertThat(calls.get(), is(2));
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.ardulink.core.virtual.simulator;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * One direction of a serial line: bytes written are transferred at the line's
+ * baud rate into a bounded receive buffer. If the buffer is full the writer
+ * either blocks (like a sender honoring flow control) or the bytes are lost
+ * (like the RX buffer of an Arduino that does not read fast enough).
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+final class SerialLine {
+
+	/**
+	 * 8 data bits plus start and stop bit.
+	 */
+	private static final int BITS_PER_BYTE = 10;
+
+	/**
+	 * Bytes are transferred in chunks of this size so the receiver can consume
+	 * them while the rest is still on the wire.
+	 */
+	private static final int CHUNK_SIZE = 16;
+
+	private final byte[] buffer;
+	private final boolean dropWhenFull;
+	private final long nanosPerByte;
+
+	private final Object writeLock = new Object();
+	private long onTheWireUntil;
+
+	private int head;
+	private int count;
+	private long lostBytes;
+	private boolean closed;
+
+	/**
+	 * @param baudRate
+	 *            the line's speed, <code>0</code> for no limit
+	 * @param bufferSize
+	 *            size of the receive buffer
+	 * @param dropWhenFull
+	 *            <code>true</code> to discard the bytes that do not fit into
+	 *            the receive buffer, <code>false</code> to block the writer
+	 */
+	SerialLine(int baudRate, int bufferSize, boolean dropWhenFull) {
+		checkArgument(baudRate >= 0, "baud rate must not be negative but was %s",
+				baudRate);
+		checkArgument(bufferSize > 0, "buffer size must be positive but was %s",
+				bufferSize);
+		this.buffer = new byte[bufferSize];
+		this.dropWhenFull = dropWhenFull;
+		this.nanosPerByte = baudRate == 0 ? 0 : SECONDS.toNanos(BITS_PER_BYTE)
+				/ baudRate;
+	}
+
+	void write(byte[] bytes, int off, int len) throws IOException {
+		synchronized (writeLock) {
+			for (int i = 0; i < len; i += CHUNK_SIZE) {
+				int chunk = Math.min(CHUNK_SIZE, len - i);
+				transmit(chunk);
+				deposit(bytes, off + i, chunk);
+			}
+		}
+	}
+
+	private void transmit(int bytes) throws InterruptedIOException {
+		if (nanosPerByte > 0) {
+			long now = System.nanoTime();
+			onTheWireUntil = Math.max(now, onTheWireUntil) + bytes
+					* nanosPerByte;
+			sleep(onTheWireUntil - now);
+		}
+	}
+
+	private synchronized void deposit(byte[] bytes, int off, int len)
+			throws IOException {
+		for (int i = 0; i < len; i++) {
+			while (count == buffer.length && !dropWhenFull && !closed) {
+				await(0);
+			}
+			if (closed) {
+				throw new IOException("Line closed");
+			}
+			if (count == buffer.length) {
+				lostBytes++;
+			} else {
+				buffer[(head + count++) % buffer.length] = bytes[off + i];
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Reads at least one byte, blocks until one is available.
+	 *
+	 * @return the number of bytes read or <code>-1</code> if the line was
+	 *         closed
+	 */
+	synchronized int read(byte[] bytes, int off, int len)
+			throws InterruptedIOException {
+		while (count == 0 && !closed) {
+			await(0);
+		}
+		if (count == 0) {
+			return -1;
+		}
+		int read = Math.min(len, count);
+		for (int i = 0; i < read; i++) {
+			bytes[off + i] = take();
+		}
+		notifyAll();
+		return read;
+	}
+
+	/**
+	 * Reads one byte waiting at most <code>timeoutNanos</code>.
+	 *
+	 * @return the byte read or <code>-1</code> if no byte was available in
+	 *         time or the line was closed
+	 */
+	synchronized int poll(long timeoutNanos) throws InterruptedIOException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		long remaining = timeoutNanos;
+		while (count == 0 && !closed && remaining > 0) {
+			await(remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		if (count == 0) {
+			return -1;
+		}
+		int b = take() & 0xFF;
+		notifyAll();
+		return b;
+	}
+
+	private byte take() {
+		byte b = buffer[head];
+		head = (head + 1) % buffer.length;
+		count--;
+		return b;
+	}
+
+	synchronized long getLostBytes() {
+		return lostBytes;
+	}
+
+	synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	private void await(long nanos) throws InterruptedIOException {
+		try {
+			if (nanos == 0) {
+				wait();
+			} else {
+				NANOSECONDS.timedWait(this, nanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private static void sleep(long nanos) throws InterruptedIOException {
+		try {
+			NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+}
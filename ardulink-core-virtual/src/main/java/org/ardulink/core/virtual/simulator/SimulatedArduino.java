@@ -0,0 +1,639 @@
+package org.ardulink.core.virtual.simulator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.proto.api.LengthFramedProtocol.HEADER_LENGTH;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.ANALOG_PIN_READ;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.BATCH;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.CHAR_PRESSED;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.CRC_LENGTH;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.CUSTOM_MESSAGE;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.DIGITAL_PIN_READ;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.FLAG_ID;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.MAX_PAYLOAD_LENGTH;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.NOTONE;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.POWER_PIN_INTENSITY;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.POWER_PIN_SWITCH;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.READY;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.RPLY;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.START_LISTENING_ANALOG;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.START_LISTENING_DIGITAL;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.START_OF_FRAME;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.STOP_LISTENING_ANALOG;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.STOP_LISTENING_DIGITAL;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.TONE;
+import static org.ardulink.core.proto.impl.ArdulinkBinaryProtocol.crc16;
+import static org.ardulink.util.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * In-process Arduino running the Ardulink firmware: it parses the ALP messages
+ * written to {@link #getOutputStream()} (<code>ppsw</code>, <code>ppin</code>,
+ * <code>srla</code>, <code>srld</code>, <code>spla</code>, <code>spld</code>,
+ * <code>kprs</code>, <code>tone</code>, <code>notn</code> and
+ * <code>cust</code>), acknowledges messages carrying an id with
+ * <code>alp://rply/ok?id=</code> and streams <code>ared</code>/
+ * <code>dred</code> messages of the pins listened to at the configured sample
+ * rates to {@link #getInputStream()}.
+ * <p>
+ * Alternatively the firmware speaks the binary protocol
+ * (<code>ardulink-binary</code>, see
+ * {@link org.ardulink.core.proto.impl.ArdulinkBinaryProtocol}) serving as the
+ * reference of its device side: Frames with a wrong CRC are dropped without a
+ * reply, frames carrying an id are acknowledged with a reply frame, the
+ * commands of a batch frame are executed before it is acknowledged.
+ * <p>
+ * Both directions are transferred at the configured baud rate. Bytes sent to
+ * the device arrive in an RX buffer of {@value #DEFAULT_RX_BUFFER_SIZE} bytes
+ * (by default) which loses bytes if the firmware is busy handling a message for
+ * longer than it takes to fill it. Handling each message takes the configured
+ * latency plus a random jitter.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class SimulatedArduino implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(SimulatedArduino.class);
+
+	public static final int DEFAULT_BAUD_RATE = 115200;
+	public static final int DEFAULT_RX_BUFFER_SIZE = 64;
+
+	public static final String ALP = "ardulink2";
+	public static final String BINARY = "ardulink-binary";
+	public static final List<String> PROTOCOLS = Arrays.asList(ALP, BINARY);
+
+	/**
+	 * Size of the host's buffer for the data sent by the device, the device
+	 * blocks if the host does not read.
+	 */
+	private static final int HOST_BUFFER_SIZE = 4096;
+
+	private static final int MAX_MESSAGE_LENGTH = 256;
+	private static final int MAX_FRAME_LENGTH = HEADER_LENGTH
+			+ MAX_PAYLOAD_LENGTH + CRC_LENGTH;
+	private static final int MAX_ANALOG_VALUE = 1023;
+	private static final long IDLE_NANOS = MILLISECONDS.toNanos(100);
+
+	private static final String PREFIX = "alp://";
+	private static final byte SEPARATOR = '\n';
+
+	public static class Builder {
+
+		private int baudRate = DEFAULT_BAUD_RATE;
+		private int rxBufferSize = DEFAULT_RX_BUFFER_SIZE;
+		private long latencyNanos;
+		private long jitterNanos;
+		private double analogSampleRate = 10;
+		private double digitalSampleRate = 10;
+		private boolean binary;
+
+		/**
+		 * @param protocol
+		 *            the protocol the firmware speaks, one of
+		 *            {@link SimulatedArduino#PROTOCOLS}
+		 */
+		public Builder withProtocol(String protocol) {
+			checkArgument(PROTOCOLS.contains(protocol),
+					"protocol must be one of %s but was %s", PROTOCOLS,
+					protocol);
+			this.binary = BINARY.equals(protocol);
+			return this;
+		}
+
+		/**
+		 * @param baudRate
+		 *            speed of the serial line, <code>0</code> for no limit
+		 */
+		public Builder withBaudRate(int baudRate) {
+			checkArgument(baudRate >= 0,
+					"baud rate must not be negative but was %s", baudRate);
+			this.baudRate = baudRate;
+			return this;
+		}
+
+		public Builder withRxBufferSize(int rxBufferSize) {
+			checkArgument(rxBufferSize > 0,
+					"RX buffer size must be positive but was %s", rxBufferSize);
+			this.rxBufferSize = rxBufferSize;
+			return this;
+		}
+
+		/**
+		 * @param latency
+		 *            time the firmware needs to handle a message
+		 * @param jitter
+		 *            maximum random time added to <code>latency</code>
+		 */
+		public Builder withLatency(long latency, long jitter, TimeUnit timeUnit) {
+			checkArgument(latency >= 0 && jitter >= 0,
+					"latency and jitter must not be negative");
+			this.latencyNanos = timeUnit.toNanos(latency);
+			this.jitterNanos = timeUnit.toNanos(jitter);
+			return this;
+		}
+
+		/**
+		 * @param perSecond
+		 *            number of <code>ared</code> messages sent per second for
+		 *            each analog pin listened to
+		 */
+		public Builder withAnalogSampleRate(double perSecond) {
+			checkArgument(perSecond > 0,
+					"sample rate must be positive but was %s", perSecond);
+			this.analogSampleRate = perSecond;
+			return this;
+		}
+
+		/**
+		 * @param perSecond
+		 *            number of <code>dred</code> messages sent per second for
+		 *            each digital pin listened to
+		 */
+		public Builder withDigitalSampleRate(double perSecond) {
+			checkArgument(perSecond > 0,
+					"sample rate must be positive but was %s", perSecond);
+			this.digitalSampleRate = perSecond;
+			return this;
+		}
+
+		/**
+		 * @return a running SimulatedArduino
+		 */
+		public SimulatedArduino start() {
+			SimulatedArduino arduino = new SimulatedArduino(this);
+			arduino.firmware.start();
+			return arduino;
+		}
+
+	}
+
+	/**
+	 * Pin listened to, sampled at a fixed rate.
+	 */
+	private static class Sampled {
+
+		private final boolean analog;
+		private final int pin;
+		private final long periodNanos;
+		private long due;
+
+		Sampled(boolean analog, int pin, double rate, long now) {
+			this.analog = analog;
+			this.pin = pin;
+			this.periodNanos = (long) (SECONDS.toNanos(1) / rate);
+			this.due = now;
+		}
+
+	}
+
+	private final SerialLine rx;
+	private final SerialLine tx;
+	private final long latencyNanos;
+	private final long jitterNanos;
+	private final double analogSampleRate;
+	private final double digitalSampleRate;
+	private final boolean binary;
+
+	// state of the firmware, only accessed by the firmware's thread
+	private final Map<Integer, Sampled> analogListeners = new HashMap<Integer, Sampled>();
+	private final Map<Integer, Sampled> digitalListeners = new HashMap<Integer, Sampled>();
+	private final Map<Integer, Boolean> digitalStates = new HashMap<Integer, Boolean>();
+	private final Random random = new Random();
+	private final byte[] message = new byte[MAX_FRAME_LENGTH];
+	private int messageLength;
+	private boolean overlong;
+	private int readPos;
+	private final byte[] frame = new byte[MAX_FRAME_LENGTH];
+	private int frameLength;
+
+	private final InputStream inputStream = new InputStream() {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return len == 0 ? 0 : tx.read(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			SimulatedArduino.this.close();
+		}
+
+	};
+
+	private final OutputStream outputStream = new OutputStream() {
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			rx.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			SimulatedArduino.this.close();
+		}
+
+	};
+
+	private final Thread firmware = new Thread("simulated-arduino") {
+		@Override
+		public void run() {
+			try {
+				sendReady();
+				while (!isInterrupted()) {
+					loop();
+				}
+			} catch (InterruptedIOException e) {
+				// closed
+			} catch (IOException e) {
+				logger.debug("Simulated Arduino stopped", e);
+			}
+		}
+	};
+
+	private volatile boolean closed;
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	private SimulatedArduino(Builder builder) {
+		this.rx = new SerialLine(builder.baudRate, builder.rxBufferSize, true);
+		this.tx = new SerialLine(builder.baudRate, HOST_BUFFER_SIZE, false);
+		this.latencyNanos = builder.latencyNanos;
+		this.jitterNanos = builder.jitterNanos;
+		this.analogSampleRate = builder.analogSampleRate;
+		this.digitalSampleRate = builder.digitalSampleRate;
+		this.binary = builder.binary;
+		this.firmware.setDaemon(true);
+	}
+
+	/**
+	 * @return the stream to read the messages sent by the device from
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * @return the stream to send messages to the device
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * @return number of bytes sent to the device that were lost because the
+	 *         RX buffer was full
+	 */
+	public long getLostBytes() {
+		return rx.getLostBytes();
+	}
+
+	private void loop() throws IOException {
+		long now = System.nanoTime();
+		long nextDue = sendDueSamples(analogListeners, now,
+				sendDueSamples(digitalListeners, now, now + IDLE_NANOS));
+		int b = rx.poll(Math.max(0, nextDue - System.nanoTime()));
+		if (b >= 0) {
+			if (binary) {
+				receivedBinary((byte) b);
+			} else {
+				received((byte) b);
+			}
+		} else if (closed) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void received(byte b) throws IOException {
+		if (b == SEPARATOR) {
+			if (!overlong) {
+				handle(new String(message, 0, messageLength));
+			}
+			messageLength = 0;
+			overlong = false;
+		} else if (messageLength < MAX_MESSAGE_LENGTH) {
+			message[messageLength++] = b;
+		} else {
+			overlong = true;
+		}
+	}
+
+	private long sendDueSamples(Map<Integer, Sampled> listeners, long now,
+			long nextDue) throws IOException {
+		for (Sampled sampled : listeners.values()) {
+			if (sampled.due <= now) {
+				sendSample(sampled, now);
+				sampled.due = Math.max(sampled.due + sampled.periodNanos, now);
+			}
+			nextDue = Math.min(nextDue, sampled.due);
+		}
+		return nextDue;
+	}
+
+	private void sendReady() throws IOException {
+		if (binary) {
+			beginFrame(READY);
+			endFrame();
+		} else {
+			send("alp://ready");
+		}
+	}
+
+	private void sendSample(Sampled sampled, long now) throws IOException {
+		if (binary) {
+			beginFrame(sampled.analog ? ANALOG_PIN_READ : DIGITAL_PIN_READ);
+			putVarint(sampled.pin);
+			putVarint(sampled.analog ? analogValue(sampled.pin, now)
+					: digitalValue(sampled.pin, now) ? 1 : 0);
+			endFrame();
+		} else if (sampled.analog) {
+			send("alp://ared/" + sampled.pin + "/" + analogValue(sampled.pin, now));
+		} else {
+			send("alp://dred/" + sampled.pin + "/"
+					+ (digitalValue(sampled.pin, now) ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Analog pins read a sine wave with a period of one second, phase shifted
+	 * by the pin number.
+	 */
+	private static int analogValue(int pin, long now) {
+		double seconds = (double) now / SECONDS.toNanos(1) + pin / 10.0;
+		return (int) Math.round(MAX_ANALOG_VALUE
+				* (1 + Math.sin(2 * Math.PI * seconds)) / 2);
+	}
+
+	/**
+	 * Digital pins read the state they were switched to or if they were never
+	 * switched a square wave with a period of one second.
+	 */
+	private boolean digitalValue(int pin, long now) {
+		Boolean state = digitalStates.get(pin);
+		return state == null ? NANOSECONDS.toMillis(now) % 1000 < 500 : state;
+	}
+
+	private void handle(String string) throws IOException {
+		simulateLatency();
+		if (!string.startsWith(PREFIX)) {
+			logger.debug("Ignoring {}", string);
+			return;
+		}
+		int queryStart = string.indexOf('?');
+		String path = string.substring(PREFIX.length(),
+				queryStart < 0 ? string.length() : queryStart);
+		String id = queryStart < 0 ? null : idOf(string
+				.substring(queryStart + 1));
+		String[] parts = path.split("/");
+		boolean ok = execute(parts);
+		if (id != null) {
+			send("alp://rply/" + (ok ? "ok" : "ko") + "?id=" + id);
+		}
+	}
+
+	private boolean execute(String[] parts) {
+		String command = parts[0];
+		try {
+			if ("ppsw".equals(command)) {
+				digitalStates.put(pin(parts), "1".equals(parts[2]));
+			} else if ("ppin".equals(command)) {
+				Integer.parseInt(parts[2]);
+			} else if ("srla".equals(command)) {
+				startListening(analogListeners, true, pin(parts),
+						analogSampleRate);
+			} else if ("srld".equals(command)) {
+				startListening(digitalListeners, false, pin(parts),
+						digitalSampleRate);
+			} else if ("spla".equals(command)) {
+				analogListeners.remove(pin(parts));
+			} else if ("spld".equals(command)) {
+				digitalListeners.remove(pin(parts));
+			} else if (!isKnown(command)) {
+				logger.debug("Unknown command {}", command);
+				return false;
+			}
+			return true;
+		} catch (RuntimeException e) {
+			logger.debug("Cannot execute {}", command, e);
+			return false;
+		}
+	}
+
+	private static boolean isKnown(String command) {
+		return "kprs".equals(command) || "tone".equals(command)
+				|| "notn".equals(command) || "cust".equals(command);
+	}
+
+	private static int pin(String[] parts) {
+		return Integer.parseInt(parts[1]);
+	}
+
+	private void startListening(Map<Integer, Sampled> listeners,
+			boolean analog, int pin, double rate) {
+		if (!listeners.containsKey(pin)) {
+			listeners.put(pin, new Sampled(analog, pin, rate, System.nanoTime()));
+		}
+	}
+
+	private static String idOf(String query) {
+		for (String parameter : query.split("&")) {
+			if (parameter.startsWith("id=")) {
+				return parameter.substring("id=".length());
+			}
+		}
+		return null;
+	}
+
+	// -- binary protocol --------------------------------------------------
+
+	private void receivedBinary(byte b) throws IOException {
+		if (messageLength == 0 && b != START_OF_FRAME) {
+			// not in sync, wait for the next start of frame
+			return;
+		}
+		message[messageLength++] = b;
+		if (messageLength > HEADER_LENGTH
+				&& messageLength == HEADER_LENGTH + (message[1] & 0xFF)
+						+ CRC_LENGTH) {
+			int length = messageLength;
+			messageLength = 0;
+			handleFrame(length);
+		}
+	}
+
+	private void handleFrame(int length) throws IOException {
+		simulateLatency();
+		int end = length - CRC_LENGTH;
+		if (crc16(message, 1, end - 1) != ((message[end] & 0xFF) << 8 | message[end + 1] & 0xFF)) {
+			logger.debug("Dropping corrupted frame");
+			return;
+		}
+		int opcode = message[HEADER_LENGTH] & 0xFF;
+		readPos = HEADER_LENGTH + 1;
+		long id = -1;
+		boolean ok;
+		try {
+			if ((opcode & FLAG_ID) != 0) {
+				id = readVarint(end);
+			}
+			ok = execute(opcode & ~FLAG_ID, end);
+		} catch (RuntimeException e) {
+			logger.debug("Cannot execute opcode {}", opcode, e);
+			ok = false;
+		}
+		if (id >= 0) {
+			beginFrame(RPLY | FLAG_ID);
+			putVarint(id);
+			frame[frameLength++] = (byte) (ok ? 1 : 0);
+			endFrame();
+		}
+	}
+
+	private boolean execute(int opcode, int end) {
+		switch (opcode) {
+		case POWER_PIN_SWITCH:
+			digitalStates.put((int) readVarint(end), readVarint(end) == 1);
+			return true;
+		case POWER_PIN_INTENSITY:
+			readVarint(end);
+			readVarint(end);
+			return true;
+		case START_LISTENING_ANALOG:
+			startListening(analogListeners, true, (int) readVarint(end),
+					analogSampleRate);
+			return true;
+		case START_LISTENING_DIGITAL:
+			startListening(digitalListeners, false, (int) readVarint(end),
+					digitalSampleRate);
+			return true;
+		case STOP_LISTENING_ANALOG:
+			analogListeners.remove((int) readVarint(end));
+			return true;
+		case STOP_LISTENING_DIGITAL:
+			digitalListeners.remove((int) readVarint(end));
+			return true;
+		case TONE:
+			readVarint(end);
+			readVarint(end);
+			readVarint(end);
+			return true;
+		case NOTONE:
+			readVarint(end);
+			return true;
+		case CHAR_PRESSED:
+		case CUSTOM_MESSAGE:
+			return true;
+		case BATCH:
+			while (readPos < end) {
+				int command = message[readPos++] & 0xFF;
+				if (command == BATCH || !execute(command, end)) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			logger.debug("Unknown opcode {}", opcode);
+			return false;
+		}
+	}
+
+	private long readVarint(int end) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (readPos >= end) {
+				throw new IllegalStateException("Varint exceeds frame");
+			}
+			byte b = message[readPos++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("Varint too long");
+	}
+
+	private void beginFrame(int opcode) {
+		frame[0] = START_OF_FRAME;
+		frame[2] = (byte) opcode;
+		frameLength = HEADER_LENGTH + 1;
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			frame[frameLength++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		frame[frameLength++] = (byte) value;
+	}
+
+	private void endFrame() throws IOException {
+		frame[1] = (byte) (frameLength - HEADER_LENGTH);
+		int crc = crc16(frame, 1, frameLength - 1);
+		frame[frameLength++] = (byte) (crc >>> 8);
+		frame[frameLength++] = (byte) crc;
+		tx.write(frame, 0, frameLength);
+	}
+
+	private void simulateLatency() throws InterruptedIOException {
+		long nanos = latencyNanos
+				+ (jitterNanos == 0 ? 0 : (long) (random.nextDouble() * jitterNanos));
+		if (nanos > 0) {
+			try {
+				NANOSECONDS.sleep(nanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	private void send(String message) throws IOException {
+		byte[] bytes = (message + (char) SEPARATOR).getBytes();
+		tx.write(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			rx.close();
+			tx.close();
+			firmware.interrupt();
+		}
+	}
+
+}
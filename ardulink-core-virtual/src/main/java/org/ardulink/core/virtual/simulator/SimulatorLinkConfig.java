@@ -0,0 +1,145 @@
+package org.ardulink.core.virtual.simulator;
+
+import static org.ardulink.core.virtual.simulator.SimulatedArduino.ALP;
+import static org.ardulink.core.virtual.simulator.SimulatedArduino.DEFAULT_BAUD_RATE;
+import static org.ardulink.core.virtual.simulator.SimulatedArduino.DEFAULT_RX_BUFFER_SIZE;
+import static org.ardulink.core.virtual.simulator.SimulatedArduino.PROTOCOLS;
+
+import java.util.List;
+
+import javax.validation.constraints.Min;
+
+import org.ardulink.core.linkmanager.LinkConfig;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class SimulatorLinkConfig implements LinkConfig {
+
+	@Named("baudrate")
+	@Min(0)
+	private int baudrate = DEFAULT_BAUD_RATE;
+
+	@Named("rxbuffer")
+	@Min(1)
+	private int rxbuffer = DEFAULT_RX_BUFFER_SIZE;
+
+	@Named("latency")
+	@Min(0)
+	private long latency;
+
+	@Named("jitter")
+	@Min(0)
+	private long jitter;
+
+	@Named("analograte")
+	@Min(1)
+	private int analograte = 10;
+
+	@Named("digitalrate")
+	@Min(1)
+	private int digitalrate = 10;
+
+	@Named("qos")
+	private boolean qos;
+
+	@Named("proto")
+	private String proto = ALP;
+
+	/**
+	 * @return the baud rate of the simulated serial line, <code>0</code> for
+	 *         no limit
+	 */
+	public int getBaudrate() {
+		return baudrate;
+	}
+
+	public void setBaudrate(int baudrate) {
+		this.baudrate = baudrate;
+	}
+
+	/**
+	 * @return the size of the device's RX buffer in bytes
+	 */
+	public int getRxbuffer() {
+		return rxbuffer;
+	}
+
+	public void setRxbuffer(int rxbuffer) {
+		this.rxbuffer = rxbuffer;
+	}
+
+	/**
+	 * @return milliseconds the device needs to handle a message
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @return maximum random milliseconds added to the latency
+	 */
+	public long getJitter() {
+		return jitter;
+	}
+
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	/**
+	 * @return messages per second sent for each analog pin listened to
+	 */
+	public int getAnalograte() {
+		return analograte;
+	}
+
+	public void setAnalograte(int analograte) {
+		this.analograte = analograte;
+	}
+
+	/**
+	 * @return messages per second sent for each digital pin listened to
+	 */
+	public int getDigitalrate() {
+		return digitalrate;
+	}
+
+	public void setDigitalrate(int digitalrate) {
+		this.digitalrate = digitalrate;
+	}
+
+	public boolean isQos() {
+		return qos;
+	}
+
+	public void setQos(boolean qos) {
+		this.qos = qos;
+	}
+
+	/**
+	 * @return the name of the protocol the simulated device speaks
+	 */
+	public String getProto() {
+		return proto;
+	}
+
+	public void setProto(String proto) {
+		this.proto = proto;
+	}
+
+	@ChoiceFor("proto")
+	public List<String> availableProtos() {
+		return PROTOCOLS;
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.ardulink.core.virtual.simulator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.IOException;
+
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.StreamConnection;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.linkmanager.LinkFactory;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.api.Protocols;
+import org.ardulink.core.qos.QosLink;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Creates Links talking ALP (or the binary protocol) to a
+ * {@link SimulatedArduino} so Links, QoS and the proxy can be tested end to end
+ * without hardware.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class SimulatorLinkFactory implements LinkFactory<SimulatorLinkConfig> {
+
+	private static final int WAIT_SECS = 5;
+
+	@Override
+	public String getName() {
+		return "simulator";
+	}
+
+	@Override
+	public Link newLink(SimulatorLinkConfig config) throws IOException {
+		final SimulatedArduino arduino = SimulatedArduino.newBuilder()
+				.withBaudRate(config.getBaudrate())
+				.withRxBufferSize(config.getRxbuffer())
+				.withLatency(config.getLatency(), config.getJitter(),
+						MILLISECONDS)
+				.withAnalogSampleRate(config.getAnalograte())
+				.withDigitalSampleRate(config.getDigitalrate())
+				.withProtocol(config.getProto()).start();
+		Protocol protocol = Protocols.getByName(config.getProto());
+		ConnectionBasedLink connectionBasedLink = new ConnectionBasedLink(
+				new StreamConnection(arduino.getInputStream(),
+						arduino.getOutputStream(), protocol), protocol);
+		checkState(connectionBasedLink.waitForArduinoToBoot(WAIT_SECS, SECONDS),
+				"Simulated arduino did not respond");
+		@SuppressWarnings("resource")
+		Link link = config.isQos() ? new QosLink(connectionBasedLink)
+				: connectionBasedLink;
+		return new LinkDelegate(link) {
+			@Override
+			public void close() throws IOException {
+				super.close();
+				arduino.close();
+			}
+		};
+	}
+
+	@Override
+	public SimulatorLinkConfig newLinkConfig() {
+		return new SimulatorLinkConfig();
+	}
+
+}
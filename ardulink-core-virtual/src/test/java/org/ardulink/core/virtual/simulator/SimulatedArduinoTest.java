@@ -0,0 +1,169 @@
+package org.ardulink.core.virtual.simulator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.LinkBatch;
+import org.ardulink.core.Tone;
+import org.ardulink.core.events.AnalogPinValueChangedEvent;
+import org.ardulink.core.events.DigitalPinValueChangedEvent;
+import org.ardulink.core.events.EventListenerAdapter;
+import org.ardulink.core.events.FilteredEventListenerAdapter;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class SimulatedArduinoTest {
+
+	@Rule
+	public Timeout timeout = new Timeout(10, SECONDS);
+
+	private final SimulatorLinkConfig config = new SimulatorLinkConfig();
+	private Link link;
+
+	@After
+	public void tearDown() throws IOException {
+		if (link != null) {
+			link.close();
+		}
+	}
+
+	@Test
+	public void acknowledgesMessagesWithQos() throws IOException {
+		config.setQos(true);
+		link = new SimulatorLinkFactory().newLink(config);
+		link.switchAnalogPin(analogPin(3), 123);
+		link.switchDigitalPin(digitalPin(12), true);
+		link.sendCustomMessage("foo", "bar");
+	}
+
+	@Test
+	public void streamsValuesOfListenedPins() throws Exception {
+		config.setAnalograte(100);
+		link = new SimulatorLinkFactory().newLink(config);
+		final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+		link.addListener(new FilteredEventListenerAdapter(analogPin(2),
+				new EventListenerAdapter() {
+					@Override
+					public void stateChanged(AnalogPinValueChangedEvent event) {
+						values.add(event.getValue());
+					}
+				}));
+		while (values.size() < 10) {
+			MILLISECONDS.sleep(10);
+		}
+		for (Integer value : values) {
+			assertTrue(value + " out of range", value >= 0 && value <= 1023);
+		}
+	}
+
+	@Test
+	public void digitalPinsReadTheStateTheyWereSwitchedTo() throws Exception {
+		config.setDigitalrate(100);
+		link = new SimulatorLinkFactory().newLink(config);
+		final List<Boolean> values = new CopyOnWriteArrayList<Boolean>();
+		link.switchDigitalPin(digitalPin(7), true);
+		link.addListener(new FilteredEventListenerAdapter(digitalPin(7),
+				new EventListenerAdapter() {
+					@Override
+					public void stateChanged(DigitalPinValueChangedEvent event) {
+						values.add(event.getValue());
+					}
+				}));
+		while (values.size() < 5) {
+			MILLISECONDS.sleep(10);
+		}
+		assertThat(values.contains(false), is(false));
+	}
+
+	@Test
+	public void speaksTheBinaryProtocol() throws Exception {
+		config.setProto(SimulatedArduino.BINARY);
+		config.setQos(true);
+		config.setAnalograte(100);
+		link = new SimulatorLinkFactory().newLink(config);
+		link.switchDigitalPin(digitalPin(12), true);
+		final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+		link.addListener(new FilteredEventListenerAdapter(analogPin(2),
+				new EventListenerAdapter() {
+					@Override
+					public void stateChanged(AnalogPinValueChangedEvent event) {
+						values.add(event.getValue());
+					}
+				}));
+		while (values.size() < 10) {
+			MILLISECONDS.sleep(10);
+		}
+		for (Integer value : values) {
+			assertTrue(value + " out of range", value >= 0 && value <= 1023);
+		}
+	}
+
+	@Test
+	public void executesBinaryBatchesBeforeReplying() throws Exception {
+		config.setProto(SimulatedArduino.BINARY);
+		config.setQos(true);
+		link = new SimulatorLinkFactory().newLink(config);
+		LinkBatch batch = link.batch();
+		for (int pin = 2; pin < 14; pin++) {
+			batch.switchDigitalPin(digitalPin(pin), true);
+		}
+		batch.sendTone(Tone.forPin(analogPin(3)).withHertz(440)
+				.withDuration(100, MILLISECONDS));
+		batch.sendNoTone(analogPin(3));
+		batch.startListening(analogPin(2));
+		// QoS fails if the device does not reply ok to the batch
+		assertTrue(batch.send() >= 0);
+	}
+
+	@Test
+	public void transfersBytesAtTheBaudRate() throws IOException {
+		SimulatedArduino arduino = SimulatedArduino.newBuilder()
+				.withBaudRate(2400).start();
+		try {
+			byte[] bytes = new byte[120];
+			long start = System.nanoTime();
+			arduino.getOutputStream().write(bytes);
+			// 120 bytes with 10 bits each take 500 ms at 2400 baud
+			assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) >= 450);
+		} finally {
+			arduino.close();
+		}
+	}
+
+	@Test
+	public void losesBytesIfRxBufferOverflows() throws IOException {
+		SimulatedArduino arduino = SimulatedArduino.newBuilder()
+				.withBaudRate(0).withLatency(200, 0, MILLISECONDS).start();
+		try {
+			byte[] message = "alp://ppin/3/123\n".getBytes();
+			for (int i = 0; i < 10; i++) {
+				arduino.getOutputStream().write(message);
+			}
+			assertTrue(arduino.getLostBytes() > 0);
+		} finally {
+			arduino.close();
+		}
+	}
+
+}
@@ -22,21 +22,45 @@ import static org.ardulink.connection.proxy.NetworkProxyMessages.KO;
 import static org.ardulink.connection.proxy.NetworkProxyMessages.NUMBER_OF_PORTS;
 import static org.ardulink.connection.proxy.NetworkProxyMessages.OK;
 import static org.ardulink.connection.proxy.NetworkProxyMessages.STOP_SERVER_CMD;
-
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2_CONNECT;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2_GET_PORT_LIST;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2_KO;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2_MAGIC;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.V2_OK;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 
 import org.ardulink.core.Link;
 import org.ardulink.core.convenience.Links;
+import org.ardulink.core.linkmanager.ChoiceValuesDiscovery;
 import org.ardulink.core.linkmanager.LinkManager.Configurer;
+import org.ardulink.util.URIs;
 
 /**
  * [ardulinktitle] [ardulinkversion]
  * 
+ * Does the handshake of both protocol versions, version 2 is detected by its
+ * leading {@link NetworkProxyMessages#V2_MAGIC}. Version 2 is binary: after
+ * the magic and the client's version each request is a byte followed by the
+ * ardulink:// URI (modified UTF-8) of the Link to serve. Each response starts
+ * with {@link NetworkProxyMessages#V2_OK} or {@link NetworkProxyMessages#V2_KO}
+ * (followed by the error message). The responses to requests sent at once by
+ * the client are sent at once, too. The connection is used for the Link after
+ * a successful connect, until then any number of requests can be sent.
+ * 
  * project Ardulink http://www.ardulink.org/
  * 
  * [adsense]
@@ -46,18 +70,53 @@ public class Handshaker {
 
 	public static final String PROXY_CONNECTION_SEPARATOR = "\n";
 
+	private final PushbackInputStream inputStream;
+	private final OutputStream outputStream;
 	private final Scanner scanner;
 	private final PrintWriter printWriter;
-	private final Configurer configurer;
+	private final LinkOpener linkOpener;
 
 	public Handshaker(InputStream inputStream, OutputStream outputStream) {
-		this(inputStream, outputStream, Links.getDefaultConfigurer());
+		this(inputStream, outputStream, Links.getDefaultURI());
+	}
+
+	/**
+	 * Creates a Handshaker for Links of the passed URI. The port list is served
+	 * by the {@link ChoiceValuesDiscovery} so clients do not wait for the ports
+	 * to be enumerated each time they ask for them.
+	 */
+	public Handshaker(InputStream inputStream, OutputStream outputStream, URI uri) {
+		this(inputStream, outputStream, uri, null);
 	}
 
 	public Handshaker(InputStream inputStream, OutputStream outputStream, Configurer configurer) {
+		this(inputStream, outputStream, null, configurer);
+	}
+
+	private Handshaker(InputStream inputStream, OutputStream outputStream, URI uri, Configurer configurer) {
+		this(inputStream, outputStream, null, uri, configurer);
+	}
+
+	/**
+	 * Creates a Handshaker opening the Links using the passed LinkOpener (
+	 * {@link #newLink(Configurer)} is not called).
+	 */
+	public Handshaker(InputStream inputStream, OutputStream outputStream, LinkOpener linkOpener) {
+		this(inputStream, outputStream, linkOpener, null, null);
+	}
+
+	private Handshaker(InputStream inputStream, OutputStream outputStream, LinkOpener linkOpener, URI uri,
+			Configurer configurer) {
+		this.inputStream = new PushbackInputStream(inputStream);
+		this.outputStream = outputStream;
 		this.printWriter = new PrintWriter(outputStream);
-		this.scanner = new Scanner(inputStream).useDelimiter(Pattern.quote(PROXY_CONNECTION_SEPARATOR));
-		this.configurer = configurer;
+		this.scanner = new Scanner(this.inputStream).useDelimiter(Pattern.quote(PROXY_CONNECTION_SEPARATOR));
+		this.linkOpener = linkOpener != null ? linkOpener : new LinkOpener(uri, configurer) {
+			@Override
+			protected Link newLink(Configurer configurer) {
+				return Handshaker.this.newLink(configurer);
+			}
+		};
 	}
 
 	/**
@@ -69,6 +128,19 @@ public class Handshaker {
 	 * @throws Exception
 	 */
 	public Link doHandshake() throws Exception {
+		return isV2() ? doHandshakeV2() : doHandshakeV1();
+	}
+
+	private boolean isV2() throws IOException {
+		int first = inputStream.read();
+		if (first < 0) {
+			return false;
+		}
+		inputStream.unread(first);
+		return first == V2_MAGIC[0];
+	}
+
+	private Link doHandshakeV1() throws Exception {
 		while (scanner.hasNext()) {
 			String input = read();
 			if (input.equals(STOP_SERVER_CMD)) {
@@ -79,15 +151,8 @@ public class Handshaker {
 				handleGetPortList();
 			} else if (CONNECT_CMD.equals(input)) {
 				try {
-					// Ardulink-1 only did support Proxy to connect to serial links. So the
-					// handshake contains serial specific attributes. We should deprecate
-					// the Proxy since MQTT supports the same (or even more) features.
-					// Otherwise: Proxy should not contain serial specific things but send
-					// the ardulink:// URI to connect to (e.g.
-					// ardulink://serial?baudrate=9600)
-					configurer.getAttribute("port").setValue(read());
-					configurer.getAttribute("baudrate").setValue(Integer.valueOf(read()));
-					Link link = newLink(configurer);
+					String port = read();
+					Link link = linkOpener.connect(port, Integer.parseInt(read()));
 					write(OK);
 					return link;
 				} catch (Exception e) {
@@ -100,11 +165,72 @@ public class Handshaker {
 		throw new IllegalStateException("No more data but no " + CONNECT_CMD + " received");
 	}
 
-	private void handleGetPortList() throws IOException {
-		Object[] portList = getPortList();
-		if (portList == null) {
-			portList = new Object[0];
+	private Link doHandshakeV2() throws IOException {
+		DataInputStream in = new DataInputStream(inputStream);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		byte[] magic = new byte[V2_MAGIC.length];
+		in.readFully(magic);
+		checkState(Arrays.equals(magic, V2_MAGIC), "Illegal handshake %s", Arrays.toString(magic));
+		int version = in.readUnsignedByte();
+		checkState(version >= V2, "Illegal version %s", version);
+		out.write(V2_MAGIC);
+		out.writeByte(V2);
+		while (true) {
+			if (inputStream.available() == 0) {
+				// no more pipelined requests, send the responses
+				out.flush();
+			}
+			int request = in.read();
+			checkState(request >= 0, "No more data but no connect received");
+			String uri = in.readUTF();
+			if (request == V2_GET_PORT_LIST) {
+				handleGetPortList(uri, out);
+			} else if (request == V2_CONNECT) {
+				Link link = handleConnect(uri, out);
+				if (link != null) {
+					out.flush();
+					return link;
+				}
+			} else {
+				throw new IllegalStateException("Unknown request " + request);
+			}
+		}
+	}
+
+	private void handleGetPortList(String uri, DataOutputStream out) throws IOException {
+		Object[] portList;
+		try {
+			portList = linkOpener.getPortList(URIs.newURI(uri));
+		} catch (Exception e) {
+			writeKO(out, e);
+			return;
+		}
+		out.writeByte(V2_OK);
+		out.writeInt(portList.length);
+		for (Object port : portList) {
+			out.writeUTF(String.valueOf(port));
 		}
+	}
+
+	private Link handleConnect(String uri, DataOutputStream out) throws IOException {
+		try {
+			Link link = linkOpener.connect(URIs.newURI(uri));
+			out.writeByte(V2_OK);
+			return link;
+		} catch (Exception e) {
+			e.printStackTrace();
+			writeKO(out, e);
+			return null;
+		}
+	}
+
+	private static void writeKO(DataOutputStream out, Exception e) throws IOException {
+		out.writeByte(V2_KO);
+		out.writeUTF(String.valueOf(e.getMessage()));
+	}
+
+	private void handleGetPortList() throws IOException, InterruptedException {
+		Object[] portList = linkOpener.getPortList();
 		write(NUMBER_OF_PORTS + portList.length);
 		for (Object port : portList) {
 			write(port);
@@ -126,8 +252,4 @@ public class Handshaker {
 		return Links.getLink(configurer);
 	}
 
-	private Object[] getPortList() {
-		return configurer.getAttribute("port").getChoiceValues();
-	}
-
 }
@@ -0,0 +1,199 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static org.ardulink.connection.proxy.NetworkProxyMessages.DEFAULT_LINK_NAME;
+import static org.ardulink.core.linkmanager.LinkManager.extractNameFromURI;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+import static org.ardulink.util.Throwables.propagate;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.Links;
+import org.ardulink.core.linkmanager.ChoiceValuesDiscovery;
+import org.ardulink.core.linkmanager.LinkManager;
+import org.ardulink.core.linkmanager.LinkManager.Configurer;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Serves the port list and opens the Links proxy clients connect to. If
+ * created for an URI each connect configures a Configurer of its own, so a
+ * LinkOpener can be shared by the connections of a server.
+ * <p>
+ * Clients using version 2 of the handshake can address other Links than the
+ * server's own Link by their URI. This is denied unless the Link's name was
+ * allowed using {@link #allowLinks(String...)} or the system property
+ * {@value #ALLOWED_LINKS_PROPERTY} (comma separated names, e.g.
+ * <code>-Dardulink.proxy.allowedlinks=serial,virtual</code>).
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ *
+ */
+public class LinkOpener {
+
+	public static final String ALLOWED_LINKS_PROPERTY = "ardulink.proxy.allowedlinks";
+
+	private final URI uri;
+	private final Configurer configurer;
+	private final Set<String> allowedLinks = new CopyOnWriteArraySet<String>();
+
+	/**
+	 * Creates a LinkOpener for Links of the passed URI. The port list is
+	 * served by the {@link ChoiceValuesDiscovery} so clients do not wait for
+	 * the ports to be enumerated each time they ask for them.
+	 */
+	public LinkOpener(URI uri) {
+		this(uri, null);
+	}
+
+	public LinkOpener(Configurer configurer) {
+		this(null, configurer);
+	}
+
+	LinkOpener(URI uri, Configurer configurer) {
+		this.uri = uri;
+		this.configurer = configurer;
+		String allowed = System.getProperty(ALLOWED_LINKS_PROPERTY);
+		if (allowed != null) {
+			for (String name : allowed.split(",")) {
+				if (!name.trim().isEmpty()) {
+					this.allowedLinks.add(name.trim());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Allows clients to list the ports of and to connect to the Links having
+	 * the passed names (the server's own Link is always allowed).
+	 * 
+	 * @param linkNames the names of the Links, e.g. <code>serial</code>
+	 * @return this LinkOpener
+	 */
+	public LinkOpener allowLinks(String... linkNames) {
+		allowedLinks.addAll(Arrays.asList(linkNames));
+		return this;
+	}
+
+	/**
+	 * Returns the ports of the Link the passed URI refers to, these are the
+	 * ports of this LinkOpener's Link if the URI's name is
+	 * {@value NetworkProxyMessages#DEFAULT_LINK_NAME}.
+	 */
+	public Object[] getPortList(URI uri) throws InterruptedException {
+		return isDefault(uri) ? getPortList() : nonNull(discover(checkAllowed(uri)));
+	}
+
+	public Object[] getPortList() throws InterruptedException {
+		return nonNull(uri == null ? configurer.getAttribute("port").getChoiceValues() : discover(uri));
+	}
+
+	private static Object[] nonNull(Object[] portList) {
+		return portList == null ? new Object[0] : portList;
+	}
+
+	private static Object[] discover(URI uri) throws InterruptedException {
+		try {
+			return ChoiceValuesDiscovery.getInstance().choiceValues(uri, "port").get();
+		} catch (ExecutionException e) {
+			throw propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * Opens the Link to the passed port.
+	 * 
+	 * @param port     the port to connect to
+	 * @param baudrate the baudrate to use
+	 * @return the Link opened
+	 */
+	public Link connect(String port, int baudrate) {
+		// Ardulink-1 only did support Proxy to connect to serial links. So the
+		// handshake contains serial specific attributes. Version 2 of the
+		// handshake sends the ardulink:// URI to connect to instead (e.g.
+		// ardulink://serial?baudrate=9600), see #connect(URI)
+		if (uri == null) {
+			synchronized (configurer) {
+				return newLink(configure(configurer, port, baudrate));
+			}
+		}
+		Configurer configurer = LinkManager.getInstance().getConfigurer(uri);
+		return newLink(Links.setChoiceValues(configure(configurer, port, baudrate)));
+	}
+
+	/**
+	 * Opens the Link the passed URI refers to. If the URI's name is
+	 * {@value NetworkProxyMessages#DEFAULT_LINK_NAME} this LinkOpener's Link is
+	 * opened using the URI's <code>port</code> and <code>baudrate</code>.
+	 * 
+	 * @param uri the ardulink:// URI of the Link to open
+	 * @return the Link opened
+	 */
+	public Link connect(URI uri) {
+		if (isDefault(uri)) {
+			Map<String, String> params = params(uri);
+			String baudrate = checkNotNull(params.get("baudrate"), "baudrate missing in %s", uri);
+			return connect(params.get("port"), Integer.parseInt(baudrate));
+		}
+		return newLink(Links.setChoiceValues(LinkManager.getInstance().getConfigurer(checkAllowed(uri))));
+	}
+
+	private static boolean isDefault(URI uri) {
+		return DEFAULT_LINK_NAME.equals(extractNameFromURI(uri));
+	}
+
+	private URI checkAllowed(URI uri) {
+		String name = extractNameFromURI(uri);
+		checkState(allowedLinks.contains(name), "Link %s is not allowed by this server", name);
+		return uri;
+	}
+
+	private static Map<String, String> params(URI uri) {
+		Map<String, String> params = new HashMap<String, String>();
+		if (uri.getQuery() != null) {
+			for (String param : uri.getQuery().split("\\&")) {
+				int eq = param.indexOf('=');
+				if (eq > 0) {
+					params.put(param.substring(0, eq), param.substring(eq + 1));
+				}
+			}
+		}
+		return params;
+	}
+
+	private static Configurer configure(Configurer configurer, String port, int baudrate) {
+		configurer.getAttribute("port").setValue(port);
+		configurer.getAttribute("baudrate").setValue(Integer.valueOf(baudrate));
+		return configurer;
+	}
+
+	protected Link newLink(Configurer configurer) {
+		return Links.getLink(configurer);
+	}
+
+}
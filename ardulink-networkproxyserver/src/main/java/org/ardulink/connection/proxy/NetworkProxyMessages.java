@@ -34,4 +34,27 @@ public final class NetworkProxyMessages {
 	public static final String GET_PORT_LIST_CMD = PREFIX + "get_port_list";
 	public static final String CONNECT_CMD = PREFIX + "connect";
 
+	/**
+	 * Start of the binary handshake of protocol version 2. The leading zero
+	 * byte never starts a command of version 1.
+	 */
+	public static final byte[] V2_MAGIC = { 0, 'A', 'L', 'P' };
+	public static final int V2 = 2;
+
+	/**
+	 * Requests of version 2, each followed by the ardulink:// URI of the
+	 * Link.
+	 */
+	public static final int V2_GET_PORT_LIST = 1;
+	public static final int V2_CONNECT = 2;
+
+	public static final int V2_OK = 0;
+	public static final int V2_KO = 1;
+
+	/**
+	 * Name of the URIs of version 2 requests targeting the Link the server
+	 * was started for, e.g. <code>ardulink://default?port=COM3&baudrate=115200</code>
+	 */
+	public static final String DEFAULT_LINK_NAME = "default";
+
 }
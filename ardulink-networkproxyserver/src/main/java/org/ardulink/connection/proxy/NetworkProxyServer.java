@@ -15,14 +15,18 @@ limitations under the License.
 */
 package org.ardulink.connection.proxy;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.ardulink.connection.proxy.NetworkProxyMessages.STOP_SERVER_CMD;
+import static org.ardulink.util.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
@@ -50,10 +54,21 @@ public class NetworkProxyServer {
 
 	public static class StartCommand implements Command {
 
+		@Option(name = "-shared", usage = "Clients connecting to the same device share its connection")
+		private boolean shared;
+
+		@Option(name = "-transparent", usage = "Relay the client's bytes to the device without splitting them into frames (not combinable with -shared)")
+		private boolean transparent;
+
+		private final SharedSessions sharedSessions = new SharedSessions();
+
 		@Override
 		public void execute(int portNumber) {
 			try {
-				ServerSocket serverSocket = new ServerSocket(portNumber);
+				checkArgument(!shared || !transparent, "-shared and -transparent cannot be combined");
+				// sockets of channels are needed for the transparent relay only
+				ServerSocket serverSocket = transparent ? ServerSocketChannel.open().socket() : new ServerSocket();
+				serverSocket.bind(new InetSocketAddress(portNumber));
 				try {
 					serverIsUp(portNumber);
 					while (true) {
@@ -74,7 +89,49 @@ public class NetworkProxyServer {
 		}
 
 		protected NetworkProxyServerConnection newConnection(ServerSocket serverSocket) throws IOException {
-			return new NetworkProxyServerConnection(serverSocket.accept());
+			return new NetworkProxyServerConnection(serverSocket.accept(), shared ? sharedSessions : null, transparent);
+		}
+
+	}
+
+	/**
+	 * Serves all clients using a few event loop threads instead of threads per
+	 * client, see {@link NioProxyServer}.
+	 */
+	public static class NioStartCommand implements Command {
+
+		@Option(name = "-eventLoops", usage = "Number of event loop threads")
+		private int eventLoops = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+		@Option(name = "-maxConnections", usage = "Maximum number of concurrent client connections")
+		private int maxConnections = NioProxyServer.DEFAULT_MAX_CONNECTIONS;
+
+		@Option(name = "-idleTimeout", usage = "Milliseconds without traffic after which a client connection is closed, 0 for never")
+		private long idleTimeout = NioProxyServer.DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+		@Option(name = "-writeBufferSize", usage = "Maximum bytes queued per client, frames exceeding are dropped")
+		private int writeBufferSize = NioProxyServer.DEFAULT_WRITE_BUFFER_SIZE;
+
+		@Option(name = "-deviceQueueSize", usage = "Maximum commands queued per device, clients are not read while it is full")
+		private int deviceQueueSize = NioProxyServer.DEFAULT_DEVICE_QUEUE_SIZE;
+
+		@Override
+		public void execute(int portNumber) {
+			try {
+				NioProxyServer server = NioProxyServer.newBuilder().withPort(portNumber).withEventLoops(eventLoops)
+						.withMaxConnections(maxConnections).withIdleTimeout(idleTimeout, MILLISECONDS)
+						.withWriteBufferSize(writeBufferSize).withDeviceQueueSize(deviceQueueSize).start();
+				serverIsUp(server.getPort());
+				server.awaitTermination();
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.exit(-1);
+			}
+			System.out.println(NAME + " stops.");
+		}
+
+		protected void serverIsUp(int portNumber) {
+			System.out.println(NAME + " listening on port " + portNumber);
 		}
 
 	}
@@ -103,6 +160,7 @@ public class NetworkProxyServer {
 
 	@Argument(required = true, usage = "command", handler = SubCommandHandler.class)
 	@SubCommands({ @SubCommand(name = "start", impl = StartCommand.class),
+			@SubCommand(name = "start-nio", impl = NioStartCommand.class),
 			@SubCommand(name = "stop", impl = StopCommand.class) })
 	private Command command;
 
@@ -16,12 +16,16 @@ limitations under the License.
 package org.ardulink.connection.proxy;
 
 import static org.ardulink.util.Bytes.concat;
+import static org.ardulink.util.Preconditions.checkArgument;
 import static org.ardulink.util.Preconditions.checkState;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import org.ardulink.core.Connection;
 import org.ardulink.core.ConnectionBasedLink;
@@ -45,19 +49,56 @@ public class NetworkProxyServerConnection implements Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(NetworkProxyServerConnection.class);
 
+	private static final int RELAY_BUFFER_SIZE = 8 * 1024;
+
 	private final Protocol proto = ArdulinkProtocol2.instance();
 
 	private final Socket socket;
 
+	private final SharedSessions sharedSessions;
+
+	private final boolean transparent;
+
 	private Link link;
 
 	public NetworkProxyServerConnection(Socket socket) {
+		this(socket, null);
+	}
+
+	/**
+	 * @param sharedSessions if not <code>null</code> clients connecting to the
+	 *                       same device share its connection, see
+	 *                       {@link SharedSession}
+	 */
+	public NetworkProxyServerConnection(Socket socket, SharedSessions sharedSessions) {
+		this(socket, sharedSessions, false);
+	}
+
+	/**
+	 * @param socket         the client's socket, if <code>transparent</code> it
+	 *                       has to be accepted by a {@link ServerSocketChannel}
+	 * @param sharedSessions if not <code>null</code> clients connecting to the
+	 *                       same device share its connection, see
+	 *                       {@link SharedSession}
+	 * @param transparent    if <code>true</code> the bytes of the client are
+	 *                       written to the device as read, without splitting
+	 *                       them into frames (the device's frames are written
+	 *                       to the client using gathering writes)
+	 */
+	public NetworkProxyServerConnection(Socket socket, SharedSessions sharedSessions, boolean transparent) {
+		checkArgument(!transparent || sharedSessions == null, "shared sessions need to split the client's frames");
+		checkArgument(!transparent || socket.getChannel() != null, "transparent relay needs a %s",
+				SocketChannel.class.getName());
 		this.socket = socket;
+		this.sharedSessions = sharedSessions;
+		this.transparent = transparent;
 	}
 
 	@Override
 	public void run() {
 		try {
+			// frames are small and written one by one
+			socket.setTcpNoDelay(true);
 			final OutputStream osRemote = socket.getOutputStream();
 			InputStream isRemote = socket.getInputStream();
 
@@ -65,24 +106,13 @@ public class NetworkProxyServerConnection implements Runnable {
 			checkState(link instanceof ConnectionBasedLink, "Only %s links supported for now (got %s)",
 					ConnectionBasedLink.class.getName(), link.getClass());
 
-			final Connection connection = ((ConnectionBasedLink) link).getConnection();
-			connection.addListener(new Connection.ListenerAdapter() {
-				@Override
-				public void received(byte[] bytes) throws IOException {
-					osRemote.write(concat(bytes, proto.getSeparator()));
-				}
-			});
-
-			StreamReader streamReader = new StreamReader(isRemote) {
-				@Override
-				protected void received(byte[] bytes) throws Exception {
-					connection.write(concat(bytes, proto.getSeparator()));
-				}
-			};
-			try {
-				streamReader.readUntilClosed(proto.getSeparator());
-			} finally {
-				streamReader.close();
+			Connection connection = ((ConnectionBasedLink) link).getConnection();
+			if (transparent) {
+				relayTransparent(connection, socket.getChannel());
+			} else if (sharedSessions == null) {
+				relay(connection, isRemote, osRemote);
+			} else {
+				relayShared(connection, isRemote, osRemote);
 			}
 		} catch (Exception e) {
 			logger.error("Error while doing proxy", e);
@@ -93,6 +123,96 @@ public class NetworkProxyServerConnection implements Runnable {
 		}
 	}
 
+	private void relay(final Connection connection, InputStream isRemote, final OutputStream osRemote)
+			throws IOException {
+		connection.addListener(new Connection.ListenerAdapter() {
+			@Override
+			public void received(byte[] bytes) throws IOException {
+				osRemote.write(concat(bytes, proto.getSeparator()));
+			}
+		});
+
+		StreamReader streamReader = new StreamReader(isRemote) {
+			@Override
+			protected void received(byte[] bytes) throws Exception {
+				connection.write(concat(bytes, proto.getSeparator()));
+			}
+		};
+		try {
+			streamReader.readUntilClosed(proto.getSeparator());
+		} finally {
+			streamReader.close();
+		}
+	}
+
+	/**
+	 * Moves the client's bytes to the device without looking at them. The
+	 * streams of the socket must not be used concurrently since they block
+	 * each other if the socket has a channel.
+	 */
+	private void relayTransparent(final Connection connection, final SocketChannel channel) throws IOException {
+		final ByteBuffer separator = directBuffer(proto.getSeparator());
+		Connection.Listener listener = new Connection.ListenerAdapter() {
+			@Override
+			public void received(byte[] bytes) throws IOException {
+				ByteBuffer[] frame = { ByteBuffer.wrap(bytes), separator.duplicate() };
+				synchronized (this) {
+					while (frame[1].hasRemaining()) {
+						channel.write(frame);
+					}
+				}
+			}
+		};
+		connection.addListener(listener);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(RELAY_BUFFER_SIZE);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				byte[] bytes = new byte[buffer.remaining()];
+				buffer.get(bytes);
+				buffer.clear();
+				connection.write(bytes);
+			}
+		} finally {
+			connection.removeListener(listener);
+		}
+	}
+
+	private static ByteBuffer directBuffer(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	private void relayShared(Connection connection, InputStream isRemote, final OutputStream osRemote)
+			throws IOException {
+		final SharedSession.Member member = sharedSessions.join(connection, new SharedSession.Client() {
+			@Override
+			public void received(byte[] frame) throws IOException {
+				synchronized (osRemote) {
+					osRemote.write(concat(frame, proto.getSeparator()));
+				}
+			}
+
+			@Override
+			public String toString() {
+				return String.valueOf(socket.getRemoteSocketAddress());
+			}
+		});
+		StreamReader streamReader = new StreamReader(isRemote) {
+			@Override
+			protected void received(byte[] bytes) throws Exception {
+				member.send(bytes);
+			}
+		};
+		try {
+			streamReader.readUntilClosed(proto.getSeparator());
+		} finally {
+			member.leave();
+			streamReader.close();
+		}
+	}
+
 	protected Handshaker handshaker(InputStream isRemote, final OutputStream osRemote) {
 		return new Handshaker(isRemote, osRemote);
 	}
@@ -0,0 +1,1040 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static java.nio.channels.SelectionKey.OP_ACCEPT;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.ardulink.connection.proxy.Handshaker.PROXY_CONNECTION_SEPARATOR;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.CONNECT_CMD;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.GET_PORT_LIST_CMD;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.KO;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.NUMBER_OF_PORTS;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.OK;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.STOP_SERVER_CMD;
+import static org.ardulink.util.Preconditions.checkArgument;
+import static org.ardulink.util.Preconditions.checkNotNull;
+import static org.ardulink.util.Preconditions.checkState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ardulink.core.Connection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.convenience.LinkDelegate;
+import org.ardulink.core.convenience.Links;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Network proxy server doing the handshake and the relay of all clients on a
+ * small fixed number of event loop threads using non-blocking sockets (instead
+ * of two or more threads per client like {@link NetworkProxyServerConnection}
+ * ). The first event loop accepts the connections and distributes them round
+ * robin over all event loops.
+ * <p>
+ * Connections exceeding the maximum number of connections are closed right
+ * after being accepted, connections without any traffic for the idle timeout
+ * are closed. The frames of the device are queued for each client up to the
+ * write buffer size, frames not fitting are dropped so a slow client never
+ * stalls the device. While the queue of a client is more than half full no
+ * more commands are read from it. The commands of the clients are queued for a
+ * writer thread per device connection, so a slow device never stalls an event
+ * loop. Clients whose commands do not fit into that queue are not read until
+ * the writer caught up, so back-pressure works in both directions.
+ * <p>
+ * Serving the port list and opening the Links can block, so this is done by
+ * threads only living while needed.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ */
+public class NioProxyServer implements Closeable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(NioProxyServer.class);
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 1024;
+	public static final int DEFAULT_WRITE_BUFFER_SIZE = 64 * 1024;
+	public static final int DEFAULT_DEVICE_QUEUE_SIZE = 64;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = MINUTES.toMillis(10);
+
+	private static final int READ_BUFFER_SIZE = 8 * 1024;
+	private static final int MAX_HANDSHAKE_LINE_LENGTH = 1024;
+	private static final int MAX_FRAME_LENGTH = 64 * 1024;
+	private static final int MAX_BUFFERS_PER_WRITE = 64;
+	private static final long MAX_IDLE_CHECK_MILLIS = 1000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] HANDSHAKE_SEPARATOR = PROXY_CONNECTION_SEPARATOR
+			.getBytes(UTF8);
+
+	public static class Builder {
+
+		private int port;
+		private int eventLoops = Math.min(4, Runtime.getRuntime()
+				.availableProcessors());
+		private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+		private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+		private int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+		private int deviceQueueSize = DEFAULT_DEVICE_QUEUE_SIZE;
+		private LinkOpener linkOpener;
+
+		private Builder() {
+			super();
+		}
+
+		/**
+		 * @param port
+		 *            the port to listen on, <code>0</code> for any free port
+		 */
+		public Builder withPort(int port) {
+			checkArgument(port >= 0 && port <= 0xFFFF, "Illegal port %s", port);
+			this.port = port;
+			return this;
+		}
+
+		public Builder withEventLoops(int eventLoops) {
+			checkArgument(eventLoops > 0,
+					"eventLoops must be greater than 0 but was %s", eventLoops);
+			this.eventLoops = eventLoops;
+			return this;
+		}
+
+		public Builder withMaxConnections(int maxConnections) {
+			checkArgument(maxConnections > 0,
+					"maxConnections must be greater than 0 but was %s",
+					maxConnections);
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * @param idleTimeout
+		 *            time without any traffic after which a connection is
+		 *            closed, <code>0</code> to never close idle connections
+		 * @param timeUnit
+		 *            the unit of <code>idleTimeout</code>
+		 */
+		public Builder withIdleTimeout(long idleTimeout, TimeUnit timeUnit) {
+			checkArgument(idleTimeout >= 0,
+					"idleTimeout must not be negative but was %s", idleTimeout);
+			this.idleTimeoutMillis = timeUnit.toMillis(idleTimeout);
+			return this;
+		}
+
+		/**
+		 * @param writeBufferSize
+		 *            maximum number of bytes queued for each client
+		 */
+		public Builder withWriteBufferSize(int writeBufferSize) {
+			checkArgument(writeBufferSize > 0,
+					"writeBufferSize must be greater than 0 but was %s",
+					writeBufferSize);
+			this.writeBufferSize = writeBufferSize;
+			return this;
+		}
+
+		/**
+		 * @param deviceQueueSize
+		 *            maximum number of commands queued for each device
+		 *            connection
+		 */
+		public Builder withDeviceQueueSize(int deviceQueueSize) {
+			checkArgument(deviceQueueSize > 0,
+					"deviceQueueSize must be greater than 0 but was %s",
+					deviceQueueSize);
+			this.deviceQueueSize = deviceQueueSize;
+			return this;
+		}
+
+		public Builder withLinkOpener(LinkOpener linkOpener) {
+			this.linkOpener = checkNotNull(linkOpener,
+					"linkOpener must not be null");
+			return this;
+		}
+
+		public NioProxyServer start() throws IOException {
+			return new NioProxyServer(this).start();
+		}
+
+	}
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	private final byte[] separator = ArdulinkProtocol2.instance()
+			.getSeparator();
+	private final ServerSocketChannel serverChannel;
+	private final EventLoop[] eventLoops;
+	private final ExecutorService blockingTasks;
+	private final LinkOpener linkOpener;
+	private final int maxConnections;
+	private final long idleTimeoutNanos;
+	private final int writeBufferSize;
+	private final int deviceQueueSize;
+	private final Map<Connection, DeviceWriter> deviceWriters = new IdentityHashMap<Connection, DeviceWriter>();
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicLong droppedFrames = new AtomicLong();
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * only accessed by the first event loop
+	 */
+	private int nextEventLoop;
+
+	private NioProxyServer(Builder builder) throws IOException {
+		this.linkOpener = builder.linkOpener == null ? new LinkOpener(
+				Links.getDefaultURI()) : builder.linkOpener;
+		this.maxConnections = builder.maxConnections;
+		this.idleTimeoutNanos = MILLISECONDS
+				.toNanos(builder.idleTimeoutMillis);
+		this.writeBufferSize = builder.writeBufferSize;
+		this.deviceQueueSize = builder.deviceQueueSize;
+		this.blockingTasks = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				daemons("ardulink-proxy-handshake"));
+		this.serverChannel = ServerSocketChannel.open();
+		try {
+			this.serverChannel.configureBlocking(false);
+			this.serverChannel.socket().setReuseAddress(true);
+			this.serverChannel.socket().bind(
+					new InetSocketAddress(builder.port));
+			this.eventLoops = new EventLoop[builder.eventLoops];
+			for (int i = 0; i < eventLoops.length; i++) {
+				this.eventLoops[i] = new EventLoop(i);
+			}
+			this.serverChannel.register(this.eventLoops[0].selector,
+					OP_ACCEPT);
+		} catch (IOException e) {
+			this.serverChannel.close();
+			this.blockingTasks.shutdown();
+			throw e;
+		}
+	}
+
+	private NioProxyServer start() {
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.start();
+		}
+		logger.info("Listening on port {} using {} event loops", getPort(),
+				eventLoops.length);
+		return this;
+	}
+
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * @return the number of client connections currently open
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * @return the number of device frames dropped since the write buffer of
+	 *         the client was full
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames.get();
+	}
+
+	public boolean isClosed() {
+		return closed.get();
+	}
+
+	/**
+	 * Stops accepting connections and closes all client connections and their
+	 * Links. If called by a thread not being an event loop the call blocks
+	 * until the event loops terminated.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed.compareAndSet(false, true)) {
+			serverChannel.close();
+			for (EventLoop eventLoop : eventLoops) {
+				eventLoop.selector.wakeup();
+			}
+		}
+		if (!(Thread.currentThread() instanceof EventLoop)) {
+			try {
+				awaitTermination();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Blocks until the server was closed and all event loops terminated.
+	 */
+	public void awaitTermination() throws InterruptedException {
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.join();
+		}
+		blockingTasks.shutdown();
+	}
+
+	private static ThreadFactory daemons(final String name) {
+		return new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-"
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		};
+	}
+
+	private DeviceWriter acquireWriter(Connection connection) {
+		synchronized (deviceWriters) {
+			DeviceWriter writer = deviceWriters.get(connection);
+			if (writer == null) {
+				writer = new DeviceWriter(connection);
+				deviceWriters.put(connection, writer);
+				writer.start();
+			}
+			writer.users++;
+			return writer;
+		}
+	}
+
+	private void releaseWriter(DeviceWriter writer) {
+		synchronized (deviceWriters) {
+			if (--writer.users == 0) {
+				deviceWriters.remove(writer.connection);
+				writer.interrupt();
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			logger.debug("Error closing {}", closeable, e);
+		}
+	}
+
+	private final class EventLoop extends Thread {
+
+		private final Selector selector;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private final ByteBuffer readBuffer = ByteBuffer
+				.allocate(READ_BUFFER_SIZE);
+		private final ByteBuffer[] gather = new ByteBuffer[MAX_BUFFERS_PER_WRITE];
+		private final long idleCheckMillis = idleTimeoutNanos == 0 ? 0 : Math
+				.max(1, Math.min(MAX_IDLE_CHECK_MILLIS,
+						NANOSECONDS.toMillis(idleTimeoutNanos) / 2));
+
+		private EventLoop(int index) throws IOException {
+			super("ardulink-proxy-loop-" + index);
+			setDaemon(true);
+			this.selector = Selector.open();
+		}
+
+		/**
+		 * Runs the task on this event loop, can be called by any thread.
+		 */
+		private void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed.get()) {
+					selector.select(idleCheckMillis);
+					runTasks();
+					Iterator<SelectionKey> it = selector.selectedKeys()
+							.iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						handle(key);
+					}
+					closeIdleConnections();
+				}
+			} catch (IOException e) {
+				logger.error("Event loop {} failed", getName(), e);
+			} finally {
+				closeAll();
+			}
+		}
+
+		private void runTasks() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					logger.error("Task {} failed", task, e);
+				}
+			}
+		}
+
+		private void handle(SelectionKey key) {
+			if (!key.isValid()) {
+				return;
+			}
+			if (key.isAcceptable()) {
+				accept();
+				return;
+			}
+			ProxyConnection connection = (ProxyConnection) key.attachment();
+			try {
+				if (key.isReadable()) {
+					connection.read(readBuffer);
+				}
+				if (key.isValid() && key.isWritable()) {
+					connection.flush(gather);
+				}
+			} catch (IOException e) {
+				logger.debug("Connection {} failed", connection, e);
+				connection.close();
+			} catch (RuntimeException e) {
+				logger.error("Connection {} failed", connection, e);
+				connection.close();
+			}
+		}
+
+		private void accept() {
+			SocketChannel channel;
+			try {
+				while ((channel = serverChannel.accept()) != null) {
+					if (connections.incrementAndGet() > maxConnections) {
+						connections.decrementAndGet();
+						logger.warn(
+								"Rejecting {}, maximum of {} connections reached",
+								channel.socket().getRemoteSocketAddress(),
+								maxConnections);
+						closeQuietly(channel);
+					} else {
+						EventLoop eventLoop = eventLoops[nextEventLoop];
+						nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+						eventLoop.register(channel);
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Error accepting connection", e);
+			}
+		}
+
+		private void register(final SocketChannel channel) {
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					ProxyConnection connection = new ProxyConnection(
+							EventLoop.this, channel);
+					try {
+						channel.configureBlocking(false);
+						channel.socket().setTcpNoDelay(true);
+						connection.key = channel.register(selector, OP_READ,
+								connection);
+						logger.info("{} connected", connection);
+					} catch (IOException e) {
+						logger.error("Error registering {}", connection, e);
+						connection.close();
+					}
+				}
+			});
+		}
+
+		private long nextIdleCheck = System.nanoTime();
+
+		private void closeIdleConnections() {
+			long now = System.nanoTime();
+			if (idleTimeoutNanos == 0 || now - nextIdleCheck < 0) {
+				return;
+			}
+			nextIdleCheck = now + MILLISECONDS.toNanos(idleCheckMillis);
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+				if (attachment instanceof ProxyConnection
+						&& ((ProxyConnection) attachment).isIdle(now)) {
+					logger.info("Closing idle connection {}", attachment);
+					((ProxyConnection) attachment).close();
+				}
+			}
+		}
+
+		private void closeAll() {
+			runTasks();
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+				if (attachment instanceof ProxyConnection) {
+					((ProxyConnection) attachment).close();
+				}
+			}
+			closeQuietly(selector);
+		}
+
+	}
+
+	private static final class DeviceFrame {
+
+		private final ProxyConnection client;
+		private final byte[] bytes;
+
+		private DeviceFrame(ProxyConnection client, byte[] bytes) {
+			this.client = client;
+			this.bytes = bytes;
+		}
+
+	}
+
+	/**
+	 * Writes the commands of all clients connected to the same device
+	 * connection. Clients whose commands did not fit into the queue are resumed
+	 * as soon as a command was taken from it.
+	 */
+	private final class DeviceWriter extends Thread {
+
+		private final Connection connection;
+		private final BlockingQueue<DeviceFrame> frames;
+		private final Queue<ProxyConnection> waiting = new ConcurrentLinkedQueue<ProxyConnection>();
+
+		/**
+		 * guarded by {@link NioProxyServer#deviceWriters}
+		 */
+		private int users;
+
+		private DeviceWriter(Connection connection) {
+			super("ardulink-proxy-device-writer-" + connection);
+			setDaemon(true);
+			this.connection = connection;
+			this.frames = new ArrayBlockingQueue<DeviceFrame>(deviceQueueSize);
+		}
+
+		/**
+		 * Queues the frame of the client, can be called by any thread.
+		 * 
+		 * @return <code>false</code> if the queue is full, the client is
+		 *         resumed when there is space again
+		 */
+		private boolean offer(ProxyConnection client, byte[] frame) {
+			DeviceFrame deviceFrame = new DeviceFrame(client, frame);
+			if (frames.offer(deviceFrame)) {
+				return true;
+			}
+			waiting.add(client);
+			// the queue could have been drained before the client was added
+			if (frames.offer(deviceFrame)) {
+				waiting.remove(client);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!isInterrupted()) {
+					DeviceFrame frame = frames.take();
+					ProxyConnection client;
+					while ((client = waiting.poll()) != null) {
+						client.eventLoop.execute(client.resumeTask);
+					}
+					try {
+						connection.write(frame.bytes);
+					} catch (IOException e) {
+						logger.debug("Connection {} failed", frame.client, e);
+						frame.client.eventLoop.execute(frame.client.closeTask);
+					}
+				}
+			} catch (InterruptedException e) {
+				// released by its last client
+			}
+		}
+
+	}
+
+	private enum State {
+		/**
+		 * reading handshake commands
+		 */
+		HANDSHAKE,
+		/**
+		 * waiting for a blocking handshake task, no data is read meanwhile
+		 */
+		BUSY,
+		/**
+		 * relaying between the client and the device
+		 */
+		RELAY;
+	}
+
+	/**
+	 * A client connection, all methods except {@link #enqueue(byte[], boolean)}
+	 * are only called by its event loop.
+	 */
+	private final class ProxyConnection {
+
+		private final EventLoop eventLoop;
+		private final SocketChannel channel;
+		private final SocketAddress remote;
+		private SelectionKey key;
+
+		private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+		private final AtomicInteger outboundBytes = new AtomicInteger();
+		private final AtomicBoolean flushScheduled = new AtomicBoolean();
+		private final Runnable flushTask = new Runnable() {
+			@Override
+			public void run() {
+				flushOrClose();
+			}
+		};
+		private boolean writePending;
+		private final Runnable resumeTask = new Runnable() {
+			@Override
+			public void run() {
+				if (!closed) {
+					relay();
+					updateInterest();
+				}
+			}
+		};
+		private final Runnable closeTask = new Runnable() {
+			@Override
+			public void run() {
+				close();
+			}
+		};
+
+		private State state = State.HANDSHAKE;
+		private final Queue<byte[]> lines = new LinkedList<byte[]>();
+		private final ByteArrayOutputStream current = new ByteArrayOutputStream();
+		private byte[] delimiter = HANDSHAKE_SEPARATOR;
+		private int delimiterMatched;
+		private long lastActivity = System.nanoTime();
+		private boolean closed;
+
+		private Link link;
+		private Connection deviceConnection;
+		private DeviceWriter deviceWriter;
+		private final Connection.Listener deviceListener = new Connection.ListenerAdapter() {
+			@Override
+			public void received(byte[] bytes) throws IOException {
+				enqueue(bytes, true);
+			}
+		};
+
+		private ProxyConnection(EventLoop eventLoop, SocketChannel channel) {
+			this.eventLoop = eventLoop;
+			this.channel = channel;
+			this.remote = channel.socket().getRemoteSocketAddress();
+		}
+
+		private void read(ByteBuffer buffer) throws IOException {
+			buffer.clear();
+			int read = channel.read(buffer);
+			if (read < 0) {
+				close();
+				return;
+			}
+			lastActivity = System.nanoTime();
+			buffer.flip();
+			split(buffer);
+			if (state == State.HANDSHAKE) {
+				handshake();
+			} else if (state == State.RELAY) {
+				relay();
+			}
+			updateInterest();
+		}
+
+		/**
+		 * Splits the bytes read into lines (handshake) or frames (relay), the
+		 * delimiter is part of each line.
+		 */
+		private void split(ByteBuffer buffer) {
+			int maxLength = state == State.HANDSHAKE ? MAX_HANDSHAKE_LINE_LENGTH
+					: MAX_FRAME_LENGTH;
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				current.write(b);
+				delimiterMatched = b == delimiter[delimiterMatched] ? delimiterMatched + 1
+						: b == delimiter[0] ? 1 : 0;
+				if (delimiterMatched == delimiter.length) {
+					lines.add(current.toByteArray());
+					current.reset();
+					delimiterMatched = 0;
+				} else {
+					checkState(current.size() <= maxLength,
+							"%s exceeds %s bytes", state == State.HANDSHAKE ? "Line"
+									: "Frame", maxLength);
+				}
+			}
+		}
+
+		private void handshake() {
+			while (state == State.HANDSHAKE && !lines.isEmpty()) {
+				String command = line(lines.peek());
+				if (STOP_SERVER_CMD.equals(command)) {
+					lines.poll();
+					logger.info("{} requested the server to stop", this);
+					closeQuietly(NioProxyServer.this);
+				} else if (GET_PORT_LIST_CMD.equals(command)) {
+					lines.poll();
+					sendPortList();
+				} else if (CONNECT_CMD.equals(command)) {
+					if (lines.size() < 3) {
+						// wait for port and baudrate
+						return;
+					}
+					lines.poll();
+					connect(line(lines.poll()), line(lines.poll()));
+				} else {
+					lines.poll();
+					logger.debug("{} sent unknown command {}", this, command);
+				}
+			}
+		}
+
+		private String line(byte[] line) {
+			return new String(line, 0, line.length - delimiter.length, UTF8);
+		}
+
+		private void sendPortList() {
+			state = State.BUSY;
+			blockingTasks.execute(new Runnable() {
+				@Override
+				public void run() {
+					Object[] ports;
+					try {
+						ports = linkOpener.getPortList();
+					} catch (Exception e) {
+						logger.error("Error getting port list", e);
+						ports = new Object[0];
+					}
+					final Object[] portList = ports;
+					eventLoop.execute(new Runnable() {
+						@Override
+						public void run() {
+							if (closed) {
+								return;
+							}
+							write(NUMBER_OF_PORTS + portList.length);
+							for (Object port : portList) {
+								write(String.valueOf(port));
+							}
+							handshakeDone();
+						}
+					});
+				}
+			});
+		}
+
+		private void connect(final String port, final String baudrate) {
+			state = State.BUSY;
+			blockingTasks.execute(new Runnable() {
+				@Override
+				public void run() {
+					Link opened = null;
+					try {
+						opened = linkOpener.connect(port,
+								Integer.parseInt(baudrate));
+						checkState(
+								root(opened) instanceof ConnectionBasedLink,
+								"Only %s links supported for now (got %s)",
+								ConnectionBasedLink.class.getName(),
+								root(opened).getClass());
+					} catch (Exception e) {
+						logger.error("Error connecting {} to {}",
+								ProxyConnection.this, port, e);
+						closeLink(opened);
+						opened = null;
+					}
+					final Link link = opened;
+					eventLoop.execute(new Runnable() {
+						@Override
+						public void run() {
+							connected(link);
+						}
+					});
+				}
+			});
+		}
+
+		private void connected(Link link) {
+			if (closed || NioProxyServer.this.closed.get()) {
+				closeLink(link);
+				return;
+			}
+			if (link == null) {
+				write(KO);
+				handshakeDone();
+				return;
+			}
+			this.link = link;
+			this.deviceConnection = ((ConnectionBasedLink) root(link))
+					.getConnection();
+			this.deviceWriter = acquireWriter(deviceConnection);
+			write(OK);
+			this.deviceConnection.addListener(deviceListener);
+			this.state = State.RELAY;
+			this.delimiter = separator;
+			this.delimiterMatched = 0;
+			// lines following the handshake are frames already
+			relay();
+			updateInterest();
+		}
+
+		/**
+		 * Continues the handshake after a blocking task completed.
+		 */
+		private void handshakeDone() {
+			state = State.HANDSHAKE;
+			handshake();
+			updateInterest();
+		}
+
+		/**
+		 * Hands the frames read to the device writer. Frames not fitting stay
+		 * queued and no more bytes are read until the writer resumes this
+		 * connection.
+		 */
+		private void relay() {
+			byte[] frame;
+			while ((frame = lines.peek()) != null) {
+				if (!deviceWriter.offer(this, frame)) {
+					return;
+				}
+				lines.poll();
+			}
+		}
+
+		private boolean isWaitingForDevice() {
+			return state == State.RELAY && !lines.isEmpty();
+		}
+
+		private void write(String line) {
+			byte[] bytes = line.getBytes(UTF8);
+			enqueue(bytes, false);
+			enqueue(HANDSHAKE_SEPARATOR, false);
+		}
+
+		/**
+		 * Queues the bytes to be written to the client, can be called by any
+		 * thread.
+		 * 
+		 * @param bytes
+		 *            the bytes to write
+		 * @param frame
+		 *            <code>true</code> if the bytes are a frame of the device
+		 *            (the separator is appended and the frame is dropped if it
+		 *            does not fit into the write buffer)
+		 */
+		private void enqueue(byte[] bytes, boolean frame) {
+			if (frame) {
+				int size = bytes.length + separator.length;
+				if (outboundBytes.addAndGet(size) > writeBufferSize) {
+					outboundBytes.addAndGet(-size);
+					droppedFrames.incrementAndGet();
+					logger.debug("Dropping frame for {}, write buffer full",
+							this);
+					return;
+				}
+				outbound.add(ByteBuffer.wrap(bytes));
+				outbound.add(ByteBuffer.wrap(separator));
+			} else {
+				outboundBytes.addAndGet(bytes.length);
+				outbound.add(ByteBuffer.wrap(bytes));
+			}
+			if (flushScheduled.compareAndSet(false, true)) {
+				eventLoop.execute(flushTask);
+			}
+		}
+
+		private void flushOrClose() {
+			if (closed) {
+				return;
+			}
+			try {
+				flush(eventLoop.gather);
+			} catch (IOException e) {
+				logger.debug("Connection {} failed", this, e);
+				close();
+			}
+		}
+
+		/**
+		 * Writes the bytes queued using gathering writes until all are written
+		 * or the socket's buffer is full.
+		 */
+		private void flush(ByteBuffer[] gather) throws IOException {
+			do {
+				writePending = !writeQueued(gather);
+				if (writePending) {
+					// flushScheduled stays set, OP_WRITE continues flushing
+					updateInterest();
+					return;
+				}
+				flushScheduled.set(false);
+			} while (!outbound.isEmpty()
+					&& flushScheduled.compareAndSet(false, true));
+			updateInterest();
+		}
+
+		/**
+		 * @return <code>true</code> if all queued bytes have been written,
+		 *         <code>false</code> if the socket's buffer is full
+		 */
+		private boolean writeQueued(ByteBuffer[] gather) throws IOException {
+			while (!outbound.isEmpty()) {
+				int count = 0;
+				for (Iterator<ByteBuffer> it = outbound.iterator(); it
+						.hasNext() && count < gather.length;) {
+					gather[count++] = it.next();
+				}
+				try {
+					if (channel.write(gather, 0, count) > 0) {
+						lastActivity = System.nanoTime();
+					}
+				} finally {
+					Arrays.fill(gather, 0, count, null);
+				}
+				int written = 0;
+				ByteBuffer head;
+				while (written < count && (head = outbound.peek()) != null
+						&& !head.hasRemaining()) {
+					outbound.poll();
+					outboundBytes.addAndGet(-head.limit());
+					written++;
+				}
+				if (written < count) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isReading() {
+			return state != State.BUSY && !isWaitingForDevice()
+					&& outboundBytes.get() <= writeBufferSize / 2;
+		}
+
+		private void updateInterest() {
+			if (!closed && key != null && key.isValid()) {
+				key.interestOps((isReading() ? OP_READ : 0)
+						| (writePending ? OP_WRITE : 0));
+			}
+		}
+
+		private boolean isIdle(long now) {
+			return state != State.BUSY && !isWaitingForDevice()
+					&& now - lastActivity > idleTimeoutNanos;
+		}
+
+		private void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			connections.decrementAndGet();
+			if (key != null) {
+				key.cancel();
+			}
+			closeQuietly(channel);
+			outbound.clear();
+			lines.clear();
+			if (deviceConnection != null) {
+				deviceConnection.removeListener(deviceListener);
+			}
+			if (deviceWriter != null) {
+				releaseWriter(deviceWriter);
+			}
+			if (link != null) {
+				final Link link = this.link;
+				blockingTasks.execute(new Runnable() {
+					@Override
+					public void run() {
+						closeLink(link);
+					}
+				});
+			}
+			logger.info("{} connection closed.", this);
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(remote);
+		}
+
+	}
+
+	private static Link root(Link link) {
+		while (link instanceof LinkDelegate) {
+			link = ((LinkDelegate) link).getDelegate();
+		}
+		return link;
+	}
+
+	private static void closeLink(Link link) {
+		if (link != null) {
+			try {
+				link.close();
+			} catch (Exception e) {
+				logger.error("Error disconnecting link {}", link, e);
+			}
+		}
+	}
+
+}
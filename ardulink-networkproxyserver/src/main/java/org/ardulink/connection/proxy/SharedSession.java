@@ -0,0 +1,471 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static org.ardulink.core.Pin.analogPin;
+import static org.ardulink.core.Pin.digitalPin;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.ANALOG_PIN_READ;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.DIGITAL_PIN_READ;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.RPLY;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.START_LISTENING_ANALOG;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.START_LISTENING_DIGITAL;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LISTENING_ANALOG;
+import static org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey.STOP_LISTENING_DIGITAL;
+import static org.ardulink.util.Bytes.concat;
+import static org.ardulink.util.Bytes.indexOf;
+import static org.ardulink.util.Bytes.parseInt;
+import static org.ardulink.util.Bytes.parseLong;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ardulink.core.Connection;
+import org.ardulink.core.Pin;
+import org.ardulink.core.messages.impl.DefaultToDeviceMessageStopListening;
+import org.ardulink.core.proto.api.Protocol;
+import org.ardulink.core.proto.impl.ALProtoBuilder.ALPProtocolKey;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * One device {@link Connection} shared by several proxy clients (members).
+ * <ul>
+ * <li>Pin state frames of the device are only sent to the members listening
+ * on that pin, replies only to the member that sent the command, all other
+ * frames are broadcast.</li>
+ * <li>Listening on a pin is reference counted: the device is only told to
+ * start listening on a pin for the first member and to stop listening when
+ * the last member stopped listening (or left). All other start/stop commands
+ * are answered by the session. A member starting to listen on a pin the
+ * device already listens on gets the pin's last state, the device would not
+ * send it again.</li>
+ * <li>The commands of all members are written by one writer thread taking one
+ * command of each member in turn so a busy member cannot starve the others.
+ * The message ids of the commands are replaced by ids unique within the
+ * session.</li>
+ * </ul>
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ */
+public class SharedSession {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(SharedSession.class);
+
+	private static final int MAX_QUEUED_COMMANDS = 32;
+
+	private static final byte[] PREFIX = "alp://".getBytes();
+	private static final byte[] ID_PARAM = "id=".getBytes();
+	private static final AtomicInteger sessions = new AtomicInteger();
+
+	/**
+	 * Receives the frames (without separator) of the device dedicated to a
+	 * member. Frames can be delivered by different threads.
+	 */
+	public interface Client {
+		void received(byte[] frame) throws IOException;
+	}
+
+	/**
+	 * A client's membership of the session.
+	 */
+	public final class Member {
+
+		private final Client client;
+		private final BlockingQueue<byte[]> commands = new ArrayBlockingQueue<byte[]>(
+				MAX_QUEUED_COMMANDS);
+		private final Set<Pin> pins = Collections
+				.newSetFromMap(new ConcurrentHashMap<Pin, Boolean>());
+
+		private Member(Client client) {
+			this.client = client;
+		}
+
+		/**
+		 * Queues a command (without separator) to be written to the device.
+		 * Blocks while the member has {@value SharedSession#MAX_QUEUED_COMMANDS}
+		 * commands queued.
+		 */
+		public void send(byte[] command) throws InterruptedException {
+			commands.put(command);
+			pending.release();
+		}
+
+		/**
+		 * Leaves the session, pins only this member was listening on are not
+		 * listened on by the device any more.
+		 */
+		public void leave() {
+			registry.leave(SharedSession.this, this);
+		}
+
+		private void deliver(byte[] frame) {
+			try {
+				client.received(frame);
+			} catch (IOException e) {
+				logger.debug("Error delivering frame to {}", client, e);
+			}
+		}
+
+	}
+
+	private static class Route {
+
+		private final Member member;
+		private final long id;
+
+		private Route(Member member, long id) {
+			this.member = member;
+			this.id = id;
+		}
+
+	}
+
+	private final SharedSessions registry;
+	private final Connection connection;
+	private final Protocol protocol = ArdulinkProtocol2.instance();
+	private final List<Member> members = new CopyOnWriteArrayList<Member>();
+	private final Semaphore pending = new Semaphore(0);
+	private final Thread writer;
+
+	/**
+	 * guarded by writeLock
+	 */
+	private final Map<Pin, Integer> listeners = new HashMap<Pin, Integer>();
+	private final Object writeLock = new Object();
+	private int nextMember;
+
+	/**
+	 * the last state frame of each pin listened on, guarded by itself
+	 */
+	private final Map<Pin, byte[]> pinStates = new HashMap<Pin, byte[]>();
+
+	private final Map<Long, Route> routes = new ConcurrentHashMap<Long, Route>();
+	private long nextId;
+
+	private final Connection.Listener deviceListener = new Connection.ListenerAdapter() {
+		@Override
+		public void received(byte[] bytes) throws IOException {
+			fromDevice(bytes);
+		}
+	};
+
+	SharedSession(SharedSessions registry, Connection connection) {
+		this.registry = registry;
+		this.connection = connection;
+		this.writer = new Thread("ardulink-proxy-session-"
+				+ sessions.incrementAndGet()) {
+			@Override
+			public void run() {
+				try {
+					while (!isInterrupted()) {
+						pending.acquire();
+						writeNext();
+					}
+				} catch (InterruptedException e) {
+					// session closed
+				}
+			}
+		};
+		this.writer.setDaemon(true);
+		this.connection.addListener(deviceListener);
+		this.writer.start();
+	}
+
+	Member join(Client client) {
+		Member member = new Member(client);
+		members.add(member);
+		return member;
+	}
+
+	void leave(Member member) {
+		members.remove(member);
+		member.commands.clear();
+		synchronized (writeLock) {
+			for (Iterator<Entry<Long, Route>> it = routes.entrySet()
+					.iterator(); it.hasNext();) {
+				if (it.next().getValue().member == member) {
+					it.remove();
+				}
+			}
+			for (Pin pin : member.pins) {
+				if (release(pin)) {
+					write(protocol
+							.toDevice(new DefaultToDeviceMessageStopListening(
+									pin)));
+				}
+			}
+			member.pins.clear();
+		}
+	}
+
+	boolean isEmpty() {
+		return members.isEmpty();
+	}
+
+	void close() {
+		connection.removeListener(deviceListener);
+		writer.interrupt();
+	}
+
+	/**
+	 * Writes the next command of the member following the one written last.
+	 * Returns without writing only if the queues of all members are empty.
+	 */
+	private void writeNext() {
+		synchronized (writeLock) {
+			// members joining or leaving meanwhile do not affect the snapshot
+			Member[] snapshot = members.toArray(new Member[0]);
+			for (int i = 0; i < snapshot.length; i++) {
+				int index = (nextMember + i) % snapshot.length;
+				byte[] command = snapshot[index].commands.poll();
+				if (command != null) {
+					nextMember = index + 1;
+					toDevice(snapshot[index], command);
+					return;
+				}
+			}
+		}
+	}
+
+	private void toDevice(Member member, byte[] command) {
+		try {
+			if (!handledBySession(member, command)) {
+				write(command, member);
+			}
+		} catch (NumberFormatException e) {
+			logger.warn("Illegal command {}", new String(command), e);
+		}
+	}
+
+	/**
+	 * Handles the reference counting of pins listened on.
+	 * 
+	 * @return <code>true</code> if the command must not be written to the
+	 *         device
+	 */
+	private boolean handledBySession(Member member, byte[] command) {
+		ALPProtocolKey key = key(command);
+		if (key == START_LISTENING_ANALOG || key == START_LISTENING_DIGITAL) {
+			Pin pin = pin(key == START_LISTENING_ANALOG, command);
+			synchronized (pinStates) {
+				if (!member.pins.add(pin)) {
+					replyOk(member, command);
+					return true;
+				}
+				if (!acquire(pin)) {
+					replyOk(member, command);
+					byte[] state = pinStates.get(pin);
+					if (state != null) {
+						member.deliver(state);
+					}
+					return true;
+				}
+			}
+		} else if (key == STOP_LISTENING_ANALOG
+				|| key == STOP_LISTENING_DIGITAL) {
+			Pin pin = pin(key == STOP_LISTENING_ANALOG, command);
+			if (!member.pins.remove(pin) || !release(pin)) {
+				replyOk(member, command);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return <code>true</code> if the pin was not listened on before
+	 */
+	private boolean acquire(Pin pin) {
+		Integer count = listeners.get(pin);
+		listeners.put(pin, count == null ? 1 : count + 1);
+		return count == null;
+	}
+
+	/**
+	 * @return <code>true</code> if the pin is not listened on any more
+	 */
+	private boolean release(Pin pin) {
+		Integer count = listeners.get(pin);
+		if (count == null || count <= 1) {
+			listeners.remove(pin);
+			synchronized (pinStates) {
+				pinStates.remove(pin);
+			}
+			return count != null;
+		}
+		listeners.put(pin, count - 1);
+		return false;
+	}
+
+	private void write(byte[] command, Member member) {
+		int idStart = idStart(command);
+		if (idStart >= 0) {
+			int idEnd = idEnd(command, idStart);
+			long sessionId = nextId++;
+			routes.put(sessionId, new Route(member, parseLong(command,
+					idStart, idEnd)));
+			command = replaceId(command, idStart, idEnd, sessionId);
+		}
+		write(concat(command, protocol.getSeparator()));
+	}
+
+	private void write(byte[] frame) {
+		try {
+			connection.write(frame);
+		} catch (IOException e) {
+			logger.error("Error writing {} to device", new String(frame), e);
+		}
+	}
+
+	private void replyOk(Member member, byte[] command) {
+		int idStart = idStart(command);
+		if (idStart >= 0) {
+			member.deliver(("alp://rply/ok?id=" + new String(command, idStart,
+					idEnd(command, idStart) - idStart)).getBytes());
+		}
+	}
+
+	private void fromDevice(byte[] frame) {
+		try {
+			route(frame);
+		} catch (NumberFormatException e) {
+			logger.warn("Illegal frame {}", new String(frame), e);
+		}
+	}
+
+	private void route(byte[] frame) {
+		ALPProtocolKey key = key(frame);
+		if (key == ANALOG_PIN_READ || key == DIGITAL_PIN_READ) {
+			Pin pin = pin(key == ANALOG_PIN_READ, frame);
+			synchronized (pinStates) {
+				boolean listened = false;
+				for (Member member : members) {
+					if (member.pins.contains(pin)) {
+						member.deliver(frame);
+						listened = true;
+					}
+				}
+				if (listened) {
+					pinStates.put(pin, frame);
+				}
+			}
+		} else if (key == RPLY && idStart(frame) >= 0) {
+			int idStart = idStart(frame);
+			int idEnd = idEnd(frame, idStart);
+			Route route = routes.remove(parseLong(frame, idStart, idEnd));
+			if (route == null) {
+				logger.debug("No member waiting for reply {}", new String(
+						frame));
+			} else {
+				route.member.deliver(replaceId(frame, idStart, idEnd,
+						route.id));
+			}
+		} else {
+			for (Member member : members) {
+				member.deliver(frame);
+			}
+		}
+	}
+
+	private static ALPProtocolKey key(byte[] frame) {
+		if (indexOf(frame, PREFIX, 0, Math.min(frame.length, PREFIX.length)) != 0) {
+			return null;
+		}
+		int end = commandEnd(frame);
+		return ALPProtocolKey.fromBytes(frame, PREFIX.length, end
+				- PREFIX.length);
+	}
+
+	private static int commandEnd(byte[] frame) {
+		for (int i = PREFIX.length; i < frame.length; i++) {
+			if (frame[i] == '/' || frame[i] == '?') {
+				return i;
+			}
+		}
+		return frame.length;
+	}
+
+	private static Pin pin(boolean analog, byte[] frame) {
+		int start = commandEnd(frame) + 1;
+		int end = start;
+		while (end < frame.length && frame[end] != '/' && frame[end] != '?') {
+			end++;
+		}
+		int pin = parseInt(frame, start, end);
+		return analog ? analogPin(pin) : digitalPin(pin);
+	}
+
+	/**
+	 * @return the index of the id param's value or <code>-1</code> if the
+	 *         frame has no id
+	 */
+	private static int idStart(byte[] frame) {
+		int query = indexOf(frame, (byte) '?', 0, frame.length);
+		if (query < 0) {
+			return -1;
+		}
+		int param = query + 1;
+		while (param < frame.length) {
+			if (indexOf(frame, ID_PARAM, param, Math.min(frame.length, param
+					+ ID_PARAM.length)) == param) {
+				return param + ID_PARAM.length;
+			}
+			int next = indexOf(frame, (byte) '&', param, frame.length);
+			if (next < 0) {
+				return -1;
+			}
+			param = next + 1;
+		}
+		return -1;
+	}
+
+	private static int idEnd(byte[] frame, int idStart) {
+		int end = indexOf(frame, (byte) '&', idStart, frame.length);
+		return end < 0 ? frame.length : end;
+	}
+
+	private static byte[] replaceId(byte[] frame, int idStart, int idEnd,
+			long id) {
+		byte[] value = String.valueOf(id).getBytes();
+		byte[] replaced = new byte[frame.length - (idEnd - idStart)
+				+ value.length];
+		System.arraycopy(frame, 0, replaced, 0, idStart);
+		System.arraycopy(value, 0, replaced, idStart, value.length);
+		System.arraycopy(frame, idEnd, replaced, idStart + value.length,
+				frame.length - idEnd);
+		return replaced;
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.ardulink.connection.proxy.SharedSession.Client;
+import org.ardulink.connection.proxy.SharedSession.Member;
+import org.ardulink.core.Connection;
+
+/**
+ * [ardulinktitle] [ardulinkversion]
+ * 
+ * Holds one {@link SharedSession} per device {@link Connection} as long as at
+ * least one client is member of it.
+ * 
+ * project Ardulink http://www.ardulink.org/
+ * 
+ * [adsense]
+ */
+public class SharedSessions {
+
+	private final Map<Connection, SharedSession> sessions = new IdentityHashMap<Connection, SharedSession>();
+
+	/**
+	 * Joins the session of the passed device connection, the session is
+	 * created if this is the first member.
+	 */
+	public synchronized Member join(Connection connection, Client client) {
+		SharedSession session = sessions.get(connection);
+		if (session == null) {
+			session = new SharedSession(this, connection);
+			sessions.put(connection, session);
+		}
+		return session.join(client);
+	}
+
+	synchronized void leave(SharedSession session, Member member) {
+		session.leave(member);
+		if (session.isEmpty() && sessions.values().remove(session)) {
+			session.close();
+		}
+	}
+
+	public synchronized int size() {
+		return sessions.size();
+	}
+
+}
@@ -0,0 +1,181 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ardulink.core.AbstractConnection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.ardulink.core.proxy.ProxyLinkConfig;
+import org.ardulink.core.proxy.ProxyLinkFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class HandshakerV2Test {
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private final List<String> requests = new CopyOnWriteArrayList<String>();
+	private final AtomicInteger accepted = new AtomicInteger();
+	private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+	private final LinkOpener linkOpener = new LinkOpener(URI.create("ardulink://unused")) {
+
+		@Override
+		public Object[] getPortList(URI uri) {
+			requests.add("ports " + uri);
+			return new Object[] { "port1", "port2" };
+		}
+
+		@Override
+		public Link connect(URI uri) {
+			requests.add("connect " + uri);
+			if (uri.toString().contains("fail")) {
+				throw new IllegalStateException("cannot open " + uri);
+			}
+			return new ConnectionBasedLink(new AbstractConnection() {
+
+				@Override
+				public void write(byte[] bytes) throws IOException {
+					// nothing to do
+				}
+
+				@Override
+				public void close() throws IOException {
+					// nothing to close
+				}
+
+			}, ArdulinkProtocol2.instance());
+		}
+
+	};
+
+	private ServerSocket serverSocket;
+
+	@Before
+	public void startServer() throws IOException {
+		serverSocket = new ServerSocket(0);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = serverSocket.accept();
+						accepted.incrementAndGet();
+						sockets.add(socket);
+						new Thread() {
+							@Override
+							public void run() {
+								try {
+									new Handshaker(socket.getInputStream(), socket.getOutputStream(), linkOpener)
+											.doHandshake();
+								} catch (Exception e) {
+									// client went away
+								}
+							}
+						}.start();
+					}
+				} catch (IOException e) {
+					// server closed
+				}
+			}
+		}.start();
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		serverSocket.close();
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void connectSendsTheLinksUri() throws IOException {
+		ProxyLinkConfig config = config();
+		config.setLinkuri("ardulink://serial?port=COM3&baudrate=9600");
+
+		new ProxyLinkFactory().newLink(config).close();
+
+		assertThat(requests, is(Arrays.asList("connect ardulink://serial?port=COM3&baudrate=9600")));
+	}
+
+	@Test
+	public void connectWithoutUriUsesTheServersLinkWithPortAndSpeed() throws IOException {
+		ProxyLinkConfig config = config();
+		config.setPort("/dev/tty USB0");
+		config.setSpeed(9600);
+
+		new ProxyLinkFactory().newLink(config).close();
+
+		assertThat(requests,
+				is(Arrays.asList("connect ardulink://default?port=/dev/tty%20USB0&baudrate=9600")));
+	}
+
+	@Test
+	public void controlConnectionIsReusedForPortListsAndConnect() throws IOException {
+		ProxyLinkConfig config = config();
+		assertThat(config.getAvailablePorts(), is(Arrays.asList("port1", "port2")));
+		assertThat(config().getAvailablePorts(), is(Arrays.asList("port1", "port2")));
+		config.setPort("port1");
+
+		new ProxyLinkFactory().newLink(config).close();
+
+		assertThat(requests, is(Arrays.asList("ports ardulink://default", "ports ardulink://default",
+				"connect ardulink://default?port=port1&baudrate=115200")));
+		assertThat(accepted.get(), is(1));
+	}
+
+	@Test
+	public void connectFailureIsReported() throws IOException {
+		ProxyLinkConfig config = config();
+		config.setLinkuri("ardulink://fail");
+		try {
+			new ProxyLinkFactory().newLink(config);
+			fail("connect did not fail");
+		} catch (IOException e) {
+			assertThat(e.getMessage().contains("cannot open ardulink://fail"), is(true));
+		}
+	}
+
+	private ProxyLinkConfig config() {
+		ProxyLinkConfig config = new ProxyLinkFactory().newLinkConfig();
+		config.setTcphost("localhost");
+		config.setTcpport(serverSocket.getLocalPort());
+		config.setProtocolversion(2);
+		return config;
+	}
+
+}
@@ -0,0 +1,107 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.ardulink.core.AbstractConnection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.linkmanager.LinkManager.Configurer;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.junit.After;
+import org.junit.Test;
+
+public class LinkOpenerTest {
+
+	private static final URI PROXY = URI.create("ardulink://proxy");
+
+	private final Link link = new ConnectionBasedLink(new AbstractConnection() {
+
+		@Override
+		public void write(byte[] bytes) throws IOException {
+			// nothing to do
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to close
+		}
+
+	}, ArdulinkProtocol2.instance());
+
+	@After
+	public void tearDown() {
+		System.clearProperty(LinkOpener.ALLOWED_LINKS_PROPERTY);
+	}
+
+	@Test
+	public void otherLinksAreDeniedByDefault() throws Exception {
+		LinkOpener linkOpener = newLinkOpener();
+		try {
+			linkOpener.connect(PROXY);
+			fail("connect was not denied");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("Link proxy is not allowed by this server"));
+		}
+		try {
+			linkOpener.getPortList(PROXY);
+			fail("port list was not denied");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("Link proxy is not allowed by this server"));
+		}
+	}
+
+	@Test
+	public void defaultLinkIsAlwaysAllowed() throws Exception {
+		assertThat(newLinkOpener().getPortList(URI.create("ardulink://default")), is(new Object[] { "port1" }));
+	}
+
+	@Test
+	public void allowedLinksCanBeOpened() throws Exception {
+		assertThat(newLinkOpener().allowLinks("serial", "proxy").connect(PROXY), sameInstance(link));
+	}
+
+	@Test
+	public void allowedLinksCanBeConfiguredBySystemProperty() throws Exception {
+		System.setProperty(LinkOpener.ALLOWED_LINKS_PROPERTY, "serial, proxy");
+		assertThat(newLinkOpener().connect(PROXY), sameInstance(link));
+	}
+
+	private LinkOpener newLinkOpener() {
+		return new LinkOpener(URI.create("ardulink://unused")) {
+
+			@Override
+			public Object[] getPortList() {
+				return new Object[] { "port1" };
+			}
+
+			@Override
+			protected Link newLink(Configurer configurer) {
+				return link;
+			}
+
+		};
+	}
+
+}
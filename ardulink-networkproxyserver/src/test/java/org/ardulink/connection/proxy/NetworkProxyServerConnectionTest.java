@@ -0,0 +1,163 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.channels.ServerSocketChannel;
+
+import org.ardulink.core.AbstractConnection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class NetworkProxyServerConnectionTest {
+
+	private static class Device extends AbstractConnection {
+
+		private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+		@Override
+		public synchronized void write(byte[] bytes) throws IOException {
+			written.write(bytes);
+			notifyAll();
+		}
+
+		private synchronized String awaitWritten(String expected) throws InterruptedException {
+			while (!written.toString().equals(expected)) {
+				wait();
+			}
+			return written.toString();
+		}
+
+		private void send(String frame) {
+			fireReceived(frame.getBytes());
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to close
+		}
+
+	}
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private final Device device = new Device();
+
+	private final LinkOpener linkOpener = new LinkOpener(URI.create("ardulink://unused")) {
+		@Override
+		public Link connect(String port, int baudrate) {
+			return new ConnectionBasedLink(device, ArdulinkProtocol2.instance());
+		}
+	};
+
+	private ServerSocket serverSocket;
+
+	@After
+	public void stopServer() throws IOException {
+		serverSocket.close();
+	}
+
+	@Test
+	public void transparentRelayWritesTheClientsBytesAsReceived() throws Exception {
+		Socket client = connect(startTransparentServer());
+		OutputStream outputStream = client.getOutputStream();
+		outputStream.write("alp://ppin/1/2\nalp://pp".getBytes());
+		outputStream.flush();
+		outputStream.write("in/1/3\n".getBytes());
+		outputStream.flush();
+
+		assertThat(device.awaitWritten("alp://ppin/1/2\nalp://ppin/1/3\n"), is("alp://ppin/1/2\nalp://ppin/1/3\n"));
+		client.close();
+	}
+
+	@Test
+	public void transparentRelayAppendsTheSeparatorToTheDevicesFrames() throws Exception {
+		Socket client = connect(startTransparentServer());
+		BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream()));
+
+		// the link's and the relay's listener
+		while (device.getListeners().size() < 2) {
+			MILLISECONDS.sleep(10);
+		}
+		device.send("alp://ared/1/5");
+		device.send("alp://dred/2/1");
+
+		assertThat(reader.readLine(), is("alp://ared/1/5"));
+		assertThat(reader.readLine(), is("alp://dred/2/1"));
+		client.close();
+	}
+
+	private int startTransparentServer() throws IOException {
+		serverSocket = ServerSocketChannel.open().socket();
+		serverSocket.bind(new InetSocketAddress(0));
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					new NetworkProxyServerConnection(serverSocket.accept(), null, true) {
+						@Override
+						protected Handshaker handshaker(InputStream isRemote, OutputStream osRemote) {
+							return new Handshaker(isRemote, osRemote, linkOpener);
+						}
+					}.run();
+				} catch (IOException e) {
+					// server closed
+				}
+			}
+		}.start();
+		return serverSocket.getLocalPort();
+	}
+
+	private static Socket connect(int port) throws IOException {
+		Socket socket = new Socket("localhost", port);
+		OutputStream outputStream = socket.getOutputStream();
+		outputStream.write((NetworkProxyMessages.CONNECT_CMD + "\nmyPort\n115200\n").getBytes());
+		outputStream.flush();
+		assertThat(readLine(socket.getInputStream()), is(NetworkProxyMessages.OK));
+		return socket;
+	}
+
+	private static String readLine(InputStream inputStream) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int read;
+		while ((read = inputStream.read()) != '\n') {
+			line.append((char) read);
+		}
+		return line.toString();
+	}
+
+}
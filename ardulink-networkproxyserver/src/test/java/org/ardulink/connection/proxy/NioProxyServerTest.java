@@ -0,0 +1,319 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.CONNECT_CMD;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.GET_PORT_LIST_CMD;
+import static org.ardulink.connection.proxy.NetworkProxyMessages.STOP_SERVER_CMD;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.core.AbstractConnection;
+import org.ardulink.core.ConnectionBasedLink;
+import org.ardulink.core.Link;
+import org.ardulink.core.proto.impl.ArdulinkProtocol2;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class NioProxyServerTest {
+
+	private static class Device extends AbstractConnection {
+
+		private final BlockingQueue<String> written = new LinkedBlockingQueue<String>();
+		private volatile CountDownLatch stuck = new CountDownLatch(0);
+
+		@Override
+		public void write(byte[] bytes) throws IOException {
+			try {
+				stuck.await();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			written.add(new String(bytes));
+		}
+
+		private void send(String frame) {
+			fireReceived(frame.getBytes());
+		}
+
+		private String nextWritten() throws InterruptedException {
+			return written.poll(5, SECONDS);
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to close
+		}
+
+	}
+
+	private static class Client {
+
+		private final Socket socket;
+		private final BufferedReader reader;
+		private final OutputStream outputStream;
+
+		private Client(Socket socket) throws IOException {
+			this.socket = socket;
+			this.reader = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), "UTF-8"));
+			this.outputStream = socket.getOutputStream();
+		}
+
+		private void send(String... lines) throws IOException {
+			StringBuilder sb = new StringBuilder();
+			for (String line : lines) {
+				sb.append(line).append('\n');
+			}
+			outputStream.write(sb.toString().getBytes("UTF-8"));
+			outputStream.flush();
+		}
+
+		private String readLine() throws IOException {
+			return reader.readLine();
+		}
+
+		private void connect() throws IOException {
+			send(CONNECT_CMD, "port1", "9600");
+			assertThat(readLine(), is("OK"));
+		}
+
+		private boolean isClosedByServer() {
+			try {
+				return socket.getInputStream().read() < 0;
+			} catch (IOException e) {
+				// connection reset
+				return true;
+			}
+		}
+
+	}
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private final Device device = new Device();
+	private final List<String> connects = new CopyOnWriteArrayList<String>();
+	private final List<Client> clients = new CopyOnWriteArrayList<Client>();
+
+	private final LinkOpener linkOpener = new LinkOpener(
+			URI.create("ardulink://unused")) {
+
+		@Override
+		public Object[] getPortList() {
+			return new Object[] { "port1", "port2" };
+		}
+
+		@Override
+		public Link connect(String port, int baudrate) {
+			connects.add(port + "@" + baudrate);
+			return new ConnectionBasedLink(device, ArdulinkProtocol2.instance());
+		}
+
+	};
+
+	private NioProxyServer server;
+
+	@After
+	public void tearDown() throws IOException {
+		device.stuck.countDown();
+		for (Client client : clients) {
+			client.socket.close();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void relaysAfterHandshake() throws Exception {
+		server = builder().start();
+		Client client = newClient();
+
+		client.send(GET_PORT_LIST_CMD);
+		assertThat(client.readLine(), is("NUMBER_OF_PORTS=2"));
+		assertThat(client.readLine(), is("port1"));
+		assertThat(client.readLine(), is("port2"));
+
+		// frames sent together with the handshake are relayed as well
+		client.send(CONNECT_CMD, "port1", "9600", "alp://ppin/1/1");
+		assertThat(client.readLine(), is("OK"));
+		assertThat(connects, is(Arrays.asList("port1@9600")));
+		assertThat(device.nextWritten(), is("alp://ppin/1/1\n"));
+
+		client.send("alp://ppsw/2/0");
+		assertThat(device.nextWritten(), is("alp://ppsw/2/0\n"));
+		device.send("alp://dred/3/1");
+		assertThat(client.readLine(), is("alp://dred/3/1"));
+	}
+
+	@Test
+	public void rejectsConnectionsAboveMaxConnections() throws Exception {
+		server = builder().withMaxConnections(1).start();
+		Client client = newClient();
+		client.connect();
+
+		assertTrue(newClient().isClosedByServer());
+		assertThat(server.getConnections(), is(1));
+		client.send("alp://ppsw/2/0");
+		assertThat(device.nextWritten(), is("alp://ppsw/2/0\n"));
+	}
+
+	@Test
+	public void closesIdleConnections() throws Exception {
+		server = builder().withIdleTimeout(100, MILLISECONDS).start();
+		Client client = newClient();
+		client.connect();
+
+		assertTrue(client.isClosedByServer());
+		while (server.getConnections() > 0) {
+			MILLISECONDS.sleep(10);
+		}
+	}
+
+	@Test
+	public void dropsFramesNotFittingIntoTheWriteBuffer() throws Exception {
+		server = builder().withWriteBufferSize(1024).start();
+		Client client = newClient();
+		client.connect();
+
+		// the client does not read, so the socket buffers fill up
+		String frame = fillWriteBuffer();
+		assertThat(server.getConnections(), is(1));
+		// frames are dropped as a whole
+		for (int i = 0; i < 10; i++) {
+			assertThat(client.readLine(), is(frame));
+		}
+	}
+
+	@Test
+	public void pausesReadingWhileTheWriteBufferIsHalfFull() throws Exception {
+		server = builder().withWriteBufferSize(1024).start();
+		final Client client = newClient();
+		client.connect();
+		fillWriteBuffer();
+
+		client.send("alp://ppsw/2/0");
+		assertThat(device.written.poll(200, MILLISECONDS), is(nullValue()));
+
+		Thread drain = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (client.readLine() != null) {
+						// discard
+					}
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		};
+		drain.setDaemon(true);
+		drain.start();
+		assertThat(device.nextWritten(), is("alp://ppsw/2/0\n"));
+	}
+
+	@Test
+	public void slowDeviceDoesNotBlockTheEventLoop() throws Exception {
+		server = builder().withEventLoops(1).withDeviceQueueSize(1).start();
+		Client client = newClient();
+		client.connect();
+		device.stuck = new CountDownLatch(1);
+
+		for (int i = 0; i < 10; i++) {
+			client.send("alp://ppsw/" + i + "/1");
+		}
+		// the device is stuck, the event loop still serves other clients
+		Client other = newClient();
+		other.send(GET_PORT_LIST_CMD);
+		assertThat(other.readLine(), is("NUMBER_OF_PORTS=2"));
+
+		device.stuck.countDown();
+		for (int i = 0; i < 10; i++) {
+			assertThat(device.nextWritten(), is("alp://ppsw/" + i + "/1\n"));
+		}
+	}
+
+	@Test
+	public void stopsOnStopServerCommand() throws Exception {
+		server = builder().start();
+		Client client = newClient();
+		client.connect();
+
+		newClient().send(STOP_SERVER_CMD);
+		server.awaitTermination();
+		assertThat(server.isClosed(), is(true));
+		assertTrue(client.isClosedByServer());
+	}
+
+	private NioProxyServer.Builder builder() {
+		return NioProxyServer.newBuilder().withPort(0).withEventLoops(2)
+				.withLinkOpener(linkOpener);
+	}
+
+	private Client newClient() throws IOException {
+		Socket socket = new Socket();
+		socket.setReceiveBufferSize(1024);
+		socket.connect(new InetSocketAddress("localhost", server.getPort()));
+		Client client = new Client(socket);
+		clients.add(client);
+		return client;
+	}
+
+	/**
+	 * Sends frames until the socket buffers are full and the write buffer of
+	 * the client has no space left.
+	 */
+	private String fillWriteBuffer() throws InterruptedException {
+		char[] payload = new char[512];
+		Arrays.fill(payload, 'x');
+		String frame = "alp://cevnt/" + new String(payload);
+		long lastAccepted = System.nanoTime();
+		while (System.nanoTime() - lastAccepted < MILLISECONDS.toNanos(200)) {
+			long dropped = server.getDroppedFrames();
+			device.send(frame);
+			if (server.getDroppedFrames() == dropped) {
+				lastAccepted = System.nanoTime();
+			} else {
+				MILLISECONDS.sleep(1);
+			}
+		}
+		return frame;
+	}
+
+}
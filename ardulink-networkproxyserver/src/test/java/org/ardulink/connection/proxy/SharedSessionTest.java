@@ -0,0 +1,226 @@
+/**
+Copyright 2013 project Ardulink http://www.ardulink.org/
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package org.ardulink.connection.proxy;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.ardulink.connection.proxy.SharedSession.Client;
+import org.ardulink.connection.proxy.SharedSession.Member;
+import org.ardulink.core.AbstractConnection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class SharedSessionTest {
+
+	private static class Device extends AbstractConnection {
+
+		private final BlockingQueue<String> written = new LinkedBlockingQueue<String>();
+
+		@Override
+		public synchronized void write(byte[] bytes) throws IOException {
+			written.add(new String(bytes));
+		}
+
+		private void send(String frame) {
+			fireReceived(frame.getBytes());
+		}
+
+		private String nextWritten() throws InterruptedException {
+			return written.poll(5, SECONDS);
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to close
+		}
+
+	}
+
+	private static class RecordingClient implements Client {
+
+		private final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+
+		@Override
+		public void received(byte[] frame) throws IOException {
+			received.add(new String(frame));
+		}
+
+		private String next() throws InterruptedException {
+			return received.poll(5, SECONDS);
+		}
+
+	}
+
+	@Rule
+	public Timeout timeout = new Timeout(15, SECONDS);
+
+	private final SharedSessions sessions = new SharedSessions();
+	private final Device device = new Device();
+	private final RecordingClient client1 = new RecordingClient();
+	private final RecordingClient client2 = new RecordingClient();
+
+	@Test
+	public void deviceListensOnPinOnlyOnceAndPinStatesReachListeningMembersOnly()
+			throws InterruptedException {
+		Member member1 = sessions.join(device, client1);
+		Member member2 = sessions.join(device, client2);
+
+		member1.send("alp://srla/1?id=7".getBytes());
+		assertThat(device.nextWritten(), is("alp://srla/1?id=0\n"));
+		device.send("alp://rply/ok?id=0");
+		assertThat(client1.next(), is("alp://rply/ok?id=7"));
+
+		member2.send("alp://srla/1?id=3".getBytes());
+		member2.send("alp://srld/2".getBytes());
+		assertThat(client2.next(), is("alp://rply/ok?id=3"));
+		assertThat(device.nextWritten(), is("alp://srld/2\n"));
+
+		device.send("alp://ared/1/42");
+		device.send("alp://dred/2/1");
+		assertThat(client1.next(), is("alp://ared/1/42"));
+		assertThat(client2.next(), is("alp://ared/1/42"));
+		assertThat(client2.next(), is("alp://dred/2/1"));
+		assertThat(client1.received.poll(), is(nullValue()));
+	}
+
+	@Test
+	public void repliesAreRoutedToTheSenderWithItsOwnId()
+			throws InterruptedException {
+		Member member1 = sessions.join(device, client1);
+		Member member2 = sessions.join(device, client2);
+
+		member1.send("alp://ppsw/3/1?id=1".getBytes());
+		assertThat(device.nextWritten(), is("alp://ppsw/3/1?id=0\n"));
+		member2.send("alp://ppsw/3/0?id=1".getBytes());
+		assertThat(device.nextWritten(), is("alp://ppsw/3/0?id=1\n"));
+
+		device.send("alp://rply/ko?id=1");
+		device.send("alp://rply/ok?id=0");
+		assertThat(client2.next(), is("alp://rply/ko?id=1"));
+		assertThat(client1.next(), is("alp://rply/ok?id=1"));
+		assertThat(client1.received.poll(), is(nullValue()));
+		assertThat(client2.received.poll(), is(nullValue()));
+	}
+
+	@Test
+	public void otherFramesAreBroadcast() throws InterruptedException {
+		sessions.join(device, client1);
+		sessions.join(device, client2);
+
+		device.send("alp://cevnt/foo");
+		assertThat(client1.next(), is("alp://cevnt/foo"));
+		assertThat(client2.next(), is("alp://cevnt/foo"));
+	}
+
+	@Test
+	public void deviceStopsListeningWhenTheLastMemberLeft()
+			throws InterruptedException {
+		Member member1 = sessions.join(device, client1);
+		Member member2 = sessions.join(device, client2);
+		member1.send("alp://srld/3".getBytes());
+		assertThat(device.nextWritten(), is("alp://srld/3\n"));
+		member2.send("alp://srld/3".getBytes());
+		member2.send("alp://ppin/4/5".getBytes());
+		assertThat(device.nextWritten(), is("alp://ppin/4/5\n"));
+
+		member1.leave();
+		assertThat(device.written.poll(), is(nullValue()));
+		assertThat(sessions.size(), is(1));
+
+		member2.leave();
+		assertThat(device.nextWritten(), is("alp://spld/3\n"));
+		assertThat(sessions.size(), is(0));
+		assertThat(device.getListeners().isEmpty(), is(true));
+	}
+
+	@Test
+	public void memberStartingToListenOnAListenedPinGetsItsLastState()
+			throws InterruptedException {
+		Member member1 = sessions.join(device, client1);
+		Member member2 = sessions.join(device, client2);
+		member1.send("alp://srld/2".getBytes());
+		assertThat(device.nextWritten(), is("alp://srld/2\n"));
+		device.send("alp://dred/2/1");
+		assertThat(client1.next(), is("alp://dred/2/1"));
+
+		member2.send("alp://srld/2?id=5".getBytes());
+		assertThat(client2.next(), is("alp://rply/ok?id=5"));
+		assertThat(client2.next(), is("alp://dred/2/1"));
+		device.send("alp://dred/2/0");
+		assertThat(client1.next(), is("alp://dred/2/0"));
+		assertThat(client2.next(), is("alp://dred/2/0"));
+
+		// the state is forgotten once the device stopped listening
+		member1.send("alp://spld/2".getBytes());
+		member2.send("alp://spld/2".getBytes());
+		assertThat(device.nextWritten(), is("alp://spld/2\n"));
+		member1.send("alp://srld/2".getBytes());
+		assertThat(device.nextWritten(), is("alp://srld/2\n"));
+		assertThat(client1.received.poll(), is(nullValue()));
+	}
+
+	@Test
+	public void commandsAreWrittenWhileMembersLeave()
+			throws InterruptedException {
+		Member member1 = sessions.join(device, client1);
+		Member member2 = sessions.join(device, client2);
+		Member member3 = sessions.join(device, new RecordingClient());
+		member1.send("alp://cust/a".getBytes());
+		member3.send("alp://cust/c".getBytes());
+		member1.leave();
+		member2.leave();
+		String written = device.nextWritten();
+		if ("alp://cust/a\n".equals(written)) {
+			// written before member1 left
+			written = device.nextWritten();
+		}
+		assertThat(written, is("alp://cust/c\n"));
+		member3.send("alp://cust/d".getBytes());
+		assertThat(device.nextWritten(), is("alp://cust/d\n"));
+	}
+
+	@Test
+	public void commandsOfAllMembersAreWrittenInTurn()
+			throws InterruptedException {
+		Member member1 = sessions.join(device, client1);
+		Member member2 = sessions.join(device, client2);
+		// blocks the writer until both members queued their commands
+		synchronized (device) {
+			for (int i = 0; i < 3; i++) {
+				member1.send(("alp://cust/a" + i).getBytes());
+			}
+			for (int i = 0; i < 3; i++) {
+				member2.send(("alp://cust/b" + i).getBytes());
+			}
+		}
+		StringBuilder order = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			String written = device.nextWritten();
+			order.append(written.charAt(written.length() - 3));
+		}
+		assertThat(order.toString(), is("ababab"));
+	}
+
+}
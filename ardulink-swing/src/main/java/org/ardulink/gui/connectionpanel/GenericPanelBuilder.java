@@ -20,6 +20,7 @@ import static org.ardulink.gui.connectionpanel.GridBagConstraintsBuilder.constra
 import static org.ardulink.util.Primitives.parseAs;
 import static org.ardulink.util.Primitives.unwrap;
 import static org.ardulink.util.Primitives.wrap;
+import static org.ardulink.util.Throwables.propagate;
 
 import java.awt.Component;
 import java.awt.GridBagLayout;
@@ -31,6 +32,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.ImageIcon;
@@ -45,6 +47,7 @@ import javax.swing.JSpinner;
 import javax.swing.JTextField;
 import javax.swing.SpinnerModel;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -96,13 +99,34 @@ public class GenericPanelBuilder implements PanelBuilder {
 
 	private static JButton createDiscoverButton(
 			final ConfigAttribute attribute, final JComboBox comboBox) {
-		JButton discoverButton = new JButton(loadIcon());
+		final JButton discoverButton = new JButton(loadIcon());
 		discoverButton.setToolTipText("Discover");
 		discoverButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				comboBox.setModel(new DefaultComboBoxModel(attribute
-						.getChoiceValues()));
+				// discovery can take seconds (e.g. bluetooth) so don't block
+				// the event dispatch thread
+				discoverButton.setEnabled(false);
+				new SwingWorker<Object[], Void>() {
+
+					@Override
+					protected Object[] doInBackground() {
+						return attribute.getChoiceValues();
+					}
+
+					@Override
+					protected void done() {
+						discoverButton.setEnabled(true);
+						try {
+							comboBox.setModel(new DefaultComboBoxModel(get()));
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} catch (ExecutionException e) {
+							throw propagate(e.getCause());
+						}
+					}
+
+				}.execute();
 			}
 		});
 		return discoverButton;